@@ -0,0 +1,167 @@
+/**
+ * Copyright (c) 2012-2014 "Indexia Technologies, ltd."
+ * 
+ * This file is part of Antiquity.
+ * 
+ * Antiquity is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.indexia.antiquity.graph;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.io.Files;
+import com.tinkerpop.blueprints.KeyIndexableGraph;
+import com.tinkerpop.blueprints.TransactionalGraph;
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.impls.neo4j2.Neo4j2Graph;
+import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
+import co.indexia.antiquity.graph.identifierBehavior.LongGraphIdentifierBehavior;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the commits per second of a transactional graph when the version
+ * is allocated within the history commit ({@code single}) and when it is
+ * allocated in a second base commit ({@code split}), as {@code commit()} did
+ * before.
+ * 
+ * <p>
+ * Neo4j2 is opened on disk so every base commit is flushed, TinkerGraph is
+ * wrapped as a transactional graph whose commits are no-ops and thus only
+ * measures the versioning overhead.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommitBenchmark {
+    private static final int VERTICES = 1024;
+
+    @Param({ "neo4j2", "tinkergraph" })
+    public String backend;
+
+    @Param({ "single", "split" })
+    public String mode;
+
+    private File dir;
+    private ActiveVersionedGraph<?, Long> graph;
+    private Object[] ids;
+    private int next;
+
+    @Setup
+    public void setUpGraph() {
+        LongGraphIdentifierBehavior behavior;
+        if ("single".equals(mode)) {
+            behavior = new LongGraphIdentifierBehavior();
+        } else if ("split".equals(mode)) {
+            behavior = new SplitCommitIdentifierBehavior();
+        } else {
+            throw new IllegalArgumentException("Unknown mode: " + mode);
+        }
+
+        if ("neo4j2".equals(backend)) {
+            dir = Files.createTempDir();
+            graph = build(new Neo4j2Graph(dir.getAbsolutePath()), behavior);
+        } else if ("tinkergraph".equals(backend)) {
+            graph = build(new TransactionalTinkerGraph(), behavior);
+        } else {
+            throw new IllegalArgumentException("Unknown backend: " + backend);
+        }
+
+        ids = new Object[VERTICES];
+        for (int i = 0; i < VERTICES; i++) {
+            ids[i] = graph.addVertex(null).getId();
+        }
+        ((TransactionalGraph) graph).commit();
+    }
+
+    @TearDown
+    public void tearDownGraph() {
+        graph.shutdown();
+        if (dir != null) {
+            delete(dir);
+        }
+    }
+
+    @Benchmark
+    public Object commit() {
+        Vertex v = graph.getVertex(ids[next++ & (VERTICES - 1)]);
+        v.setProperty("key", next);
+        ((TransactionalGraph) graph).commit();
+
+        return v;
+    }
+
+    private static <T extends KeyIndexableGraph & TransactionalGraph> ActiveVersionedGraph<T, Long> build(T base,
+            LongGraphIdentifierBehavior behavior) {
+        return new ActiveVersionedGraph.ActiveVersionedTransactionalGraphBuilder<T, Long>(base, behavior).init(true)
+                .build();
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Commits the history of the transaction before its version is allocated,
+     * the allocation is then committed on its own as {@code commit()} did
+     * before the version was allocated within the history commit.
+     */
+    private static class SplitCommitIdentifierBehavior extends LongGraphIdentifierBehavior {
+        @Override
+        public void allocateGraphVersion(Long version) {
+            ((TransactionalGraph) getGraph().getBaseGraph()).commit();
+            super.allocateGraphVersion(version);
+        }
+    }
+
+    /**
+     * A {@link TinkerGraph} exposed as a transactional graph, its commits are
+     * no-ops.
+     */
+    private static class TransactionalTinkerGraph extends TinkerGraph implements TransactionalGraph {
+        @Override
+        @SuppressWarnings("deprecation")
+        public void stopTransaction(Conclusion conclusion) {
+        }
+
+        @Override
+        public void commit() {
+        }
+
+        @Override
+        public void rollback() {
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/**
+ * Copyright (c) 2012-2014 "Indexia Technologies, ltd."
+ * 
+ * This file is part of Antiquity.
+ * 
+ * Antiquity is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.indexia.antiquity.graph;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Sets;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Element;
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
+import co.indexia.antiquity.graph.identifierBehavior.LongGraphIdentifierBehavior;
+import co.indexia.antiquity.range.Range;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the classification of raw historic elements by the historic
+ * iterables, the single pass classifier is compared with the separate
+ * internal, type and range checks it replaced, as they were implemented
+ * before the classifier.
+ * 
+ * <p>
+ * Run with the GC profiler ({@code -prof gc}), the classifier is expected to
+ * report no allocation ({@code gc.alloc.rate.norm}) per operation.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HistoricClassifierBenchmark {
+    @Param({ "false", "true" })
+    public boolean compactVersionRange;
+
+    private VersionedElementUtils<Long> utils;
+    private Element[] elements;
+    private Range<Long> version;
+    private int next;
+
+    @Setup
+    public void setUpElements() {
+        Configuration conf =
+                new Configuration.ConfBuilder().compactVersionRangeEnabled(compactVersionRange).build();
+        ActiveVersionedGraph<TinkerGraph, Long> graph =
+                new ActiveVersionedGraph.ActiveVersionedNonTransactionalGraphBuilder<TinkerGraph, Long>(
+                        new TinkerGraph(), new LongGraphIdentifierBehavior()).init(true).conf(conf).build();
+
+        Vertex prev = null;
+        for (int i = 0; i < 512; i++) {
+            Vertex v = graph.addVertex(null);
+            v.setProperty("key", i);
+            if (prev != null) {
+                graph.addEdge(null, prev, v, "next");
+            }
+            prev = v;
+        }
+        Long ver = graph.getLatestGraphVersion() / 2;
+
+        List<Element> historic = new ArrayList<Element>();
+        for (Vertex v : graph.getBaseGraph().getVertices()) {
+            if (graph.utils.isInternal(v) || graph.utils.getElementType(v) == VEProps.GRAPH_TYPE.HISTORIC) {
+                historic.add(v);
+            }
+        }
+
+        utils = graph.utils;
+        elements = historic.toArray(new Element[historic.size()]);
+        version = Range.range(ver, ver);
+    }
+
+    @Benchmark
+    public Object classifier() {
+        return utils.classifyHistoric(nextElement(), version);
+    }
+
+    @Benchmark
+    public Object separateChecks() {
+        Element e = nextElement();
+        if (isInternal(e)) {
+            return VersionedElementUtils.HistoricClass.INTERNAL;
+        }
+
+        ensureHistoricType(e);
+        if (getVersionRange(e).contains(version)) {
+            return VersionedElementUtils.HistoricClass.IN_RANGE;
+        } else {
+            return VersionedElementUtils.HistoricClass.OUT_OF_RANGE;
+        }
+    }
+
+    // The checks as they were before the classifier, inlined since the
+    // utils now share its allocation free reads.
+
+    private static boolean isInternal(Element e) {
+        Boolean isInternalElement =
+                (!Sets.intersection(e.getPropertyKeys(), VEProps.internalPreservedElementKeys).isEmpty());
+        Boolean isInternalEdge = false;
+        if (e instanceof Edge) {
+            isInternalEdge = VEProps.internalPreservedEdgeLabels.contains(((Edge) e).getLabel());
+        }
+
+        return isInternalElement || isInternalEdge;
+    }
+
+    private static void ensureHistoricType(Element e) {
+        if (getElementType(e) != VEProps.GRAPH_TYPE.HISTORIC) {
+            throw new IllegalArgumentException("The specified ID is not of a historic vertex.");
+        }
+    }
+
+    private static VEProps.GRAPH_TYPE getElementType(Element e) {
+        Boolean historic = e.getProperty(VEProps.HISTORIC_ELEMENT_PROP_KEY);
+        Preconditions.checkNotNull(historic, "Element has no [" + VEProps.HISTORIC_ELEMENT_PROP_KEY + "] key.)");
+
+        if ((Boolean) e.getProperty(VEProps.HISTORIC_ELEMENT_PROP_KEY)) {
+            return VEProps.GRAPH_TYPE.HISTORIC;
+        } else {
+            return VEProps.GRAPH_TYPE.ACTIVE;
+        }
+    }
+
+    private static Range<Long> getVersionRange(Element e) {
+        ensureHistoricType(e);
+
+        long[] packed = e.getProperty(VEProps.VALID_RANGE_PROP_KEY);
+        if (packed != null) {
+            return Range.range(Long.valueOf(packed[0]), Long.valueOf(packed[1]));
+        }
+
+        return Range.range((Long) e.getProperty(VEProps.VALID_MIN_VERSION_PROP_KEY),
+                (Long) e.getProperty(VEProps.VALID_MAX_VERSION_PROP_KEY));
+    }
+
+    private Element nextElement() {
+        next = (next + 1) % elements.length;
+        return elements[next];
+    }
+}
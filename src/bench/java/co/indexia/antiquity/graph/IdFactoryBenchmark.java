@@ -0,0 +1,83 @@
+/**
+ * Copyright (c) 2012-2014 "Indexia Technologies, ltd."
+ * 
+ * This file is part of Antiquity.
+ * 
+ * Antiquity is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.indexia.antiquity.graph;
+
+import java.util.concurrent.TimeUnit;
+
+import com.tinkerpop.blueprints.util.wrappers.id.IdGraph;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of the id factories, a single factory is shared by
+ * 1, 8 and 64 threads to expose the contention on its sequence.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IdFactoryBenchmark {
+    @Param({ "uuid", "ulid", "snowflake" })
+    public String factory;
+
+    private IdGraph.IdFactory idFactory;
+
+    @Setup
+    public void setUpFactory() {
+        if ("uuid".equals(factory)) {
+            idFactory = new DefaultIdFactory();
+        } else if ("ulid".equals(factory)) {
+            idFactory = new UlidIdFactory();
+        } else if ("snowflake".equals(factory)) {
+            idFactory = new SnowflakeIdFactory(1);
+        } else {
+            throw new IllegalArgumentException("Unknown factory: " + factory);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Object createId1Thread() {
+        return idFactory.createId();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Object createId8Threads() {
+        return idFactory.createId();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public Object createId64Threads() {
+        return idFactory.createId();
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright (c) 2012-2014 "Indexia Technologies, ltd."
+ * 
+ * This file is part of Antiquity.
+ * 
+ * Antiquity is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.indexia.antiquity.graph;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
+import co.indexia.antiquity.graph.identifierBehavior.LongGraphIdentifierBehavior;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the lookup of a vertex revision by version over revision chains of
+ * different depths, the skip list lookup is compared with a linear walk over
+ * the {@link VEProps#PREV_VERSION_LABEL} edges.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RevisionChainBenchmark {
+    @Param({ "10", "1000", "100000" })
+    public int depth;
+
+    private ActiveVersionedGraph<TinkerGraph, Long> graph;
+    private Object id;
+    private long[] versions;
+    private int next;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUpChain() {
+        graph =
+                new ActiveVersionedGraph.ActiveVersionedNonTransactionalGraphBuilder<TinkerGraph, Long>(
+                        new TinkerGraph(), new LongGraphIdentifierBehavior()).init(true).build();
+
+        Vertex v = graph.addVertex(null);
+        id = v.getId();
+        long firstVersion = graph.getLatestGraphVersion();
+        for (int i = 1; i < depth; i++) {
+            v.setProperty("key", i);
+        }
+
+        Random random = new Random(42);
+        versions = new long[1024];
+        for (int i = 0; i < versions.length; i++) {
+            versions[i] = firstVersion + random.nextInt(depth);
+        }
+    }
+
+    @Benchmark
+    public Object skipListLookup() {
+        return graph.getHistoricGraph().getVertexForVersion(id, nextVersion());
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public Object linearLookup() {
+        long version = nextVersion();
+        Vertex revision =
+                graph.getHistoricGraph().getLatestHistoricRevision((ActiveVersionedVertex<Long>) graph.getVertex(id))
+                        .getRaw();
+        while (graph.utils.getStartVersion(revision) > version) {
+            revision = graph.utils.getPreviousRevision(revision);
+        }
+
+        return revision;
+    }
+
+    private long nextVersion() {
+        return versions[next++ & (versions.length - 1)];
+    }
+}
@@ -31,9 +31,10 @@ import com.tinkerpop.blueprints.util.wrappers.event.EventEdge;
  */
 public class ActiveVersionedEdge<V extends Comparable<V>> extends ActiveVersionedElement<V, Edge> implements Edge {
     /**
-     * The raw edge, wrapped with events support.
+     * The raw edge, wrapped with events support, lazily created as it is
+     * required only for modifications.
      */
-    private final EventEdge edge;
+    private EventEdge edge;
 
     /**
      * Creates a new instance.
@@ -42,51 +43,64 @@ public class ActiveVersionedEdge<V extends Comparable<V>> extends ActiveVersione
      * @param graph the graph instance this element is associated with.
      */
     protected ActiveVersionedEdge(Edge rawEdge, ActiveVersionedGraph<?, V> graph) {
-        super(rawEdge instanceof EventEdge ? ((EventEdge) rawEdge).getBaseEdge() : rawEdge, graph);
+        this(rawEdge, graph, true);
+    }
+
+    /**
+     * Creates a new instance, optionally without validating the type of the
+     * raw edge.
+     * 
+     * @see ActiveVersionedElement
+     * @param rawEdge the base edge to be wrapped with events support.
+     * @param graph the graph instance this element is associated with.
+     * @param validate if true the raw edge is validated to be active.
+     */
+    ActiveVersionedEdge(Edge rawEdge, ActiveVersionedGraph<?, V> graph, boolean validate) {
+        super(rawEdge instanceof EventEdge ? ((EventEdge) rawEdge).getBaseEdge() : rawEdge, graph, validate);
 
         if (rawEdge instanceof EventEdge) {
             // this occurs
             this.edge = (EventEdge) rawEdge;
-        } else {
-            this.edge = new EventEdge(rawEdge, graph.getEventableGraph());
         }
     }
 
     @Override
     public Vertex getVertex(final Direction direction) throws IllegalArgumentException {
-        return new ActiveVersionedVertex<V>(this.edge.getVertex(direction), getGraph());
+        // vertices of an active edge are active.
+        return new ActiveVersionedVertex<V>(getRaw().getVertex(direction), getGraph(), false);
     }
 
     @Override
     public String getLabel() {
-        return edge.getLabel();
+        return getRaw().getLabel();
     }
 
     @Override
     public <T> T getProperty(String key) {
         // Currently edge's properties versioning is unsupported.
-        return edge.getProperty(key);
+        return getRaw().getProperty(key);
     }
 
     @Override
     public Set<String> getPropertyKeys() {
         // Currently edge's properties versioning is unsupported.
-        return edge.getPropertyKeys();
+        return getRaw().getPropertyKeys();
     }
 
     @Override
     public void setProperty(String key, Object value) {
-        edge.setProperty(key, value);
+        getEventableEdge().setProperty(key, value);
     }
 
     @Override
     public <T> T removeProperty(String key) {
-        return edge.removeProperty(key);
+        getGraph().joinTransaction();
+        return getEventableEdge().removeProperty(key);
     }
 
     @Override
     public void remove() {
-        edge.remove();
+        getEventableEdge().remove();
     }
 
     /**
@@ -95,6 +109,10 @@ public class ActiveVersionedEdge<V extends Comparable<V>> extends ActiveVersione
      * @return The underline eventable edge.
      */
     public EventEdge getEventableEdge() {
+        if (edge == null) {
+            edge = new EventEdge(getRaw(), getGraph().getEventableGraph());
+        }
+
         return edge;
     }
 }
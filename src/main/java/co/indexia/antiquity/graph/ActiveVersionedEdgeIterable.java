@@ -38,6 +38,11 @@ public class ActiveVersionedEdgeIterable<V extends Comparable<V>> implements Clo
      */
     private final ActiveVersionedGraph<?, V> graph;
 
+    /**
+     * Whether the raw edges should be validated to be active.
+     */
+    private final boolean validate;
+
     /**
      * Creates an instance.
      * 
@@ -46,11 +51,26 @@ public class ActiveVersionedEdgeIterable<V extends Comparable<V>> implements Clo
      * @param graph the graph instance {@link this} associated with
      */
     public ActiveVersionedEdgeIterable(Iterable<Edge> rawIterable, ActiveVersionedGraph<?, V> graph) {
+        this(rawIterable, graph, true);
+    }
+
+    /**
+     * Creates an instance, optionally without validating the type of each
+     * raw edge.
+     * 
+     * @param rawIterable the raw iterable retrieved from the underline
+     *        blueprints graph.
+     * @param graph the graph instance {@link this} associated with
+     * @param validate if false the raw edges are known to be active (e.g
+     *        traversed from an active element), hence they are not validated.
+     */
+    ActiveVersionedEdgeIterable(Iterable<Edge> rawIterable, ActiveVersionedGraph<?, V> graph, boolean validate) {
         Preconditions.checkNotNull(rawIterable, "Raw iterable must be set.");
         Preconditions.checkNotNull(graph, "Graph must be set.");
 
         this.rawIterable = rawIterable;
         this.graph = graph;
+        this.validate = validate;
     }
 
     @Override
@@ -71,14 +91,16 @@ public class ActiveVersionedEdgeIterable<V extends Comparable<V>> implements Clo
 
             public Edge next() {
                 Edge edge = this.itty.next();
-                graph.utils.ensureActiveType(edge);
+                if (validate) {
+                    graph.utils.ensureActiveType(edge);
+                }
 
                 if (edge instanceof ActiveVersionedEdge) {
                     // TODO: currently for safety, this condition may occur? if
                     // so then why?
                     return edge;
                 } else {
-                    return new ActiveVersionedEdge<V>(edge, graph);
+                    return new ActiveVersionedEdge<V>(edge, graph, false);
                 }
             }
 
@@ -52,14 +52,34 @@ public abstract class ActiveVersionedElement<V extends Comparable<V>, T extends
      * @param graph the graph instance this element is associated with.
      */
     public ActiveVersionedElement(T rawElement, ActiveVersionedGraph<?, V> graph) {
+        this(rawElement, graph, true);
+    }
+
+    /**
+     * Creates an active element instance, optionally without validating the
+     * type of the raw element.
+     * 
+     * <p>
+     * Validation reads the properties of the raw element, it should be
+     * skipped only if the raw element is already known to be active, e.g it
+     * was validated once by the caller or traversed from an active element.
+     * </p>
+     * 
+     * @param rawElement raw element as retrieved from the base blueprints
+     *        graph.
+     * @param graph the graph instance this element is associated with.
+     * @param validate if true the raw element is validated to be active.
+     */
+    ActiveVersionedElement(T rawElement, ActiveVersionedGraph<?, V> graph, boolean validate) {
         Preconditions.checkNotNull(rawElement, "Raw element must be set.");
         Preconditions.checkNotNull(graph, "Graph must be set.");
         Preconditions.checkArgument((!(rawElement instanceof ActiveVersionedElement)),
                 "rawElement cannot be instance of ActiveVersionElement");
 
-        Preconditions.checkArgument(graph.utils.getElementType(rawElement) != VEProps.GRAPH_TYPE.HISTORIC,
-                "Raw element cannot be historic");
-        Preconditions.checkArgument((!(rawElement instanceof ActiveVersionedElement)));
+        if (validate) {
+            Preconditions.checkArgument(graph.utils.getElementType(rawElement) != VEProps.GRAPH_TYPE.HISTORIC,
+                    "Raw element cannot be historic");
+        }
 
         this.rawElement = rawElement;
         this.graph = graph;
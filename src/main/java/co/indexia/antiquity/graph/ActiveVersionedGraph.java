@@ -19,6 +19,7 @@
 package co.indexia.antiquity.graph;
 
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 
@@ -93,6 +94,21 @@ public abstract class ActiveVersionedGraph<T extends KeyIndexableGraph, V extend
      */
     private HistoricVersionedGraph<T, V> hGraph;
 
+    /**
+     * Manages the key indices of the reserved keys.
+     */
+    private final IndexManager indexManager;
+
+    /**
+     * The cache of the base graph ids of natural ids, null if disabled.
+     */
+    private final NaturalIdCache naturalIdCache;
+
+    /**
+     * The filter of the existing natural ids, null if disabled.
+     */
+    private final NaturalIdFilter naturalIdFilter;
+
     /**
      * Create an instance of this class.
      * 
@@ -124,12 +140,22 @@ public abstract class ActiveVersionedGraph<T extends KeyIndexableGraph, V extend
         this.eventGraph = new EventGraph<T>(baseGraph, queue);
         this.eventGraph.addListener(this);
         this.hGraph = new HistoricVersionedGraph<T, V>(baseGraph, identifierBehavior, conf);
+        this.indexManager = new IndexManager(baseGraph);
+        if (this.conf.getNaturalIdCacheSize() > 0) {
+            this.naturalIdCache = new NaturalIdCache(this.conf.getNaturalIdCacheSize(), queue);
+        } else {
+            this.naturalIdCache = null;
+        }
+        if (this.conf.getNaturalIdFilterExpectedInsertions() > 0) {
+            this.naturalIdFilter = new NaturalIdFilter(this.conf.getNaturalIdFilterExpectedInsertions());
+        } else {
+            this.naturalIdFilter = null;
+        }
 
-        if (vertexIdFactory == null) this.vertexIdFactory = new DefaultIdFactory();
-        if (edgeIdFactory == null) this.edgeIdFactory = new DefaultIdFactory();
+        this.vertexIdFactory = vertexIdFactory == null ? new DefaultIdFactory() : vertexIdFactory;
+        this.edgeIdFactory = edgeIdFactory == null ? new DefaultIdFactory() : edgeIdFactory;
     }
 
-
     // Graph general methods
     // --------------------------------------------------------------
     @Override
@@ -152,6 +178,9 @@ public abstract class ActiveVersionedGraph<T extends KeyIndexableGraph, V extend
      * once for the whole life of the graph database.
      */
     public void init() {
+        // Missing indices are created for existing graphs as well
+        indexManager.createIndices();
+
         Vertex vertex = null;
         try {
             vertex = getRootVertex();
@@ -163,20 +192,12 @@ public abstract class ActiveVersionedGraph<T extends KeyIndexableGraph, V extend
             return;
         }
 
-        // Create the natural ID key indices
-        KeyIndexableGraph keyIndexedGraph = getBaseGraph();
-        if (!keyIndexedGraph.getIndexedKeys(Vertex.class).contains(VEProps.NATURAL_VERTEX_ID_PROP_KEY)) {
-            keyIndexedGraph.createKeyIndex(VEProps.NATURAL_VERTEX_ID_PROP_KEY, Vertex.class);
-        }
-
-        if (!keyIndexedGraph.getIndexedKeys(Edge.class).contains(VEProps.NATURAL_EDGE_ID_PROP_KEY)) {
-            keyIndexedGraph.createKeyIndex(VEProps.NATURAL_EDGE_ID_PROP_KEY, Edge.class);
-        }
-
-        //TODO: ROOT vertices should have a static unique known UUID for fast access
         Vertex historicRoot = utils.getNonEventableVertex(addActiveVertexInUnderline(null));
         historicRoot.setProperty(VEProps.ROOT_GRAPH_VERTEX_ID, VEProps.HISTORIC_ROOT_GRAPH_VERTEX_VALUE);
         historicRoot.setProperty(VEProps.HISTORIC_ELEMENT_PROP_KEY, true);
+        if (conf.getTemporalIntervalIndexEnabled()) {
+            historicRoot.setProperty(VEProps.INTERVAL_INDEXED_PROP_KEY, true);
+        }
 
         Vertex activeRoot = utils.getNonEventableVertex(addActiveVertexInUnderline(null));
         activeRoot.setProperty(VEProps.ROOT_GRAPH_VERTEX_ID, VEProps.ACTIVE_ROOT_GRAPH_VERTEX_VALUE);
@@ -187,6 +208,118 @@ public abstract class ActiveVersionedGraph<T extends KeyIndexableGraph, V extend
         }
     }
 
+    /**
+     * Mark the graph as holding packed version ranges if they are enabled, the
+     * mark is kept when the graph is reopened without them.
+     * 
+     * @see HistoricVersionedGraph#isVersionRangePushDownSupported()
+     */
+    protected void markPackedVersionRanges() {
+        if (!conf.getCompactVersionRangeEnabled()) {
+            return;
+        }
+
+        Vertex root = getRootVertex(VEProps.GRAPH_TYPE.HISTORIC);
+        if (!Boolean.TRUE.equals(root.getProperty(VEProps.PACKED_VERSION_RANGES_PROP_KEY))) {
+            root.setProperty(VEProps.PACKED_VERSION_RANGES_PROP_KEY, true);
+
+            if (getUneventableGraph() instanceof TransactionalGraph) {
+                ((TransactionalGraph) getBaseGraph()).commit();
+            }
+        }
+    }
+
+    /**
+     * Unmark the temporal interval index of the graph if it is disabled, the
+     * revisions written from then on are not registered at the index. A graph
+     * is marked only if it is initialized with the index enabled.
+     * 
+     * @see HistoricVersionedGraph#isIntervalIndexed(Comparable)
+     */
+    protected void unmarkIntervalIndex() {
+        if (conf.getTemporalIntervalIndexEnabled()) {
+            return;
+        }
+
+        Vertex root = getRootVertex(VEProps.GRAPH_TYPE.HISTORIC);
+        if (root.getProperty(VEProps.INTERVAL_INDEXED_PROP_KEY) != null) {
+            root.removeProperty(VEProps.INTERVAL_INDEXED_PROP_KEY);
+
+            if (getUneventableGraph() instanceof TransactionalGraph) {
+                ((TransactionalGraph) getBaseGraph()).commit();
+            }
+        }
+    }
+
+    /**
+     * Load the natural ids of the existing active elements into the natural
+     * ids filter, does nothing if the filter is disabled.
+     * 
+     * <p>
+     * The values of a key index can't be enumerated via blueprints, hence all
+     * the elements of the base graph are scanned once. Historic revisions are
+     * skipped as they hold the natural id of their element as well.
+     * </p>
+     * 
+     * @see Configuration#naturalIdFilterExpectedInsertions
+     */
+    protected void loadNaturalIdFilter() {
+        if (naturalIdFilter == null || !isNaturalIds()) {
+            return;
+        }
+
+        T base = getUneventableGraph();
+        int loaded = 0;
+        for (Vertex v : base.getVertices()) {
+            loaded += loadNaturalId(Vertex.class, v, VEProps.NATURAL_VERTEX_ID_PROP_KEY);
+        }
+        for (Edge e : base.getEdges()) {
+            loaded += loadNaturalId(Edge.class, e, VEProps.NATURAL_EDGE_ID_PROP_KEY);
+        }
+
+        if (base instanceof TransactionalGraph) {
+            ((TransactionalGraph) base).commit();
+        }
+
+        log.info("Loaded {} natural ids into the natural ids filter.", loaded);
+    }
+
+    private int loadNaturalId(Class<? extends Element> elementClass, Element element, String key) {
+        Object naturalId = element.getProperty(key);
+        if (naturalId == null || !Boolean.FALSE.equals(element.getProperty(VEProps.HISTORIC_ELEMENT_PROP_KEY))) {
+            return 0;
+        }
+
+        naturalIdFilter.put(elementClass, naturalId);
+        return 1;
+    }
+
+    /**
+     * Populate the latest revisions map of the historic graph, does nothing if
+     * the map is disabled.
+     * 
+     * @see HistoricVersionedGraph#rebuildLatestRevisions()
+     */
+    protected void loadLatestRevisions() {
+        if (!conf.getLatestRevisionMapEnabled()) {
+            return;
+        }
+
+        getHistoricGraph().rebuildLatestRevisions();
+        if (getUneventableGraph() instanceof TransactionalGraph) {
+            ((TransactionalGraph) getBaseGraph()).commit();
+        }
+    }
+
+    /**
+     * Release the off-heap memory of the historic graph and shut down the base
+     * graph.
+     */
+    @Override
+    public void shutdown() {
+        getHistoricGraph().releaseLatestRevisions();
+        super.shutdown();
+    }
 
     /**
      * Return the unwrapped(Eventable)->unwrapped(The graph passed to {@link
@@ -222,6 +355,15 @@ public abstract class ActiveVersionedGraph<T extends KeyIndexableGraph, V extend
         return this.hGraph;
     }
 
+    /**
+     * Return the manager of the reserved keys indices.
+     * 
+     * @return the index manager of this graph.
+     */
+    public IndexManager getIndexManager() {
+        return this.indexManager;
+    }
+
     /**
      * Attach vertex to the corresponding {@link VEProps.GRAPH_TYPE} root vertex
      * 
@@ -237,7 +379,6 @@ public abstract class ActiveVersionedGraph<T extends KeyIndexableGraph, V extend
         return getRootVertex(VEProps.GRAPH_TYPE.ACTIVE);
     }
 
-
     // Graph operation overrides
     // --------------------------------------------------------------
     @Override
@@ -254,7 +395,13 @@ public abstract class ActiveVersionedGraph<T extends KeyIndexableGraph, V extend
 
         Vertex vertex;
         if (isNaturalIds()) {
-            vertex = getSingleVertex(VEProps.NATURAL_VERTEX_ID_PROP_KEY, id);
+            vertex = getCachedElement(id, Vertex.class);
+            if (vertex == null) {
+                vertex = getSingleVertex(VEProps.NATURAL_VERTEX_ID_PROP_KEY, id);
+                if (vertex != null && naturalIdCache != null) {
+                    naturalIdCache.put(Vertex.class, id, utils.getNonEventableElement(vertex).getId());
+                }
+            }
         } else {
             vertex = getEventableGraph().getVertex(id);
         }
@@ -264,7 +411,7 @@ public abstract class ActiveVersionedGraph<T extends KeyIndexableGraph, V extend
                 return vertex;
             } else {
                 utils.ensureActiveType(vertex);
-                return new ActiveVersionedVertex<V>(vertex, this);
+                return new ActiveVersionedVertex<V>(vertex, this, false);
             }
         } else {
             log.debug("Vertex with [{}] was not found.", id);
@@ -306,7 +453,13 @@ public abstract class ActiveVersionedGraph<T extends KeyIndexableGraph, V extend
 
         Edge edge;
         if (isNaturalIds()) {
-            edge = ElementUtils.getSingleElement(this, VEProps.NATURAL_EDGE_ID_PROP_KEY, id, Edge.class);
+            edge = getCachedElement(id, Edge.class);
+            if (edge == null) {
+                edge = ElementUtils.getSingleElement(this, VEProps.NATURAL_EDGE_ID_PROP_KEY, id, Edge.class);
+                if (edge != null && naturalIdCache != null) {
+                    naturalIdCache.put(Edge.class, id, utils.getNonEventableElement(edge).getId());
+                }
+            }
         } else {
             edge = getEventableGraph().getEdge(id);
         }
@@ -316,7 +469,7 @@ public abstract class ActiveVersionedGraph<T extends KeyIndexableGraph, V extend
                 return edge;
             } else {
                 utils.ensureActiveType(edge);
-                return new ActiveVersionedEdge<V>(edge, this);
+                return new ActiveVersionedEdge<V>(edge, this, false);
             }
         } else {
             log.debug("Edge with [{}] was not found.", id);
@@ -340,15 +493,79 @@ public abstract class ActiveVersionedGraph<T extends KeyIndexableGraph, V extend
         return query().has(key, value).edges();
     }
 
+    /**
+     * Get an active element by its natural id via the natural ids cache.
+     * 
+     * @param naturalId The natural id of the element.
+     * @param elementClass The element type (Vertex or Edge).
+     * @return the eventable element or null if its id is not cached.
+     */
+    private <E extends Element> E getCachedElement(Object naturalId, Class<E> elementClass) {
+        if (naturalIdCache == null) {
+            return null;
+        }
+
+        Object baseId = naturalIdCache.get(elementClass, naturalId);
+        if (baseId == null) {
+            return null;
+        }
+
+        boolean isVertex = Vertex.class.isAssignableFrom(elementClass);
+        Element element =
+                isVertex ? getEventableGraph().getVertex(baseId) : getEventableGraph().getEdge(baseId);
+
+        // the cached id may be stale, verify it still holds the natural id
+        String key = isVertex ? VEProps.NATURAL_VERTEX_ID_PROP_KEY : VEProps.NATURAL_EDGE_ID_PROP_KEY;
+        if (element != null && naturalId.equals(element.getProperty(key))
+                && Boolean.FALSE.equals(element.getProperty(VEProps.HISTORIC_ELEMENT_PROP_KEY))) {
+            return elementClass.cast(element);
+        }
+
+        naturalIdCache.invalidate(elementClass, naturalId);
+        return null;
+    }
+
+    /**
+     * Register the natural id of a created active element in the natural ids
+     * cache and filter.
+     * 
+     * @param elementClass The element type (Vertex or Edge).
+     * @param naturalId The natural id of the element.
+     * @param baseId The base graph id of the element.
+     */
+    <E extends Element> void registerNaturalId(Class<E> elementClass, Object naturalId, Object baseId) {
+        if (naturalIdFilter != null) {
+            naturalIdFilter.put(elementClass, naturalId);
+        }
+        if (naturalIdCache != null) {
+            naturalIdCache.putCreated(elementClass, naturalId, baseId);
+        }
+    }
+
+    /**
+     * Get the cache of the base graph ids of natural ids.
+     * 
+     * @return the natural ids cache or null if disabled.
+     */
+    NaturalIdCache getNaturalIdCache() {
+        return naturalIdCache;
+    }
+
     @Override
     public void removeVertex(final Vertex vertex) {
         utils.ensureActiveType(vertex);
+        if (naturalIdCache != null && isNaturalIds()) {
+            naturalIdCache.invalidate(Vertex.class, vertex.getId());
+        }
         getEventableGraph().removeVertex(((ActiveVersionedVertex) vertex).getEventableVertex());
     }
 
     @Override
     public void removeEdge(final Edge edge) {
         utils.ensureActiveType(edge);
+        if (naturalIdCache != null && isNaturalIds()) {
+            naturalIdCache.invalidate(Edge.class, edge.getId());
+        }
         getEventableGraph().removeEdge(((ActiveVersionedEdge) edge).getEventableEdge());
     }
 
@@ -358,12 +575,13 @@ public abstract class ActiveVersionedGraph<T extends KeyIndexableGraph, V extend
         return new WrappedGraphQuery(getBaseGraph().query()) {
             @Override
             public Iterable<Edge> edges() {
-                return new ActiveVersionedEdgeIterable<V>(getQuery().edges(), ag);
+                joinTransaction();
+                return new ActiveVersionedEdgeIterable<V>(getQuery().edges(), ag, false);
             }
 
             @Override
             public Iterable<Vertex> vertices() {
-                return new ActiveVersionedVertexIterable<V>(getQuery().vertices(), ag);
+                return new ActiveVersionedVertexIterable<V>(getQuery().vertices(), ag, false);
             }
 
             public GraphQuery getQuery() {
@@ -374,11 +592,8 @@ public abstract class ActiveVersionedGraph<T extends KeyIndexableGraph, V extend
 
     @Override
     public <T extends Element> void dropKeyIndex(final String key, final Class<T> elementClass) {
-        if (isNaturalIds()) {
-            if (key.equals(VEProps.NATURAL_VERTEX_ID_PROP_KEY) || key.equals(VEProps.NATURAL_EDGE_ID_PROP_KEY)) {
-                throw new IllegalArgumentException(String.format("Key [%s] is reserved and cannot be dropped.",
-                        VEProps.NATURAL_VERTEX_ID_PROP_KEY));
-            }
+        if (VEProps.antiquityElementsKeys.contains(key)) {
+            throw new IllegalArgumentException(String.format("Key [%s] is reserved and cannot be dropped.", key));
         }
 
         getEventableGraph().getBaseGraph().dropKeyIndex(key, elementClass);
@@ -387,9 +602,8 @@ public abstract class ActiveVersionedGraph<T extends KeyIndexableGraph, V extend
     @Override
     public <T extends Element> void createKeyIndex(final String key, final Class<T> elementClass,
             final Parameter... indexParameters) {
-        if (key.equals(VEProps.NATURAL_VERTEX_ID_PROP_KEY) || key.equals(VEProps.NATURAL_EDGE_ID_PROP_KEY)) {
-            throw new IllegalArgumentException(String.format("Index key [%s] is reserved and cannot be created",
-                    VEProps.NATURAL_VERTEX_ID_PROP_KEY));
+        if (VEProps.antiquityElementsKeys.contains(key)) {
+            throw new IllegalArgumentException(String.format("Index key [%s] is reserved and cannot be created", key));
         }
 
         getEventableGraph().getBaseGraph().createKeyIndex(key, elementClass, indexParameters);
@@ -399,8 +613,7 @@ public abstract class ActiveVersionedGraph<T extends KeyIndexableGraph, V extend
     public <T extends Element> Set<String> getIndexedKeys(final Class<T> elementClass) {
         final Set<String> keys = new HashSet<String>();
         keys.addAll(getEventableGraph().getBaseGraph().getIndexedKeys(elementClass));
-        keys.remove(VEProps.NATURAL_VERTEX_ID_PROP_KEY);
-        keys.remove(VEProps.NATURAL_EDGE_ID_PROP_KEY);
+        keys.removeAll(VEProps.antiquityElementsKeys);
         return keys;
     }
 
@@ -427,20 +640,21 @@ public abstract class ActiveVersionedGraph<T extends KeyIndexableGraph, V extend
     }
 
     /**
-     * Allocate (persist) the specified next version in the graph in the
-     * configuration vertex.
+     * Allocate (persist) the specified next version in the graph via the
+     * associated {@link GraphIdentifierBehavior}.
      * 
      * @param nextVersion The next version to allocate.
      */
     protected void allocateNextGraphVersion(V nextVersion) {
         // TODO: Unlock the configuration vertex
-        getRootVertex(VEProps.GRAPH_TYPE.HISTORIC).setProperty(VEProps.LATEST_GRAPH_VERSION_PROP_KEY, nextVersion);
+        identifierBehavior.allocateGraphVersion(nextVersion);
     }
 
     /**
      * Ensure that the new specified ID is valid.
      * 
-     * Validation currently tests whether the specified ID already exist.
+     * Validation currently tests whether the specified ID already exist, IDs
+     * the natural ids filter does not contain are not looked up.
      * 
      * @param newId The new ID to verify
      * @param elementType The element type (Edge or Vertex)
@@ -448,7 +662,16 @@ public abstract class ActiveVersionedGraph<T extends KeyIndexableGraph, V extend
     public <T extends Element> void validateNewId(Object newId, Class<T> elementType) {
         if (isNaturalIds()) {
             boolean isVertex = (elementType.isAssignableFrom(Vertex.class));
-            if (newId != null && (isVertex ? getVertex(newId) : getEdge(newId)) != null) {
+            if (newId == null) {
+                return;
+            }
+
+            // a filter miss is final, the filter holds every existing id
+            if (naturalIdFilter != null && !naturalIdFilter.mightContain(elementType, newId)) {
+                return;
+            }
+
+            if ((isVertex ? getVertex(newId) : getEdge(newId)) != null) {
                 throw new IllegalArgumentException(String.format("%s with the given ID [%s] already exists.",
                         elementType.getSimpleName(), newId));
             }
@@ -457,6 +680,100 @@ public abstract class ActiveVersionedGraph<T extends KeyIndexableGraph, V extend
 
     // Methods used by events responses
     // --------------------------------------------------------------
+    /**
+     * Reduce the specified {@link TransactionData} to the net changes of the
+     * transaction, must be invoked before the transaction is committed.
+     * 
+     * <p>
+     * Edges of removed vertices are removed implicitly without an event, added
+     * or modified edges that no longer exist in the base graph are dropped.
+     * </p>
+     * 
+     * @see TransactionData#coalesce()
+     * @param data The transaction data to coalesce.
+     */
+    protected void coalesceTransactionData(TransactionData data) {
+        // implicitly removed edges can't be touched, drop them first
+        if (!data.getRemovedVertices().isEmpty()) {
+            Iterator<Edge> added = data.getAddedEdges().iterator();
+            while (added.hasNext()) {
+                if (isImplicitlyRemoved(added.next(), data)) {
+                    added.remove();
+                }
+            }
+
+            Iterator<Edge> modified = data.getModifiedPropsPerEdge().keySet().iterator();
+            while (modified.hasNext()) {
+                if (isImplicitlyRemoved(modified.next(), data)) {
+                    modified.remove();
+                }
+            }
+        }
+
+        data.coalesce();
+    }
+
+    /**
+     * Determine whether the specified edge was removed along with one of its
+     * vertices.
+     * 
+     * @param edge The edge to check
+     * @param data The transaction data the edge belongs to
+     * @return true if the edge was not removed explicitly and no longer exists
+     *         in the base graph.
+     */
+    private boolean isImplicitlyRemoved(Edge edge, TransactionData data) {
+        return !data.getRemovedEdges().containsKey(edge)
+                && getBaseGraph().getEdge(utils.getNonEventableElement(edge).getId()) == null;
+    }
+
+    /**
+     * Version the changes of the specified {@link TransactionData} as a single
+     * version.
+     * 
+     * @see TransactionData
+     * @param data The transaction data to version.
+     * @param latestVersion The version preceding the transaction's version.
+     * @param nextVersion The next version of the transaction to be committed.
+     * @throws IllegalStateException if the next version does not follow the
+     *         latest version, the history of revisions would overlap.
+     */
+    protected void versionTransactionData(TransactionData data, V latestVersion, V nextVersion) {
+        Preconditions.checkState(latestVersion.compareTo(nextVersion) < 0,
+                "Version [%s] was committed out of order, the latest version is [%s].", nextVersion, latestVersion);
+
+        versionAddedVertices(nextVersion, data.getAddedVertices());
+        versionRemovedVertices(nextVersion, latestVersion, data.getRemovedVertices());
+        versionAddedEdges(nextVersion, data.getAddedEdges());
+        versionRemovedEdges(nextVersion, latestVersion, data.getRemovedEdges());
+
+        for (Map.Entry<Vertex, Map<String, Object>> oldPropsPerVertex : data.getModifiedPropsPerVertex().entrySet()) {
+
+            // if vertex is new then skip version the modification as it'll
+            // create an extra unneeded historical version
+            if (!data.getAddedVertices().contains(oldPropsPerVertex.getKey())) {
+                versionModifiedVertex(latestVersion, nextVersion, oldPropsPerVertex.getKey(),
+                        oldPropsPerVertex.getValue());
+            } else {
+                log.trace(String.format("Modifications found for vertex [%s] but it's new, skipping modifications.",
+                        oldPropsPerVertex.getKey()));
+            }
+        }
+
+        for (Map.Entry<Edge, Map<String, Object>> oldPropsPerEdge : data.getModifiedPropsPerEdge().entrySet()) {
+
+            // if edge is new then skip version the modification as it'll
+            // create an extra unneeded historical version
+            if (!data.getAddedEdges().contains(oldPropsPerEdge.getKey())) {
+                versionModifiedEdge(latestVersion, nextVersion, oldPropsPerEdge.getKey(),
+                        oldPropsPerEdge.getValue());
+            } else {
+                log.trace(String.format("Modifications found for edge [%s] but it's new, skipping modifications.",
+                        oldPropsPerEdge.getKey()));
+            }
+        }
+    }
+
     /**
      * Version vertices in the graph.
      * 
@@ -469,12 +786,13 @@ public abstract class ActiveVersionedGraph<T extends KeyIndexableGraph, V extend
         for (Vertex v : vertices) {
             utils.ensureActiveType(v);
 
-            ActiveVersionedVertex<V> active = new ActiveVersionedVertex<V>(v, this);
+            ActiveVersionedVertex<V> active = new ActiveVersionedVertex<V>(v, this, false);
 
             // Add corresponding historic vertex
-            HistoricVersionedVertex<V> hv = addHistoricVertex(active, version, getMaxPossibleGraphVersion());
+            HistoricVersionedVertex<V> hv = addHistoricVertex(active.getId(), version, getMaxPossibleGraphVersion());
             utils.syncActiveAndLatestHistoric(active, hv);
             active.getRaw().setProperty(VEProps.REF_TO_LATEST_HISTORIC_ID_KEY, hv.getHardId());
+            getHistoricGraph().registerLatestRevision(active.getId(), hv.getRaw());
 
             if (conf.getPrivateVertexHashEnabled()) {
                 utils.setPrivateHash(active);
@@ -494,25 +812,66 @@ public abstract class ActiveVersionedGraph<T extends KeyIndexableGraph, V extend
      */
     protected Vertex versionModifiedVertex(V latestGraphVersion, V newVersion, Vertex vertex,
             Map<String, Object> oldValues) {
-        ActiveVersionedVertex<V> active = new ActiveVersionedVertex<V>(vertex, this);
+        ActiveVersionedVertex<V> active = new ActiveVersionedVertex<V>(vertex, this, false);
         HistoricVersionedVertex<V> latestHV = getHistoricGraph().getLatestHistoricRevision(active);
 
+        HistoricVersionedVertex<V> newHV =
+                addModifiedRevision(latestGraphVersion, newVersion, active.getId(), latestHV, oldValues);
+        utils.syncActiveAndLatestHistoric(active, latestHV, oldValues.keySet());
+
+        if (conf.getPrivateVertexHashEnabled()) {
+            utils.setPrivateHash(active, oldValues);
+        }
+
+        return newHV;
+    }
+
+    /**
+     * Add a revision of a modified vertex which keeps its properties before
+     * the modification, the latest historic revision of the vertex becomes
+     * valid from the new version.
+     * 
+     * <p>
+     * Note: This method does not sync the properties of the latest historic
+     * revision with the active vertex.
+     * </p>
+     * 
+     * @param latestGraphVersion The latest graph version
+     * @param newVersion The new version to be committed
+     * @param activeId The id of the modified active vertex
+     * @param latestHV The latest historic revision of the vertex
+     * @param oldValues The old properties values of the modified vertex
+     * @return The added revision
+     */
+    HistoricVersionedVertex<V> addModifiedRevision(V latestGraphVersion, V newVersion, Object activeId,
+            HistoricVersionedVertex<V> latestHV, Map<String, Object> oldValues) {
         // Note: order matters here, we need latestHV before we override it.
         HistoricVersionedVertex<V> newHV =
-                addHistoricVertex(active, utils.getStartVersion(latestHV), latestGraphVersion);
+                addHistoricVertex(activeId, utils.getStartVersion(latestHV), latestGraphVersion);
         Set<String> excludedProps = new HashSet<String>();
         excludedProps.add(VEProps.NATURAL_VERTEX_ID_PROP_KEY);
-        ElementUtils.copyProps(latestHV.getRaw(), newHV.getRaw(), excludedProps);
+        excludedProps.add(VEProps.DELTAS_SINCE_KEYFRAME_PROP_KEY);
+
+        Integer deltas = latestHV.getRaw().getProperty(VEProps.DELTAS_SINCE_KEYFRAME_PROP_KEY);
+        if (deltas == null) {
+            deltas = 0;
+        }
+
+        if (deltas < conf.getHistoricKeyframeInterval() - 1) {
+            utils.setDeltaProps(latestHV.getRaw(), newHV.getRaw(), oldValues, excludedProps);
+            latestHV.getRaw().setProperty(VEProps.DELTAS_SINCE_KEYFRAME_PROP_KEY, deltas + 1);
+        } else {
+            ElementUtils.copyProps(latestHV.getRaw(), newHV.getRaw(), excludedProps);
+            if (deltas > 0) {
+                latestHV.getRaw().setProperty(VEProps.DELTAS_SINCE_KEYFRAME_PROP_KEY, 0);
+            }
+        }
 
         // here it's safe to modify latest historic vertex.
         utils.setStartVersion(latestHV, newVersion);
-        utils.syncActiveAndLatestHistoric(active, latestHV);
-
-        addHistoricalVertexInChain(latestGraphVersion, newVersion, active, latestHV, newHV);
+        getHistoricGraph().invalidateLatestRevision(activeId);
 
-        if (conf.getPrivateVertexHashEnabled()) {
-            utils.setPrivateHash(active);
-        }
+        addHistoricalVertexInChain(latestGraphVersion, newVersion, latestHV, newHV);
 
         return newHV;
     }
@@ -538,7 +897,7 @@ public abstract class ActiveVersionedGraph<T extends KeyIndexableGraph, V extend
 
             HistoricVersionedVertex<V> hv =
                     getHistoricGraph().getLatestHistoricRevision(
-                            (String) v.getValue().get(VEProps.REF_TO_LATEST_HISTORIC_ID_KEY));
+                            v.getValue().get(VEProps.REF_TO_LATEST_HISTORIC_ID_KEY));
 
             // Remove ALL vertex's edges, must be invoked on getRaw to avoid
             // filtering.
@@ -549,12 +908,12 @@ public abstract class ActiveVersionedGraph<T extends KeyIndexableGraph, V extend
 
                 utils.ensureHistoricType(e);
                 e.setProperty(VEProps.REMOVED_PROP_KEY, nextVer);
-                e.setProperty(VEProps.VALID_MAX_VERSION_PROP_KEY, maxVer);
+                utils.setVersion(VersionedElementUtils.StartOrEnd.END, e, maxVer);
             }
 
-
             hv.getRaw().setProperty(VEProps.REMOVED_PROP_KEY, nextVer);
-            hv.getRaw().setProperty(VEProps.VALID_MAX_VERSION_PROP_KEY, maxVer);
+            utils.setVersion(VersionedElementUtils.StartOrEnd.END, hv.getRaw(), maxVer);
+            getHistoricGraph().invalidateLatestRevision(hv.getId());
         }
     }
 
@@ -604,11 +963,11 @@ public abstract class ActiveVersionedGraph<T extends KeyIndexableGraph, V extend
 
             HistoricVersionedEdge<V> he =
                     getHistoricGraph()
-                            .getEdgeByHardId((String) v.getValue().get(VEProps.REF_TO_LATEST_HISTORIC_ID_KEY));
-
+                            .getEdgeByHardId(v.getValue().get(VEProps.REF_TO_LATEST_HISTORIC_ID_KEY));
 
             he.getRaw().setProperty(VEProps.REMOVED_PROP_KEY, nextVer);
-            he.getRaw().setProperty(VEProps.VALID_MAX_VERSION_PROP_KEY, maxVer);
+            utils.setVersion(VersionedElementUtils.StartOrEnd.END, he.getRaw(), maxVer);
+            getHistoricGraph().invalidateLatestRevision(he.getId());
         }
     }
 
@@ -623,15 +982,13 @@ public abstract class ActiveVersionedGraph<T extends KeyIndexableGraph, V extend
      * @return The historical created edge
      */
     protected Edge versionModifiedEdge(V latestGraphVersion, V newVersion, Edge edge, Map<String, Object> oldValues) {
-        ActiveVersionedEdge<V> active = new ActiveVersionedEdge<V>(edge, this);
+        ActiveVersionedEdge<V> active = new ActiveVersionedEdge<V>(edge, this, false);
         HistoricVersionedEdge<V> latestHE = getHistoricGraph().getLatestHistoricRevision(active);
-        utils.syncActiveAndLatestHistoric(active, latestHE);
-
+        utils.syncActiveAndLatestHistoric(active, latestHE, oldValues.keySet());
 
         return latestHE;
     }
 
-
     // Versioning helper methods
     // --------------------------------------------------------------
     /**
@@ -644,7 +1001,23 @@ public abstract class ActiveVersionedGraph<T extends KeyIndexableGraph, V extend
      * @return plain created vertex.
      */
     private Vertex addPlainVertexToGraph(Object id) {
-        validateNewId(id, Vertex.class);
+        return addPlainVertexToGraph(id, true);
+    }
+
+    /**
+     * Add a plain vertex to the graph.
+     * 
+     * @see #addPlainVertexToGraph(Object)
+     * @param id The id of the vertex to set, if null, new id will be generated.
+     * @param validateId whether to ensure that the specified id does not
+     *        exist.
+     * @return plain created vertex.
+     */
+    Vertex addPlainVertexToGraph(Object id, boolean validateId) {
+        if (validateId) {
+            validateNewId(id, Vertex.class);
+        }
+
         final Vertex vertex;
         Object idVal = id == null ? vertexIdFactory.createId() : id;
 
@@ -671,8 +1044,11 @@ public abstract class ActiveVersionedGraph<T extends KeyIndexableGraph, V extend
     private ActiveVersionedVertex addActiveVertexInUnderline(Object id) {
         Vertex vertex = addPlainVertexToGraph(id);
         vertex.setProperty(VEProps.HISTORIC_ELEMENT_PROP_KEY, false);
+        if (isNaturalIds()) {
+            registerNaturalId(Vertex.class, vertex.getProperty(VEProps.NATURAL_VERTEX_ID_PROP_KEY), vertex.getId());
+        }
 
-        return new ActiveVersionedVertex<V>(vertex, this);
+        return new ActiveVersionedVertex<V>(vertex, this, false);
     }
 
     /**
@@ -681,19 +1057,21 @@ public abstract class ActiveVersionedGraph<T extends KeyIndexableGraph, V extend
      * Note: This method does not copy the properties from the active vertex to
      * the historic one.
      * 
-     * @param a active vertex to add corresponding historic vertex for
+     * @param activeId id of the active vertex to add corresponding historic
+     *        vertex for
      * @param startVersion the start version the historic vertex
      * @param endVersion the end version the historic vertex
      * @return an added historic vertex.
      */
-    private HistoricVersionedVertex addHistoricVertex(ActiveVersionedVertex a, V startVersion, V endVersion) {
+    HistoricVersionedVertex<V> addHistoricVertex(Object activeId, V startVersion, V endVersion) {
         Vertex vertex = addPlainVertexToGraph(null);
-        vertex.setProperty(VEProps.REF_TO_ACTIVE_ID_KEY, a.getId());
+        vertex.setProperty(VEProps.REF_TO_ACTIVE_ID_KEY, activeId);
         vertex.setProperty(VEProps.HISTORIC_ELEMENT_PROP_KEY, true);
 
         // FIXME: Range is right?
-        HistoricVersionedVertex hv =
-                new HistoricVersionedVertex(vertex, this.getHistoricGraph(), Range.range(startVersion, startVersion));
+        HistoricVersionedVertex<V> hv =
+                new HistoricVersionedVertex<V>(vertex, this.getHistoricGraph(), Range.range(startVersion,
+                        startVersion), false);
         utils.setStartVersion(hv, startVersion);
         utils.setEndVersion(hv, endVersion);
 
@@ -705,23 +1083,22 @@ public abstract class ActiveVersionedGraph<T extends KeyIndexableGraph, V extend
      * 
      * @param latestGraphVersion The latest graph version
      * @param newVersion The new version to be committed
-     * @param activeModifiedVertex The active vertex that was modified.
      * @param latestHistoricVertex Latest historical vertex (the previous
      *        version of the newly created historic vertex)
      * @param newHistoricVertex The new historic vertex to be added in the chain
      */
     private void addHistoricalVertexInChain(V latestGraphVersion, V newVersion,
-            ActiveVersionedVertex<V> activeModifiedVertex, HistoricVersionedVertex<V> latestHistoricVertex,
-            HistoricVersionedVertex newHistoricVertex) {
+            HistoricVersionedVertex<V> latestHistoricVertex, HistoricVersionedVertex newHistoricVertex) {
         newHistoricVertex.getRaw().setProperty(VEProps.REF_TO_LATEST_HISTORIC_ID_KEY, latestHistoricVertex.getHardId());
-        newHistoricVertex.getRaw().setProperty(VEProps.VALID_MAX_VERSION_PROP_KEY, latestGraphVersion);
+        utils.setVersion(VersionedElementUtils.StartOrEnd.END, newHistoricVertex.getRaw(), latestGraphVersion);
 
         Edge prevEdge =
                 ElementUtils.getSingleElement(latestHistoricVertex.getRaw().getEdges(Direction.OUT,
                         VEProps.PREV_VERSION_LABEL));
 
+        Vertex inVertex = null;
         if (prevEdge != null) {
-            Vertex inVertex = prevEdge.getVertex(Direction.IN);
+            inVertex = prevEdge.getVertex(Direction.IN);
             getUneventableGraph().removeEdge(prevEdge);
 
             getBaseGraph().addEdge(edgeIdFactory.createId(), (Vertex) newHistoricVertex.getRaw(), inVertex,
@@ -731,6 +1108,41 @@ public abstract class ActiveVersionedGraph<T extends KeyIndexableGraph, V extend
 
         getBaseGraph().addEdge(edgeIdFactory.createId(), latestHistoricVertex.getRaw(),
                 (Vertex) newHistoricVertex.getRaw(), VEProps.PREV_VERSION_LABEL);
+
+        addSkipRevision((Vertex) newHistoricVertex.getRaw(), inVertex);
+    }
+
+    /**
+     * Set the height of the specified new revision and add its skip edge.
+     * 
+     * <p>
+     * Chains whose revisions were created without heights are not indexed and
+     * are traversed revision by revision.
+     * </p>
+     * 
+     * @see VersionedElementUtils#getSkipHeight(int)
+     * @param revision The new revision.
+     * @param previous The revision preceding the new revision, null if the new
+     *        revision is the oldest.
+     */
+    private void addSkipRevision(Vertex revision, Vertex previous) {
+        int height = 0;
+        if (previous != null) {
+            Integer previousHeight = utils.getRevisionHeight(previous);
+            if (previousHeight == null) {
+                return;
+            }
+
+            height = previousHeight + 1;
+        }
+
+        revision.setProperty(VEProps.REVISION_HEIGHT_PROP_KEY, height);
+
+        int skipHeight = VersionedElementUtils.getSkipHeight(height);
+        if (previous != null && skipHeight < height - 1) {
+            Vertex skip = utils.getRevisionAtHeight(previous, skipHeight);
+            getBaseGraph().addEdge(edgeIdFactory.createId(), revision, skip, VEProps.SKIP_VERSION_LABEL);
+        }
     }
 
     /**
@@ -751,8 +1163,6 @@ public abstract class ActiveVersionedGraph<T extends KeyIndexableGraph, V extend
                 "This method is unsupported as version edges properties was configured to be disabled.");
     }
 
-
-
     /**
      * Add a plain edge to the graph.
      * 
@@ -762,7 +1172,23 @@ public abstract class ActiveVersionedGraph<T extends KeyIndexableGraph, V extend
      * @return plain created edge.
      */
     private Edge addPlainEdgeToGraph(Object id, Vertex out, Vertex in, String label) {
-        validateNewId(id, Edge.class);
+        return addPlainEdgeToGraph(id, out, in, label, true);
+    }
+
+    /**
+     * Add a plain edge to the graph.
+     * 
+     * @see #addPlainEdgeToGraph(Object, Vertex, Vertex, String)
+     * @param id The id of the edge to set, if null, new id will be generated.
+     * @param validateId whether to ensure that the specified id does not
+     *        exist.
+     * @return plain created edge.
+     */
+    Edge addPlainEdgeToGraph(Object id, Vertex out, Vertex in, String label, boolean validateId) {
+        if (validateId) {
+            validateNewId(id, Edge.class);
+        }
+
         final Edge edge;
 
         // TODO: Ensure we get raw vertices here.
@@ -795,8 +1221,11 @@ public abstract class ActiveVersionedGraph<T extends KeyIndexableGraph, V extend
             ActiveVersionedVertex<V> in, String label) {
         Edge edge = addPlainEdgeToGraph(id, out.getRaw(), in.getRaw(), label);
         edge.setProperty(VEProps.HISTORIC_ELEMENT_PROP_KEY, false);
+        if (isNaturalIds()) {
+            registerNaturalId(Edge.class, edge.getProperty(VEProps.NATURAL_EDGE_ID_PROP_KEY), edge.getId());
+        }
 
-        return new ActiveVersionedEdge<V>(edge, this);
+        return new ActiveVersionedEdge<V>(edge, this, false);
     }
 
     /**
@@ -826,13 +1255,31 @@ public abstract class ActiveVersionedGraph<T extends KeyIndexableGraph, V extend
         HistoricVersionedVertex<V> hOut = getHistoricGraph().getLatestHistoricRevision(out);
         HistoricVersionedVertex<V> hIn = getHistoricGraph().getLatestHistoricRevision(in);
 
-        Edge edge = addPlainEdgeToGraph(null, hOut.getRaw(), hIn.getRaw(), a.getLabel());
-        edge.setProperty(VEProps.REF_TO_ACTIVE_ID_KEY, a.getId());
+        return addHistoricEdge(a.getId(), hOut, hIn, a.getLabel(), startVersion, endVersion);
+    }
+
+    /**
+     * Add a historic edge between the specified historic vertices.
+     * 
+     * @param activeId id of the active edge to add corresponding historic edge
+     *        for
+     * @param out the latest historic revision of the out vertex
+     * @param in the latest historic revision of the in vertex
+     * @param label the label of the edge
+     * @param startVersion the start version the historic edge
+     * @param endVersion the end version the historic edge
+     * @return an added historic edge.
+     */
+    HistoricVersionedEdge<V> addHistoricEdge(Object activeId, HistoricVersionedVertex<V> out,
+            HistoricVersionedVertex<V> in, String label, V startVersion, V endVersion) {
+        Edge edge = addPlainEdgeToGraph(null, out.getRaw(), in.getRaw(), label);
+        edge.setProperty(VEProps.REF_TO_ACTIVE_ID_KEY, activeId);
         edge.setProperty(VEProps.HISTORIC_ELEMENT_PROP_KEY, true);
 
         // FIXME: Range is right?
         HistoricVersionedEdge<V> hv =
-                new HistoricVersionedEdge(edge, this.getHistoricGraph(), Range.range(startVersion, startVersion));
+                new HistoricVersionedEdge(edge, this.getHistoricGraph(), Range.range(startVersion, startVersion),
+                        false);
         utils.setStartVersion(hv, startVersion);
         utils.setEndVersion(hv, endVersion);
 
@@ -855,7 +1302,6 @@ public abstract class ActiveVersionedGraph<T extends KeyIndexableGraph, V extend
             this.identifierBehavior = identifierBehavior;
         }
 
-
         public ActiveVersionedGraphBuilder init(Boolean init) {
             this.init = init;
             return this;
@@ -883,6 +1329,10 @@ public abstract class ActiveVersionedGraph<T extends KeyIndexableGraph, V extend
             }
 
             instance.validate();
+            instance.markPackedVersionRanges();
+            instance.unmarkIntervalIndex();
+            instance.loadNaturalIdFilter();
+            instance.loadLatestRevisions();
 
             return instance;
         }
@@ -897,7 +1347,10 @@ public abstract class ActiveVersionedGraph<T extends KeyIndexableGraph, V extend
         }
 
         public TransactionalVersionedGraph<T, V> build() {
-            return (TransactionalVersionedGraph<T, V>) super.build();
+            TransactionalVersionedGraph<T, V> instance = (TransactionalVersionedGraph<T, V>) super.build();
+            instance.recoverPendingHistory();
+
+            return instance;
         }
 
         protected TransactionalVersionedGraph<T, V> createInstance() {
@@ -41,9 +41,10 @@ import com.tinkerpop.blueprints.util.wrappers.event.EventVertexIterable;
  */
 public class ActiveVersionedVertex<V extends Comparable<V>> extends ActiveVersionedElement<V, Vertex> implements Vertex {
     /**
-     * The raw vertex wrapped with events support.
+     * The raw vertex wrapped with events support, lazily created as it is
+     * required only for modifications.
      */
-    private final EventVertex vertex;
+    private EventVertex vertex;
 
     /**
      * Creates an instance.
@@ -52,23 +53,36 @@ public class ActiveVersionedVertex<V extends Comparable<V>> extends ActiveVersio
      * @param graph the graph instance this vertex is associated with.
      */
     protected ActiveVersionedVertex(Vertex rawVertex, ActiveVersionedGraph<?, V> graph) {
-        super(rawVertex instanceof EventVertex ? ((EventVertex) rawVertex).getBaseVertex() : rawVertex, graph);
+        this(rawVertex, graph, true);
+    }
+
+    /**
+     * Creates an instance, optionally without validating the type of the raw
+     * vertex.
+     * 
+     * @see ActiveVersionedElement
+     * @param rawVertex the base vertex to be wrapped with events support.
+     * @param graph the graph instance this vertex is associated with.
+     * @param validate if true the raw vertex is validated to be active.
+     */
+    ActiveVersionedVertex(Vertex rawVertex, ActiveVersionedGraph<?, V> graph, boolean validate) {
+        super(rawVertex instanceof EventVertex ? ((EventVertex) rawVertex).getBaseVertex() : rawVertex, graph,
+                validate);
 
         if (rawVertex instanceof EventVertex) {
             this.vertex = (EventVertex) rawVertex;
-        } else {
-            this.vertex = new EventVertex(rawVertex, graph.getEventableGraph());
         }
     }
 
     @Override
     public Iterable<Edge> getEdges(Direction direction, String... labels) {
-        return new ActiveVersionedEdgeIterable<V>(vertex.getEdges(direction, labels), getGraph());
+        // elements traversed from an active vertex are active.
+        return new ActiveVersionedEdgeIterable<V>(getRaw().getEdges(direction, labels), getGraph(), false);
     }
 
     @Override
     public Iterable<Vertex> getVertices(Direction direction, String... labels) {
-        return new ActiveVersionedVertexIterable<V>(vertex.getVertices(direction, labels), getGraph());
+        return new ActiveVersionedVertexIterable<V>(getRaw().getVertices(direction, labels), getGraph(), false);
     }
 
     @Override
@@ -76,29 +90,29 @@ public class ActiveVersionedVertex<V extends Comparable<V>> extends ActiveVersio
         return new WrapperVertexQuery(((Vertex) getRaw()).query()) {
             @Override
             public Iterable<Vertex> vertices() {
-                return new ActiveVersionedVertexIterable<V>(this.query.vertices(), getGraph());
+                return new ActiveVersionedVertexIterable<V>(this.query.vertices(), getGraph(), false);
             }
 
             @Override
             public Iterable<Edge> edges() {
-                return new ActiveVersionedEdgeIterable<V>(this.query.edges(), getGraph());
+                return new ActiveVersionedEdgeIterable<V>(this.query.edges(), getGraph(), false);
             }
         };
     }
 
     @Override
     public Edge addEdge(String label, Vertex inVertex) {
-        return vertex.addEdge(label, inVertex);
+        return getEventableVertex().addEdge(label, inVertex);
     }
 
     @Override
     public <T> T getProperty(String key) {
-        return vertex.getProperty(key);
+        return getRaw().getProperty(key);
     }
 
     @Override
     public Set<String> getPropertyKeys() {
-        return vertex.getPropertyKeys();
+        return getRaw().getPropertyKeys();
     }
 
     @Override
@@ -108,12 +122,13 @@ public class ActiveVersionedVertex<V extends Comparable<V>> extends ActiveVersio
 
     @Override
     public <T> T removeProperty(String key) {
-        return vertex.removeProperty(key);
+        getGraph().joinTransaction();
+        return getEventableVertex().removeProperty(key);
     }
 
     @Override
     public void remove() {
-        vertex.remove();
+        getEventableVertex().remove();
     }
 
     /**
@@ -131,7 +146,7 @@ public class ActiveVersionedVertex<V extends Comparable<V>> extends ActiveVersio
         }
 
         if (modified) {
-            vertex.setProperty(key, value);
+            getEventableVertex().setProperty(key, value);
         }
     }
 
@@ -141,6 +156,10 @@ public class ActiveVersionedVertex<V extends Comparable<V>> extends ActiveVersio
      * @return The underline eventable vertex.
      */
     public EventVertex getEventableVertex() {
+        if (vertex == null) {
+            vertex = new EventVertex(getRaw(), getGraph().getEventableGraph());
+        }
+
         return vertex;
     }
 
@@ -38,6 +38,11 @@ public class ActiveVersionedVertexIterable<V extends Comparable<V>> implements C
      */
     private final ActiveVersionedGraph<?, V> graph;
 
+    /**
+     * Whether the raw vertexs should be validated to be active.
+     */
+    private final boolean validate;
+
     /**
      * Creates an instance.
      * 
@@ -46,11 +51,26 @@ public class ActiveVersionedVertexIterable<V extends Comparable<V>> implements C
      * @param graph the graph instance {@link this} associated with
      */
     public ActiveVersionedVertexIterable(Iterable<Vertex> rawIterable, ActiveVersionedGraph<?, V> graph) {
+        this(rawIterable, graph, true);
+    }
+
+    /**
+     * Creates an instance, optionally without validating the type of each
+     * raw vertex.
+     * 
+     * @param rawIterable the raw iterable retrieved from the underline
+     *        blueprints graph.
+     * @param graph the graph instance {@link this} associated with
+     * @param validate if false the raw vertexs are known to be active (e.g
+     *        traversed from an active element), hence they are not validated.
+     */
+    ActiveVersionedVertexIterable(Iterable<Vertex> rawIterable, ActiveVersionedGraph<?, V> graph, boolean validate) {
         Preconditions.checkNotNull(rawIterable, "Raw iterable must be set.");
         Preconditions.checkNotNull(graph, "Graph must be set.");
 
         this.rawIterable = rawIterable;
         this.graph = graph;
+        this.validate = validate;
     }
 
     @Override
@@ -78,7 +98,7 @@ public class ActiveVersionedVertexIterable<V extends Comparable<V>> implements C
                     // TODO: May happen? if so mention when
                     return v;
                 } else {
-                    return new ActiveVersionedVertex<V>(v, graph);
+                    return new ActiveVersionedVertex<V>(v, graph, validate);
                 }
             }
 
@@ -0,0 +1,455 @@
+/**
+ * Copyright (c) 2012-2014 "Indexia Technologies, ltd."
+ * 
+ * This file is part of Antiquity.
+ * 
+ * Antiquity is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.indexia.antiquity.graph;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes the history of committed transactions in a background thread.
+ * 
+ * <p>
+ * Committed transactions are queued in version order as {@link HistoryTask}s,
+ * a single worker thread materializes their history in the same order. The
+ * queue is bounded, committers block once it is full.
+ * </p>
+ * 
+ * <p>
+ * Readers that require the history of a certain version use
+ * {@link #awaitVersion(Comparable, long, TimeUnit)} to wait until all
+ * versions up to it were written.
+ * </p>
+ * 
+ * <p>
+ * The worker updates active elements (e.g the reference to their latest
+ * historic revision) while user transactions run, a write that fails (e.g
+ * due to a deadlock with a user transaction) is retried up to
+ * {@link #MAX_WRITE_ATTEMPTS} times. Once the history of a version could not
+ * be written the writer is failed: the history of later versions is not
+ * written since it depends on the missing one, awaiting these versions throws
+ * and further commits are rejected, see {@link #checkWritable()}. The writer
+ * is recovered by {@link TransactionalVersionedGraph#recoverHistory()} once
+ * the cause of the failure was dealt with.
+ * </p>
+ * 
+ * <p>
+ * The queue is kept in memory, the history of each committed transaction is
+ * persisted as a pending history vertex within the transaction's base commit
+ * and removed within the commit that writes it, see
+ * {@link TransactionalVersionedGraph#recoverPendingHistory()}. History that
+ * was not written when the process terminated or when the writer failed is
+ * thus written once the graph is built again.
+ * </p>
+ * 
+ * @see Configuration#asyncHistoryQueueSize
+ * @param <V> The graph identifier type
+ */
+class AsyncHistoryWriter<V extends Comparable<V>> {
+    Logger log = LoggerFactory.getLogger(AsyncHistoryWriter.class);
+
+    /**
+     * The max amount of attempts to write the history of a single version.
+     */
+    static final int MAX_WRITE_ATTEMPTS = 3;
+
+    /**
+     * Marks the end of the queue.
+     */
+    private final HistoryTask<V> poison = new HistoryTask<V>(null, null);
+
+    private final TransactionalVersionedGraph<?, V> graph;
+    private final BlockingQueue<HistoryTask<V>> queue;
+
+    /**
+     * Versions that were queued but not written yet, ordered by version.
+     */
+    private final LinkedList<V> pendingVersions = new LinkedList<V>();
+
+    /**
+     * The first version whose history could not be written, null if none,
+     * guarded by {@link #pendingVersions}.
+     */
+    private V failedVersion;
+
+    /**
+     * The cause of the failure of {@link #failedVersion}, guarded by
+     * {@link #pendingVersions}.
+     */
+    private RuntimeException failure;
+
+    private volatile Thread worker;
+
+    /**
+     * Create an instance of this class and start its worker.
+     * 
+     * @param graph The graph to write the history in.
+     * @param capacity The max amount of queued transactions.
+     */
+    AsyncHistoryWriter(TransactionalVersionedGraph<?, V> graph, int capacity) {
+        Preconditions.checkNotNull(graph, "Graph must be set.");
+        Preconditions.checkArgument(capacity > 0, "Capacity must be positive.");
+
+        this.graph = graph;
+        this.queue = new ArrayBlockingQueue<HistoryTask<V>>(capacity);
+        startWorker();
+    }
+
+    private void startWorker() {
+        worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                work();
+            }
+        }, "antiquity-history-writer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Queue the specified task, blocks if the queue is full.
+     * 
+     * <p>
+     * Tasks must be submitted in version order.
+     * </p>
+     * 
+     * @param task The task to queue.
+     */
+    void submit(HistoryTask<V> task) {
+        synchronized (pendingVersions) {
+            pendingVersions.addLast(task.getVersion());
+        }
+
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(task);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Wait until the history of all versions up to the specified version was
+     * written.
+     * 
+     * @param version The version to wait for.
+     * @param timeout The max time to wait.
+     * @param unit The unit of the timeout.
+     * @return true if the history of the version was written, false if the
+     *         timeout elapsed.
+     * @throws InterruptedException if interrupted while waiting.
+     * @throws IllegalStateException if the history of the version or of a
+     *         version preceding it could not be written.
+     */
+    boolean awaitVersion(V version, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        synchronized (pendingVersions) {
+            while (true) {
+                if (failedVersion != null && failedVersion.compareTo(version) <= 0) {
+                    throw new IllegalStateException(String.format(
+                            "History of version [%s] could not be written, history of version [%s] is not available.",
+                            failedVersion, version), failure);
+                }
+
+                if (pendingVersions.isEmpty() || pendingVersions.getFirst().compareTo(version) > 0) {
+                    break;
+                }
+
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(pendingVersions, remaining);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Ensure that the history of further transactions can be written.
+     * 
+     * @throws IllegalStateException if the history of a previous version
+     *         could not be written.
+     */
+    void checkWritable() {
+        synchronized (pendingVersions) {
+            if (failedVersion != null) {
+                throw new IllegalStateException(String.format(
+                        "History of version [%s] could not be written, no further transactions can be versioned "
+                                + "until the history is recovered.", failedVersion), failure);
+            }
+        }
+    }
+
+    /**
+     * Clear the failed state of this writer, the history of versions that was
+     * skipped due to the failure is expected to be submitted again.
+     * 
+     * <p>
+     * Waits until the worker is done with the queued tasks, the worker skips
+     * the tasks that follow a failed version. If the worker was interrupted
+     * its queued tasks are dropped and a new worker is started.
+     * </p>
+     * 
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    void reset() throws InterruptedException {
+        synchronized (pendingVersions) {
+            while (!pendingVersions.isEmpty() && worker.isAlive()) {
+                pendingVersions.wait(100);
+            }
+
+            if (!worker.isAlive()) {
+                queue.clear();
+                pendingVersions.clear();
+                startWorker();
+            }
+
+            if (failedVersion != null) {
+                log.info("Resetting the history writer, history of version [{}] failed.", failedVersion);
+            }
+            failedVersion = null;
+            failure = null;
+        }
+    }
+
+    /**
+     * Write the history of all queued transactions and stop the worker.
+     */
+    void shutdown() {
+        submitPoison();
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void submitPoison() {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(poison);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void work() {
+        while (true) {
+            HistoryTask<V> task;
+            try {
+                task = queue.take();
+            } catch (InterruptedException e) {
+                log.warn("History writer was interrupted, {} transactions were not versioned.", queue.size());
+                synchronized (pendingVersions) {
+                    if (!pendingVersions.isEmpty()) {
+                        fail(pendingVersions.getFirst(), new IllegalStateException("History writer was interrupted."));
+                    }
+                }
+                return;
+            }
+
+            if (task == poison) {
+                return;
+            }
+
+            boolean failed;
+            synchronized (pendingVersions) {
+                failed = failedVersion != null;
+            }
+
+            RuntimeException error = null;
+            if (failed) {
+                log.error("Skipping the history of version [{}], a preceding version could not be written.",
+                        task.getVersion());
+            } else {
+                error = write(task);
+            }
+
+            synchronized (pendingVersions) {
+                if (error != null) {
+                    fail(task.getVersion(), error);
+                }
+                pendingVersions.removeFirst();
+                pendingVersions.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Write the history of the specified task, retrying failed attempts.
+     * 
+     * @param task The task to write.
+     * @return null if the history was written, the cause of the last attempt
+     *         failure otherwise.
+     */
+    private RuntimeException write(HistoryTask<V> task) {
+        for (int attempt = 1;; attempt++) {
+            try {
+                graph.writeHistory(task);
+                return null;
+            } catch (RuntimeException e) {
+                if (attempt >= MAX_WRITE_ATTEMPTS) {
+                    log.error("Failed to write the history of version [{}]", task.getVersion(), e);
+                    return e;
+                }
+
+                log.warn("Failed to write the history of version [{}], attempt {} of {}", task.getVersion(),
+                        attempt, MAX_WRITE_ATTEMPTS, e);
+            }
+        }
+    }
+
+    /**
+     * Mark the writer as failed, must be invoked while holding
+     * {@link #pendingVersions}.
+     * 
+     * @param version The version whose history could not be written.
+     * @param cause The cause of the failure.
+     */
+    private void fail(V version, RuntimeException cause) {
+        if (failedVersion == null) {
+            failedVersion = version;
+            failure = cause;
+        }
+        pendingVersions.notifyAll();
+    }
+
+    /**
+     * A detached copy of a committed transaction's {@link TransactionData},
+     * elements are referenced by their active ids since the worker reloads
+     * them within its own transaction.
+     * 
+     * <p>
+     * Tasks are persisted until written via {@link PendingHistoryCodec}.
+     * </p>
+     */
+    static class HistoryTask<V> {
+        private V latestVersion;
+        private V version;
+
+        final List<Object> addedVertices = new ArrayList<Object>();
+        final List<AddedEdge> addedEdges = new ArrayList<AddedEdge>();
+        final List<RemovedElement> removedVertices = new ArrayList<RemovedElement>();
+        final List<RemovedElement> removedEdges = new ArrayList<RemovedElement>();
+        final Map<Object, Map<String, Object>> modifiedPropsPerVertex = new HashMap<Object, Map<String, Object>>();
+        final Map<Object, Map<String, Object>> modifiedPropsPerEdge = new HashMap<Object, Map<String, Object>>();
+
+        /**
+         * The properties of added & modified elements as committed, the
+         * active elements may already contain later modifications when the
+         * task is processed.
+         */
+        final Map<Object, Map<String, Object>> committedVertexProps = new HashMap<Object, Map<String, Object>>();
+        final Map<Object, Map<String, Object>> committedEdgeProps = new HashMap<Object, Map<String, Object>>();
+
+        HistoryTask() {
+        }
+
+        HistoryTask(V latestVersion, V version) {
+            assignVersion(latestVersion, version);
+        }
+
+        /**
+         * Assign the version of the transaction, tasks are detached before
+         * their version is allocated.
+         * 
+         * @param latestVersion The version preceding the transaction's
+         *        version.
+         * @param version The version of the transaction.
+         */
+        void assignVersion(V latestVersion, V version) {
+            this.latestVersion = latestVersion;
+            this.version = version;
+        }
+
+        /**
+         * @return The version preceding the transaction's version.
+         */
+        V getLatestVersion() {
+            return latestVersion;
+        }
+
+        /**
+         * @return The version of the transaction.
+         */
+        V getVersion() {
+            return version;
+        }
+    }
+
+    /**
+     * An added edge with its active id and the active ids of its vertices, the
+     * edge may be removed before its history is written.
+     */
+    static class AddedEdge {
+        final Object activeId;
+        final Object outId;
+        final Object inId;
+        final String label;
+
+        AddedEdge(Object activeId, Object outId, Object inId, String label) {
+            this.activeId = activeId;
+            this.outId = outId;
+            this.inId = inId;
+            this.label = label;
+        }
+    }
+
+    /**
+     * A removed element with its active id and its properties as they were
+     * before the removal, the removed element itself can't be touched thus it
+     * is not kept.
+     */
+    static class RemovedElement {
+        final Object activeId;
+        final Map<String, Object> props;
+
+        RemovedElement(Object activeId, Map<String, Object> props) {
+            this.activeId = activeId;
+            this.props = props;
+        }
+    }
+}
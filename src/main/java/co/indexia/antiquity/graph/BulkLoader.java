@@ -0,0 +1,311 @@
+/**
+ * Copyright (c) 2012-2014 "Indexia Technologies, ltd."
+ * 
+ * This file is part of Antiquity.
+ * 
+ * Antiquity is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.indexia.antiquity.graph;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Element;
+import com.tinkerpop.blueprints.KeyIndexableGraph;
+import com.tinkerpop.blueprints.TransactionalGraph;
+import com.tinkerpop.blueprints.Vertex;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Loads large amounts of vertices and edges into an {@link ActiveVersionedGraph}
+ * as a single version (or a few versions).
+ * 
+ * <p>
+ * The loader writes the active and the historic elements directly to the base
+ * graph, bypassing the events (and thus the per element versioning) of the
+ * versioned graph. Writes are committed to the base graph every
+ * {@code batchSize} elements. Private hashes of the loaded vertices are
+ * calculated once per version, after all its vertices were loaded.
+ * </p>
+ * 
+ * <p>
+ * The version is allocated (and committed) before its first element is
+ * written, thus a load that is interrupted (e.g by a crash) before
+ * {@link #commitVersion()} leaves partially loaded elements under a version
+ * that is never reused by later commits. These elements are visible once
+ * written, a version is complete only once {@link #commitVersion()} returned.
+ * </p>
+ * 
+ * Notes:
+ * <ul>
+ * <li>IDs of the loaded elements are not validated, the caller is responsible
+ * for their uniqueness.</li>
+ * <li>The ids of the loaded vertices are kept in memory to resolve the vertices
+ * of loaded edges.</li>
+ * <li>This class is not thread safe and the graph should not be modified by
+ * other writers while loading.</li>
+ * </ul>
+ * 
+ * @param <T> The type of the base graph.
+ * @param <V> The graph identifier type.
+ */
+public class BulkLoader<T extends KeyIndexableGraph, V extends Comparable<V>> {
+    Logger log = LoggerFactory.getLogger(BulkLoader.class);
+
+    private final ActiveVersionedGraph<T, V> graph;
+    private final int batchSize;
+
+    /**
+     * Active id of loaded (or resolved) vertices to their active and latest
+     * historic base ids.
+     */
+    private final Map<Object, Object[]> vertices = new HashMap<Object, Object[]>();
+
+    /**
+     * Base ids of the active vertices loaded in the current version whose
+     * private hash was not calculated yet.
+     */
+    private final List<Object> unhashedVertices = new ArrayList<Object>();
+
+    /**
+     * The version being loaded, null if no element was loaded since the latest
+     * committed version.
+     */
+    private V version;
+
+    /**
+     * Amount of writes since the last base commit.
+     */
+    private int uncommittedWrites = 0;
+
+    /**
+     * Create an instance of this class.
+     * 
+     * @param graph The graph to load elements into.
+     * @param batchSize The amount of elements to write per base commit.
+     */
+    public BulkLoader(ActiveVersionedGraph<T, V> graph, int batchSize) {
+        Preconditions.checkNotNull(graph, "Graph must be set.");
+        Preconditions.checkArgument(batchSize > 0, "Batch size must be positive.");
+
+        this.graph = graph;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Load a vertex.
+     * 
+     * @param id The id of the vertex, if null id will be generated.
+     * @param props The properties of the vertex.
+     * @return The active id of the loaded vertex.
+     */
+    public Object addVertex(Object id, Map<String, Object> props) {
+        Preconditions.checkNotNull(props, "Properties must be set.");
+        V ver = getVersion();
+
+        Vertex active = graph.addPlainVertexToGraph(id, false);
+        active.setProperty(VEProps.HISTORIC_ELEMENT_PROP_KEY, false);
+        Object activeId = getHardId(active, VEProps.NATURAL_VERTEX_ID_PROP_KEY);
+        if (graph.isNaturalIds()) {
+            graph.registerNaturalId(Vertex.class, activeId, active.getId());
+        }
+
+        Vertex historic = graph.addPlainVertexToGraph(null, false);
+        initHistoric(historic, activeId, ver);
+
+        setProperties(active, historic, props);
+        active.setProperty(VEProps.REF_TO_LATEST_HISTORIC_ID_KEY,
+                getHardId(historic, VEProps.NATURAL_VERTEX_ID_PROP_KEY));
+
+        graph.getHistoricGraph().registerLatestRevision(activeId, historic);
+        vertices.put(activeId, new Object[] { active.getId(), historic.getId() });
+        unhashedVertices.add(active.getId());
+        written();
+
+        return activeId;
+    }
+
+    /**
+     * Load an edge.
+     * 
+     * <p>
+     * The vertices of the edge are either loaded by this loader or exist in
+     * the graph.
+     * </p>
+     * 
+     * @param id The id of the edge, if null id will be generated.
+     * @param outVertexId The active id of the out vertex.
+     * @param inVertexId The active id of the in vertex.
+     * @param label The label of the edge.
+     * @param props The properties of the edge.
+     * @return The active id of the loaded edge.
+     */
+    public Object addEdge(Object id, Object outVertexId, Object inVertexId, String label, Map<String, Object> props) {
+        Preconditions.checkNotNull(props, "Properties must be set.");
+        V ver = getVersion();
+
+        Object[] out = resolveVertex(outVertexId);
+        Object[] in = resolveVertex(inVertexId);
+        T base = graph.getUneventableGraph();
+
+        Edge active = graph.addPlainEdgeToGraph(id, base.getVertex(out[0]), base.getVertex(in[0]), label, false);
+        active.setProperty(VEProps.HISTORIC_ELEMENT_PROP_KEY, false);
+        Object activeId = getHardId(active, VEProps.NATURAL_EDGE_ID_PROP_KEY);
+        if (graph.isNaturalIds()) {
+            graph.registerNaturalId(Edge.class, activeId, active.getId());
+        }
+
+        Edge historic =
+                graph.addPlainEdgeToGraph(null, base.getVertex(out[1]), base.getVertex(in[1]), label, false);
+        initHistoric(historic, activeId, ver);
+
+        setProperties(active, historic, props);
+        active.setProperty(VEProps.REF_TO_LATEST_HISTORIC_ID_KEY, getHardId(historic, VEProps.NATURAL_EDGE_ID_PROP_KEY));
+        written();
+
+        return activeId;
+    }
+
+    /**
+     * Commit the version of the loaded elements, elements loaded afterwards
+     * are loaded as part of the next version.
+     * 
+     * @return The committed version, null if no element was loaded since the
+     *         last committed version.
+     */
+    public V commitVersion() {
+        if (version == null) {
+            log.warn("No elements were loaded, skipping version commit");
+            return null;
+        }
+
+        if (graph.conf.getPrivateVertexHashEnabled()) {
+            T base = graph.getUneventableGraph();
+            for (Object baseId : unhashedVertices) {
+                graph.utils.setPrivateHash(new ActiveVersionedVertex<V>(base.getVertex(baseId), graph, false));
+                written();
+            }
+        }
+        unhashedVertices.clear();
+        commitBase();
+
+        V committed = version;
+        version = null;
+        log.debug("Bulk loaded version [{}] was committed.", committed);
+
+        return committed;
+    }
+
+    /**
+     * Get the version being loaded, a new version is allocated and committed
+     * if no version is being loaded.
+     * 
+     * @return The version being loaded.
+     */
+    private V getVersion() {
+        if (version == null) {
+            V next = graph.getNextGraphVersion(true);
+            try {
+                if (next == null) {
+                    throw new IllegalStateException("Could not allocate next version.");
+                }
+                commitBase();
+            } catch (RuntimeException e) {
+                graph.identifierBehavior.rollbackGraphVersion();
+                throw e;
+            }
+            version = next;
+        }
+
+        return version;
+    }
+
+    /**
+     * Resolve the active and the latest historic base ids of the specified
+     * active vertex id.
+     * 
+     * @param activeId The active id of the vertex.
+     * @return The active and the latest historic base ids.
+     */
+    private Object[] resolveVertex(Object activeId) {
+        Preconditions.checkNotNull(activeId, "Vertex id must be set.");
+
+        Object[] ids = vertices.get(activeId);
+        if (ids == null) {
+            ActiveVersionedVertex<V> active = (ActiveVersionedVertex<V>) graph.getVertex(activeId);
+            if (active == null) {
+                throw new IllegalArgumentException(String.format("Vertex [%s] does not exist.", activeId));
+            }
+
+            HistoricVersionedVertex<V> latest = graph.getHistoricGraph().getLatestHistoricRevision(active);
+            ids = new Object[] { active.getRaw().getId(), latest.getRaw().getId() };
+            vertices.put(activeId, ids);
+        }
+
+        return ids;
+    }
+
+    private void initHistoric(Element historic, Object activeId, V ver) {
+        historic.setProperty(VEProps.REF_TO_ACTIVE_ID_KEY, activeId);
+        historic.setProperty(VEProps.HISTORIC_ELEMENT_PROP_KEY, true);
+        graph.utils.setVersion(VersionedElementUtils.StartOrEnd.START, historic, ver);
+        graph.utils.setVersion(VersionedElementUtils.StartOrEnd.END, historic, graph.getMaxPossibleGraphVersion());
+    }
+
+    private void setProperties(Element active, Element historic, Map<String, Object> props) {
+        for (Map.Entry<String, Object> p : props.entrySet()) {
+            if (VEProps.antiquityElementsKeys.contains(p.getKey())) {
+                throw new IllegalArgumentException(String.format("Key [%s] is reserved.", p.getKey()));
+            }
+
+            active.setProperty(p.getKey(), p.getValue());
+            historic.setProperty(p.getKey(), p.getValue());
+        }
+    }
+
+    private Object getHardId(Element element, String naturalIdKey) {
+        if (graph.isNaturalIds()) {
+            return element.getProperty(naturalIdKey);
+        } else {
+            return element.getId();
+        }
+    }
+
+    private void written() {
+        if (++uncommittedWrites >= batchSize) {
+            commitBase();
+        }
+    }
+
+    private void commitBase() {
+        if (graph.getUneventableGraph() instanceof TransactionalGraph) {
+            ((TransactionalGraph) graph.getUneventableGraph()).commit();
+            graph.identifierBehavior.commitGraphVersion();
+
+            // the loaded natural ids are committed, a later rollback of the
+            // graph must not invalidate them.
+            if (graph.getNaturalIdCache() != null) {
+                graph.getNaturalIdCache().commit();
+            }
+        }
+
+        uncommittedWrites = 0;
+    }
+}
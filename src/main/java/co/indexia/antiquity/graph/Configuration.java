@@ -51,6 +51,113 @@ public class Configuration {
      */
     public final Boolean doNotVersionEmptyTransactions;
 
+    /**
+     * The max amount of committed transactions whose history is queued for a
+     * background writer, history is written synchronously if the value is 0.
+     * 
+     * This is only relevant to transactional graphs
+     */
+    public final Integer asyncHistoryQueueSize;
+
+    /**
+     * Store a full copy of the vertex properties every N historic revisions,
+     * other revisions store only the properties that differ from their later
+     * revision. Every revision is a full copy if the value is 1.
+     * 
+     * Note: Historic key/value lookups match delta revisions only by the keys
+     * they store.
+     */
+    public final Integer historicKeyframeInterval;
+
+    /**
+     * If true, snapshots of a version are read via the temporal interval index
+     * instead of scanning all the historic elements.
+     * 
+     * Note: Only elements versioned since the index was introduced are
+     * indexed, enable this only for graphs created with it.
+     */
+    public final Boolean temporalIntervalIndexEnabled;
+
+    /**
+     * The max total weight of the resolved historic revisions to cache, a
+     * revision weighs its amount of properties plus one. Resolved revisions are
+     * not cached if the value is 0.
+     */
+    public final Long historicRevisionCacheMaxWeight;
+
+    /**
+     * If true, the latest historic revision of every vertex is resolved via an
+     * off-heap map from the active id to the base graph id of the revision
+     * instead of a lookup by its hard id, the map is populated once the graph
+     * is built by scanning the historic vertices and is then kept up to date
+     * as revisions are resolved and created.
+     * 
+     * Note: Only base graphs with long element ids benefit from the map,
+     * revisions with other ids are always resolved by their hard id.
+     */
+    public final Boolean latestRevisionMapEnabled;
+
+    /**
+     * The amount of segments of the latest revisions map, each segment is
+     * guarded by its own lock. Must be a power of two.
+     * 
+     * This is only relevant if the latest revisions map is enabled
+     */
+    public final Integer latestRevisionMapSegments;
+
+    /**
+     * The initial amount of entries of the latest revisions map, split evenly
+     * between its segments, segments grow as needed.
+     * 
+     * This is only relevant if the latest revisions map is enabled
+     */
+    public final Integer latestRevisionMapInitialCapacity;
+
+    /**
+     * The max amount of natural ids per element type whose base graph ids are
+     * cached, natural ids are always looked up by their key index if the value
+     * is 0.
+     * 
+     * This is only relevant to graphs with natural IDs
+     */
+    public final Long naturalIdCacheSize;
+
+    /**
+     * The expected amount of natural ids per element type held by the
+     * probabilistic filter of the natural ids, new ids the filter does not
+     * contain are accepted without a lookup, the filter is disabled if the
+     * value is 0.
+     * 
+     * Enabling the filter declares the graph instance as the single writer of
+     * the base graph, the filter is loaded by scanning the base graph once
+     * when the graph is built and it misses elements created by other graph
+     * instances thereafter.
+     * 
+     * This is only relevant to graphs with natural IDs
+     */
+    public final Integer naturalIdFilterExpectedInsertions;
+
+    /**
+     * If true, the valid version range of historic elements is stored as a
+     * single packed property instead of separate min and max properties.
+     * 
+     * Once enabled the graph is marked as holding packed ranges, from then on
+     * the version range predicates of every graph instance are evaluated over
+     * the elements instead of being pushed down to the base graph, even if
+     * this is disabled again.
+     * 
+     * Note: Only long versions are packed, elements versioned before this was
+     * enabled are still read via their min and max properties.
+     */
+    public final Boolean compactVersionRangeEnabled;
+
+    /**
+     * The maximal amount of changed elements whose buffers are retained
+     * between the transactions of a thread, buffers of larger transactions are
+     * released once the transaction completes.
+     */
+    public final Integer transactionBufferRetainedSize;
+
     /**
      * Create an instance of this class with the specified builder.
      * 
@@ -61,6 +168,17 @@ public class Configuration {
         this.useNaturalIds = builder.useNaturalIds;
         this.useNaturalIdsOnlyIfSuppliedIdsAreIgnored = builder.useNaturalIdsOnlyIfSuppliedIdsAreIgnored;
         this.doNotVersionEmptyTransactions = builder.doNotVersionEmptyTransactions;
+        this.asyncHistoryQueueSize = builder.asyncHistoryQueueSize;
+        this.historicKeyframeInterval = builder.historicKeyframeInterval;
+        this.temporalIntervalIndexEnabled = builder.temporalIntervalIndexEnabled;
+        this.historicRevisionCacheMaxWeight = builder.historicRevisionCacheMaxWeight;
+        this.latestRevisionMapEnabled = builder.latestRevisionMapEnabled;
+        this.latestRevisionMapSegments = builder.latestRevisionMapSegments;
+        this.latestRevisionMapInitialCapacity = builder.latestRevisionMapInitialCapacity;
+        this.naturalIdCacheSize = builder.naturalIdCacheSize;
+        this.naturalIdFilterExpectedInsertions = builder.naturalIdFilterExpectedInsertions;
+        this.compactVersionRangeEnabled = builder.compactVersionRangeEnabled;
+        this.transactionBufferRetainedSize = builder.transactionBufferRetainedSize;
     }
 
     /**
@@ -104,6 +222,129 @@ public class Configuration {
         return doNotVersionEmptyTransactions;
     }
 
+    /**
+     * Max amount of committed transactions waiting for their history to be
+     * written.
+     * 
+     * @return max amount of queued transactions.
+     */
+    public Integer getAsyncHistoryQueueSize() {
+        return asyncHistoryQueueSize;
+    }
+
+    /**
+     * Whether or not history is written asynchronously after commit.
+     * 
+     * @return true if history is written by a background writer.
+     */
+    public boolean isAsyncHistoryEnabled() {
+        return asyncHistoryQueueSize > 0;
+    }
+
+    /**
+     * The amount of historic revisions per full (keyframe) revision.
+     * 
+     * @return the interval of full historic revisions.
+     */
+    public Integer getHistoricKeyframeInterval() {
+        return historicKeyframeInterval;
+    }
+
+    /**
+     * Whether or not snapshots are read via the temporal interval index.
+     * 
+     * @return true if snapshots are read via the temporal interval index.
+     */
+    public Boolean getTemporalIntervalIndexEnabled() {
+        return temporalIntervalIndexEnabled;
+    }
+
+    /**
+     * Max total weight of the cached historic revisions.
+     * 
+     * @return max total weight of the cached historic revisions.
+     */
+    public Long getHistoricRevisionCacheMaxWeight() {
+        return historicRevisionCacheMaxWeight;
+    }
+
+    /**
+     * Whether or not resolved historic revisions are cached.
+     * 
+     * @return true if resolved historic revisions are cached.
+     */
+    public boolean isHistoricRevisionCacheEnabled() {
+        return historicRevisionCacheMaxWeight > 0;
+    }
+
+    /**
+     * Whether or not latest historic revisions are resolved via an off-heap
+     * map.
+     * 
+     * @return true if latest historic revisions are resolved via an off-heap
+     *         map.
+     */
+    public Boolean getLatestRevisionMapEnabled() {
+        return latestRevisionMapEnabled;
+    }
+
+    /**
+     * Amount of segments of the latest revisions map.
+     * 
+     * @return amount of segments of the latest revisions map.
+     */
+    public Integer getLatestRevisionMapSegments() {
+        return latestRevisionMapSegments;
+    }
+
+    /**
+     * Initial amount of entries of the latest revisions map.
+     * 
+     * @return initial amount of entries of the latest revisions map.
+     */
+    public Integer getLatestRevisionMapInitialCapacity() {
+        return latestRevisionMapInitialCapacity;
+    }
+
+    /**
+     * Max amount of cached natural ids per element type.
+     * 
+     * @return max amount of cached natural ids per element type.
+     */
+    public Long getNaturalIdCacheSize() {
+        return naturalIdCacheSize;
+    }
+
+    /**
+     * Expected amount of natural ids per element type held by the natural ids
+     * filter.
+     * 
+     * @return expected amount of natural ids per element type.
+     */
+    public Integer getNaturalIdFilterExpectedInsertions() {
+        return naturalIdFilterExpectedInsertions;
+    }
+
+    /**
+     * Whether or not version ranges of historic elements are stored as a
+     * single packed property.
+     * 
+     * @return true if version ranges are stored as a single packed property.
+     */
+    public Boolean getCompactVersionRangeEnabled() {
+        return compactVersionRangeEnabled;
+    }
+
+    /**
+     * Get the maximal amount of changed elements whose buffers are retained
+     * between transactions.
+     * 
+     * @return maximal amount of retained changed elements.
+     */
+    public Integer getTransactionBufferRetainedSize() {
+        return transactionBufferRetainedSize;
+    }
+
     /**
      * Configuration Builder.
      */
@@ -112,6 +353,17 @@ public class Configuration {
         private Boolean useNaturalIds = false;
         private Boolean useNaturalIdsOnlyIfSuppliedIdsAreIgnored = true;
         private Boolean doNotVersionEmptyTransactions = true;
+        private Integer asyncHistoryQueueSize = 0;
+        private Integer historicKeyframeInterval = 1;
+        private Boolean temporalIntervalIndexEnabled = false;
+        private Long historicRevisionCacheMaxWeight = 0L;
+        private Boolean latestRevisionMapEnabled = false;
+        private Integer latestRevisionMapSegments = 16;
+        private Integer latestRevisionMapInitialCapacity = 16 * 1024;
+        private Long naturalIdCacheSize = 0L;
+        private Integer naturalIdFilterExpectedInsertions = 0;
+        private Boolean compactVersionRangeEnabled = false;
+        private Integer transactionBufferRetainedSize = TransactionData.DEFAULT_RETAINED_SIZE;
 
         public ConfBuilder privateVertexHashEnabled(Boolean privateVertexHashEnabled) {
             this.privateVertexHashEnabled = privateVertexHashEnabled;
@@ -133,6 +385,61 @@ public class Configuration {
             return this;
         }
 
+        public ConfBuilder asyncHistoryQueueSize(Integer asyncHistoryQueueSize) {
+            this.asyncHistoryQueueSize = asyncHistoryQueueSize;
+            return this;
+        }
+
+        public ConfBuilder historicKeyframeInterval(Integer historicKeyframeInterval) {
+            this.historicKeyframeInterval = historicKeyframeInterval;
+            return this;
+        }
+
+        public ConfBuilder temporalIntervalIndexEnabled(Boolean temporalIntervalIndexEnabled) {
+            this.temporalIntervalIndexEnabled = temporalIntervalIndexEnabled;
+            return this;
+        }
+
+        public ConfBuilder historicRevisionCacheMaxWeight(Long historicRevisionCacheMaxWeight) {
+            this.historicRevisionCacheMaxWeight = historicRevisionCacheMaxWeight;
+            return this;
+        }
+
+        public ConfBuilder latestRevisionMapEnabled(Boolean latestRevisionMapEnabled) {
+            this.latestRevisionMapEnabled = latestRevisionMapEnabled;
+            return this;
+        }
+
+        public ConfBuilder latestRevisionMapSegments(Integer latestRevisionMapSegments) {
+            this.latestRevisionMapSegments = latestRevisionMapSegments;
+            return this;
+        }
+
+        public ConfBuilder latestRevisionMapInitialCapacity(Integer latestRevisionMapInitialCapacity) {
+            this.latestRevisionMapInitialCapacity = latestRevisionMapInitialCapacity;
+            return this;
+        }
+
+        public ConfBuilder naturalIdCacheSize(Long naturalIdCacheSize) {
+            this.naturalIdCacheSize = naturalIdCacheSize;
+            return this;
+        }
+
+        public ConfBuilder naturalIdFilterExpectedInsertions(Integer naturalIdFilterExpectedInsertions) {
+            this.naturalIdFilterExpectedInsertions = naturalIdFilterExpectedInsertions;
+            return this;
+        }
+
+        public ConfBuilder compactVersionRangeEnabled(Boolean compactVersionRangeEnabled) {
+            this.compactVersionRangeEnabled = compactVersionRangeEnabled;
+            return this;
+        }
+
+        public ConfBuilder transactionBufferRetainedSize(Integer transactionBufferRetainedSize) {
+            this.transactionBufferRetainedSize = transactionBufferRetainedSize;
+            return this;
+        }
+
         public Configuration build() {
             return new Configuration(this);
         }
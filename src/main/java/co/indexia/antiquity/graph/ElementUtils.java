@@ -18,17 +18,18 @@
  */
 package co.indexia.antiquity.graph;
 
-import java.nio.charset.Charset;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 
-import com.google.common.base.Joiner;
+import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMap.Builder;
 import com.google.common.hash.HashCode;
 import com.google.common.hash.HashFunction;
-import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
 import com.tinkerpop.blueprints.Element;
 import com.tinkerpop.blueprints.Graph;
@@ -38,6 +39,15 @@ import com.tinkerpop.blueprints.Vertex;
  * General read-only utils for a single {@link Element}.
  */
 public class ElementUtils {
+    /**
+     * The hash function of a single property of the private hash.
+     */
+    private static final HashFunction PROPERTY_HASH_FUNCTION = Hashing.murmur3_128();
+
+    /**
+     * The length of a private hash string, 128 bits in hex.
+     */
+    private static final int PRIVATE_HASH_LENGTH = 32;
 
     /**
      * Get element's properties as an immutable java Map.
@@ -80,27 +90,106 @@ public class ElementUtils {
      * </p>
      * 
      * <p>
-     * The hash is calculated based on SHA1 algorithm
+     * The hash is the sum of the 128 bit murmur3 hashes of the UTF-8 encoded
+     * key and value of each property, hence it does not depend on the
+     * properties order and it can be updated per modified property, see
+     * {@link #updateElementPrivateHash(String, Element, Map, Set)}.
      * </p>
      * 
-     * TODO Handle arrays values properly.
-     * 
      * @param element The element to calculate the private hash for.
      * @param excludedKeys the keys to exclude when hash is calculated.
      * @return A string representation of the hash
      * @see HashCode#toString()
      */
     public static String calculateElementPrivateHash(Element element, Set<String> excludedKeys) {
-        Map<String, Object> props = ElementUtils.getPropertiesAsMap(element, excludedKeys);
-        Joiner.MapJoiner propsJoiner = Joiner.on('&').withKeyValueSeparator("=");
+        long[] hash = new long[2];
+        for (String key : element.getPropertyKeys()) {
+            if (excludedKeys == null || !excludedKeys.contains(key)) {
+                addPropertyHash(hash, key, element.getProperty(key), 1);
+            }
+        }
 
-        HashFunction hf = Hashing.sha1();
-        Hasher h = hf.newHasher();
+        return toPrivateHashString(hash);
+    }
 
-        //h.putString("[" + element.getId().toString() + "]");
-        h.putString(propsJoiner.join(props), Charset.defaultCharset());
+    /**
+     * <p>
+     * Update the specified private hash of an {@link Element} with its
+     * modified properties.
+     * </p>
+     * 
+     * <p>
+     * The hashes of the old values are subtracted and the hashes of the
+     * current values are added, thus only the modified properties are read.
+     * If the specified hash was not calculated by
+     * {@link #calculateElementPrivateHash(Element, Set)} the hash is
+     * calculated from scratch.
+     * </p>
+     * 
+     * @param privateHash The private hash of the element before its
+     *        properties were modified, may be null.
+     * @param element The element to update the private hash for.
+     * @param oldValues The values of the modified properties before they were
+     *        modified, a null value means the property did not exist.
+     * @param excludedKeys the keys to exclude when hash is calculated.
+     * @return A string representation of the updated hash
+     */
+    public static String updateElementPrivateHash(String privateHash, Element element, Map<String, Object> oldValues,
+            Set<String> excludedKeys) {
+        if (privateHash == null || privateHash.length() != PRIVATE_HASH_LENGTH) {
+            return calculateElementPrivateHash(element, excludedKeys);
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(HashCode.fromString(privateHash).asBytes()).order(ByteOrder.LITTLE_ENDIAN);
+        long[] hash = new long[] { buffer.getLong(0), buffer.getLong(8) };
+        for (Map.Entry<String, Object> old : oldValues.entrySet()) {
+            String key = old.getKey();
+            if (excludedKeys != null && excludedKeys.contains(key)) {
+                continue;
+            }
+
+            if (old.getValue() != null) {
+                addPropertyHash(hash, key, old.getValue(), -1);
+            }
+
+            Object value = element.getProperty(key);
+            if (value != null) {
+                addPropertyHash(hash, key, value, 1);
+            }
+        }
+
+        return toPrivateHashString(hash);
+    }
+
+    /**
+     * Add (or subtract) the hash of the specified property to the specified
+     * hash.
+     * 
+     * @param hash The hash to add the property hash to.
+     * @param key The key of the property.
+     * @param value The value of the property.
+     * @param sign 1 to add the property hash, -1 to subtract it.
+     */
+    private static void addPropertyHash(long[] hash, String key, Object value, int sign) {
+        String valueStr;
+        if (value.getClass().isArray()) {
+            valueStr = Arrays.deepToString(new Object[] { value });
+        } else {
+            valueStr = value.toString();
+        }
+
+        byte[] bytes =
+                PROPERTY_HASH_FUNCTION.newHasher().putString(key, Charsets.UTF_8).putByte((byte) '=')
+                        .putString(valueStr, Charsets.UTF_8).hash().asBytes();
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        hash[0] += sign * buffer.getLong(0);
+        hash[1] += sign * buffer.getLong(8);
+    }
 
-        return h.hash().toString();
+    private static String toPrivateHashString(long[] hash) {
+        ByteBuffer buffer = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putLong(hash[0]).putLong(hash[1]);
+        return HashCode.fromBytes(buffer.array()).toString();
     }
 
     /**
@@ -18,6 +18,7 @@
  */
 package co.indexia.antiquity.graph;
 
+import com.google.common.base.Preconditions;
 import com.tinkerpop.blueprints.Edge;
 import com.tinkerpop.blueprints.GraphQuery;
 import com.tinkerpop.blueprints.Vertex;
@@ -26,6 +27,13 @@ import co.indexia.antiquity.range.Range;
 
 /**
  * An historic {@link GraphQuery} wrapper.
+ * 
+ * <p>
+ * When a version is set, the version range is pushed down to the wrapped query
+ * as compare predicates on the valid min/max version keys, so backends that
+ * support it evaluate the range natively, the returned elements are still
+ * filtered by the iterables.
+ * </p>
  */
 public class HistoricGraphQuery<V extends Comparable<V>> extends WrappedGraphQuery {
     /**
@@ -44,6 +52,12 @@ public class HistoricGraphQuery<V extends Comparable<V>> extends WrappedGraphQue
      */
     private Boolean withInternals = false;
 
+    /**
+     * Whether the version range was pushed down to the wrapped query, the
+     * wrapped query accumulates predicates thus they are added only once.
+     */
+    private boolean versionPushedDown = false;
+
     /**
      * Create instance
      * 
@@ -56,20 +70,50 @@ public class HistoricGraphQuery<V extends Comparable<V>> extends WrappedGraphQue
     }
 
     @Override
-    public Iterable<Edge> edges() {
+    public HistoricVersionedEdgeIterable<V> edges() {
+        // Internal edges have no valid version range
+        if (!withInternals) {
+            pushDownVersion();
+        }
+
+        hg.joinTransaction();
         return new HistoricVersionedEdgeIterable<V>(this.query.edges(), hg, getVersion(), withInternals);
     }
 
     @Override
-    public Iterable<Vertex> vertices() {
+    public HistoricVersionedVertexIterable<V> vertices() {
+        pushDownVersion();
+
         return new HistoricVersionedVertexIterable<V>(this.query.vertices(), hg, getVersion());
     }
 
+    /**
+     * Add the version range predicates to the wrapped query, elements are
+     * valid for the version if their valid min version is less or equal to it
+     * and their valid max version is greater or equal to it.
+     * 
+     * Packed version ranges cannot be compared by the base graph, if the graph
+     * may hold them the range is only checked by the returned iterables.
+     * 
+     * The predicates are added once, querying both vertices and edges of the
+     * same query does not stack them.
+     */
+    private void pushDownVersion() {
+        if (version != null && !versionPushedDown && hg.isVersionRangePushDownSupported()) {
+            versionPushedDown = true;
+            this.query.has(VEProps.VALID_MIN_VERSION_PROP_KEY, com.tinkerpop.blueprints.Compare.LESS_THAN_EQUAL,
+                    version);
+            this.query.has(VEProps.VALID_MAX_VERSION_PROP_KEY, com.tinkerpop.blueprints.Compare.GREATER_THAN_EQUAL,
+                    version);
+        }
+    }
+
     private Range<V> getVersion() {
         return version == null ? null : Range.range(version, version);
     }
 
     public HistoricGraphQuery<V> forVersion(V version) {
+        Preconditions.checkState(!versionPushedDown, "Version cannot be changed once the query was executed.");
         this.version = version;
         return this;
     }
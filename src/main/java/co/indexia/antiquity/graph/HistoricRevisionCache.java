@@ -0,0 +1,340 @@
+/**
+ * Copyright (c) 2012-2014 "Indexia Technologies, ltd."
+ * 
+ * This file is part of Antiquity.
+ * 
+ * Antiquity is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.indexia.antiquity.graph;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.Sets;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Element;
+import com.tinkerpop.blueprints.Vertex;
+
+/**
+ * A bounded cache of resolved historic revisions keyed by the active id and
+ * the requested version.
+ * 
+ * <p>
+ * Revisions preceding the latest one are immutable and cached as is. The
+ * latest revision of an element changes whenever the element is modified or
+ * removed, thus it is invalidated when the element is versioned and it is
+ * also verified to still be valid for the requested version when it is hit.
+ * </p>
+ * 
+ * <p>
+ * Entries are weighed by the amount of properties of the revision.
+ * </p>
+ * 
+ * <p>
+ * Only the base ids of the revisions are cached, base elements are bound to
+ * the transaction (and on some backends to the thread) they were loaded in,
+ * thus cached revisions are reloaded from the base graph on every hit.
+ * Revisions that no longer exist (e.g rolled back) are discarded.
+ * </p>
+ * 
+ * @see Configuration#historicRevisionCacheMaxWeight
+ */
+public class HistoricRevisionCache<V extends Comparable<V>> {
+    private final HistoricVersionedGraph<?, V> graph;
+
+    private final Cache<RevisionKey<V>, CachedRevision> cache;
+
+    /**
+     * The keys of the cached latest revisions per active id, an entry is
+     * removed once none of its keys is cached.
+     */
+    private final ConcurrentMap<Object, Set<RevisionKey<V>>> latestKeys =
+            new ConcurrentHashMap<Object, Set<RevisionKey<V>>>();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Create an instance of this class.
+     * 
+     * @param graph The historic graph the revisions are resolved by.
+     * @param maxWeight The max total weight of the cached revisions.
+     */
+    HistoricRevisionCache(HistoricVersionedGraph<?, V> graph, long maxWeight) {
+        Preconditions.checkNotNull(graph, "Graph must be set.");
+        Preconditions.checkArgument(maxWeight > 0, "Max weight must be positive.");
+
+        this.graph = graph;
+        this.cache =
+                CacheBuilder.newBuilder().maximumWeight(maxWeight)
+                .weigher(new Weigher<RevisionKey<V>, CachedRevision>() {
+                    @Override
+                    public int weigh(RevisionKey<V> key, CachedRevision revision) {
+                        return revision.weight;
+                    }
+                }).removalListener(new RemovalListener<RevisionKey<V>, CachedRevision>() {
+                    @Override
+                    public void onRemoval(RemovalNotification<RevisionKey<V>, CachedRevision> notification) {
+                        // a replaced key is still cached
+                        if (notification.getCause() == RemovalCause.REPLACED) {
+                            return;
+                        }
+
+                        Object activeId = notification.getKey().activeId;
+                        Set<RevisionKey<V>> keys = latestKeys.get(activeId);
+                        if (keys != null && keys.remove(notification.getKey()) && keys.isEmpty()) {
+                            latestKeys.remove(activeId, keys);
+                        }
+                    }
+                }).build();
+    }
+
+    /**
+     * Get the cached raw revision of the specified vertex for the specified
+     * version.
+     * 
+     * @param activeId The id of the active vertex.
+     * @param version The requested version.
+     * @return the raw historic vertex or null if not cached.
+     */
+    Vertex getVertex(Object activeId, V version) {
+        return (Vertex) get(new RevisionKey<V>(Vertex.class, activeId, version));
+    }
+
+    /**
+     * Get the cached raw revision of the specified edge for the specified
+     * version.
+     * 
+     * @param activeId The id of the active edge.
+     * @param version The requested version.
+     * @return the raw historic edge or null if not cached.
+     */
+    Edge getEdge(Object activeId, V version) {
+        return (Edge) get(new RevisionKey<V>(Edge.class, activeId, version));
+    }
+
+    /**
+     * Cache the resolved raw revision of the specified vertex.
+     * 
+     * @param activeId The id of the active vertex.
+     * @param version The requested version.
+     * @param revision The resolved raw historic vertex.
+     */
+    void putVertex(Object activeId, V version, Vertex revision) {
+        put(new RevisionKey<V>(Vertex.class, activeId, version), revision);
+    }
+
+    /**
+     * Cache the resolved raw revision of the specified edge.
+     * 
+     * @param activeId The id of the active edge.
+     * @param version The requested version.
+     * @param revision The resolved raw historic edge.
+     */
+    void putEdge(Object activeId, V version, Edge revision) {
+        put(new RevisionKey<V>(Edge.class, activeId, version), revision);
+    }
+
+    /**
+     * Invalidate the cached latest revisions of the specified element.
+     * 
+     * @param activeId The id of the active element which was versioned.
+     */
+    void invalidateLatest(Object activeId) {
+        Set<RevisionKey<V>> keys = latestKeys.remove(activeId);
+        if (keys != null) {
+            cache.invalidateAll(keys);
+        }
+    }
+
+    /**
+     * Discard all the cached revisions.
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+        latestKeys.clear();
+    }
+
+    /**
+     * Amount of lookups that were served by the cache.
+     * 
+     * @return the amount of cache hits.
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Amount of lookups that were resolved by the graph.
+     * 
+     * @return the amount of cache misses.
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Ratio of lookups that were served by the cache.
+     * 
+     * @return the hit rate, 1.0 if no lookups were made.
+     */
+    public double getHitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+
+        return total == 0 ? 1.0 : (double) h / total;
+    }
+
+    /**
+     * Amount of cached revisions.
+     * 
+     * @return the amount of cached revisions.
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    private Element get(RevisionKey<V> key) {
+        CachedRevision cached = cache.getIfPresent(key);
+        Element revision = cached == null ? null : load(key.type, cached.id);
+        if (revision != null && !isLatest(revision)) {
+            hits.incrementAndGet();
+            return revision;
+        }
+
+        // latest revisions must still be valid for the requested version
+        if (revision != null && graph.utils.getVersionRange(revision).contains(key.version)) {
+            hits.incrementAndGet();
+            return revision;
+        }
+
+        if (cached != null) {
+            cache.invalidate(key);
+        }
+
+        misses.incrementAndGet();
+        return null;
+    }
+
+    private Element load(Class<? extends Element> type, Object id) {
+        return type == Vertex.class ? graph.getBaseGraph().getVertex(id) : graph.getBaseGraph().getEdge(id);
+    }
+
+    private void put(RevisionKey<V> key, Element revision) {
+        if (isLatest(revision)) {
+            trackLatest(key);
+        }
+
+        cache.put(key, new CachedRevision(revision.getId(), 1 + revision.getPropertyKeys().size()));
+    }
+
+    /**
+     * Track the specified key of a latest revision so it is invalidated once
+     * its element is versioned.
+     */
+    private void trackLatest(RevisionKey<V> key) {
+        while (true) {
+            Set<RevisionKey<V>> keys = latestKeys.get(key.activeId);
+            if (keys == null) {
+                Set<RevisionKey<V>> newKeys = Sets.newSetFromMap(new ConcurrentHashMap<RevisionKey<V>, Boolean>());
+                keys = latestKeys.putIfAbsent(key.activeId, newKeys);
+                if (keys == null) {
+                    keys = newKeys;
+                }
+            }
+
+            keys.add(key);
+
+            // the set may have been removed once it was emptied meanwhile
+            if (latestKeys.get(key.activeId) == keys) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Amount of active ids whose cached latest revisions are tracked.
+     * 
+     * @return the amount of tracked active ids.
+     */
+    int getTrackedLatestCount() {
+        return latestKeys.size();
+    }
+
+    /**
+     * Determine whether the specified raw revision may still change, edges
+     * have a single revision and only older vertex revisions refer to their
+     * latest revision.
+     */
+    private boolean isLatest(Element revision) {
+        return revision instanceof Edge || revision.getProperty(VEProps.REF_TO_LATEST_HISTORIC_ID_KEY) == null;
+    }
+
+    /**
+     * The base id of a cached revision and its weight.
+     */
+    private static final class CachedRevision {
+        private final Object id;
+        private final int weight;
+
+        CachedRevision(Object id, int weight) {
+            this.id = id;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * The key of a resolved revision.
+     */
+    private static final class RevisionKey<V> {
+        private final Class<? extends Element> type;
+        private final Object activeId;
+        private final V version;
+
+        RevisionKey(Class<? extends Element> type, Object activeId, V version) {
+            this.type = type;
+            this.activeId = activeId;
+            this.version = version;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof RevisionKey)) {
+                return false;
+            }
+
+            RevisionKey<?> other = (RevisionKey<?>) o;
+            return type.equals(other.type) && activeId.equals(other.activeId) && version.equals(other.version);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(type, activeId, version);
+        }
+    }
+}
@@ -32,9 +32,9 @@ import co.indexia.antiquity.range.Range;
  */
 public class HistoricVersionedEdge<V extends Comparable<V>> extends HistoricVersionedElement<V, Edge> implements Edge {
     /**
-     * the raw edge, wrapped as read-only.
+     * the raw edge, wrapped as read-only, lazily created.
      */
-    private final ReadOnlyEdge edge;
+    private ReadOnlyEdge edge;
 
     /**
      * Creates an instance.
@@ -45,12 +45,25 @@ public class HistoricVersionedEdge<V extends Comparable<V>> extends HistoricVers
      *        filtered upon.
      */
     protected HistoricVersionedEdge(Edge rawEdge, HistoricVersionedGraph<?, V> graph, Range<V> version) {
-        super(rawEdge, graph, version);
+        this(rawEdge, graph, version, true);
+    }
+
+    /**
+     * Creates an instance, optionally without validating the type of the raw
+     * edge.
+     * 
+     * @see HistoricVersionedElement
+     * @param rawEdge the base edge to be wrapped as read-only.
+     * @param graph the graph instance this element is associated with.
+     * @param version the requested version range associated elements will be
+     *        filtered upon.
+     * @param validate if true the raw edge is validated not to be active.
+     */
+    HistoricVersionedEdge(Edge rawEdge, HistoricVersionedGraph<?, V> graph, Range<V> version, boolean validate) {
+        super(rawEdge, graph, version, validate);
 
         if (rawEdge instanceof ReadOnlyEdge) {
             this.edge = (ReadOnlyEdge) rawEdge;
-        } else {
-            this.edge = new ReadOnlyEdge(rawEdge);
         }
     }
 
@@ -63,7 +76,7 @@ public class HistoricVersionedEdge<V extends Comparable<V>> extends HistoricVers
         Vertex latest = getRaw().getVertex(direction);
 
         getGraph().utils.ensureHistoricType(latest);
-        HistoricVersionedVertex<V> lhv = new HistoricVersionedVertex<V>(latest, getGraph(), getVersion());
+        HistoricVersionedVertex<V> lhv = new HistoricVersionedVertex<V>(latest, getGraph(), getVersion(), false);
         if (getGraph().utils.getVersionRange(latest).contains(getVersion().min())) {
             return lhv;
         } else {
@@ -73,19 +86,19 @@ public class HistoricVersionedEdge<V extends Comparable<V>> extends HistoricVers
 
     @Override
     public String getLabel() {
-        return edge.getLabel();
+        return getRaw().getLabel();
     }
 
     @Override
     public <T> T getProperty(String key) {
         // Currently edge's properties versioning is unsupported.
-        return edge.getProperty(key);
+        return getRaw().getProperty(key);
     }
 
     @Override
     public Set<String> getPropertyKeys() {
         // Currently edge's properties versioning is unsupported.
-        Set<String> keys = edge.getPropertyKeys();
+        Set<String> keys = getRaw().getPropertyKeys();
         keys.removeAll(VEProps.antiquityElementsKeys);
 
         return keys;
@@ -94,12 +107,12 @@ public class HistoricVersionedEdge<V extends Comparable<V>> extends HistoricVers
     // ---- Write unsupported methods, protected by the read only vertex.
     @Override
     public void setProperty(String key, Object value) {
-        edge.setProperty(key, value);
+        getReadOnlyEdge().setProperty(key, value);
     }
 
     @Override
     public <T> T removeProperty(String key) {
-        edge.removeProperty(key);
+        getReadOnlyEdge().removeProperty(key);
         // should never get here
         return null;
     }
@@ -107,6 +120,14 @@ public class HistoricVersionedEdge<V extends Comparable<V>> extends HistoricVers
 
     @Override
     public void remove() {
-        edge.remove();
+        getReadOnlyEdge().remove();
+    }
+
+    private ReadOnlyEdge getReadOnlyEdge() {
+        if (edge == null) {
+            edge = new ReadOnlyEdge(getRaw());
+        }
+
+        return edge;
     }
 }
@@ -88,12 +88,8 @@ class HistoricVersionedEdgeIterable<V extends Comparable<V>> implements Closeabl
                     // TODO: May happen?
                     return edge;
                 } else {
-                    Boolean internal = graph.utils.isInternal(edge);
-
-                    if (!internal) {
-                        Preconditions.checkArgument(graph.utils.getElementType(edge) == VEProps.GRAPH_TYPE.HISTORIC,
-                                "Edge must be historic");
-                    }
+                    // the edge was already classified as internal or historic
+                    // by the predicate.
 
                     // If no version is specified (typically because
                     // h.getEdges() is invoked, we filter by start version.
@@ -105,7 +101,7 @@ class HistoricVersionedEdgeIterable<V extends Comparable<V>> implements Closeabl
                         versionToFilterBy = version;
                     }
 
-                    return new HistoricVersionedEdge<V>(edge, graph, versionToFilterBy);
+                    return new HistoricVersionedEdge<V>(edge, graph, versionToFilterBy, false);
                 }
             }
 
@@ -53,6 +53,25 @@ public abstract class HistoricVersionedElement<V extends Comparable<V>, T extend
      * @param version the requested version range to filter upon.
      */
     public HistoricVersionedElement(T rawElement, HistoricVersionedGraph<?, V> graph, Range<V> version) {
+        this(rawElement, graph, version, true);
+    }
+
+    /**
+     * Creates an instance, optionally without validating the type of the raw
+     * element.
+     * 
+     * <p>
+     * Validation reads the properties of the raw element, it should be
+     * skipped only if the raw element is already known to be historic, e.g it
+     * was classified once by the iterable that returns it.
+     * </p>
+     * 
+     * @param rawElement the edge that was loaded from the underline graph.
+     * @param graph the graph instance this element is associated with.
+     * @param version the requested version range to filter upon.
+     * @param validate if true the raw element is validated not to be active.
+     */
+    HistoricVersionedElement(T rawElement, HistoricVersionedGraph<?, V> graph, Range<V> version, boolean validate) {
         Preconditions.checkNotNull(rawElement, "Raw element must be set.");
         Preconditions.checkNotNull(graph, "Graph must be set.");
         Preconditions.checkNotNull(version, "Version must be set.");
@@ -60,7 +79,7 @@ public abstract class HistoricVersionedElement<V extends Comparable<V>, T extend
         Preconditions.checkArgument((!(rawElement instanceof HistoricVersionedElement)),
                 "rawElement cannot be instance of HistoricVersionElement");
 
-        if (!graph.utils.isInternal(rawElement)) {
+        if (validate && !graph.utils.isInternal(rawElement)) {
             Preconditions.checkArgument(graph.utils.getElementType(rawElement) != VEProps.GRAPH_TYPE.ACTIVE,
                     "Raw element cannot be active");
         }
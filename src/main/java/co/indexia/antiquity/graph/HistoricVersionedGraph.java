@@ -21,10 +21,14 @@ package co.indexia.antiquity.graph;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
+import com.google.common.base.Charsets;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Ordering;
-import com.tinkerpop.blueprints.Direction;
+import com.google.common.hash.Hashing;
+import com.tinkerpop.blueprints.Compare;
 import com.tinkerpop.blueprints.Edge;
 import com.tinkerpop.blueprints.Element;
 import com.tinkerpop.blueprints.GraphQuery;
@@ -54,9 +58,64 @@ public class HistoricVersionedGraph<T extends KeyIndexableGraph, V extends Compa
 
     private final ReadOnlyGraph<T> baseGraph;
 
+    /**
+     * The writer of the history, null if history is written synchronously.
+     */
+    private volatile AsyncHistoryWriter<V> historyWriter;
+
+    /**
+     * The cache of resolved revisions, null if revisions are not cached.
+     */
+    private final HistoricRevisionCache<V> revisionCache;
+
+    /**
+     * The base graph ids of the latest historic vertex revisions keyed by
+     * their active id key, null if disabled.
+     * 
+     * <p>
+     * The map is populated when the graph is built, by scanning the history
+     * (see {@link #rebuildLatestRevisions()}), and a latest revision is
+     * registered whenever it is resolved or created from then on. Resolved
+     * revisions are verified, thus a stale map only costs a lookup.
+     * </p>
+     * 
+     * @see #getActiveIdKey(Object)
+     */
+    private final OffHeapLongLongMap latestRevisions;
+
+    /**
+     * Whether a revision with a non long base id was seen, such revisions
+     * cannot be registered in {@link #latestRevisions}.
+     */
+    private volatile boolean nonLongRevisionIds = false;
+
+    /**
+     * The value of an active id which is not found in the latest revisions
+     * map.
+     */
+    private static final long MISSING_REVISION = Long.MIN_VALUE;
+
     public HistoricVersionedGraph(T baseGraph, GraphIdentifierBehavior<V> identifierBehavior, Configuration conf) {
         super(baseGraph, identifierBehavior, conf);
         this.baseGraph = new ReadOnlyGraph(baseGraph);
+        if (this.conf.isHistoricRevisionCacheEnabled()) {
+            this.revisionCache = new HistoricRevisionCache<V>(this, this.conf.getHistoricRevisionCacheMaxWeight());
+        } else {
+            this.revisionCache = null;
+        }
+        if (this.conf.getLatestRevisionMapEnabled()) {
+            int segments = this.conf.getLatestRevisionMapSegments();
+            Preconditions.checkArgument(segments > 0 && Integer.bitCount(segments) == 1,
+                    "Latest revision map segments must be a positive power of two.");
+            Preconditions.checkArgument(this.conf.getLatestRevisionMapInitialCapacity() > 0,
+                    "Latest revision map initial capacity must be positive.");
+
+            this.latestRevisions =
+                    new OffHeapLongLongMap(Integer.numberOfTrailingZeros(segments), Math.max(1,
+                            this.conf.getLatestRevisionMapInitialCapacity() / segments));
+        } else {
+            this.latestRevisions = null;
+        }
         validate();
     }
 
@@ -75,6 +134,145 @@ public class HistoricVersionedGraph<T extends KeyIndexableGraph, V extends Compa
         return getRootVertex(VEProps.GRAPH_TYPE.HISTORIC);
     }
 
+    /**
+     * Get the cache of the resolved historic revisions.
+     * 
+     * @see Configuration#historicRevisionCacheMaxWeight
+     * @return the revisions cache or null if revisions are not cached.
+     */
+    public HistoricRevisionCache<V> getRevisionCache() {
+        return revisionCache;
+    }
+
+    /**
+     * Invalidate the cached latest revision of the specified element, must be
+     * invoked whenever the latest revision of an element is changed.
+     * 
+     * @param activeId The id of the active element.
+     */
+    void invalidateLatestRevision(Object activeId) {
+        if (revisionCache != null) {
+            revisionCache.invalidateLatest(activeId);
+        }
+    }
+
+    /**
+     * Register the latest historic revision of the specified active vertex,
+     * must be invoked whenever a latest historic revision is created.
+     * 
+     * <p>
+     * Only long base ids are supported, revisions with other ids are not
+     * registered and are resolved by their hard id instead.
+     * </p>
+     * 
+     * @param activeId The id of the active vertex.
+     * @param latest The raw latest historic revision.
+     */
+    void registerLatestRevision(Object activeId, Vertex latest) {
+        if (latestRevisions == null) {
+            return;
+        }
+
+        if (latest.getId() instanceof Long) {
+            latestRevisions.put(getActiveIdKey(activeId), (Long) latest.getId());
+        } else if (!nonLongRevisionIds) {
+            nonLongRevisionIds = true;
+            log.warn("The latest revisions map supports long base ids only, revision [{}] of type [{}] is not "
+                    + "registered, such revisions are resolved by their hard id.", latest.getId(), latest.getId()
+                    .getClass().getName());
+        }
+    }
+
+    /**
+     * Free the memory of the latest revisions map, invoked once the graph is
+     * shut down.
+     */
+    void releaseLatestRevisions() {
+        if (latestRevisions != null) {
+            latestRevisions.release();
+        }
+    }
+
+    /**
+     * Populate the latest revisions map from all the historic vertices of the
+     * graph, does nothing if the map is disabled. Invoked once the graph is
+     * built, revisions that are resolved or created later are registered as
+     * they are.
+     * 
+     * <p>
+     * Historic vertices are found by {@link VEProps#HISTORIC_ELEMENT_PROP_KEY},
+     * which every historic vertex holds. The key is not indexed, thus the
+     * base graph scans all of its vertices, and latest revisions are told
+     * apart from older ones by not referring to a latest revision.
+     * </p>
+     * 
+     * @see Configuration#latestRevisionMapEnabled
+     */
+    public void rebuildLatestRevisions() {
+        if (latestRevisions == null) {
+            return;
+        }
+
+        latestRevisions.clear();
+        for (Vertex v : getBaseGraph().query().has(VEProps.HISTORIC_ELEMENT_PROP_KEY, true).vertices()) {
+            // only older revisions refer to their latest revision
+            if (!utils.isInternal(v) && v.getProperty(VEProps.REF_TO_LATEST_HISTORIC_ID_KEY) == null) {
+                registerLatestRevision(v.getProperty(VEProps.REF_TO_ACTIVE_ID_KEY), v);
+            }
+        }
+
+        log.info("Rebuilt the latest revisions map with [{}] vertices.", latestRevisions.size());
+    }
+
+    /**
+     * Get the primitive key of the specified active id, ids of different
+     * elements may share a key thus resolved revisions must be verified.
+     * 
+     * @param activeId The active id.
+     * @return the long key of the id.
+     */
+    private long getActiveIdKey(Object activeId) {
+        if (activeId instanceof Long || activeId instanceof Integer) {
+            return ((Number) activeId).longValue();
+        }
+
+        return Hashing.murmur3_128().hashString(activeId.toString(), Charsets.UTF_8).asLong();
+    }
+
+    /**
+     * Set the writer of the history when history is written asynchronously.
+     * 
+     * @param historyWriter the history writer.
+     */
+    void setHistoryWriter(AsyncHistoryWriter<V> historyWriter) {
+        this.historyWriter = historyWriter;
+    }
+
+    /**
+     * Wait until the history of the specified version (and all the versions
+     * preceding it) is written.
+     * 
+     * <p>
+     * Returns immediately if history is written synchronously.
+     * </p>
+     * 
+     * @see Configuration#asyncHistoryQueueSize
+     * @param version The version to wait for.
+     * @param timeout The max time to wait.
+     * @param unit The unit of the timeout.
+     * @return true if the history of the version is available, false if the
+     *         timeout elapsed.
+     * @throws InterruptedException if interrupted while waiting.
+     * @throws IllegalStateException if the history of the version or of a
+     *         version preceding it could not be written.
+     */
+    public boolean awaitVersion(V version, long timeout, TimeUnit unit) throws InterruptedException {
+        Preconditions.checkNotNull(version, "version must be set.");
+
+        AsyncHistoryWriter<V> writer = historyWriter;
+        return writer == null || writer.awaitVersion(version, timeout, unit);
+    }
+
     // Graph operation overrides
     // --------------------------------------------------------------
 
@@ -109,8 +307,8 @@ public class HistoricVersionedGraph<T extends KeyIndexableGraph, V extends Compa
             if (vertex instanceof HistoricVersionedVertex) {
                 return (HistoricVersionedVertex<V>) vertex;
             } else {
-                return new HistoricVersionedVertex<V>(vertex, this, Range.range(utils.getStartVersion(vertex),
-                        utils.getStartVersion(vertex)));
+                V start = utils.getStartVersion(vertex);
+                return new HistoricVersionedVertex<V>(vertex, this, Range.range(start, start), false);
             }
         } else {
             log.debug("Vertex with [{}] was not found.", id);
@@ -167,7 +365,7 @@ public class HistoricVersionedGraph<T extends KeyIndexableGraph, V extends Compa
             } else {
                 utils.ensureHistoricType(edge);
                 V start = utils.getStartVersion(edge);
-                return new HistoricVersionedEdge<V>(edge, this, Range.range(start, start));
+                return new HistoricVersionedEdge<V>(edge, this, Range.range(start, start), false);
             }
         } else {
             log.debug("Edge with [{}] was not found.", id);
@@ -239,10 +437,17 @@ public class HistoricVersionedGraph<T extends KeyIndexableGraph, V extends Compa
      * @return a historic vertex revision for the specified version
      */
     public HistoricVersionedVertex<V> getVertexForVersion(ActiveVersionedVertex<V> active, V version) {
+        if (revisionCache != null) {
+            Vertex cached = revisionCache.getVertex(active.getId(), version);
+            if (cached != null) {
+                return new HistoricVersionedVertex<V>(cached, this, Range.range(version, version), false);
+            }
+        }
+
         HistoricVersionedVertex<V> latest = getLatestHistoricRevision(active);
         latest.setVersion(Range.range(version, version));
 
-        return getMatchedHistoricVersion(latest, version);
+        return cacheVertex(active.getId(), version, getMatchedHistoricVersion(latest, version));
     }
 
     /**
@@ -254,37 +459,74 @@ public class HistoricVersionedGraph<T extends KeyIndexableGraph, V extends Compa
      * @return a historic vertex revision for the specified version
      */
     public HistoricVersionedVertex<V> getVertexForVersion(Object activeId, V version) {
+        if (revisionCache != null) {
+            Vertex cached = revisionCache.getVertex(activeId, version);
+            if (cached != null) {
+                return new HistoricVersionedVertex<V>(cached, this, Range.range(version, version), false);
+            }
+        }
+
         HistoricVersionedVertex<V> latest = (HistoricVersionedVertex<V>) getVertex(activeId);
         latest.setVersion(Range.range(version, version));
 
-        return getMatchedHistoricVersion(latest, version);
+        return cacheVertex(activeId, version, getMatchedHistoricVersion(latest, version));
     }
 
 
     public HistoricVersionedEdge<V> getEdgeForVersion(Object activeId, V version) {
+        if (revisionCache != null) {
+            Edge cached = revisionCache.getEdge(activeId, version);
+            if (cached != null) {
+                return new HistoricVersionedEdge<V>(cached, this, Range.range(version, version), false);
+            }
+        }
+
         HistoricVersionedEdge<V> latest = (HistoricVersionedEdge<V>) getEdge(activeId);
         latest.setVersion(Range.range(version, version));
         Range<V> verRange = utils.getVersionRange(latest);
 
         if (verRange.contains(version)) {
-            return latest;
+            return cacheEdge(activeId, version, latest);
         }
 
         return null;
     }
 
     public HistoricVersionedEdge<V> getEdgeForVersion(ActiveVersionedEdge<V> active, V version) {
+        if (revisionCache != null) {
+            Edge cached = revisionCache.getEdge(active.getId(), version);
+            if (cached != null) {
+                return new HistoricVersionedEdge<V>(cached, this, Range.range(version, version), false);
+            }
+        }
+
         HistoricVersionedEdge<V> edge = getLatestHistoricRevision(active);
         edge.setVersion(Range.range(version, version));
         Range<V> verRange = utils.getVersionRange(edge);
 
         if (verRange.contains(version)) {
-            return edge;
+            return cacheEdge(active.getId(), version, edge);
         }
 
         return null;
     }
 
+    private HistoricVersionedVertex<V> cacheVertex(Object activeId, V version, HistoricVersionedVertex<V> revision) {
+        if (revisionCache != null && revision != null) {
+            revisionCache.putVertex(activeId, version, revision.getRaw());
+        }
+
+        return revision;
+    }
+
+    private HistoricVersionedEdge<V> cacheEdge(Object activeId, V version, HistoricVersionedEdge<V> revision) {
+        if (revisionCache != null) {
+            revisionCache.putEdge(activeId, version, revision.getRaw());
+        }
+
+        return revision;
+    }
+
     public HistoricVersionedVertex<V> getMatchedHistoricVersion(HistoricVersionedVertex later, V version) {
         Range<V> verRange = utils.getVersionRange(later);
 
@@ -292,21 +534,18 @@ public class HistoricVersionedGraph<T extends KeyIndexableGraph, V extends Compa
         log.trace("Is vertex [{}] with range [{}] contains version [{}]?", later, verRange, version);
 
         if (!verRange.contains(version)) {
-            Iterable<Edge> prevVerEdges = (later.getBaseElement()).getEdges(Direction.OUT, VEProps.PREV_VERSION_LABEL);
+            Vertex rawVertex = utils.findRevision(later.getBaseElement(), version);
 
-            if (!prevVerEdges.iterator().hasNext()) {
+            if (rawVertex == null) {
                 // throw ExceptionFactory.notFoundException(String.format(
                 // "Cannot find vertex %s in revision history for version [%s].",
                 // later, version));
-                log.info("Cannot find vertex %s in revision history for version [%s].", later, version);
+                log.info("Cannot find vertex {} in revision history for version [{}].", later, version);
                 return null;
             }
 
-            Edge rawEdge = prevVerEdges.iterator().next();
-            Vertex rawVertex = rawEdge.getVertex(Direction.IN);
-            HistoricVersionedVertex<V> nextLater =
-                    new HistoricVersionedVertex<V>(rawVertex, this, Range.range(version, version));
-            return getMatchedHistoricVersion((HistoricVersionedVertex<V>) nextLater, version);
+            log.debug("Found vertex[{}] in revision history for version [{}].", later, version);
+            return new HistoricVersionedVertex<V>(rawVertex, this, Range.range(version, version), false);
         }
 
         log.debug("Found vertex[{}] in revision history for version [{}].", later, version);
@@ -323,7 +562,17 @@ public class HistoricVersionedGraph<T extends KeyIndexableGraph, V extends Compa
     public HistoricVersionedVertexIterable<V> getVertices(V version) {
         Preconditions.checkNotNull(version, "Version must be specified.");
 
-        return new HistoricVersionedVertexIterable<V>(getVertices(), this, Range.range(version, version));
+        if (isIntervalIndexed(version)) {
+            List<Iterable<Vertex>> nodes = new ArrayList<Iterable<Vertex>>();
+            boolean pushDown = isVersionRangePushDownSupported();
+            for (Long node : TemporalIntervalIndex.getQueryNodes((Long) version)) {
+                nodes.add(getIntervalNodeQuery(version, node, pushDown).vertices());
+            }
+
+            return new HistoricVersionedVertexIterable<V>(Iterables.concat(nodes), this, Range.range(version, version));
+        }
+
+        return ((HistoricGraphQuery<V>) query()).forVersion(version).vertices();
     }
 
     /**
@@ -342,7 +591,7 @@ public class HistoricVersionedGraph<T extends KeyIndexableGraph, V extends Compa
 
         // TODO: Consider forbidding retrieving edges by internal keys
         // (especially NATURAL_VERTEX_ID_PROP_KEY), otherwise throw exception.
-        return new HistoricVersionedVertexIterable<V>(getVertices(key, value), this, Range.range(version, version));
+        return ((HistoricGraphQuery<V>) query()).forVersion(version).has(key, value).vertices();
     }
 
     /**
@@ -381,9 +630,90 @@ public class HistoricVersionedGraph<T extends KeyIndexableGraph, V extends Compa
      * @return An {@link Iterable} of the found edges for the specified version.
      */
     public Iterable<Edge> getEdges(V version) {
+        if (isIntervalIndexed(version)) {
+            List<Iterable<Edge>> nodes = new ArrayList<Iterable<Edge>>();
+            boolean pushDown = isVersionRangePushDownSupported();
+            joinTransaction();
+            for (Long node : TemporalIntervalIndex.getQueryNodes((Long) version)) {
+                nodes.add(getIntervalNodeQuery(version, node, pushDown).edges());
+            }
+
+            return new HistoricVersionedEdgeIterable<V>(Iterables.concat(nodes), this, Range.range(version, version),
+                    false);
+        }
+
         return ((HistoricGraphQuery<V>) query()).forVersion(version).withInternals(false).edges();
     }
 
+    /**
+     * Determine whether snapshots of the specified version are read via the
+     * temporal interval index.
+     * 
+     * <p>
+     * Revisions written while the index was disabled are not registered at
+     * the index, thus the index is used only if the graph was initialized with
+     * it and was never built without it since, otherwise snapshots are
+     * scanned.
+     * </p>
+     * 
+     * @see VEProps#INTERVAL_INDEXED_PROP_KEY
+     * @param version The version of the snapshot.
+     * @return true if the temporal interval index should be used.
+     */
+    boolean isIntervalIndexed(V version) {
+        return conf.getTemporalIntervalIndexEnabled()
+                && version instanceof Long
+                && Boolean.TRUE.equals(getRootVertex(VEProps.GRAPH_TYPE.HISTORIC).getProperty(
+                        VEProps.INTERVAL_INDEXED_PROP_KEY));
+    }
+
+    /**
+     * Determine whether the version range predicates may be pushed down to
+     * base graph queries.
+     * 
+     * <p>
+     * Packed version ranges cannot be compared by the base graph, thus the
+     * predicates are pushed down only if no graph instance ever stored packed
+     * ranges, regardless of the current configuration.
+     * </p>
+     * 
+     * @see VEProps#PACKED_VERSION_RANGES_PROP_KEY
+     * @return true if the historic elements hold min and max version
+     *         properties.
+     */
+    boolean isVersionRangePushDownSupported() {
+        return !conf.getCompactVersionRangeEnabled()
+                && !Boolean.TRUE.equals(getRootVertex(VEProps.GRAPH_TYPE.HISTORIC).getProperty(
+                        VEProps.PACKED_VERSION_RANGES_PROP_KEY));
+    }
+
+    /**
+     * Get a base graph query for the historic elements that are valid for the
+     * specified version and registered at the specified interval index node.
+     * 
+     * <p>
+     * The node predicate comes first, the base graph resolves the query by
+     * the key index of its first indexed predicate.
+     * </p>
+     * 
+     * @see TemporalIntervalIndex
+     * @param version The version the elements should be valid for.
+     * @param node The interval index node.
+     * @param pushDown Whether the version range predicates are added.
+     * @return a base graph query.
+     */
+    private GraphQuery getIntervalNodeQuery(V version, Long node, boolean pushDown) {
+        GraphQuery query =
+                getBaseGraph().query().has(VEProps.VALID_INTERVAL_NODE_PROP_KEY, node)
+                        .has(VEProps.HISTORIC_ELEMENT_PROP_KEY, true);
+        if (!pushDown) {
+            return query;
+        }
+
+        return query.has(VEProps.VALID_MIN_VERSION_PROP_KEY, Compare.LESS_THAN_EQUAL, version).has(
+                VEProps.VALID_MAX_VERSION_PROP_KEY, Compare.GREATER_THAN_EQUAL, version);
+    }
+
     /**
      * Return an iterable to all the edges in the graph that have a particular
      * key/value property for the specified version.
@@ -406,7 +736,25 @@ public class HistoricVersionedGraph<T extends KeyIndexableGraph, V extends Compa
      * @return the latest historic revision.
      */
     public HistoricVersionedVertex<V> getLatestHistoricRevision(ActiveVersionedVertex<V> a) {
-        return getVertexByHardId(a.getProperty(VEProps.REF_TO_LATEST_HISTORIC_ID_KEY));
+        if (latestRevisions != null) {
+            long id = latestRevisions.get(getActiveIdKey(a.getId()), MISSING_REVISION);
+            Vertex raw = id == MISSING_REVISION ? null : getBaseGraph().getVertex(id);
+
+            // the map may be stale (e.g rolled back revisions), verify it
+            if (raw != null && Boolean.TRUE.equals(raw.getProperty(VEProps.HISTORIC_ELEMENT_PROP_KEY))
+                    && raw.getProperty(VEProps.REF_TO_LATEST_HISTORIC_ID_KEY) == null
+                    && a.getId().equals(raw.getProperty(VEProps.REF_TO_ACTIVE_ID_KEY))) {
+                V start = utils.getStartVersion(raw);
+                return new HistoricVersionedVertex<V>(raw, this, Range.range(start, start), false);
+            }
+        }
+
+        HistoricVersionedVertex<V> latest = getVertexByHardId(a.getProperty(VEProps.REF_TO_LATEST_HISTORIC_ID_KEY));
+        if (latest != null) {
+            registerLatestRevision(a.getId(), latest.getRaw());
+        }
+
+        return latest;
     }
 
     /**
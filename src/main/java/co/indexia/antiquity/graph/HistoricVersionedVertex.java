@@ -18,6 +18,8 @@
  */
 package co.indexia.antiquity.graph;
 
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import com.tinkerpop.blueprints.Direction;
@@ -34,9 +36,17 @@ import co.indexia.antiquity.range.Range;
 public class HistoricVersionedVertex<V extends Comparable<V>> extends HistoricVersionedElement<V, Vertex> implements
         Vertex {
     /**
-     * the raw vertex, wrapped as read-only.
+     * the raw vertex, wrapped as read-only, lazily created.
      */
-    private final ReadOnlyVertex vertex;
+    private ReadOnlyVertex vertex;
+
+    /**
+     * The reconstructed properties if this vertex is a delta revision, lazily
+     * loaded.
+     * 
+     * @see Configuration#historicKeyframeInterval
+     */
+    private Map<String, Object> deltaProps;
 
     /**
      * Creates an instance.
@@ -46,14 +56,26 @@ public class HistoricVersionedVertex<V extends Comparable<V>> extends HistoricVe
      * @param version the requested version range to filter upon.
      */
     protected HistoricVersionedVertex(Vertex rawVertex, HistoricVersionedGraph<?, V> graph, Range<V> version) {
-        super(rawVertex, graph, version);
+        this(rawVertex, graph, version, true);
+    }
+
+    /**
+     * Creates an instance, optionally without validating the type of the raw
+     * vertex.
+     * 
+     * @see HistoricVersionedElement
+     * @param rawVertex the base vertex to be wrapped as read-only.
+     * @param graph the graph instance this element is associated with.
+     * @param version the requested version range to filter upon.
+     * @param validate if true the raw vertex is validated not to be active.
+     */
+    HistoricVersionedVertex(Vertex rawVertex, HistoricVersionedGraph<?, V> graph, Range<V> version, boolean validate) {
+        super(rawVertex, graph, version, validate);
 
         // this if condition may happen if rawVertex was created via
         // HistoricVersionedEdge#getVertex(Direction direction)
         if (rawVertex instanceof ReadOnlyVertex) {
             this.vertex = (ReadOnlyVertex) rawVertex;
-        } else {
-            this.vertex = new ReadOnlyVertex(rawVertex);
         }
     }
 
@@ -93,22 +115,54 @@ public class HistoricVersionedVertex<V extends Comparable<V>> extends HistoricVe
     @Override
     @SuppressWarnings("unchecked")
     public Object getProperty(String key) {
-        return vertex.getProperty(key);
+        if (!VEProps.antiquityElementsKeys.contains(key) && isDeltaRevision()) {
+            return getDeltaProps().get(key);
+        }
+
+        return getRaw().getProperty(key);
     }
 
     @Override
     public Set<String> getPropertyKeys() {
-        Set<String> keys = getBaseElement().getPropertyKeys();
+        if (isDeltaRevision()) {
+            return new HashSet<String>(getDeltaProps().keySet());
+        }
+
+        Set<String> keys = getRaw().getPropertyKeys();
         keys.removeAll(VEProps.antiquityElementsKeys);
 
         return keys;
     }
 
     protected Set<String> getPropertyKeys(boolean withInternals) {
-        if (withInternals)
-            return getBaseElement().getPropertyKeys();
-        else
+        if (withInternals) {
+            Set<String> keys = getRaw().getPropertyKeys();
+            if (isDeltaRevision()) {
+                keys.addAll(getDeltaProps().keySet());
+            }
+
+            return keys;
+        } else {
             return this.getPropertyKeys();
+        }
+    }
+
+    /**
+     * Determine whether this vertex is a delta revision which stores only the
+     * properties that differ from its later revision.
+     * 
+     * @return true if this vertex is a delta revision.
+     */
+    public boolean isDeltaRevision() {
+        return deltaProps != null || getGraph().utils.isDeltaRevision(getRaw());
+    }
+
+    private Map<String, Object> getDeltaProps() {
+        if (deltaProps == null) {
+            deltaProps = getGraph().utils.reconstructDeltaProps(getRaw());
+        }
+
+        return deltaProps;
     }
 
     @Override
@@ -120,27 +174,31 @@ public class HistoricVersionedVertex<V extends Comparable<V>> extends HistoricVe
     // ---- Write unsupported methods, protected by the read only vertex.
     @Override
     public Edge addEdge(String label, Vertex inVertex) {
-        return vertex.addEdge(label, inVertex);
+        return getBaseElement().addEdge(label, inVertex);
     }
 
     @Override
     public void setProperty(String key, Object value) {
-        vertex.setProperty(key, value);
+        getBaseElement().setProperty(key, value);
     }
 
     @Override
     public <T> T removeProperty(String key) {
-        vertex.removeProperty(key);
+        getBaseElement().removeProperty(key);
         // should never get here
         return null;
     }
 
     @Override
     public void remove() {
-        vertex.remove();
+        getBaseElement().remove();
     }
 
     public ReadOnlyVertex getBaseElement() {
+        if (vertex == null) {
+            vertex = new ReadOnlyVertex(getRaw());
+        }
+
         return vertex;
     }
 }
@@ -21,6 +21,7 @@ package co.indexia.antiquity.graph;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.tinkerpop.blueprints.Edge;
+import co.indexia.antiquity.graph.VersionedElementUtils.HistoricClass;
 import co.indexia.antiquity.range.Range;
 
 import org.slf4j.Logger;
@@ -71,29 +72,19 @@ public class HistoricVersionedVertexEdgePredicate<V extends Comparable<V>> imple
 
     @Override
     public boolean apply(Edge edge) {
-        // if internals should be filtered
-        if (!withInternalEdges && graph.utils.isInternal(edge)) {
-            return false;
-        }
+        HistoricClass historicClass = graph.utils.classifyHistoric(edge, version);
 
-        // if internals should be included
-        if (withInternalEdges && graph.utils.isInternal(edge)) {
-            return true;
+        // internals are included only if requested
+        if (historicClass == HistoricClass.INTERNAL) {
+            return withInternalEdges;
         }
 
-
-        graph.utils.ensureHistoricType(edge);
-
         // if no version is specified, we do not filter.
-        if (version == null) {
-            return true;
+        boolean isEdgeInRange = historicClass == HistoricClass.IN_RANGE;
+        if (log.isTraceEnabled()) {
+            log.trace("Is edge[{}] is valid for version [{}] ? {}", edge, version, isEdgeInRange);
         }
 
-        Range<V> edgeRange = graph.utils.getVersionRange(edge);
-        boolean isEdgeInRange = edgeRange.contains(version);
-        log.trace("Is edge[{}] with version [{}] is valid for version [{}] ? {}", edge, edgeRange, version,
-                isEdgeInRange);
-
         return isEdgeInRange;
     }
 }
@@ -89,9 +89,9 @@ public class HistoricVersionedVertexIterable<V extends Comparable<V>> implements
 
             @Override
             public Vertex next() {
+                // the vertex was already classified as historic by the
+                // predicate.
                 Vertex v = this.itty.next();
-                Preconditions.checkArgument(graph.utils.getElementType(v) != VEProps.GRAPH_TYPE.ACTIVE,
-                        "Vertex cannot be active.");
 
                 if (v instanceof HistoricVersionedVertex) {
                     return v;
@@ -107,7 +107,7 @@ public class HistoricVersionedVertexIterable<V extends Comparable<V>> implements
                         versionToFilterBy = version;
                     }
 
-                    return new HistoricVersionedVertex<V>(v, graph, versionToFilterBy);
+                    return new HistoricVersionedVertex<V>(v, graph, versionToFilterBy, false);
                 }
             }
 
@@ -21,6 +21,7 @@ package co.indexia.antiquity.graph;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.tinkerpop.blueprints.Vertex;
+import co.indexia.antiquity.graph.VersionedElementUtils.HistoricClass;
 import co.indexia.antiquity.range.Range;
 
 import org.slf4j.Logger;
@@ -54,21 +55,12 @@ public class HistoricVersionedVertexPredicate<V extends Comparable<V>> implement
 
     @Override
     public boolean apply(Vertex vertex) {
-        if (graph.utils.isInternal(vertex)) {
-            return false;
-        }
-
-        graph.utils.ensureHistoricType(vertex);
-
         // we dont filter if no version is specified.
-        if (version == null) {
-            return true;
+        boolean isElementInRange = graph.utils.classifyHistoric(vertex, version) == HistoricClass.IN_RANGE;
+        if (log.isTraceEnabled()) {
+            log.trace("Is vertex[{}] is valid for version [{}] ? {}", vertex, version, isElementInRange);
         }
 
-        Range<V> r = graph.utils.getVersionRange(vertex);
-        boolean isElementInRange = r.contains(version);
-        log.debug("Is vertex[{}] [{}] is valid for version [{}] ? {}", vertex, r, version, isElementInRange);
-
         return isElementInRange;
     }
 }
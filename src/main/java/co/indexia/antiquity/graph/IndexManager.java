@@ -0,0 +1,174 @@
+/**
+ * Copyright (c) 2012-2014 "Indexia Technologies, ltd."
+ * 
+ * This file is part of Antiquity.
+ * 
+ * Antiquity is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.indexia.antiquity.graph;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Element;
+import com.tinkerpop.blueprints.KeyIndexableGraph;
+import com.tinkerpop.blueprints.Vertex;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Manages the key indices of antiquity's reserved keys.
+ * 
+ * <p>
+ * Keys are declared as indexed via {@link ReservedKey#indexed()}, keys that
+ * cannot be indexed by the base graph are reported, lookups by these keys
+ * fall back to scans.
+ * </p>
+ * 
+ * @see VEProps#vertexIndexedKeys
+ * @see VEProps#edgeIndexedKeys
+ */
+public class IndexManager {
+    Logger log = LoggerFactory.getLogger(IndexManager.class);
+
+    private final KeyIndexableGraph graph;
+
+    /**
+     * Reserved vertex keys which are not indexed, null until computed.
+     */
+    private volatile Set<String> unindexedVertexKeys;
+
+    /**
+     * Reserved edge keys which are not indexed, null until computed.
+     */
+    private volatile Set<String> unindexedEdgeKeys;
+
+    /**
+     * Create an instance of this class.
+     * 
+     * @param graph The base graph to manage the indices of.
+     */
+    public IndexManager(KeyIndexableGraph graph) {
+        Preconditions.checkNotNull(graph, "Graph must be set.");
+        this.graph = graph;
+    }
+
+    /**
+     * Create the missing key indices of the reserved keys.
+     * 
+     * <p>
+     * Keys whose index cannot be created, either because the base graph does
+     * not support key indices or because the creation failed, are reported as
+     * scan fallbacks.
+     * </p>
+     */
+    public void createIndices() {
+        unindexedVertexKeys =
+                createIndices(VEProps.vertexIndexedKeys, Vertex.class, graph.getFeatures().supportsVertexKeyIndex);
+        unindexedEdgeKeys =
+                createIndices(VEProps.edgeIndexedKeys, Edge.class, graph.getFeatures().supportsEdgeKeyIndex);
+    }
+
+    /**
+     * Get the reserved keys of the specified element type whose lookups fall
+     * back to scans as they are not indexed.
+     * 
+     * @param elementClass The element type (Vertex or Edge).
+     * @return reserved keys which are not indexed.
+     */
+    public <T extends Element> Set<String> getScanFallbackKeys(Class<T> elementClass) {
+        if (Vertex.class.isAssignableFrom(elementClass)) {
+            if (unindexedVertexKeys == null) {
+                unindexedVertexKeys =
+                        getUnindexedKeys(VEProps.vertexIndexedKeys, Vertex.class,
+                                graph.getFeatures().supportsVertexKeyIndex);
+            }
+
+            return unindexedVertexKeys;
+        } else if (Edge.class.isAssignableFrom(elementClass)) {
+            if (unindexedEdgeKeys == null) {
+                unindexedEdgeKeys =
+                        getUnindexedKeys(VEProps.edgeIndexedKeys, Edge.class, graph.getFeatures().supportsEdgeKeyIndex);
+            }
+
+            return unindexedEdgeKeys;
+        } else {
+            throw new IllegalArgumentException("Element class must be Vertex or Edge.");
+        }
+    }
+
+    /**
+     * Determine whether lookups by the specified reserved key are indexed.
+     * 
+     * @param key The reserved key.
+     * @param elementClass The element type (Vertex or Edge).
+     * @return true if the key is a reserved indexed key and it is indexed by
+     *         the base graph.
+     */
+    public <T extends Element> boolean isIndexed(String key, Class<T> elementClass) {
+        Set<String> declared =
+                Vertex.class.isAssignableFrom(elementClass) ? VEProps.vertexIndexedKeys : VEProps.edgeIndexedKeys;
+
+        return declared.contains(key) && !getScanFallbackKeys(elementClass).contains(key);
+    }
+
+    private <T extends Element> Set<String> createIndices(Set<String> keys, Class<T> elementClass,
+            Boolean supported) {
+        Set<String> unindexed = new HashSet<String>();
+        if (!Boolean.TRUE.equals(supported)) {
+            unindexed.addAll(keys);
+        } else {
+            Set<String> existing = graph.getIndexedKeys(elementClass);
+            for (String key : keys) {
+                if (existing.contains(key)) {
+                    continue;
+                }
+
+                try {
+                    graph.createKeyIndex(key, elementClass);
+                    log.debug("Created {} key index [{}]", elementClass.getSimpleName(), key);
+                } catch (RuntimeException e) {
+                    log.warn(String.format("Could not create %s key index [%s]", elementClass.getSimpleName(), key),
+                            e);
+                    unindexed.add(key);
+                }
+            }
+        }
+
+        return report(unindexed, elementClass);
+    }
+
+    private <T extends Element> Set<String> getUnindexedKeys(Set<String> keys, Class<T> elementClass,
+            Boolean supported) {
+        Set<String> unindexed = new HashSet<String>(keys);
+        if (Boolean.TRUE.equals(supported)) {
+            unindexed.removeAll(graph.getIndexedKeys(elementClass));
+        }
+
+        return report(unindexed, elementClass);
+    }
+
+    private <T extends Element> Set<String> report(Set<String> unindexed, Class<T> elementClass) {
+        for (String key : unindexed) {
+            log.warn("{} key [{}] is not indexed, lookups by this key fall back to scans.",
+                    elementClass.getSimpleName(), key);
+        }
+
+        return ImmutableSet.copyOf(unindexed);
+    }
+}
@@ -0,0 +1,157 @@
+/**
+ * Copyright (c) 2012-2014 "Indexia Technologies, ltd."
+ * 
+ * This file is part of Antiquity.
+ * 
+ * Antiquity is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.indexia.antiquity.graph;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.tinkerpop.blueprints.Element;
+import com.tinkerpop.blueprints.Vertex;
+
+/**
+ * A bounded cache of the base graph ids of active elements keyed by their
+ * natural ids.
+ * 
+ * <p>
+ * Entries are populated when elements are read or created and invalidated
+ * when elements are removed. In transactional graphs the elements created by
+ * a transaction are tracked per thread and invalidated if the transaction is
+ * rolled back.
+ * </p>
+ * 
+ * <p>
+ * Note: Cached ids may still be stale (e.g elements removed by other
+ * graph instances), thus the elements loaded by cached ids must be verified.
+ * </p>
+ * 
+ * @see Configuration#naturalIdCacheSize
+ */
+class NaturalIdCache {
+    private final Cache<Object, Object> vertices;
+
+    private final Cache<Object, Object> edges;
+
+    /**
+     * The natural ids of the elements created by the current transaction,
+     * null if the graph is not transactional.
+     */
+    private final ThreadLocal<List<Object[]>> created;
+
+    /**
+     * Create an instance of this class.
+     * 
+     * @param size The max amount of cached ids per element type.
+     * @param transactional Whether created elements should be tracked until
+     *        their transaction is concluded.
+     */
+    NaturalIdCache(long size, boolean transactional) {
+        Preconditions.checkArgument(size > 0, "Size must be positive.");
+
+        this.vertices = CacheBuilder.newBuilder().maximumSize(size).build();
+        this.edges = CacheBuilder.newBuilder().maximumSize(size).build();
+        if (transactional) {
+            this.created = new ThreadLocal<List<Object[]>>() {
+                @Override
+                protected List<Object[]> initialValue() {
+                    return new ArrayList<Object[]>();
+                }
+            };
+        } else {
+            this.created = null;
+        }
+    }
+
+    /**
+     * Get the cached base graph id of the specified element.
+     * 
+     * @param type The element type (Vertex or Edge).
+     * @param naturalId The natural id of the element.
+     * @return the base graph id or null if not cached.
+     */
+    Object get(Class<? extends Element> type, Object naturalId) {
+        return cacheOf(type).getIfPresent(naturalId);
+    }
+
+    /**
+     * Cache the base graph id of a read element.
+     * 
+     * @param type The element type (Vertex or Edge).
+     * @param naturalId The natural id of the element.
+     * @param baseId The base graph id of the element.
+     */
+    void put(Class<? extends Element> type, Object naturalId, Object baseId) {
+        cacheOf(type).put(naturalId, baseId);
+    }
+
+    /**
+     * Cache the base graph id of a created element.
+     * 
+     * @param type The element type (Vertex or Edge).
+     * @param naturalId The natural id of the element.
+     * @param baseId The base graph id of the element.
+     */
+    void putCreated(Class<? extends Element> type, Object naturalId, Object baseId) {
+        if (created != null) {
+            created.get().add(new Object[] { type, naturalId });
+        }
+
+        put(type, naturalId, baseId);
+    }
+
+    /**
+     * Invalidate the cached id of the specified element.
+     * 
+     * @param type The element type (Vertex or Edge).
+     * @param naturalId The natural id of the element.
+     */
+    void invalidate(Class<? extends Element> type, Object naturalId) {
+        cacheOf(type).invalidate(naturalId);
+    }
+
+    /**
+     * Conclude the transaction of the current thread, the ids of its created
+     * elements are kept.
+     */
+    void commit() {
+        if (created != null) {
+            created.get().clear();
+        }
+    }
+
+    /**
+     * Conclude the transaction of the current thread, the ids of its created
+     * elements are invalidated.
+     */
+    @SuppressWarnings("unchecked")
+    void rollback() {
+        if (created != null) {
+            for (Object[] e : created.get()) {
+                invalidate((Class<? extends Element>) e[0], e[1]);
+            }
+            created.get().clear();
+        }
+    }
+
+    private Cache<Object, Object> cacheOf(Class<? extends Element> type) {
+        return Vertex.class.isAssignableFrom(type) ? vertices : edges;
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) 2012-2014 "Indexia Technologies, ltd."
+ * 
+ * This file is part of Antiquity.
+ * 
+ * Antiquity is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.indexia.antiquity.graph;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnel;
+import com.google.common.hash.PrimitiveSink;
+import com.tinkerpop.blueprints.Element;
+import com.tinkerpop.blueprints.Vertex;
+
+/**
+ * A probabilistic filter of the natural ids of the active elements.
+ * 
+ * <p>
+ * The filter is loaded with the ids of the existing active elements when the
+ * graph is built and the ids of the elements created via this graph instance
+ * are added as they are created, ids are never removed. New ids the filter
+ * does not contain are accepted without a lookup, ids it may contain are
+ * verified by a full lookup of their element.
+ * </p>
+ * <p>
+ * Elements created by other graph instances (or processes) after the filter
+ * was loaded are unknown to it, hence the filter may only be enabled for a
+ * graph instance that is the single writer of its base graph.
+ * </p>
+ * 
+ * @see Configuration#naturalIdFilterExpectedInsertions
+ * @see ActiveVersionedGraph#loadNaturalIdFilter()
+ */
+class NaturalIdFilter {
+    /**
+     * The false positive probability of the filter when it holds the expected
+     * amount of ids.
+     */
+    private static final double FALSE_POSITIVE_PROBABILITY = 0.01;
+
+    private final BloomFilter<Object> vertices;
+
+    private final BloomFilter<Object> edges;
+
+    /**
+     * Create an instance of this class.
+     * 
+     * @param expectedInsertions The expected amount of ids per element type.
+     */
+    NaturalIdFilter(int expectedInsertions) {
+        Preconditions.checkArgument(expectedInsertions > 0, "Expected insertions must be positive.");
+
+        this.vertices = BloomFilter.create(IdFunnel.INSTANCE, expectedInsertions, FALSE_POSITIVE_PROBABILITY);
+        this.edges = BloomFilter.create(IdFunnel.INSTANCE, expectedInsertions, FALSE_POSITIVE_PROBABILITY);
+    }
+
+    /**
+     * Determine whether an element with the specified natural id may have
+     * been created via this graph instance.
+     * 
+     * @param elementClass The element type (Vertex or Edge).
+     * @param naturalId The natural id.
+     * @return false if the id was definitely not created via this instance.
+     */
+    boolean mightContain(Class<? extends Element> elementClass, Object naturalId) {
+        BloomFilter<Object> filter = filterOf(elementClass);
+        synchronized (filter) {
+            return filter.mightContain(naturalId);
+        }
+    }
+
+    /**
+     * Add the natural id of a created element.
+     * 
+     * @param elementClass The element type (Vertex or Edge).
+     * @param naturalId The natural id.
+     */
+    void put(Class<? extends Element> elementClass, Object naturalId) {
+        BloomFilter<Object> filter = filterOf(elementClass);
+        synchronized (filter) {
+            filter.put(naturalId);
+        }
+    }
+
+    private BloomFilter<Object> filterOf(Class<? extends Element> elementClass) {
+        return Vertex.class.isAssignableFrom(elementClass) ? vertices : edges;
+    }
+
+    /**
+     * Funnels ids by their string representation.
+     */
+    private enum IdFunnel implements Funnel<Object> {
+        INSTANCE;
+
+        @Override
+        public void funnel(Object id, PrimitiveSink into) {
+            into.putString(id.toString(), Charsets.UTF_8);
+        }
+    }
+}
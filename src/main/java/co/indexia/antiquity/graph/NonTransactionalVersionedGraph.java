@@ -19,9 +19,10 @@
 package co.indexia.antiquity.graph;
 
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.Map;
 
+import com.google.common.base.Preconditions;
 import com.google.common.collect.Maps;
 import com.tinkerpop.blueprints.Edge;
 import com.tinkerpop.blueprints.IndexableGraph;
@@ -36,6 +37,11 @@ import org.slf4j.LoggerFactory;
 /**
  * A non transactional {@link ActiveVersionedGraph} implementation.
  * 
+ * <p>
+ * Each modification is versioned as a separate version, unless it is done
+ * within a batch, see {@link #beginBatch()}.
+ * </p>
+ * 
  * @param <T> The type of the graph
  * @param <V> The type of the graph version
  */
@@ -43,6 +49,11 @@ public class NonTransactionalVersionedGraph<T extends KeyIndexableGraph, V exten
         extends ActiveVersionedGraph<T, V> {
     Logger log = LoggerFactory.getLogger(NonTransactionalVersionedGraph.class);
 
+    /**
+     * The changes of the current thread's batch, null if no batch was begun.
+     */
+    private final ThreadLocal<TransactionData> batch = new ThreadLocal<TransactionData>();
+
     /**
      * Create an instance of this class.
      * 
@@ -65,11 +76,74 @@ public class NonTransactionalVersionedGraph<T extends KeyIndexableGraph, V exten
         super(baseGraph, identifierBehavior, conf, vertexIdFactory, edgeIdFactory, false);
     }
 
+    // Batch
+    // --------------------------------------------------------------
+    /**
+     * Begin a batch in the current thread.
+     * 
+     * <p>
+     * All modifications done by the current thread until
+     * {@link #commitBatch()} is invoked are versioned as a single version, a
+     * single historic revision is created per modified element.
+     * </p>
+     * 
+     * <p>
+     * Note: modifications are applied to the active graph immediately, the
+     * batch only defers their versioning.
+     * </p>
+     * 
+     * @throws IllegalStateException if a batch was already begun.
+     */
+    public void beginBatch() {
+        Preconditions.checkState(batch.get() == null, "A batch was already begun.");
+        batch.set(new TransactionData(conf.getTransactionBufferRetainedSize()));
+    }
+
+    /**
+     * Version the modifications of the current thread's batch.
+     * 
+     * @return The version of the batch, null if the batch is empty.
+     * @throws IllegalStateException if no batch was begun.
+     */
+    public V commitBatch() {
+        TransactionData data = batch.get();
+        Preconditions.checkState(data != null, "No batch was begun.");
+        batch.remove();
+        coalesceTransactionData(data);
+
+        if (data.isEmpty()) {
+            log.debug("Batch is empty, skipping its versioning.");
+            return null;
+        }
+
+        V latestVersion = getLatestGraphVersion();
+        V version = getNextGraphVersion(true);
+        log.debug("Versioning batch[{}]", version);
+        versionTransactionData(data, latestVersion, version);
+
+        return version;
+    }
+
+    /**
+     * Determine whether the current thread is within a batch.
+     * 
+     * @return true if a batch was begun by the current thread.
+     */
+    public boolean isInBatch() {
+        return batch.get() != null;
+    }
+
     // Versioned Graph Events
     // --------------------------------------------------------------
     @Override
     public void vertexAdded(Vertex vertex) {
         log.debug("==Vertex [{}] added==", vertex);
+        TransactionData data = batch.get();
+        if (data != null) {
+            data.getAddedVertices().add(vertex);
+            return;
+        }
+
         versionAddedVertices(getNextGraphVersion(true), Arrays.asList(vertex));
     }
 
@@ -77,66 +151,92 @@ public class NonTransactionalVersionedGraph<T extends KeyIndexableGraph, V exten
     @Override
     public void vertexPropertyChanged(Vertex vertex, String key, Object oldValue, Object setValue) {
         log.debug("==Vertex [{}] property[{}] was modified [{} -> {}]==", vertex, key, oldValue, setValue);
-
-        Map<String, Object> props = new HashMap<String, Object>();
-        props.put(key, oldValue);
-
-        versionModifiedVertex(getLatestGraphVersion(), getNextGraphVersion(true), vertex, props);
+        TransactionData data = batch.get();
+        if (data != null) {
+            data.recordVertexModification(vertex, key, oldValue);
+            return;
+        }
+
+        versionModifiedVertex(getLatestGraphVersion(), getNextGraphVersion(true), vertex,
+                Collections.singletonMap(key, oldValue));
     }
 
     @SuppressWarnings("unchecked")
     @Override
     public void vertexPropertyRemoved(Vertex vertex, String key, Object removedValue) {
         log.debug("==Vertex property [{}] was removed [{}->{}]==", vertex, removedValue);
-
-        Map<String, Object> props = new HashMap<String, Object>();
-        props.put(key, removedValue);
-
-        versionModifiedVertex(getLatestGraphVersion(), getNextGraphVersion(true), vertex, props);
+        TransactionData data = batch.get();
+        if (data != null) {
+            data.recordVertexModification(vertex, key, removedValue);
+            return;
+        }
+
+        versionModifiedVertex(getLatestGraphVersion(), getNextGraphVersion(true), vertex,
+                Collections.singletonMap(key, removedValue));
     }
 
     @Override
     public void vertexRemoved(Vertex vertex, Map<String, Object> props) {
         log.debug("==Vertex [{}] removed==", vertex);
+        TransactionData data = batch.get();
+        if (data != null) {
+            data.getRemovedVertices().put(vertex, props);
+            return;
+        }
+
         V last = getLatestGraphVersion();
-        Map<Vertex, Map<String, Object>> vertices = new HashMap<Vertex, Map<String, Object>>();
-        vertices.put(vertex, props);
-        versionRemovedVertices(getNextGraphVersion(true), last, vertices);
+        versionRemovedVertices(getNextGraphVersion(true), last, Collections.singletonMap(vertex, props));
     }
 
     @Override
     public void edgeAdded(Edge edge) {
         log.debug("==Edge [{}] added==", edge);
+        TransactionData data = batch.get();
+        if (data != null) {
+            data.getAddedEdges().add(edge);
+            return;
+        }
+
         versionAddedEdges(getNextGraphVersion(true), Arrays.asList(edge));
     }
 
     @Override
     public void edgePropertyChanged(Edge edge, String key, Object oldValue, Object setValue) {
         log.debug("==Edge [{}] property[{}] was modified [{} -> {}]==", edge, key, oldValue, setValue);
-
-        Map<String, Object> props = new HashMap<String, Object>();
-        props.put(key, oldValue);
-
-        versionModifiedEdge(getLatestGraphVersion(), getNextGraphVersion(true), edge, props);
+        TransactionData data = batch.get();
+        if (data != null) {
+            data.recordEdgeModification(edge, key, oldValue);
+            return;
+        }
+
+        versionModifiedEdge(getLatestGraphVersion(), getNextGraphVersion(true), edge,
+                Collections.singletonMap(key, oldValue));
     }
 
     @Override
     public void edgePropertyRemoved(Edge edge, String key, Object removedValue) {
         log.debug("==Edge property [{}] was removed [{}->{}]==", edge, removedValue);
-
-        Map<String, Object> props = new HashMap<String, Object>();
-        props.put(key, removedValue);
-
-        versionModifiedEdge(getLatestGraphVersion(), getNextGraphVersion(true), edge, props);
+        TransactionData data = batch.get();
+        if (data != null) {
+            data.recordEdgeModification(edge, key, removedValue);
+            return;
+        }
+
+        versionModifiedEdge(getLatestGraphVersion(), getNextGraphVersion(true), edge,
+                Collections.singletonMap(key, removedValue));
     }
 
     @Override
     public void edgeRemoved(Edge edge, Map<String, Object> props) {
         log.debug("==Edge [{}] removed==", edge);
+        TransactionData data = batch.get();
+        if (data != null) {
+            data.getRemovedEdges().put(edge, props);
+            return;
+        }
+
         V last = getLatestGraphVersion();
 
-        Map<Edge, Map<String, Object>> edges = new HashMap<Edge, Map<String, Object>>();
-        edges.put(edge, props);
-        versionRemovedEdges(getNextGraphVersion(true), last, edges);
+        versionRemovedEdges(getNextGraphVersion(true), last, Collections.singletonMap(edge, props));
     }
 }
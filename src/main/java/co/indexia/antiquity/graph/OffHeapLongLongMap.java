@@ -0,0 +1,361 @@
+/**
+ * Copyright (c) 2012-2014 "Indexia Technologies, ltd."
+ * 
+ * This file is part of Antiquity.
+ * 
+ * Antiquity is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.indexia.antiquity.graph;
+
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A primitive long to long hash map whose entries are stored in direct
+ * (off-heap) memory.
+ * 
+ * <p>
+ * The map is split into segments, each segment is an open addressing table
+ * with linear probing which is guarded by its own lock, thus the entries cause
+ * no GC pressure and no boxing is required.
+ * </p>
+ * 
+ * <p>
+ * Direct memory is only reclaimed once its buffer is collected, thus tables
+ * replaced by a growth and the tables of a {@link #release() released} map are
+ * freed explicitly where the JVM allows it.
+ * </p>
+ */
+final class OffHeapLongLongMap {
+    /**
+     * The max slots per segment, a slot takes 16 bytes and a direct buffer is
+     * limited to 2GB.
+     */
+    static final int MAX_SEGMENT_CAPACITY = 1 << 26;
+
+    private final Segment[] segments;
+
+    private final int segmentBits;
+
+    /**
+     * Create an instance of this class.
+     * 
+     * @param segmentBits The log2 amount of segments.
+     * @param initialSegmentCapacity The initial slots per segment, rounded up to
+     *        a power of two.
+     */
+    OffHeapLongLongMap(int segmentBits, int initialSegmentCapacity) {
+        Preconditions.checkArgument(segmentBits >= 0 && segmentBits <= 16, "Segment bits must be within 0-16.");
+        Preconditions.checkArgument(initialSegmentCapacity > 0 && initialSegmentCapacity <= MAX_SEGMENT_CAPACITY,
+                "Initial segment capacity must be within 1-%s.", MAX_SEGMENT_CAPACITY);
+
+        int capacity = Integer.highestOneBit(initialSegmentCapacity);
+        if (capacity < initialSegmentCapacity) {
+            capacity <<= 1;
+        }
+
+        this.segmentBits = segmentBits;
+        this.segments = new Segment[1 << segmentBits];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment(Math.max(capacity, 2));
+        }
+    }
+
+    /**
+     * Get the value of the specified key.
+     * 
+     * @param key The key to get the value for.
+     * @param missingValue The value to return if the key is not found.
+     * @return the value of the key or the missing value.
+     */
+    long get(long key, long missingValue) {
+        long h = mix(key);
+        return segmentFor(h).get(key, h, missingValue);
+    }
+
+    /**
+     * Set the value of the specified key.
+     * 
+     * @param key The key to set.
+     * @param value The value to set.
+     */
+    void put(long key, long value) {
+        long h = mix(key);
+        segmentFor(h).put(key, h, value);
+    }
+
+    /**
+     * Remove the specified key.
+     * 
+     * @param key The key to remove.
+     * @return true if the key was found.
+     */
+    boolean remove(long key) {
+        long h = mix(key);
+        return segmentFor(h).remove(key, h);
+    }
+
+    /**
+     * Remove all the entries.
+     */
+    void clear() {
+        for (Segment s : segments) {
+            s.clear();
+        }
+    }
+
+    /**
+     * Free the memory of the map, the map cannot be used afterwards.
+     */
+    void release() {
+        for (Segment s : segments) {
+            s.release();
+        }
+    }
+
+    /**
+     * The amount of entries.
+     * 
+     * @return the amount of entries in the map.
+     */
+    long size() {
+        long size = 0;
+        for (Segment s : segments) {
+            size += s.size();
+        }
+
+        return size;
+    }
+
+    private Segment segmentFor(long h) {
+        return segmentBits == 0 ? segments[0] : segments[(int) (h >>> (64 - segmentBits))];
+    }
+
+    /**
+     * The murmur3 64 bit finalizer.
+     */
+    private static long mix(long key) {
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+
+        return h;
+    }
+
+    /**
+     * A single open addressing table, key 0 marks a free slot thus it is held
+     * separately.
+     */
+    private static final class Segment {
+        private ByteBuffer memory;
+        private LongBuffer table;
+        private int mask;
+        private int size;
+        private boolean hasZeroKey;
+        private long zeroValue;
+
+        Segment(int capacity) {
+            allocate(capacity);
+        }
+
+        synchronized long get(long key, long h, long missingValue) {
+            checkNotReleased();
+            if (key == 0) {
+                return hasZeroKey ? zeroValue : missingValue;
+            }
+
+            int slot = (int) h & mask;
+            while (true) {
+                long k = table.get(slot << 1);
+                if (k == key) {
+                    return table.get((slot << 1) + 1);
+                } else if (k == 0) {
+                    return missingValue;
+                }
+
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        synchronized void put(long key, long h, long value) {
+            checkNotReleased();
+            if (key == 0) {
+                if (!hasZeroKey) {
+                    hasZeroKey = true;
+                    size++;
+                }
+                zeroValue = value;
+                return;
+            }
+
+            int slot = (int) h & mask;
+            while (true) {
+                long k = table.get(slot << 1);
+                if (k == key) {
+                    table.put((slot << 1) + 1, value);
+                    return;
+                } else if (k == 0) {
+                    table.put(slot << 1, key);
+                    table.put((slot << 1) + 1, value);
+                    size++;
+                    if (size > (mask + 1) / 4 * 3) {
+                        grow();
+                    }
+                    return;
+                }
+
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        synchronized boolean remove(long key, long h) {
+            checkNotReleased();
+            if (key == 0) {
+                boolean found = hasZeroKey;
+                if (found) {
+                    hasZeroKey = false;
+                    size--;
+                }
+                return found;
+            }
+
+            int slot = (int) h & mask;
+            while (true) {
+                long k = table.get(slot << 1);
+                if (k == key) {
+                    break;
+                } else if (k == 0) {
+                    return false;
+                }
+
+                slot = (slot + 1) & mask;
+            }
+
+            // shift back the following entries of the probe sequence
+            int free = slot;
+            int next = slot;
+            while (true) {
+                next = (next + 1) & mask;
+                long k = table.get(next << 1);
+                if (k == 0) {
+                    break;
+                }
+
+                int home = (int) mix(k) & mask;
+                boolean movable = free <= next ? (home <= free || home > next) : (home <= free && home > next);
+                if (movable) {
+                    table.put(free << 1, k);
+                    table.put((free << 1) + 1, table.get((next << 1) + 1));
+                    free = next;
+                }
+            }
+
+            table.put(free << 1, 0L);
+            table.put((free << 1) + 1, 0L);
+            size--;
+            return true;
+        }
+
+        synchronized void clear() {
+            checkNotReleased();
+            for (int i = 0; i <= mask; i++) {
+                table.put(i << 1, 0L);
+            }
+            hasZeroKey = false;
+            size = 0;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized void release() {
+            if (memory != null) {
+                free(memory);
+                memory = null;
+                table = null;
+                size = 0;
+                hasZeroKey = false;
+            }
+        }
+
+        private void checkNotReleased() {
+            if (table == null) {
+                throw new IllegalStateException("Off-heap map was released.");
+            }
+        }
+
+        private void grow() {
+            int capacity = mask + 1;
+            if (capacity >= MAX_SEGMENT_CAPACITY) {
+                if (size >= capacity - 1) {
+                    throw new IllegalStateException("Off-heap map segment is full.");
+                }
+                return;
+            }
+
+            ByteBuffer oldMemory = memory;
+            LongBuffer old = table;
+            int oldCapacity = capacity;
+            allocate(capacity << 1);
+            for (int i = 0; i < oldCapacity; i++) {
+                long k = old.get(i << 1);
+                if (k != 0) {
+                    int slot = (int) mix(k) & mask;
+                    while (table.get(slot << 1) != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    table.put(slot << 1, k);
+                    table.put((slot << 1) + 1, old.get((i << 1) + 1));
+                }
+            }
+
+            free(oldMemory);
+        }
+
+        private void allocate(int capacity) {
+            memory = ByteBuffer.allocateDirect(capacity * 16).order(ByteOrder.nativeOrder());
+            table = memory.asLongBuffer();
+            mask = capacity - 1;
+        }
+
+        /**
+         * Free the memory of the specified direct buffer via its cleaner, the
+         * buffer must not be accessed afterwards. Does nothing if the JVM does
+         * not expose the cleaner, the memory is then freed once the buffer is
+         * collected.
+         */
+        private static void free(ByteBuffer buffer) {
+            try {
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    Method clean = cleaner.getClass().getMethod("clean");
+                    clean.setAccessible(true);
+                    clean.invoke(cleaner);
+                }
+            } catch (Exception e) {
+                // left to the collector
+            }
+        }
+    }
+}
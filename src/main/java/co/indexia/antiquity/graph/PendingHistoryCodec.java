@@ -0,0 +1,401 @@
+/**
+ * Copyright (c) 2012-2014 "Indexia Technologies, ltd."
+ * 
+ * This file is part of Antiquity.
+ * 
+ * Antiquity is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.indexia.antiquity.graph;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.BaseEncoding;
+import co.indexia.antiquity.graph.AsyncHistoryWriter.AddedEdge;
+import co.indexia.antiquity.graph.AsyncHistoryWriter.HistoryTask;
+import co.indexia.antiquity.graph.AsyncHistoryWriter.RemovedElement;
+
+/**
+ * <p>
+ * Encodes the change set of a {@link HistoryTask} as persisted by pending
+ * history vertices, the versions of the task are kept as separate properties
+ * of the vertex as they are assigned only once the change set was encoded.
+ * </p>
+ * 
+ * <p>
+ * The change set is encoded as follows and stored as a base64 string, since
+ * not all graphs keep byte array properties as is. Numbers are big-endian,
+ * strings are UTF-8 bytes preceded by their length.
+ * </p>
+ * 
+ * <pre>
+ * changes  := format:byte(2) added(vertices) added(edges) removed(vertices)
+ *             removed(edges) modified(vertices) modified(edges)
+ * added    := count:int (id:value [out:value in:value label:string] new:props)*
+ * removed  := count:int (id:value old:props)*
+ * modified := count:int (id:value old:props new:props)*
+ * props    := count:int (key:string value:value)*
+ * value    := tag:byte payload
+ * </pre>
+ * 
+ * <p>
+ * Where ids are active ids, the ids of the vertices and the label are kept for
+ * added edges only so their history can be written once they were removed.
+ * Old props are the properties before the transaction (all of them for
+ * removed elements, the modified ones otherwise) and new props are the
+ * properties as committed. Values are
+ * tagged by their type: null, the boxed primitives, strings, lists and arrays
+ * of primitives or strings are encoded natively, which covers the property
+ * types supported by the blueprints graphs. Other serializable values are
+ * encoded via java serialization, any other value can't be persisted and
+ * fails the commit before the transaction is committed.
+ * </p>
+ */
+final class PendingHistoryCodec {
+    private static final byte FORMAT = 2;
+
+    private static final byte NULL = 0;
+    private static final byte BOOLEAN = 1;
+    private static final byte BYTE = 2;
+    private static final byte SHORT = 3;
+    private static final byte INTEGER = 4;
+    private static final byte LONG = 5;
+    private static final byte FLOAT = 6;
+    private static final byte DOUBLE = 7;
+    private static final byte CHARACTER = 8;
+    private static final byte STRING = 9;
+    private static final byte LIST = 10;
+    private static final byte PRIMITIVE_ARRAY = 11;
+    private static final byte ARRAY = 12;
+    private static final byte SERIALIZED = 13;
+
+    /**
+     * The element types of arrays encoded natively, indexed by their tag.
+     */
+    private static final Class<?>[] PRIMITIVES = { null, boolean.class, byte.class, short.class, int.class,
+            long.class, float.class, double.class, char.class };
+    private static final Class<?>[] BOXED = { null, Boolean.class, Byte.class, Short.class, Integer.class,
+            Long.class, Float.class, Double.class, Character.class, String.class };
+
+    private PendingHistoryCodec() {
+    }
+
+    /**
+     * Encode the change set of the specified task.
+     * 
+     * @param task The task to encode.
+     * @return The encoded change set.
+     * @throws IllegalArgumentException if the task contains a value which
+     *         can't be encoded.
+     */
+    static String encode(HistoryTask<?> task) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(FORMAT);
+            writeAdded(out, task.addedVertices, task.committedVertexProps);
+            writeAddedEdges(out, task.addedEdges, task.committedEdgeProps);
+            writeRemoved(out, task.removedVertices);
+            writeRemoved(out, task.removedEdges);
+            writeModified(out, task.modifiedPropsPerVertex, task.committedVertexProps);
+            writeModified(out, task.modifiedPropsPerEdge, task.committedEdgeProps);
+            out.close();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not encode pending history.", e);
+        }
+
+        return BaseEncoding.base64().encode(bytes.toByteArray());
+    }
+
+    /**
+     * Decode a change set encoded by {@link #encode(HistoryTask)}.
+     * 
+     * @param encoded The encoded change set.
+     * @param latestVersion The version preceding the task's version.
+     * @param version The version of the task.
+     * @return The task.
+     * @throws IllegalStateException if the change set could not be decoded.
+     */
+    static <V> HistoryTask<V> decode(String encoded, V latestVersion, V version) {
+        HistoryTask<V> task = new HistoryTask<V>(latestVersion, version);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(BaseEncoding.base64().decode(encoded)));
+        try {
+            byte format = in.readByte();
+            if (format != FORMAT) {
+                throw new IllegalStateException(String.format("Unknown pending history format [%d] of version [%s]",
+                        format, version));
+            }
+
+            readAdded(in, task.addedVertices, task.committedVertexProps);
+            readAddedEdges(in, task.addedEdges, task.committedEdgeProps);
+            readRemoved(in, task.removedVertices);
+            readRemoved(in, task.removedEdges);
+            readModified(in, task.modifiedPropsPerVertex, task.committedVertexProps);
+            readModified(in, task.modifiedPropsPerEdge, task.committedEdgeProps);
+        } catch (IOException e) {
+            throw new IllegalStateException(String.format("Could not decode pending history of version [%s]",
+                    version), e);
+        }
+
+        return task;
+    }
+
+    private static void writeAdded(DataOutputStream out, List<Object> ids, Map<Object, Map<String, Object>> committed)
+            throws IOException {
+        out.writeInt(ids.size());
+        for (Object id : ids) {
+            writeValue(out, id);
+            writeProps(out, committed.get(id));
+        }
+    }
+
+    private static void readAdded(DataInputStream in, List<Object> ids, Map<Object, Map<String, Object>> committed)
+            throws IOException {
+        for (int i = in.readInt(); i > 0; i--) {
+            Object id = readValue(in);
+            ids.add(id);
+            committed.put(id, readProps(in));
+        }
+    }
+
+    private static void writeAddedEdges(DataOutputStream out, List<AddedEdge> edges,
+            Map<Object, Map<String, Object>> committed) throws IOException {
+        out.writeInt(edges.size());
+        for (AddedEdge edge : edges) {
+            writeValue(out, edge.activeId);
+            writeValue(out, edge.outId);
+            writeValue(out, edge.inId);
+            writeString(out, edge.label);
+            writeProps(out, committed.get(edge.activeId));
+        }
+    }
+
+    private static void readAddedEdges(DataInputStream in, List<AddedEdge> edges,
+            Map<Object, Map<String, Object>> committed) throws IOException {
+        for (int i = in.readInt(); i > 0; i--) {
+            Object id = readValue(in);
+            edges.add(new AddedEdge(id, readValue(in), readValue(in), readString(in)));
+            committed.put(id, readProps(in));
+        }
+    }
+
+    private static void writeRemoved(DataOutputStream out, List<RemovedElement> removed) throws IOException {
+        out.writeInt(removed.size());
+        for (RemovedElement element : removed) {
+            writeValue(out, element.activeId);
+            writeProps(out, element.props);
+        }
+    }
+
+    private static void readRemoved(DataInputStream in, List<RemovedElement> removed) throws IOException {
+        for (int i = in.readInt(); i > 0; i--) {
+            Object id = readValue(in);
+            removed.add(new RemovedElement(id, readProps(in)));
+        }
+    }
+
+    private static void writeModified(DataOutputStream out, Map<Object, Map<String, Object>> modified,
+            Map<Object, Map<String, Object>> committed) throws IOException {
+        out.writeInt(modified.size());
+        for (Map.Entry<Object, Map<String, Object>> entry : modified.entrySet()) {
+            writeValue(out, entry.getKey());
+            writeProps(out, entry.getValue());
+            writeProps(out, committed.get(entry.getKey()));
+        }
+    }
+
+    private static void readModified(DataInputStream in, Map<Object, Map<String, Object>> modified,
+            Map<Object, Map<String, Object>> committed) throws IOException {
+        for (int i = in.readInt(); i > 0; i--) {
+            Object id = readValue(in);
+            modified.put(id, readProps(in));
+            committed.put(id, readProps(in));
+        }
+    }
+
+    private static void writeProps(DataOutputStream out, Map<String, Object> props) throws IOException {
+        out.writeInt(props.size());
+        for (Map.Entry<String, Object> prop : props.entrySet()) {
+            writeString(out, prop.getKey());
+            writeValue(out, prop.getValue());
+        }
+    }
+
+    private static Map<String, Object> readProps(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        Map<String, Object> props = new HashMap<String, Object>(size * 2);
+        for (int i = 0; i < size; i++) {
+            String key = readString(in);
+            props.put(key, readValue(in));
+        }
+
+        return props;
+    }
+
+    private static void writeString(DataOutputStream out, String str) throws IOException {
+        byte[] bytes = str.getBytes(Charsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, Charsets.UTF_8);
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Byte) {
+            out.writeByte(BYTE);
+            out.writeByte((Byte) value);
+        } else if (value instanceof Short) {
+            out.writeByte(SHORT);
+            out.writeShort((Short) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Character) {
+            out.writeByte(CHARACTER);
+            out.writeChar((Character) value);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            out.writeByte(LIST);
+            out.writeInt(list.size());
+            for (Object item : list) {
+                writeValue(out, item);
+            }
+        } else if (value.getClass().isArray() && tagOf(value.getClass().getComponentType()) > 0) {
+            Class<?> type = value.getClass().getComponentType();
+            int length = Array.getLength(value);
+            out.writeByte(type.isPrimitive() ? PRIMITIVE_ARRAY : ARRAY);
+            out.writeByte(tagOf(type));
+            out.writeInt(length);
+            for (int i = 0; i < length; i++) {
+                writeValue(out, Array.get(value, i));
+            }
+        } else if (value instanceof Serializable) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream serialized = new ObjectOutputStream(bytes);
+            serialized.writeObject(value);
+            serialized.close();
+            out.writeByte(SERIALIZED);
+            out.writeInt(bytes.size());
+            out.write(bytes.toByteArray());
+        } else {
+            throw new IllegalArgumentException(String.format(
+                    "Value of type [%s] can't be persisted as pending history.", value.getClass().getName()));
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+        case NULL:
+            return null;
+        case BOOLEAN:
+            return in.readBoolean();
+        case BYTE:
+            return in.readByte();
+        case SHORT:
+            return in.readShort();
+        case INTEGER:
+            return in.readInt();
+        case LONG:
+            return in.readLong();
+        case FLOAT:
+            return in.readFloat();
+        case DOUBLE:
+            return in.readDouble();
+        case CHARACTER:
+            return in.readChar();
+        case STRING:
+            return readString(in);
+        case LIST:
+            int size = in.readInt();
+            List<Object> list = new ArrayList<Object>(size);
+            for (int i = 0; i < size; i++) {
+                list.add(readValue(in));
+            }
+            return list;
+        case PRIMITIVE_ARRAY:
+        case ARRAY:
+            Class<?> type = (tag == PRIMITIVE_ARRAY ? PRIMITIVES : BOXED)[in.readByte()];
+            int length = in.readInt();
+            Object array = Array.newInstance(type, length);
+            for (int i = 0; i < length; i++) {
+                Array.set(array, i, readValue(in));
+            }
+            return array;
+        case SERIALIZED:
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            ObjectInputStream serialized = new ObjectInputStream(new ByteArrayInputStream(bytes));
+            try {
+                return serialized.readObject();
+            } catch (ClassNotFoundException e) {
+                throw new IOException("Unknown class of a serialized value.", e);
+            } finally {
+                serialized.close();
+            }
+        default:
+            throw new IOException(String.format("Unknown value tag [%d]", tag));
+        }
+    }
+
+    /**
+     * Get the tag of the specified array element type.
+     * 
+     * @return the tag of the type, or -1 if arrays of the type are not encoded
+     *         natively.
+     */
+    private static int tagOf(Class<?> type) {
+        Class<?>[] types = type.isPrimitive() ? PRIMITIVES : BOXED;
+        for (int tag = 1; tag < types.length; tag++) {
+            if (types[tag] == type) {
+                return tag;
+            }
+        }
+
+        return -1;
+    }
+}
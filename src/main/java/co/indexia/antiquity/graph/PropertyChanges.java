@@ -0,0 +1,262 @@
+/**
+ * Copyright (c) 2012-2014 "Indexia Technologies, ltd."
+ * 
+ * This file is part of Antiquity.
+ * 
+ * Antiquity is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.indexia.antiquity.graph;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import com.google.common.base.Objects;
+
+/**
+ * <p>
+ * A compact map of the modified properties of an element, where the values
+ * are the properties values before their first modification.
+ * </p>
+ * <p>
+ * Keys and values are stored in flat arrays and looked up linearly, which is
+ * cheaper than hashing for the few properties a transaction usually modifies
+ * per element. Instances are reset and reused across transactions by
+ * {@link TransactionData}.
+ * </p>
+ */
+final class PropertyChanges extends AbstractMap<String, Object> {
+    private static final int INITIAL_CAPACITY = 4;
+
+    private String[] keys = new String[INITIAL_CAPACITY];
+    private Object[] values = new Object[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * Get the amount of properties this instance can hold without growing.
+     * 
+     * @return the capacity of this instance.
+     */
+    int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * Remove all properties while keeping the capacity of this instance.
+     */
+    void reset() {
+        Arrays.fill(keys, 0, size, null);
+        Arrays.fill(values, 0, size, null);
+        size = 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public Object get(Object key) {
+        int i = indexOf(key);
+        return i >= 0 ? values[i] : null;
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        int i = indexOf(key);
+        if (i >= 0) {
+            Object old = values[i];
+            values[i] = value;
+            return old;
+        }
+
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+
+        keys[size] = key;
+        values[size] = value;
+        size++;
+        return null;
+    }
+
+    @Override
+    public Object remove(Object key) {
+        int i = indexOf(key);
+        return i >= 0 ? removeAt(i) : null;
+    }
+
+    @Override
+    public void clear() {
+        reset();
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        return new AbstractSet<Map.Entry<String, Object>>() {
+            @Override
+            public Iterator<Map.Entry<String, Object>> iterator() {
+                return new ChangesIterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            // the iterator reuses its entry, arrays get detached entries
+            @Override
+            public Object[] toArray() {
+                Object[] entries = new Object[size];
+                for (int i = 0; i < size; i++) {
+                    entries[i] = new AbstractMap.SimpleImmutableEntry<String, Object>(keys[i], values[i]);
+                }
+
+                return entries;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public <T> T[] toArray(T[] a) {
+                Object[] entries = toArray();
+                if (a.length < entries.length) {
+                    return (T[]) Arrays.copyOf(entries, entries.length, a.getClass());
+                }
+
+                System.arraycopy(entries, 0, a, 0, entries.length);
+                if (a.length > entries.length) {
+                    a[entries.length] = null;
+                }
+
+                return a;
+            }
+        };
+    }
+
+    private int indexOf(Object key) {
+        for (int i = 0; i < size; i++) {
+            if (keys[i].equals(key)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Remove the property at the specified index by moving the last property
+     * into its place.
+     * 
+     * @param i The index of the property to remove
+     * @return The value of the removed property
+     */
+    private Object removeAt(int i) {
+        Object old = values[i];
+        size--;
+        keys[i] = keys[size];
+        values[i] = values[size];
+        keys[size] = null;
+        values[size] = null;
+        return old;
+    }
+
+    /**
+     * Iterates the properties by index, a removal revisits the current index
+     * as the last property is moved into it.
+     * 
+     * <p>
+     * The iterator is the entry it returns, an entry is valid only until the
+     * iterator moves on.
+     * </p>
+     */
+    private class ChangesIterator implements Iterator<Map.Entry<String, Object>>, Map.Entry<String, Object> {
+        private int cursor;
+        private int last = -1;
+
+        @Override
+        public boolean hasNext() {
+            return cursor < size;
+        }
+
+        @Override
+        public Map.Entry<String, Object> next() {
+            if (cursor >= size) {
+                throw new NoSuchElementException();
+            }
+
+            last = cursor++;
+            return this;
+        }
+
+        @Override
+        public void remove() {
+            checkEntry();
+            removeAt(last);
+            cursor = last;
+            last = -1;
+        }
+
+        @Override
+        public String getKey() {
+            checkEntry();
+            return keys[last];
+        }
+
+        @Override
+        public Object getValue() {
+            checkEntry();
+            return values[last];
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            checkEntry();
+            Object old = values[last];
+            values[last] = value;
+            return old;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            return getKey().equals(e.getKey()) && Objects.equal(getValue(), e.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            Object value = getValue();
+            return getKey().hashCode() ^ (value == null ? 0 : value.hashCode());
+        }
+
+        private void checkEntry() {
+            if (last < 0) {
+                throw new IllegalStateException("next() was not invoked.");
+            }
+        }
+    }
+}
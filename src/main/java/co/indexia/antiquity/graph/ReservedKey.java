@@ -56,7 +56,9 @@ public @interface ReservedKey {
     Class elementType();
 
     /**
-     * true if the property is automatically indexed.
+     * true if the property is automatically key indexed for the elements of
+     * {@link #elementType()}, only keys which elements are looked up by should
+     * be indexed.
      */
     boolean indexed() default false;
 
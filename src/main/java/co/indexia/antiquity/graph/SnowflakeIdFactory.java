@@ -0,0 +1,81 @@
+/**
+ * Copyright (c) 2012-2014 "Indexia Technologies, ltd."
+ * 
+ * This file is part of Antiquity.
+ * 
+ * Antiquity is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.indexia.antiquity.graph;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Preconditions;
+import com.tinkerpop.blueprints.util.wrappers.id.IdGraph;
+
+/**
+ * A lock-free {@link IdGraph.IdFactory} of time ordered, Snowflake like, long
+ * IDs.
+ * 
+ * <p>
+ * An ID is composed of 41 bits of milliseconds since {@link #EPOCH}, 10 bits
+ * of worker id and 12 bits of a sequence within the millisecond. IDs created
+ * by the same factory are strictly increasing, if the sequence of a
+ * millisecond is exhausted or the clock moves backwards the following
+ * millisecond is borrowed. Factories which create IDs for the same graph must
+ * have distinct worker ids.
+ * </p>
+ */
+public class SnowflakeIdFactory implements IdGraph.IdFactory {
+    /**
+     * The start of the IDs time (2014-01-01T00:00:00Z).
+     */
+    public static final long EPOCH = 1388534400000L;
+
+    private static final int SEQUENCE_BITS = 12;
+
+    private static final int WORKER_BITS = 10;
+
+    /**
+     * The max worker id.
+     */
+    public static final int MAX_WORKER_ID = (1 << WORKER_BITS) - 1;
+
+    private final long workerBits;
+
+    /**
+     * The milliseconds and sequence of the last created ID.
+     */
+    private final AtomicLong last = new AtomicLong();
+
+    /**
+     * Create an instance of this class.
+     * 
+     * @param workerId The id of the worker, unique per factory of the graph.
+     */
+    public SnowflakeIdFactory(int workerId) {
+        Preconditions.checkArgument(workerId >= 0 && workerId <= MAX_WORKER_ID, "Worker id must be within 0-%s.",
+                MAX_WORKER_ID);
+
+        this.workerBits = ((long) workerId) << SEQUENCE_BITS;
+    }
+
+    @Override
+    public Object createId() {
+        long timeAndSequence = TimeOrderedSequence.next(last, System.currentTimeMillis() - EPOCH, SEQUENCE_BITS);
+        long time = timeAndSequence >>> SEQUENCE_BITS;
+        long sequence = timeAndSequence & ((1L << SEQUENCE_BITS) - 1);
+
+        return (time << (WORKER_BITS + SEQUENCE_BITS)) | workerBits | sequence;
+    }
+}
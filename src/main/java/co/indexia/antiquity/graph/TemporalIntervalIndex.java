@@ -0,0 +1,107 @@
+/**
+ * Copyright (c) 2012-2014 "Indexia Technologies, ltd."
+ * 
+ * This file is part of Antiquity.
+ * 
+ * Antiquity is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.indexia.antiquity.graph;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * A temporal interval index over the valid version ranges of historic
+ * elements.
+ * 
+ * <p>
+ * The index is a relational interval tree: the version domain is viewed as an
+ * implicit binary tree and each range is registered (via the
+ * {@link VEProps#VALID_INTERVAL_NODE_PROP_KEY} key) at the highest tree node
+ * it contains. The ranges containing a version are registered at the nodes on
+ * the path from the root to that version, thus a snapshot is read by at most
+ * 65 key index lookups instead of a scan of the entire history.
+ * </p>
+ * 
+ * <p>
+ * Open ranges (ranges of latest revisions that end at the max possible
+ * version) would all be registered at the same node which is on the path of
+ * every version, they are registered at the dedicated {@link #NOW_NODE}
+ * instead. The tree nodes hold closed ranges only, the ranges of the now
+ * node are matched by their start version.
+ * </p>
+ * 
+ * <p>
+ * Only long versions are indexed.
+ * </p>
+ */
+final class TemporalIntervalIndex {
+    private TemporalIntervalIndex() {
+    }
+
+    /**
+     * The node of open ranges, no range of the tree is registered at it.
+     */
+    static final long NOW_NODE = Long.MIN_VALUE;
+
+    /**
+     * Get the tree node of the specified version range.
+     * 
+     * @param min The start version of the range.
+     * @param max The end version of the range.
+     * @return the node of the range, {@link #NOW_NODE} if the range is open or
+     *         null if the versions are not longs.
+     */
+    static Long getNode(Object min, Object max) {
+        if (!(min instanceof Long) || !(max instanceof Long)) {
+            return null;
+        }
+
+        if ((Long) max == Long.MAX_VALUE) {
+            return NOW_NODE;
+        }
+
+        // flipping the sign bit keeps the signed order for unsigned bits
+        long lo = (Long) min ^ Long.MIN_VALUE;
+        long hi = (Long) max ^ Long.MIN_VALUE;
+        if (lo == hi) {
+            return (Long) min;
+        }
+
+        // the highest differing bit is set in hi and cleared in lo
+        int h = 63 - Long.numberOfLeadingZeros(lo ^ hi);
+        return ((hi >>> h) << h) ^ Long.MIN_VALUE;
+    }
+
+    /**
+     * Get the tree nodes the ranges containing the specified version may be
+     * registered at.
+     * 
+     * @param version The version to get the nodes for.
+     * @return the nodes on the path from the root to the version followed by
+     *         the {@link #NOW_NODE}.
+     */
+    static Set<Long> getQueryNodes(long version) {
+        long v = version ^ Long.MIN_VALUE;
+        Set<Long> nodes = new LinkedHashSet<Long>();
+        for (int h = 63; h >= 0; h--) {
+            long prefix = h == 63 ? 0L : (v >>> (h + 1)) << (h + 1);
+            nodes.add((prefix | (1L << h)) ^ Long.MIN_VALUE);
+        }
+        nodes.add(version);
+        nodes.add(NOW_NODE);
+
+        return nodes;
+    }
+}
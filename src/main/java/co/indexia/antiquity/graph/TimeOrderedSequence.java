@@ -0,0 +1,58 @@
+/**
+ * Copyright (c) 2012-2014 "Indexia Technologies, ltd."
+ * 
+ * This file is part of Antiquity.
+ * 
+ * Antiquity is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.indexia.antiquity.graph;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free sequence of time ordered values, used by the time ordered ID
+ * factories.
+ * 
+ * @see UlidIdFactory
+ * @see SnowflakeIdFactory
+ */
+final class TimeOrderedSequence {
+    private TimeOrderedSequence() {
+    }
+
+    /**
+     * Get the next value of the specified sequence, a value is composed of the
+     * time followed by a sequence within the time.
+     * 
+     * <p>
+     * Values are strictly increasing, if the time did not advance the last
+     * value is incremented, thus an exhausted sequence carries into the time.
+     * </p>
+     * 
+     * @param last The last value of the sequence.
+     * @param time The current time.
+     * @param sequenceBits The amount of bits of the sequence within the time.
+     * @return the next value.
+     */
+    static long next(AtomicLong last, long time, int sequenceBits) {
+        long candidate = time << sequenceBits;
+        while (true) {
+            long prev = last.get();
+            long next = candidate > prev ? candidate : prev + 1;
+            if (last.compareAndSet(prev, next)) {
+                return next;
+            }
+        }
+    }
+}
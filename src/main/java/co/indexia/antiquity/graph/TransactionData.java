@@ -18,25 +18,79 @@
  */
 package co.indexia.antiquity.graph;
 
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
 import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Element;
 import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.util.wrappers.event.EventElement;
 
 /**
+ * <p>
  * A storage class for changes that occur within a transaction.
+ * </p>
+ * <p>
+ * An instance is meant to be reused by the transactions of a single thread,
+ * the collections and the per element modified properties are kept once the
+ * instance is cleared, unless they grew larger than the retained size.
+ * </p>
+ * <p>
+ * Elements are keyed by the id of their base graph element rather than by
+ * their wrappers, whose hashing and equality delegate through every wrapper
+ * layer, and are kept in flat arrays that are reused as well.
+ * </p>
  */
 public class TransactionData {
-    private Set<Vertex> addedVertices;
-    private Map<Vertex, Map<String, Object>> removedVertices;
-    private Set<Edge> addedEdges;
-    private Map<Edge, Map<String, Object>> removedEdges;
-    private Map<Vertex, Map<String, Object>> modifiedPropsPerVertex;
-    private Map<Edge, Map<String, Object>> modifiedPropsPerEdge;
+    /**
+     * The default maximal amount of changed elements retained between
+     * transactions.
+     */
+    public static final int DEFAULT_RETAINED_SIZE = 1024;
+
+    /**
+     * Modified properties of elements that grew larger than this are not
+     * reused.
+     */
+    private static final int MAX_POOLED_PROPERTIES = 64;
+
+    private final int retainedSize;
+    private final List<PropertyChanges> pool = new ArrayList<PropertyChanges>();
+    private ElementSet<Vertex> addedVertices;
+    private ElementMap<Vertex, Map<String, Object>> removedVertices;
+    private ElementSet<Edge> addedEdges;
+    private ElementMap<Edge, Map<String, Object>> removedEdges;
+    private ElementMap<Vertex, Map<String, Object>> modifiedPropsPerVertex;
+    private ElementMap<Edge, Map<String, Object>> modifiedPropsPerEdge;
+
+    /**
+     * Create an instance with the default retained size.
+     */
+    public TransactionData() {
+        this(DEFAULT_RETAINED_SIZE);
+    }
+
+    /**
+     * Create an instance with the specified retained size.
+     * 
+     * @param retainedSize The maximal amount of changed elements retained once
+     *        this instance is cleared.
+     */
+    public TransactionData(int retainedSize) {
+        Preconditions.checkArgument(retainedSize >= 0, "Retained size must not be negative.");
+        this.retainedSize = retainedSize;
+    }
 
     /**
      * Get the added vertices.
@@ -45,7 +99,7 @@ public class TransactionData {
      */
     public Set<Vertex> getAddedVertices() {
         if (addedVertices == null) {
-            addedVertices = new HashSet<Vertex>();
+            addedVertices = new ElementSet<Vertex>();
         }
 
         return addedVertices;
@@ -58,7 +112,7 @@ public class TransactionData {
      */
     public Map<Vertex, Map<String, Object>> getRemovedVertices() {
         if (removedVertices == null) {
-            removedVertices = new HashMap<Vertex, Map<String, Object>>();
+            removedVertices = new ElementMap<Vertex, Map<String, Object>>();
         }
 
         return removedVertices;
@@ -71,7 +125,7 @@ public class TransactionData {
      */
     public Set<Edge> getAddedEdges() {
         if (addedEdges == null) {
-            addedEdges = new HashSet<Edge>();
+            addedEdges = new ElementSet<Edge>();
         }
 
         return addedEdges;
@@ -84,7 +138,7 @@ public class TransactionData {
      */
     public Map<Vertex, Map<String, Object>> getModifiedPropsPerVertex() {
         if (modifiedPropsPerVertex == null) {
-            modifiedPropsPerVertex = new HashMap<Vertex, Map<String, Object>>();
+            modifiedPropsPerVertex = new ElementMap<Vertex, Map<String, Object>>();
         }
 
         return modifiedPropsPerVertex;
@@ -97,7 +151,7 @@ public class TransactionData {
      */
     public Map<Edge, Map<String, Object>> getRemovedEdges() {
         if (removedEdges == null) {
-            removedEdges = new HashMap<Edge, Map<String, Object>>();
+            removedEdges = new ElementMap<Edge, Map<String, Object>>();
         }
 
         return removedEdges;
@@ -110,27 +164,226 @@ public class TransactionData {
      */
     public Map<Edge, Map<String, Object>> getModifiedPropsPerEdge() {
         if (modifiedPropsPerEdge == null) {
-            modifiedPropsPerEdge = new HashMap<Edge, Map<String, Object>>();
+            modifiedPropsPerEdge = new ElementMap<Edge, Map<String, Object>>();
         }
 
         return modifiedPropsPerEdge;
     }
 
+    /**
+     * Record the value of the specified vertex property before its first
+     * modification within the transaction, later modifications of the same
+     * property are ignored.
+     * 
+     * @param vertex The modified vertex
+     * @param key The key of the modified property
+     * @param oldValue The value of the property before the modification
+     */
+    public void recordVertexModification(Vertex vertex, String key, Object oldValue) {
+        recordModification(getModifiedPropsPerVertex(), vertex, key, oldValue);
+    }
+
+    /**
+     * Record the value of the specified edge property before its first
+     * modification within the transaction, later modifications of the same
+     * property are ignored.
+     * 
+     * @param edge The modified edge
+     * @param key The key of the modified property
+     * @param oldValue The value of the property before the modification
+     */
+    public void recordEdgeModification(Edge edge, String key, Object oldValue) {
+        recordModification(getModifiedPropsPerEdge(), edge, key, oldValue);
+    }
+
+    private <E extends Element> void recordModification(Map<E, Map<String, Object>> modified, E element,
+            String key, Object oldValue) {
+        Map<String, Object> props = modified.get(element);
+        if (props == null) {
+            props = pool.isEmpty() ? new PropertyChanges() : pool.remove(pool.size() - 1);
+            modified.put(element, props);
+        }
+
+        // keep the value as it was before the first modification
+        if (!props.containsKey(key)) {
+            props.put(key, oldValue);
+        }
+    }
+
     /**
      * <p>
      * Clear the data of this class.
      * </p>
      * <p>
-     * This method mainly invokes {@link Collection#clear()} on all collections.
+     * The modified properties are returned to the pool of this instance and
+     * the collections are cleared for reuse, collections that grew larger than
+     * the retained size are released instead so that a single large
+     * transaction won't slow down the clearing of the following ones.
      * </p>
      */
     public void clear() {
-        getAddedVertices().clear();
-        getRemovedVertices().clear();
-        getAddedEdges().clear();
-        getRemovedEdges().clear();
-        getModifiedPropsPerVertex().clear();
-        getModifiedPropsPerEdge().clear();
+        recycle(modifiedPropsPerVertex);
+        recycle(modifiedPropsPerEdge);
+        addedVertices = reuse(addedVertices);
+        removedVertices = reuse(removedVertices);
+        addedEdges = reuse(addedEdges);
+        removedEdges = reuse(removedEdges);
+        modifiedPropsPerVertex = reuse(modifiedPropsPerVertex);
+        modifiedPropsPerEdge = reuse(modifiedPropsPerEdge);
+    }
+
+    /**
+     * Return the modified properties of the specified map to the pool.
+     * 
+     * @param modified The modified properties per element, may be null
+     */
+    private void recycle(Map<? extends Element, Map<String, Object>> modified) {
+        if (modified == null) {
+            return;
+        }
+
+        for (Map<String, Object> props : modified.values()) {
+            if (pool.size() >= retainedSize) {
+                return;
+            }
+
+            if (props instanceof PropertyChanges && ((PropertyChanges) props).capacity() <= MAX_POOLED_PROPERTIES) {
+                ((PropertyChanges) props).reset();
+                pool.add((PropertyChanges) props);
+            }
+        }
+    }
+
+    /**
+     * Clear the specified set for reuse, unless its capacity grew larger than
+     * the retained size. The size is not enough as coalescing may have shrunk
+     * the set after its capacity grew.
+     * 
+     * @param set The set to reuse, may be null
+     * @return the cleared set or null if it should be released.
+     */
+    private <E extends Element> ElementSet<E> reuse(ElementSet<E> set) {
+        if (set == null || set.table.peakSize > retainedSize) {
+            return null;
+        }
+
+        set.clear();
+        return set;
+    }
+
+    /**
+     * Clear the specified map for reuse, unless its capacity grew larger than
+     * the retained size.
+     * 
+     * @see #reuse(ElementSet)
+     * @param map The map to reuse, may be null
+     * @return the cleared map or null if it should be released.
+     */
+    private <E extends Element, T> ElementMap<E, T> reuse(ElementMap<E, T> map) {
+        if (map == null || map.table.peakSize > retainedSize) {
+            return null;
+        }
+
+        map.clear();
+        return map;
+    }
+
+    /**
+     * Get the id of the base graph element of the specified element, the id
+     * is read from the base element as it is kept by removed elements too.
+     * 
+     * @param element The element, possibly wrapped.
+     * @return the id of the base graph element.
+     */
+    static Object getRawId(Element element) {
+        Element raw = element;
+        while (true) {
+            if (raw instanceof ActiveVersionedElement) {
+                raw = ((ActiveVersionedElement<?, ?>) raw).getRaw();
+            } else if (raw instanceof EventElement) {
+                raw = ((EventElement) raw).getBaseElement();
+            } else {
+                return raw.getId();
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Reduce the data of this instance to the net changes of the transaction.
+     * </p>
+     * <p>
+     * Elements that were both added and removed within the transaction are
+     * dropped altogether, modifications of added or removed elements are
+     * dropped as the addition or removal supersedes them and modified
+     * properties whose current value equals the value they had before the
+     * transaction are dropped as well.
+     * </p>
+     * <p>
+     * Note: the current values are read from the elements, hence this method
+     * must be invoked before the transaction is committed.
+     * </p>
+     */
+    public void coalesce() {
+        cancelAddedAndRemoved(getAddedVertices(), getRemovedVertices(), getModifiedPropsPerVertex());
+        cancelAddedAndRemoved(getAddedEdges(), getRemovedEdges(), getModifiedPropsPerEdge());
+        getModifiedPropsPerVertex().keySet().removeAll(getAddedVertices());
+        getModifiedPropsPerVertex().keySet().removeAll(getRemovedVertices().keySet());
+        getModifiedPropsPerEdge().keySet().removeAll(getAddedEdges());
+        getModifiedPropsPerEdge().keySet().removeAll(getRemovedEdges().keySet());
+        removeUnchangedProps(getModifiedPropsPerVertex());
+        removeUnchangedProps(getModifiedPropsPerEdge());
+    }
+
+    /**
+     * Drop the elements that were both added and removed from all the
+     * specified collections.
+     * 
+     * @param added The added elements
+     * @param removed The removed elements
+     * @param modified The modified properties per element
+     */
+    private static <E extends Element> void cancelAddedAndRemoved(Set<E> added, Map<E, Map<String, Object>> removed,
+            Map<E, Map<String, Object>> modified) {
+        if (added.isEmpty() || removed.isEmpty()) {
+            return;
+        }
+
+        Iterator<E> it = added.iterator();
+        while (it.hasNext()) {
+            E element = it.next();
+            if (removed.containsKey(element)) {
+                removed.remove(element);
+                modified.remove(element);
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Drop the modified properties whose current value equals their value
+     * before the transaction, elements left without modified properties are
+     * dropped too.
+     * 
+     * @param modified The modified properties per element, where the values
+     *        are the properties values before the transaction.
+     */
+    private static <E extends Element> void removeUnchangedProps(Map<E, Map<String, Object>> modified) {
+        Iterator<Map.Entry<E, Map<String, Object>>> it = modified.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<E, Map<String, Object>> entry = it.next();
+            Iterator<Map.Entry<String, Object>> props = entry.getValue().entrySet().iterator();
+            while (props.hasNext()) {
+                Map.Entry<String, Object> prop = props.next();
+                if (Objects.equal(prop.getValue(), entry.getKey().getProperty(prop.getKey()))) {
+                    props.remove();
+                }
+            }
+
+            if (entry.getValue().isEmpty()) {
+                it.remove();
+            }
+        }
     }
 
     /**
@@ -163,4 +416,572 @@ public class TransactionData {
                 && getRemovedEdges().isEmpty() && getModifiedPropsPerVertex().isEmpty()
                 && getModifiedPropsPerEdge().isEmpty();
     }
+
+    /**
+     * Get the raw ids of the elements in the specified collection.
+     * 
+     * @param c The collection, possibly containing wrapped elements.
+     * @return A set of the raw ids of the elements of the collection.
+     */
+    private static Set<Object> getRawIds(Collection<?> c) {
+        Set<Object> ids = new HashSet<Object>();
+        for (Object o : c) {
+            if (o instanceof Element) {
+                ids.add(getRawId((Element) o));
+            }
+        }
+
+        return ids;
+    }
+
+    /**
+     * <p>
+     * An open addressing hash table of elements keyed by their raw id, it
+     * backs both {@link ElementSet} and {@link ElementMap}.
+     * </p>
+     * <p>
+     * The ids, elements and values are kept densely in flat arrays and the
+     * hash index holds positions into them, hence an entry costs no allocation
+     * once the arrays grew large enough and a cleared table keeps its arrays.
+     * A removal moves the last entry into the removed position, so iteration
+     * runs from the last entry backwards and the iterator may remove the
+     * current entry.
+     * </p>
+     * 
+     * @see TransactionData#getRawId(Element)
+     */
+    private static final class ElementTable<E extends Element, T> {
+        private static final int INITIAL_CAPACITY = 8;
+
+        private Object[] ids = new Object[INITIAL_CAPACITY];
+        private Object[] elements = new Object[INITIAL_CAPACITY];
+        private Object[] values;
+
+        /**
+         * Positions into the dense arrays plus one, zero marks a free slot.
+         * The index is twice as large as the dense arrays.
+         */
+        private int[] index = new int[INITIAL_CAPACITY * 2];
+
+        private int size;
+
+        /**
+         * The largest size this table reached, its capacity never shrinks.
+         */
+        private int peakSize;
+
+        ElementTable(boolean withValues) {
+            values = withValues ? new Object[INITIAL_CAPACITY] : null;
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * Get the position of the specified element.
+         * 
+         * @param o The element, possibly wrapped.
+         * @return the position of the element or -1 if it is not found.
+         */
+        int indexOf(Object o) {
+            return o instanceof Element ? find(getRawId((Element) o)) : -1;
+        }
+
+        /**
+         * Add the specified element unless an element with the same raw id was
+         * already added.
+         * 
+         * @param element The element to add.
+         * @param value The value of the element, ignored by tables without
+         *        values.
+         * @return the position of the element already added, or -1 if the
+         *         element was added.
+         */
+        int add(E element, T value) {
+            Object id = getRawId(element);
+            int pos = find(id);
+            if (pos >= 0) {
+                return pos;
+            }
+
+            if (size == ids.length) {
+                grow();
+            }
+
+            ids[size] = id;
+            elements[size] = element;
+            if (values != null) {
+                values[size] = value;
+            }
+
+            size++;
+            index[freeSlot(id)] = size;
+            peakSize = Math.max(peakSize, size);
+            return -1;
+        }
+
+        @SuppressWarnings("unchecked")
+        E element(int pos) {
+            return (E) elements[pos];
+        }
+
+        @SuppressWarnings("unchecked")
+        T value(int pos) {
+            return (T) values[pos];
+        }
+
+        T setValue(int pos, T value) {
+            T old = value(pos);
+            values[pos] = value;
+            return old;
+        }
+
+        /**
+         * Remove the entry at the specified position by moving the last entry
+         * into its place.
+         * 
+         * @param pos The position of the entry to remove.
+         */
+        void removeAt(int pos) {
+            removeSlot(slotOf(pos));
+            int last = --size;
+            if (pos != last) {
+                index[slotOf(last)] = pos + 1;
+                ids[pos] = ids[last];
+                elements[pos] = elements[last];
+                if (values != null) {
+                    values[pos] = values[last];
+                }
+            }
+
+            ids[last] = null;
+            elements[last] = null;
+            if (values != null) {
+                values[last] = null;
+            }
+        }
+
+        boolean remove(Object o) {
+            int pos = indexOf(o);
+            if (pos < 0) {
+                return false;
+            }
+
+            removeAt(pos);
+            return true;
+        }
+
+        boolean removeAll(Collection<?> c) {
+            boolean changed = false;
+            for (Object o : c) {
+                changed |= remove(o);
+            }
+
+            return changed;
+        }
+
+        boolean retainAll(Collection<?> c) {
+            Set<Object> retained = getRawIds(c);
+            boolean changed = false;
+            for (int pos = size - 1; pos >= 0; pos--) {
+                if (!retained.contains(ids[pos])) {
+                    removeAt(pos);
+                    changed = true;
+                }
+            }
+
+            return changed;
+        }
+
+        void clear() {
+            Arrays.fill(ids, 0, size, null);
+            Arrays.fill(elements, 0, size, null);
+            if (values != null) {
+                Arrays.fill(values, 0, size, null);
+            }
+
+            Arrays.fill(index, 0);
+            size = 0;
+        }
+
+        private int find(Object id) {
+            int mask = index.length - 1;
+            for (int slot = hash(id) & mask;; slot = (slot + 1) & mask) {
+                int pos = index[slot];
+                if (pos == 0) {
+                    return -1;
+                }
+
+                if (ids[pos - 1].equals(id)) {
+                    return pos - 1;
+                }
+            }
+        }
+
+        private int freeSlot(Object id) {
+            int mask = index.length - 1;
+            int slot = hash(id) & mask;
+            while (index[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+
+            return slot;
+        }
+
+        /**
+         * Get the index slot that points to the specified position.
+         */
+        private int slotOf(int pos) {
+            int mask = index.length - 1;
+            int slot = hash(ids[pos]) & mask;
+            while (index[slot] != pos + 1) {
+                slot = (slot + 1) & mask;
+            }
+
+            return slot;
+        }
+
+        /**
+         * Free the specified index slot, the following slots of its probe
+         * sequence are shifted back so that lookups don't stop at the hole.
+         */
+        private void removeSlot(int hole) {
+            int mask = index.length - 1;
+            int slot = hole;
+            while (true) {
+                slot = (slot + 1) & mask;
+                int pos = index[slot];
+                if (pos == 0) {
+                    break;
+                }
+
+                // move the entry unless its home slot lies between the hole
+                // and its current slot
+                int home = hash(ids[pos - 1]) & mask;
+                if (hole <= slot ? (home <= hole || home > slot) : (home <= hole && home > slot)) {
+                    index[hole] = pos;
+                    hole = slot;
+                }
+            }
+
+            index[hole] = 0;
+        }
+
+        private void grow() {
+            int capacity = ids.length * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            elements = Arrays.copyOf(elements, capacity);
+            if (values != null) {
+                values = Arrays.copyOf(values, capacity);
+            }
+
+            index = new int[capacity * 2];
+            for (int pos = 0; pos < size; pos++) {
+                index[freeSlot(ids[pos])] = pos + 1;
+            }
+        }
+
+        private static int hash(Object id) {
+            int h = id.hashCode() * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+
+        /**
+         * Iterates the entries from the last one backwards, a removal moves
+         * the last entry, which was already visited, into the current
+         * position.
+         */
+        abstract class Cursor<R> implements Iterator<R> {
+            private int cursor = size;
+            int last = -1;
+
+            @Override
+            public boolean hasNext() {
+                return cursor > 0;
+            }
+
+            @Override
+            public R next() {
+                if (cursor <= 0) {
+                    throw new NoSuchElementException();
+                }
+
+                last = --cursor;
+                return current();
+            }
+
+            @Override
+            public void remove() {
+                checkEntry();
+                removeAt(last);
+                last = -1;
+            }
+
+            abstract R current();
+
+            void checkEntry() {
+                if (last < 0) {
+                    throw new IllegalStateException("next() was not invoked.");
+                }
+            }
+        }
+    }
+
+    /**
+     * A set of elements keyed by their raw id.
+     * 
+     * @see ElementTable
+     */
+    private static final class ElementSet<E extends Element> extends AbstractSet<E> {
+        private final ElementTable<E, Void> table = new ElementTable<E, Void>(false);
+
+        @Override
+        public boolean add(E element) {
+            return table.add(element, null) < 0;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return table.indexOf(o) >= 0;
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            return table.remove(o);
+        }
+
+        @Override
+        public boolean removeAll(Collection<?> c) {
+            return table.removeAll(c);
+        }
+
+        @Override
+        public boolean retainAll(Collection<?> c) {
+            return table.retainAll(c);
+        }
+
+        @Override
+        public Iterator<E> iterator() {
+            return table.new Cursor<E>() {
+                @Override
+                E current() {
+                    return table.element(last);
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return table.size();
+        }
+
+        @Override
+        public void clear() {
+            table.clear();
+        }
+    }
+
+    /**
+     * A map of elements keyed by their raw id, each entry keeps its element.
+     * 
+     * @see ElementTable
+     */
+    private static final class ElementMap<E extends Element, T> extends AbstractMap<E, T> {
+        private final ElementTable<E, T> table = new ElementTable<E, T>(true);
+
+        private Set<E> keySet;
+
+        private Set<Map.Entry<E, T>> entrySet;
+
+        @Override
+        public T get(Object key) {
+            int pos = table.indexOf(key);
+            return pos < 0 ? null : table.value(pos);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return table.indexOf(key) >= 0;
+        }
+
+        @Override
+        public T put(E key, T value) {
+            int pos = table.add(key, value);
+            return pos < 0 ? null : table.setValue(pos, value);
+        }
+
+        @Override
+        public T remove(Object key) {
+            int pos = table.indexOf(key);
+            if (pos < 0) {
+                return null;
+            }
+
+            T old = table.value(pos);
+            table.removeAt(pos);
+            return old;
+        }
+
+        @Override
+        public int size() {
+            return table.size();
+        }
+
+        @Override
+        public void clear() {
+            table.clear();
+        }
+
+        @Override
+        public Set<E> keySet() {
+            if (keySet == null) {
+                keySet = new AbstractSet<E>() {
+                    @Override
+                    public Iterator<E> iterator() {
+                        return table.new Cursor<E>() {
+                            @Override
+                            E current() {
+                                return table.element(last);
+                            }
+                        };
+                    }
+
+                    @Override
+                    public boolean contains(Object o) {
+                        return table.indexOf(o) >= 0;
+                    }
+
+                    @Override
+                    public boolean remove(Object o) {
+                        return table.remove(o);
+                    }
+
+                    @Override
+                    public boolean removeAll(Collection<?> c) {
+                        return table.removeAll(c);
+                    }
+
+                    @Override
+                    public boolean retainAll(Collection<?> c) {
+                        return table.retainAll(c);
+                    }
+
+                    @Override
+                    public int size() {
+                        return table.size();
+                    }
+
+                    @Override
+                    public void clear() {
+                        table.clear();
+                    }
+                };
+            }
+
+            return keySet;
+        }
+
+        @Override
+        public Set<Map.Entry<E, T>> entrySet() {
+            if (entrySet == null) {
+                entrySet = new AbstractSet<Map.Entry<E, T>>() {
+                    @Override
+                    public Iterator<Map.Entry<E, T>> iterator() {
+                        return new EntryCursor();
+                    }
+
+                    @Override
+                    public int size() {
+                        return table.size();
+                    }
+
+                    @Override
+                    public void clear() {
+                        table.clear();
+                    }
+
+                    // the iterator reuses its entry, arrays get detached entries
+                    @Override
+                    public Object[] toArray() {
+                        Object[] entries = new Object[table.size()];
+                        for (int i = 0; i < entries.length; i++) {
+                            entries[i] =
+                                    new AbstractMap.SimpleImmutableEntry<E, T>(table.element(i), table.value(i));
+                        }
+
+                        return entries;
+                    }
+
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public <A> A[] toArray(A[] a) {
+                        Object[] entries = toArray();
+                        if (a.length < entries.length) {
+                            return (A[]) Arrays.copyOf(entries, entries.length, a.getClass());
+                        }
+
+                        System.arraycopy(entries, 0, a, 0, entries.length);
+                        if (a.length > entries.length) {
+                            a[entries.length] = null;
+                        }
+
+                        return a;
+                    }
+                };
+            }
+
+            return entrySet;
+        }
+
+        /**
+         * The iterator is the entry it returns, an entry is valid only until
+         * the iterator moves on.
+         */
+        private final class EntryCursor extends ElementTable<E, T>.Cursor<Map.Entry<E, T>> implements
+                Map.Entry<E, T> {
+            EntryCursor() {
+                table.super();
+            }
+
+            @Override
+            Map.Entry<E, T> current() {
+                return this;
+            }
+
+            @Override
+            public E getKey() {
+                checkEntry();
+                return table.element(last);
+            }
+
+            @Override
+            public T getValue() {
+                checkEntry();
+                return table.value(last);
+            }
+
+            @Override
+            public T setValue(T value) {
+                checkEntry();
+                return table.setValue(last, value);
+            }
+
+            @Override
+            public boolean equals(Object o) {
+                if (!(o instanceof Map.Entry)) {
+                    return false;
+                }
+
+                Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+                return getKey().equals(e.getKey()) && Objects.equal(getValue(), e.getValue());
+            }
+
+            @Override
+            public int hashCode() {
+                T value = getValue();
+                return getKey().hashCode() ^ (value == null ? 0 : value.hashCode());
+            }
+        }
+    }
 }
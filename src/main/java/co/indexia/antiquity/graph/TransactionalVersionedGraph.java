@@ -18,9 +18,17 @@
  */
 package co.indexia.antiquity.graph;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import com.google.common.base.Preconditions;
+import com.tinkerpop.blueprints.Direction;
 import com.tinkerpop.blueprints.Edge;
 import com.tinkerpop.blueprints.Element;
 import com.tinkerpop.blueprints.IndexableGraph;
@@ -28,6 +36,9 @@ import com.tinkerpop.blueprints.KeyIndexableGraph;
 import com.tinkerpop.blueprints.TransactionalGraph;
 import com.tinkerpop.blueprints.Vertex;
 import com.tinkerpop.blueprints.util.wrappers.id.IdGraph.IdFactory;
+import co.indexia.antiquity.graph.AsyncHistoryWriter.AddedEdge;
+import co.indexia.antiquity.graph.AsyncHistoryWriter.HistoryTask;
+import co.indexia.antiquity.graph.AsyncHistoryWriter.RemovedElement;
 import co.indexia.antiquity.graph.identifierBehavior.GraphIdentifierBehavior;
 
 import org.slf4j.Logger;
@@ -48,17 +59,31 @@ public class TransactionalVersionedGraph<T extends TransactionalGraph & KeyIndex
     private final ThreadLocal<TransactionData> transactionData = new ThreadLocal<TransactionData>() {
         @Override
         protected TransactionData initialValue() {
-            return new TransactionData();
+            return new TransactionData(conf.getTransactionBufferRetainedSize());
         }
     };
 
+    /**
+     * Writes the history of committed transactions, null if history is
+     * written within the commit.
+     * 
+     * @see Configuration#asyncHistoryQueueSize
+     */
+    private final AsyncHistoryWriter<V> asyncHistory;
+
     TransactionalVersionedGraph(T baseGraph, GraphIdentifierBehavior<V> identifierBehavior) {
-        super(baseGraph, identifierBehavior, null, null, null, true);
+        this(baseGraph, identifierBehavior, null, null, null);
     }
 
     TransactionalVersionedGraph(T baseGraph, GraphIdentifierBehavior<V> identifierBehavior,
             Configuration configuration, IdFactory vertexIdFactory, IdFactory edgeIdFactory) {
         super(baseGraph, identifierBehavior, configuration, vertexIdFactory, edgeIdFactory, true);
+        if (conf.isAsyncHistoryEnabled()) {
+            this.asyncHistory = new AsyncHistoryWriter<V>(this, conf.getAsyncHistoryQueueSize());
+            getHistoricGraph().setHistoryWriter(asyncHistory);
+        } else {
+            this.asyncHistory = null;
+        }
     }
 
     @Override
@@ -71,16 +96,14 @@ public class TransactionalVersionedGraph<T extends TransactionalGraph & KeyIndex
     public void vertexPropertyChanged(Vertex vertex, String key, Object oldValue, Object setValue) {
         log.debug("==Vertex [{}] property[{}] was modified [{} -> {}]==", vertex, key, oldValue, setValue);
 
-        putEntryOnMap(transactionData.get().getModifiedPropsPerVertex(), transactionData.get()
-                .getModifiedPropsPerVertex().get(vertex), vertex, key, oldValue);
+        transactionData.get().recordVertexModification(vertex, key, oldValue);
     }
 
     @Override
     public void vertexPropertyRemoved(Vertex vertex, String key, Object removedValue) {
         log.debug("==Vertex property [{}] was removed [{}->{}]==", vertex, removedValue);
 
-        putEntryOnMap(transactionData.get().getModifiedPropsPerVertex(), transactionData.get()
-                .getModifiedPropsPerVertex().get(vertex), vertex, key, removedValue);
+        transactionData.get().recordVertexModification(vertex, key, removedValue);
     }
 
     @Override
@@ -99,16 +122,14 @@ public class TransactionalVersionedGraph<T extends TransactionalGraph & KeyIndex
     public void edgePropertyChanged(Edge edge, String key, Object oldValue, Object setValue) {
         log.debug("==Edge [{}] property[{}] was modified [{} -> {}]==", edge, key, oldValue, setValue);
 
-        putEntryOnMap(transactionData.get().getModifiedPropsPerEdge(), transactionData.get().getModifiedPropsPerEdge()
-                .get(edge), edge, key, oldValue);
+        transactionData.get().recordEdgeModification(edge, key, oldValue);
     }
 
     @Override
     public void edgePropertyRemoved(Edge edge, String key, Object removedValue) {
         log.debug("==Edge property [{}] was removed [{}->{}]==", edge, removedValue);
 
-        putEntryOnMap(transactionData.get().getModifiedPropsPerEdge(), transactionData.get().getModifiedPropsPerEdge()
-                .get(edge), edge, key, removedValue);
+        transactionData.get().recordEdgeModification(edge, key, removedValue);
     }
 
     @Override
@@ -121,41 +142,11 @@ public class TransactionalVersionedGraph<T extends TransactionalGraph & KeyIndex
      * Handles the {@link TransactionData} associated with this graph.
      * 
      * @see TransactionData
+     * @param latestVersion The version preceding the transaction's version.
      * @param nextVersion The next version of the transaction to be committed.
      */
-    private void handleTransactionData(V nextVersion) {
-        versionAddedVertices(nextVersion, transactionData.get().getAddedVertices());
-        versionRemovedVertices(nextVersion, getLatestGraphVersion(), transactionData.get().getRemovedVertices());
-        versionAddedEdges(nextVersion, transactionData.get().getAddedEdges());
-        versionRemovedEdges(nextVersion, getLatestGraphVersion(), transactionData.get().getRemovedEdges());
-
-        for (Map.Entry<Vertex, Map<String, Object>> oldPropsPerVertex : transactionData.get()
-                .getModifiedPropsPerVertex().entrySet()) {
-
-            // if vertex is new then skip version the modification as it'll
-            // create an extra unneeded historical version
-            if (!transactionData.get().getAddedVertices().contains(oldPropsPerVertex.getKey())) {
-                versionModifiedVertex(getLatestGraphVersion(), nextVersion, oldPropsPerVertex.getKey(),
-                        oldPropsPerVertex.getValue());
-            } else {
-                log.trace(String.format("Modifications found for vertex [%s] but it's new, skipping modifications.",
-                        oldPropsPerVertex.getKey()));
-            }
-        }
-
-        for (Map.Entry<Edge, Map<String, Object>> oldPropsPerEdge : transactionData.get().getModifiedPropsPerEdge()
-                .entrySet()) {
-
-            // if edge is new then skip version the modification as it'll
-            // create an extra unneeded historical version
-            if (!transactionData.get().getAddedEdges().contains(oldPropsPerEdge.getKey())) {
-                versionModifiedEdge(getLatestGraphVersion(), nextVersion, oldPropsPerEdge.getKey(),
-                        oldPropsPerEdge.getValue());
-            } else {
-                log.trace(String.format("Modifications found for edge [%s] but it's new, skipping modifications.",
-                        oldPropsPerEdge.getKey()));
-            }
-        }
+    private void handleTransactionData(V latestVersion, V nextVersion) {
+        versionTransactionData(transactionData.get(), latestVersion, nextVersion);
     }
 
     @Override
@@ -168,14 +159,48 @@ public class TransactionalVersionedGraph<T extends TransactionalGraph & KeyIndex
      * A commit only fires the event queue on successful operation. If the
      * commit operation to the underlying graph fails, the event queue will not
      * fire and the queue will not be reset.
+     * 
+     * <p>
+     * The history of the transaction and the allocation of its version are
+     * written within the same base transaction, thus a single base commit is
+     * performed per transaction.
+     * </p>
+     * 
+     * <p>
+     * The natural ids of the elements created by the transaction are kept
+     * cached only once the base commit succeeded, they are invalidated if the
+     * commit fails.
+     * </p>
      */
     @Override
     public void commit() {
-        boolean transactionFailure = false;
+        boolean committed = false;
+        try {
+            if (asyncHistory != null) {
+                commitWriteBehind();
+            } else {
+                commitVersioned();
+            }
+            committed = true;
+        } finally {
+            if (getNaturalIdCache() != null) {
+                if (committed) {
+                    getNaturalIdCache().commit();
+                } else {
+                    getNaturalIdCache().rollback();
+                }
+            }
+        }
+    }
 
+    /**
+     * Commit the transaction with its history.
+     */
+    private void commitVersioned() {
         V transactionVer = null;
         try {
             getEventableGraph().getTrigger().fireEventQueue();
+            coalesceTransactionData(transactionData.get());
 
             // Empty transaction
             if (conf.getDoNotVersionEmptyTransactions() && transactionData.get().isEmpty()) {
@@ -184,34 +209,426 @@ public class TransactionalVersionedGraph<T extends TransactionalGraph & KeyIndex
                 return;
             }
 
-            transactionVer = getNextGraphVersion(false);
+            transactionVer = identifierBehavior.getNextGraphVersion(getLatestGraphVersion());
             if (transactionVer == null) {
-                transactionFailure = true;
                 log.error("Could not allocate next commit version, performing a rollback.");
                 getBaseGraph().rollback();
+                throw new IllegalStateException("Could not allocate next commit version.");
             }
 
+            // read once the version was taken, the identifier behavior may
+            // hold the commit order until the version is committed
+            V latestVer = getLatestGraphVersion();
             log.debug("Committing transaction[{}]", transactionVer);
-            handleTransactionData(transactionVer);
+            handleTransactionData(latestVer, transactionVer);
             getEventableGraph().getTrigger().resetEventQueue();
             transactionData.get().clear();
+            allocateNextGraphVersion(transactionVer);
             getBaseGraph().commit();
+            identifierBehavior.commitGraphVersion();
+            log.debug("Transaction[{}] successfully committed.", transactionVer);
         } catch (RuntimeException re) {
-            transactionFailure = true;
             log.error("Failed to commit transaction[{}]", transactionVer);
+            identifierBehavior.rollbackGraphVersion();
             throw re;
-        } finally {
-            if (!transactionFailure) {
+        }
+    }
+
+    /**
+     * Commit the transaction and queue its history to the
+     * {@link AsyncHistoryWriter}.
+     * 
+     * <p>
+     * The transaction data is coalesced, detached and persisted as a pending
+     * history vertex before entering the critical section, only the version
+     * allocation, the base commit and the queueing of the history are
+     * serialized so that the history is queued in version order. Allocating
+     * the version writes the historic root vertex, thus concurrent commits are
+     * serialized by the base graph regardless.
+     * </p>
+     * 
+     * <p>
+     * The pending history vertex is committed within the same base commit,
+     * its versions are set once allocated, see
+     * {@link #recoverPendingHistory()}.
+     * </p>
+     * 
+     * @throws IllegalStateException if the history of a previous transaction
+     *         could not be written, the transaction is left open.
+     * @throws IllegalArgumentException if a value of the transaction can't be
+     *         persisted as pending history, the transaction is left open.
+     */
+    private void commitWriteBehind() {
+        asyncHistory.checkWritable();
+
+        getEventableGraph().getTrigger().fireEventQueue();
+        coalesceTransactionData(transactionData.get());
+
+        // Empty transaction
+        if (conf.getDoNotVersionEmptyTransactions() && transactionData.get().isEmpty()) {
+            log.warn("An empty transaction was committed, skipping transaction commit");
+            getBaseGraph().commit();
+            return;
+        }
+
+        HistoryTask<V> task = detach(transactionData.get());
+        Vertex pending = persistPendingHistory(task);
+        synchronized (asyncHistory) {
+            V transactionVer = null;
+            try {
+                transactionVer = identifierBehavior.getNextGraphVersion(getLatestGraphVersion());
+                if (transactionVer == null) {
+                    log.error("Could not allocate next commit version, performing a rollback.");
+                    getBaseGraph().rollback();
+                    throw new IllegalStateException("Could not allocate next commit version.");
+                }
+
+                V latestVer = getLatestGraphVersion();
+                log.debug("Committing transaction[{}], history is written asynchronously", transactionVer);
+                task.assignVersion(latestVer, transactionVer);
+                getEventableGraph().getTrigger().resetEventQueue();
+                transactionData.get().clear();
+                allocateNextGraphVersion(transactionVer);
+                pending.setProperty(VEProps.PENDING_HISTORY_VERSION_PROP_KEY, transactionVer);
+                pending.setProperty(VEProps.PENDING_HISTORY_LATEST_VERSION_PROP_KEY, latestVer);
+                getBaseGraph().commit();
+                identifierBehavior.commitGraphVersion();
+                asyncHistory.submit(task);
                 log.debug("Transaction[{}] successfully committed.", transactionVer);
-                // If version is not null (for some reason), then allocate the
-                // next version and commit it in the base
-                // graph.
-                if (transactionVer != null) {
-                    allocateNextGraphVersion(transactionVer);
-                    getBaseGraph().commit();
+            } catch (RuntimeException re) {
+                log.error("Failed to commit transaction[{}]", transactionVer);
+                identifierBehavior.rollbackGraphVersion();
+                throw re;
+            }
+        }
+    }
+
+    /**
+     * Detach the specified {@link TransactionData} from the transaction it was
+     * collected in.
+     * 
+     * @param data The transaction data to detach.
+     * @return a task to write the history of the transaction, its version is
+     *         assigned once allocated.
+     */
+    private HistoryTask<V> detach(TransactionData data) {
+        HistoryTask<V> task = new HistoryTask<V>();
+
+        // removed elements can't be touched, their ids are taken from the
+        // props captured on removal. The captured props are owned by the
+        // transaction data thus they are handed over as is.
+        Map<Vertex, Map<String, Object>> removedVertices = data.getRemovedVertices();
+        for (Map.Entry<Vertex, Map<String, Object>> v : removedVertices.entrySet()) {
+            task.removedVertices.add(new RemovedElement(getRemovedActiveId(v.getKey(), v.getValue(),
+                    VEProps.NATURAL_VERTEX_ID_PROP_KEY), v.getValue()));
+        }
+
+        Map<Edge, Map<String, Object>> removedEdges = data.getRemovedEdges();
+        for (Map.Entry<Edge, Map<String, Object>> e : removedEdges.entrySet()) {
+            task.removedEdges.add(new RemovedElement(getRemovedActiveId(e.getKey(), e.getValue(),
+                    VEProps.NATURAL_EDGE_ID_PROP_KEY), e.getValue()));
+        }
+
+        for (Vertex v : data.getAddedVertices()) {
+            if (!removedVertices.containsKey(v)) {
+                ActiveVersionedVertex<V> active = new ActiveVersionedVertex<V>(v, this, false);
+                task.addedVertices.add(active.getId());
+                task.committedVertexProps.put(active.getId(), ElementUtils.getPropertiesAsMap(active));
+            }
+        }
+
+        for (Edge e : data.getAddedEdges()) {
+            if (!removedEdges.containsKey(e)) {
+                ActiveVersionedEdge<V> active = new ActiveVersionedEdge<V>(utils.getNonEventableEdge(e), this, false);
+                task.addedEdges.add(new AddedEdge(active.getId(), active.getVertex(Direction.OUT).getId(), active
+                        .getVertex(Direction.IN).getId(), active.getLabel()));
+                task.committedEdgeProps.put(active.getId(), ElementUtils.getPropertiesAsMap(active));
+            }
+        }
+
+        for (Map.Entry<Vertex, Map<String, Object>> v : data.getModifiedPropsPerVertex().entrySet()) {
+            if (!removedVertices.containsKey(v.getKey())) {
+                ActiveVersionedVertex<V> active = new ActiveVersionedVertex<V>(v.getKey(), this, false);
+                task.modifiedPropsPerVertex.put(active.getId(), new HashMap<String, Object>(v.getValue()));
+                task.committedVertexProps.put(active.getId(), ElementUtils.getPropertiesAsMap(active));
+            }
+        }
+
+        for (Map.Entry<Edge, Map<String, Object>> e : data.getModifiedPropsPerEdge().entrySet()) {
+            if (!removedEdges.containsKey(e.getKey())) {
+                ActiveVersionedEdge<V> active = new ActiveVersionedEdge<V>(e.getKey(), this, false);
+                task.modifiedPropsPerEdge.put(active.getId(), new HashMap<String, Object>(e.getValue()));
+                task.committedEdgeProps.put(active.getId(), ElementUtils.getPropertiesAsMap(active));
+            }
+        }
+
+        return task;
+    }
+
+    /**
+     * Get the active id of the specified removed element.
+     * 
+     * @param removed The removed element.
+     * @param props The properties of the element captured on removal.
+     * @param naturalIdKey The natural id key of the element type.
+     * @return The active id of the removed element.
+     */
+    private Object getRemovedActiveId(Element removed, Map<String, Object> props, String naturalIdKey) {
+        if (isNaturalIds()) {
+            return props.get(naturalIdKey);
+        } else {
+            return utils.getNonEventableElement(removed).getId();
+        }
+    }
+
+    /**
+     * Write the history of the specified task within a dedicated base
+     * transaction.
+     * 
+     * <p>
+     * The historic revisions are built from the properties as committed by the
+     * task's transaction rather than from the current active elements, which
+     * may contain later modifications or may have been removed by a later
+     * transaction meanwhile. Active elements that still exist are referenced
+     * to their latest historic revisions.
+     * </p>
+     * 
+     * <p>
+     * The pending history vertex of the task is removed within the same base
+     * transaction.
+     * </p>
+     * 
+     * @param task The task to write the history of.
+     * @throws IllegalStateException if the history the task relies on was not
+     *         found.
+     */
+    void writeHistory(HistoryTask<V> task) {
+        log.debug("Writing history of transaction[{}]", task.getVersion());
+        V version = task.getVersion();
+        V latestVersion = task.getLatestVersion();
+        Preconditions.checkState(latestVersion.compareTo(version) < 0,
+                "Version [%s] was committed out of order, the latest version is [%s].", version, latestVersion);
+
+        try {
+            for (Object id : task.addedVertices) {
+                HistoricVersionedVertex<V> hv = addHistoricVertex(id, version, getMaxPossibleGraphVersion());
+                utils.syncLatestHistoric(hv, task.committedVertexProps.get(id));
+
+                ActiveVersionedVertex<V> active = (ActiveVersionedVertex<V>) getVertex(id);
+                if (active != null) {
+                    active.getRaw().setProperty(VEProps.REF_TO_LATEST_HISTORIC_ID_KEY, hv.getHardId());
+                    getHistoricGraph().registerLatestRevision(id, hv.getRaw());
+                    if (conf.getPrivateVertexHashEnabled()) {
+                        utils.setPrivateHash(active);
+                    }
+                }
+            }
+
+            for (AddedEdge e : task.addedEdges) {
+                HistoricVersionedEdge<V> he =
+                        addHistoricEdge(e.activeId, getLatestHistoricVertex(e.outId), getLatestHistoricVertex(e.inId),
+                                e.label, version, getMaxPossibleGraphVersion());
+                utils.syncLatestHistoric(he, task.committedEdgeProps.get(e.activeId));
+
+                Edge active = getEdge(e.activeId);
+                if (active != null) {
+                    ((ActiveVersionedEdge<V>) active).getRaw().setProperty(VEProps.REF_TO_LATEST_HISTORIC_ID_KEY,
+                            he.getHardId());
+                }
+            }
+
+            Set<Object> addedVertices = new HashSet<Object>(task.addedVertices);
+            for (Map.Entry<Object, Map<String, Object>> v : task.modifiedPropsPerVertex.entrySet()) {
+                // a new vertex is versioned by its committed props already
+                if (addedVertices.contains(v.getKey())) {
+                    continue;
+                }
+
+                HistoricVersionedVertex<V> latestHV = getLatestHistoricVertex(v.getKey());
+                addModifiedRevision(latestVersion, version, v.getKey(), latestHV, v.getValue());
+                utils.syncLatestHistoric(latestHV, task.committedVertexProps.get(v.getKey()));
+
+                Vertex active = getVertex(v.getKey());
+                if (active != null && conf.getPrivateVertexHashEnabled()) {
+                    // the vertex may have been modified by later transactions
+                    // since, the old values are not relative to its current
+                    // hash.
+                    utils.setPrivateHash(active);
+                }
+            }
+
+            for (Object id : task.modifiedPropsPerEdge.keySet()) {
+                utils.syncLatestHistoric(getLatestHistoricEdge(id), task.committedEdgeProps.get(id));
+            }
+
+            // removals are versioned by the props captured on removal, the
+            // removed elements themselves are not needed.
+            for (RemovedElement v : task.removedVertices) {
+                if (!v.props.containsKey(VEProps.REF_TO_LATEST_HISTORIC_ID_KEY)) {
+                    // the vertex was added by a transaction whose history
+                    // was not written at the time of the removal.
+                    v.props.put(VEProps.REF_TO_LATEST_HISTORIC_ID_KEY, getLatestHistoricVertex(v.activeId)
+                            .getHardId());
+                }
+
+                versionRemovedVertices(version, latestVersion,
+                        Collections.<Vertex, Map<String, Object>> singletonMap(null, v.props));
+            }
+
+            for (RemovedElement e : task.removedEdges) {
+                if (!e.props.containsKey(VEProps.REF_TO_LATEST_HISTORIC_ID_KEY)) {
+                    e.props.put(VEProps.REF_TO_LATEST_HISTORIC_ID_KEY, getLatestHistoricEdge(e.activeId).getHardId());
                 }
+
+                versionRemovedEdges(version, latestVersion,
+                        Collections.<Edge, Map<String, Object>> singletonMap(null, e.props));
+            }
+
+            Vertex pending =
+                    ElementUtils.getSingleElement(getUneventableGraph(), VEProps.PENDING_HISTORY_VERSION_PROP_KEY,
+                            version, Vertex.class);
+            if (pending != null) {
+                pending.remove();
+            }
+
+            getBaseGraph().commit();
+            log.debug("History of transaction[{}] successfully written.", version);
+        } catch (RuntimeException re) {
+            getBaseGraph().rollback();
+            throw re;
+        }
+    }
+
+    /**
+     * Get the latest historic revision of the specified vertex, the active
+     * vertex may have been removed by a transaction whose history was not
+     * written yet.
+     * 
+     * @param activeId The active id of the vertex.
+     * @return The latest historic revision of the vertex.
+     * @throws IllegalStateException if no history of the vertex was found.
+     */
+    private HistoricVersionedVertex<V> getLatestHistoricVertex(Object activeId) {
+        Vertex active = getVertex(activeId);
+        HistoricVersionedVertex<V> latest;
+        if (active != null) {
+            latest = getHistoricGraph().getLatestHistoricRevision((ActiveVersionedVertex<V>) active);
+        } else {
+            latest = (HistoricVersionedVertex<V>) getHistoricGraph().getVertex(activeId);
+        }
+
+        if (latest == null) {
+            throw new IllegalStateException(String.format("No history found for vertex [%s].", activeId));
+        }
+
+        return latest;
+    }
+
+    /**
+     * Get the latest historic revision of the specified edge, the active edge
+     * may have been removed by a transaction whose history was not written
+     * yet.
+     * 
+     * @param activeId The active id of the edge.
+     * @return The latest historic revision of the edge.
+     * @throws IllegalStateException if no history of the edge was found.
+     */
+    private HistoricVersionedEdge<V> getLatestHistoricEdge(Object activeId) {
+        Edge active = getEdge(activeId);
+        HistoricVersionedEdge<V> latest;
+        if (active != null) {
+            latest = getHistoricGraph().getLatestHistoricRevision((ActiveVersionedEdge<V>) active);
+        } else {
+            latest = (HistoricVersionedEdge<V>) getHistoricGraph().getEdge(activeId);
+        }
+
+        if (latest == null) {
+            throw new IllegalStateException(String.format("No history found for edge [%s].", activeId));
+        }
+
+        return latest;
+    }
+
+    /**
+     * Persist the change set of the specified task as a pending history vertex
+     * within the current base transaction, the versions of the task are set
+     * by the committer once allocated.
+     * 
+     * @see PendingHistoryCodec
+     * @param task The task to persist.
+     * @return The pending history vertex.
+     */
+    private Vertex persistPendingHistory(HistoryTask<V> task) {
+        String changes = PendingHistoryCodec.encode(task);
+        Vertex pending = addPlainVertexToGraph(null, false);
+        pending.setProperty(VEProps.HISTORIC_ELEMENT_PROP_KEY, true);
+        pending.setProperty(VEProps.PENDING_HISTORY_PROP_KEY, true);
+        pending.setProperty(VEProps.PENDING_HISTORY_DATA_PROP_KEY, changes);
+        return pending;
+    }
+
+    /**
+     * Queue the history of committed transactions that was not written yet
+     * (e.g the process terminated before the history was written) to the
+     * {@link AsyncHistoryWriter}.
+     * 
+     * <p>
+     * Invoked once the graph is built, before any further transaction is
+     * committed. Does nothing if history is written within the commit.
+     * </p>
+     */
+    void recoverPendingHistory() {
+        if (asyncHistory == null) {
+            return;
+        }
+
+        List<HistoryTask<V>> tasks = new ArrayList<HistoryTask<V>>();
+        for (Vertex pending : getUneventableGraph().getVertices(VEProps.PENDING_HISTORY_PROP_KEY, true)) {
+            V version = pending.getProperty(VEProps.PENDING_HISTORY_VERSION_PROP_KEY);
+            V latestVersion = pending.getProperty(VEProps.PENDING_HISTORY_LATEST_VERSION_PROP_KEY);
+            tasks.add(PendingHistoryCodec.decode((String) pending.getProperty(VEProps.PENDING_HISTORY_DATA_PROP_KEY),
+                    latestVersion, version));
+        }
+        getBaseGraph().commit();
+
+        Collections.sort(tasks, new Comparator<HistoryTask<V>>() {
+            @Override
+            public int compare(HistoryTask<V> t1, HistoryTask<V> t2) {
+                return t1.getVersion().compareTo(t2.getVersion());
             }
-            // TODO: Unlock the transaction version allocation
+        });
+
+        if (!tasks.isEmpty()) {
+            log.info("Recovering the history of {} transactions which was not written.", tasks.size());
+        }
+
+        for (HistoryTask<V> task : tasks) {
+            asyncHistory.submit(task);
+        }
+    }
+
+    /**
+     * Recover the history writer once the history of a transaction could not
+     * be written, from then on commits are rejected.
+     * 
+     * <p>
+     * Meant to be invoked by an operator once the cause of the failure was
+     * dealt with: the failed state of the writer is cleared and the history
+     * that was not written is queued again from the pending history vertices.
+     * Commits are held until the history is queued. If the history fails
+     * again the writer is failed again and this method may be invoked again.
+     * </p>
+     * 
+     * @throws IllegalStateException if history is written within the commit.
+     * @throws InterruptedException if interrupted while waiting for the
+     *         writer.
+     */
+    public void recoverHistory() throws InterruptedException {
+        Preconditions.checkState(asyncHistory != null, "History is written within the commit.");
+
+        synchronized (asyncHistory) {
+            asyncHistory.reset();
+            recoverPendingHistory();
         }
     }
 
@@ -219,6 +636,11 @@ public class TransactionalVersionedGraph<T extends TransactionalGraph & KeyIndex
      * A rollback only resets the event queue on successful operation. If the
      * rollback operation to the underlying graph fails, the event queue will
      * not be reset.
+     * 
+     * <p>
+     * The natural ids of the elements created by the transaction are
+     * invalidated in any case, they may refer to discarded elements.
+     * </p>
      */
     @Override
     public void rollback() {
@@ -229,6 +651,10 @@ public class TransactionalVersionedGraph<T extends TransactionalGraph & KeyIndex
             transactionFailure = true;
             throw re;
         } finally {
+            identifierBehavior.rollbackGraphVersion();
+            if (getNaturalIdCache() != null) {
+                getNaturalIdCache().rollback();
+            }
             if (!transactionFailure) {
                 getEventableGraph().getTrigger().resetEventQueue();
                 transactionData.get().clear();
@@ -237,28 +663,15 @@ public class TransactionalVersionedGraph<T extends TransactionalGraph & KeyIndex
     }
 
     /**
-     * <p>
-     * Put the specified property key/value in the specified map.
-     * </p>
-     * 
-     * <p>
-     * If map is null a new map will be created
-     * </p>
-     * 
-     * @param map A map of properties to hold the specified key/value property
-     * @param key The key of the property to store within the specified map
-     * @param value The value of the property to store within the specified map
-     * @return The specified map after it contains the specified key/value
+     * Write the history of all the committed transactions before shutting
+     * down.
      */
-    private static <E extends Element> Map<String, Object> putEntryOnMap(Map<E, Map<String, Object>> elementMap,
-            Map<String, Object> map, E element, String key, Object value) {
-
-        if (map == null) {
-            map = new HashMap<String, Object>();
-            elementMap.put(element, map);
+    @Override
+    public void shutdown() {
+        if (asyncHistory != null) {
+            asyncHistory.shutdown();
         }
 
-        map.put(key, value);
-        return map;
+        super.shutdown();
     }
 }
@@ -0,0 +1,77 @@
+/**
+ * Copyright (c) 2012-2014 "Indexia Technologies, ltd."
+ * 
+ * This file is part of Antiquity.
+ * 
+ * Antiquity is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.indexia.antiquity.graph;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.tinkerpop.blueprints.util.wrappers.id.IdGraph;
+
+/**
+ * A lock-free {@link IdGraph.IdFactory} of time ordered, ULID like, string
+ * IDs.
+ * 
+ * <p>
+ * An ID is a 26 characters Crockford base32 string of 128 bits: 48 bits of
+ * milliseconds, 16 bits of a sequence within the millisecond and 64 random
+ * bits. IDs created by the same factory are strictly increasing (both
+ * lexicographically and by creation order), if the sequence of a millisecond
+ * is exhausted or the clock moves backwards the following millisecond is
+ * borrowed.
+ * </p>
+ */
+public class UlidIdFactory implements IdGraph.IdFactory {
+    private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+
+    /**
+     * The milliseconds and sequence of the last created ID.
+     */
+    private final AtomicLong last = new AtomicLong();
+
+    private final ThreadLocal<Random> random = new ThreadLocal<Random>() {
+        @Override
+        protected Random initialValue() {
+            return new Random();
+        }
+    };
+
+    @Override
+    public Object createId() {
+        long timeAndSequence = TimeOrderedSequence.next(last, System.currentTimeMillis(), 16);
+        return encode(timeAndSequence, random.get().nextLong());
+    }
+
+    /**
+     * Encode the specified 128 bits as a Crockford base32 string.
+     * 
+     * @param hi The high 64 bits.
+     * @param lo The low 64 bits.
+     * @return a 26 characters string.
+     */
+    static String encode(long hi, long lo) {
+        char[] chars = new char[26];
+        for (int i = 25; i >= 0; i--) {
+            chars[i] = ALPHABET[(int) (lo & 31)];
+            lo = (lo >>> 5) | (hi << 59);
+            hi >>>= 5;
+        }
+
+        return new String(chars);
+    }
+}
@@ -23,6 +23,7 @@ import java.util.HashSet;
 import java.util.Set;
 
 import com.google.common.collect.ImmutableSet;
+import com.tinkerpop.blueprints.Edge;
 import com.tinkerpop.blueprints.Element;
 import com.tinkerpop.blueprints.Vertex;
 
@@ -61,8 +62,18 @@ public class VEProps {
      */
     public static final Set<String> internalPreservedEdgeLabels;
 
+    /**
+     * Property keys of vertices that should be key indexed.
+     * 
+     * @see IndexManager
+     */
     public static final Set<String> vertexIndexedKeys;
 
+    /**
+     * Property keys of edges that should be key indexed.
+     * 
+     * @see IndexManager
+     */
     public static final Set<String> edgeIndexedKeys;
 
     // ----- Versioned Vertex internal properties
@@ -85,12 +96,33 @@ public class VEProps {
     @ReservedKey(copiable = false, internal = false, elementType = Element.class, relevance = ReservedKey.RestrictionType.HISTORIC)
     public static final String VALID_MAX_VERSION_PROP_KEY = "__VALID_MAX_VERSION__";
 
+    /**
+     * A property key which holds both the minimum and the maximum valid
+     * versions of this element packed in a single long array.
+     * 
+     * @see Configuration#compactVersionRangeEnabled
+     */
+    @ReservedKey(copiable = false, internal = false, elementType = Element.class, relevance = ReservedKey.RestrictionType.HISTORIC)
+    public static final String VALID_RANGE_PROP_KEY = "__VALID_RANGE__";
+
+    /**
+     * A property key which holds the temporal interval index node of the
+     * element's valid version range.
+     * 
+     * @see TemporalIntervalIndex
+     */
+    @ReservedKey(copiable = false, internal = false, indexed = true, elementType = Element.class, relevance = ReservedKey.RestrictionType.HISTORIC)
+    public static final String VALID_INTERVAL_NODE_PROP_KEY = "__VALID_INTERVAL_NODE__";
+
     /**
      * An element property key which indicates whether the element is for
      * historical purposes or not.
      * 
      * Historical elements are elements which were created for audit purposes
      * and are not the active/alive data.
+     * 
+     * The key is not indexed, it holds one of two values thus an index lookup
+     * by it is not cheaper than a scan.
      */
     @ReservedKey(copiable = false, internal = false, elementType = Element.class, relevance = ReservedKey.RestrictionType.BOTH)
     public static final String HISTORIC_ELEMENT_PROP_KEY = "__HISTORIC__";
@@ -104,13 +136,13 @@ public class VEProps {
     /**
      * The key name of the natural identifier of a vertex.
      */
-    @ReservedKey(copiable = false, internal = false, indexed=true, elementType = Element.class, relevance = ReservedKey.RestrictionType.ACTIVE)
+    @ReservedKey(copiable = false, internal = false, indexed = true, elementType = Vertex.class, relevance = ReservedKey.RestrictionType.ACTIVE)
     public static final String NATURAL_VERTEX_ID_PROP_KEY = "__VID__";
 
     /**
      * The key name of the natural identifier of an edge.
      */
-    @ReservedKey(copiable = false, internal = false, indexed=true, elementType = Element.class, relevance = ReservedKey.RestrictionType.ACTIVE)
+    @ReservedKey(copiable = false, internal = false, indexed = true, elementType = Edge.class, relevance = ReservedKey.RestrictionType.ACTIVE)
     public static final String NATURAL_EDGE_ID_PROP_KEY = "__EID__";
 
     /**
@@ -124,22 +156,115 @@ public class VEProps {
      * The key name of the historic element which holds a reference to the
      * active element id
      */
-    @ReservedKey(copiable = false, internal = false, elementType = Element.class, relevance = ReservedKey.RestrictionType.HISTORIC)
+    @ReservedKey(copiable = false, internal = false, indexed = true, elementType = Element.class, relevance = ReservedKey.RestrictionType.HISTORIC)
     public static final String REF_TO_ACTIVE_ID_KEY = "__A_ID_REF__";
 
+    /**
+     * A historic vertex property key which indicates that the revision stores
+     * only the properties which differ from its later revision.
+     * 
+     * @see Configuration#historicKeyframeInterval
+     */
+    @ReservedKey(copiable = false, internal = false, elementType = Vertex.class, relevance = ReservedKey.RestrictionType.HISTORIC)
+    public static final String DELTA_REVISION_PROP_KEY = "__DELTA__";
+
+    /**
+     * The key name of a delta revision which holds the keys that are absent in
+     * the revision but exist in its later revision.
+     */
+    @ReservedKey(copiable = false, internal = false, elementType = Vertex.class, relevance = ReservedKey.RestrictionType.HISTORIC)
+    public static final String DELTA_ABSENT_KEYS_PROP_KEY = "__DELTA_ABSENT_KEYS__";
+
+    /**
+     * The key name of the latest historic vertex which holds the amount of
+     * delta revisions that directly precede it.
+     */
+    @ReservedKey(copiable = false, internal = false, elementType = Vertex.class, relevance = ReservedKey.RestrictionType.HISTORIC)
+    public static final String DELTAS_SINCE_KEYFRAME_PROP_KEY = "__DELTAS_SINCE_KEYFRAME__";
+
+    /**
+     * The key name of a historic vertex revision which holds its position in
+     * the revisions chain where the oldest revision is 0, the latest historic
+     * vertex has no height.
+     */
+    @ReservedKey(copiable = false, internal = false, elementType = Vertex.class, relevance = ReservedKey.RestrictionType.HISTORIC)
+    public static final String REVISION_HEIGHT_PROP_KEY = "__REVISION_HEIGHT__";
+
     // ----- General Internal Properties
     /**
      * The root vertex identifier of historic/active graphs
      */
-    @ReservedKey(copiable = false, internal = true, elementType = Vertex.class, relevance = ReservedKey.RestrictionType.BOTH)
+    @ReservedKey(copiable = false, internal = true, indexed = true, elementType = Vertex.class, relevance = ReservedKey.RestrictionType.BOTH)
     public static final String ROOT_GRAPH_VERTEX_ID = "__ROOT_VERTEX__";
 
+    /**
+     * The property key which marks that version ranges of the graph may be
+     * stored packed, it is set once a graph with compact version ranges is
+     * built and is never removed.
+     * 
+     * @see Configuration#compactVersionRangeEnabled
+     */
+    @ReservedKey(copiable = false, internal = true, elementType = Vertex.class, relevance = ReservedKey.RestrictionType.HISTORIC)
+    public static final String PACKED_VERSION_RANGES_PROP_KEY = "__PACKED_VERSION_RANGES__";
+
+    /**
+     * The property key which marks that all the historic elements of the graph
+     * are registered at the temporal interval index, it is set once a graph is
+     * initialized with the index enabled and is removed once the graph is
+     * built without it.
+     * 
+     * @see Configuration#temporalIntervalIndexEnabled
+     */
+    @ReservedKey(copiable = false, internal = true, elementType = Vertex.class, relevance = ReservedKey.RestrictionType.HISTORIC)
+    public static final String INTERVAL_INDEXED_PROP_KEY = "__INTERVAL_INDEXED__";
+
     /**
      * The property key which stores the last graph version
      */
     @ReservedKey(copiable = false, internal = true, elementType = Vertex.class, relevance = ReservedKey.RestrictionType.HISTORIC)
     public static final String LATEST_GRAPH_VERSION_PROP_KEY = "__LATEST_GRAPH_VERSION__";
 
+    /**
+     * The property key which stores the latest committed graph version of
+     * writers that lease versions ahead of their commits.
+     * 
+     * @see co.indexia.antiquity.graph.identifierBehavior.LeasedLongGraphIdentifierBehavior
+     */
+    @ReservedKey(copiable = false, internal = true, elementType = Vertex.class, relevance = ReservedKey.RestrictionType.HISTORIC)
+    public static final String LATEST_COMMITTED_GRAPH_VERSION_PROP_KEY = "__LATEST_COMMITTED_GRAPH_VERSION__";
+
+    /**
+     * The property key which marks a vertex that holds the history of a
+     * committed transaction that was not written yet, the vertex is removed
+     * once the history is written.
+     * 
+     * @see Configuration#asyncHistoryQueueSize
+     */
+    @ReservedKey(copiable = false, internal = true, indexed = true, elementType = Vertex.class, relevance = ReservedKey.RestrictionType.HISTORIC)
+    public static final String PENDING_HISTORY_PROP_KEY = "__PENDING_HISTORY__";
+
+    /**
+     * The property key which holds the version of a pending history vertex.
+     */
+    @ReservedKey(copiable = false, internal = false, indexed = true, elementType = Vertex.class, relevance = ReservedKey.RestrictionType.HISTORIC)
+    public static final String PENDING_HISTORY_VERSION_PROP_KEY = "__PENDING_HISTORY_VERSION__";
+
+    /**
+     * The property key which holds the version preceding the version of a
+     * pending history vertex.
+     */
+    @ReservedKey(copiable = false, internal = false, elementType = Vertex.class, relevance = ReservedKey.RestrictionType.HISTORIC)
+    public static final String PENDING_HISTORY_LATEST_VERSION_PROP_KEY = "__PENDING_HISTORY_LATEST_VERSION__";
+
+    /**
+     * The property key which holds the encoded change set of a pending history
+     * vertex.
+     * 
+     * @see PendingHistoryCodec
+     */
+    @ReservedKey(copiable = false, internal = false, elementType = Vertex.class, relevance = ReservedKey.RestrictionType.HISTORIC)
+    public static final String PENDING_HISTORY_DATA_PROP_KEY = "__PENDING_HISTORY_DATA__";
+
     // -----------------------
     // Labels
 
@@ -148,6 +273,14 @@ public class VEProps {
      */
     public static final String PREV_VERSION_LABEL = "__PREV_VERSION__";
 
+    /**
+     * The label name of the edge which points from a vertex revision to an
+     * older revision several revisions away, used to skip over the chain.
+     * 
+     * @see VersionedElementUtils#getSkipHeight(int)
+     */
+    public static final String SKIP_VERSION_LABEL = "__SKIP_VERSION__";
+
     /**
      * The label that attaches vertices that has no edges to the corresponding
      * (ACTIVE/HISTORIC) root elements.
@@ -203,7 +336,7 @@ public class VEProps {
                         if (rk.indexed()) {
                             if (rk.elementType().equals(Vertex.class)) {
                                 vertexIndexedKeysSet.add(key);
-                            } else if (rk.elementType().equals(Vertex.class)) {
+                            } else if (rk.elementType().equals(Edge.class)) {
                                 edgeIndexedKeysSet.add(key);
                             } else if (rk.elementType().equals(Element.class)) {
                                 vertexIndexedKeysSet.add(key);
@@ -227,6 +360,6 @@ public class VEProps {
         internalPreservedElementKeys = ImmutableSet.copyOf(internalElementsKeysSet);
         vertexIndexedKeys = ImmutableSet.copyOf(vertexIndexedKeysSet);
         edgeIndexedKeys = ImmutableSet.copyOf(edgeIndexedKeysSet);
-        internalPreservedEdgeLabels = ImmutableSet.of(PREV_VERSION_LABEL);
+        internalPreservedEdgeLabels = ImmutableSet.of(PREV_VERSION_LABEL, SKIP_VERSION_LABEL);
     }
 }
@@ -18,12 +18,18 @@
  */
 package co.indexia.antiquity.graph;
 
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
 import com.tinkerpop.blueprints.Direction;
 import com.tinkerpop.blueprints.Edge;
@@ -38,7 +44,48 @@ import co.indexia.antiquity.range.Range;
  * @see ElementUtils
  */
 public class VersionedElementUtils<V extends Comparable<V>> {
+    /**
+     * Whether long version ranges are stored packed in
+     * {@link VEProps#VALID_RANGE_PROP_KEY}.
+     */
+    private final boolean compactVersionRange;
+
+    /**
+     * Whether the temporal interval index node of historic elements is
+     * maintained.
+     */
+    private final boolean temporalIntervalIndex;
+
     public VersionedElementUtils() {
+        this(false);
+    }
+
+    /**
+     * Create an instance which stores version ranges according to the
+     * specified flag, packed ranges are always read regardless of the flag.
+     * 
+     * @param compactVersionRange if true, long version ranges are stored as a
+     *        single packed property.
+     * @see Configuration#compactVersionRangeEnabled
+     */
+    public VersionedElementUtils(boolean compactVersionRange) {
+        this(compactVersionRange, false);
+    }
+
+    /**
+     * Create an instance which stores version ranges and maintains the
+     * temporal interval index according to the specified flags.
+     * 
+     * @param compactVersionRange if true, long version ranges are stored as a
+     *        single packed property.
+     * @param temporalIntervalIndex if true, the temporal interval index node
+     *        of historic elements is maintained.
+     * @see Configuration#compactVersionRangeEnabled
+     * @see Configuration#temporalIntervalIndexEnabled
+     */
+    public VersionedElementUtils(boolean compactVersionRange, boolean temporalIntervalIndex) {
+        this.compactVersionRange = compactVersionRange;
+        this.temporalIntervalIndex = temporalIntervalIndex;
     }
 
     /**
@@ -48,6 +95,39 @@ public class VersionedElementUtils<V extends Comparable<V>> {
         START, END
     }
 
+    /**
+     * The classification of a base graph element read via the historic graph.
+     * 
+     * @see #classifyHistoric(Element, Range)
+     */
+    enum HistoricClass {
+        /**
+         * The element is internal, see {@link #isInternal(Element)}.
+         */
+        INTERNAL,
+        /**
+         * The element is historic and valid for the requested version.
+         */
+        IN_RANGE,
+        /**
+         * The element is historic but not valid for the requested version.
+         */
+        OUT_OF_RANGE
+    }
+
+    /**
+     * The keys that identify an internal element.
+     */
+    private static final String[] internalKeys = VEProps.internalPreservedElementKeys
+            .toArray(new String[VEProps.internalPreservedElementKeys.size()]);
+
+    /**
+     * The reserved keys which are copied from active elements to their latest
+     * historic elements.
+     */
+    private static final Set<String> copiableReservedKeys = ImmutableSet.copyOf(Sets.difference(
+            VEProps.antiquityElementsKeys, VEProps.nonCopiableKeys));
+
     /**
      * Calculate and set the private hash property for the specified active
      * vertex.
@@ -67,6 +147,29 @@ public class VersionedElementUtils<V extends Comparable<V>> {
         }
     }
 
+    /**
+     * Update the private hash property of the specified active vertex with
+     * its modified properties only.
+     * 
+     * @see ElementUtils#updateElementPrivateHash(String, Element, Map, Set)
+     * @param vertex active vertex to update the private hash for
+     * @param oldValues the values of the modified properties before they were
+     *        modified
+     * @throws IllegalStateException if specified vertex is not active
+     */
+    public void setPrivateHash(Vertex vertex, Map<String, Object> oldValues) {
+        Preconditions.checkArgument(vertex instanceof ActiveVersionedVertex, "Vertex currently must be active.");
+
+        ActiveVersionedVertex<V> av = ((ActiveVersionedVertex<V>) vertex);
+        String oldHash = getPrivateHash(av);
+        String newHash =
+                ElementUtils.updateElementPrivateHash(oldHash, av.getRaw(), oldValues, VEProps.antiquityElementsKeys);
+
+        if (!newHash.equals(oldHash)) {
+            av.getRaw().setProperty(VEProps.PRIVATE_HASH_PROP_KEY, newHash);
+        }
+    }
+
     /**
      * Get the private hash of the specified vertex, return null if no private
      * hash exists.
@@ -121,10 +224,44 @@ public class VersionedElementUtils<V extends Comparable<V>> {
      * @param version The version to set
      */
     public void setVersion(StartOrEnd startOrEnd, HistoricVersionedElement versionedElement, V version) {
-        if (startOrEnd == StartOrEnd.START) {
-            versionedElement.getRaw().setProperty(VEProps.VALID_MIN_VERSION_PROP_KEY, version);
+        setVersion(startOrEnd, versionedElement.getRaw(), version);
+    }
+
+    /**
+     * Set the start or end version of the specified raw historic element and
+     * update its temporal interval index node if the index is enabled.
+     * 
+     * @param startOrEnd Whether to set the start or the end of the version
+     *        range.
+     * @param historic The raw historic element to set the version for
+     * @param version The version to set
+     */
+    public void setVersion(StartOrEnd startOrEnd, Element historic, V version) {
+        V min = startOrEnd == StartOrEnd.START ? version : readVersion(StartOrEnd.START, historic);
+        V max = startOrEnd == StartOrEnd.END ? version : readVersion(StartOrEnd.END, historic);
+
+        if (compactVersionRange && min instanceof Long && max instanceof Long) {
+            historic.setProperty(VEProps.VALID_RANGE_PROP_KEY, new long[] { (Long) min, (Long) max });
+
+            if (historic.getProperty(VEProps.VALID_MIN_VERSION_PROP_KEY) != null) {
+                historic.removeProperty(VEProps.VALID_MIN_VERSION_PROP_KEY);
+            }
+            if (historic.getProperty(VEProps.VALID_MAX_VERSION_PROP_KEY) != null) {
+                historic.removeProperty(VEProps.VALID_MAX_VERSION_PROP_KEY);
+            }
+        } else if (startOrEnd == StartOrEnd.START) {
+            historic.setProperty(VEProps.VALID_MIN_VERSION_PROP_KEY, version);
         } else {
-            versionedElement.getRaw().setProperty(VEProps.VALID_MAX_VERSION_PROP_KEY, version);
+            historic.setProperty(VEProps.VALID_MAX_VERSION_PROP_KEY, version);
+        }
+
+        if (temporalIntervalIndex) {
+            Long node = TemporalIntervalIndex.getNode(min, max);
+            if (node != null) {
+                historic.setProperty(VEProps.VALID_INTERVAL_NODE_PROP_KEY, node);
+            } else if (historic.getProperty(VEProps.VALID_INTERVAL_NODE_PROP_KEY) != null) {
+                historic.removeProperty(VEProps.VALID_INTERVAL_NODE_PROP_KEY);
+            }
         }
     }
 
@@ -140,10 +277,9 @@ public class VersionedElementUtils<V extends Comparable<V>> {
      * @param versionedElement The element to get the start version.
      * @return The start version of the specified element.
      */
-    @SuppressWarnings("unchecked")
     public V getStartVersion(Element versionedElement) {
         ensureHistoricType(versionedElement);
-        return (V) versionedElement.getProperty(VEProps.VALID_MIN_VERSION_PROP_KEY);
+        return readVersion(StartOrEnd.START, getRawHistoric(versionedElement));
     }
 
     /**
@@ -152,16 +288,9 @@ public class VersionedElementUtils<V extends Comparable<V>> {
      * @param versionedElement The element to get the end version.
      * @return The end version of the specified element.
      */
-    @SuppressWarnings("unchecked")
     public V getEndVersion(Element versionedElement) {
-        Element element = versionedElement;
-        if (versionedElement instanceof HistoricVersionedElement) {
-            // must be invoked on underline otherwise an infinent loop will
-            // occur
-            element = ((HistoricVersionedElement) versionedElement).getRaw();
-        }
-
-        return (V) element.getProperty(VEProps.VALID_MAX_VERSION_PROP_KEY);
+        // must be invoked on underline otherwise an infinent loop will occur
+        return readVersion(StartOrEnd.END, getRawHistoric(versionedElement));
     }
 
     /**
@@ -176,9 +305,54 @@ public class VersionedElementUtils<V extends Comparable<V>> {
      * @param versionedElement The element to get the version range for.
      * @return a {@link Range} of version of the specified element.
      */
+    @SuppressWarnings("unchecked")
     public Range<V> getVersionRange(Element versionedElement) {
         ensureHistoricType(versionedElement);
-        return Range.range(getStartVersion(versionedElement), getEndVersion(versionedElement));
+
+        Element element = getRawHistoric(versionedElement);
+        long[] packed = element.getProperty(VEProps.VALID_RANGE_PROP_KEY);
+        if (packed != null) {
+            return Range.range((V) Long.valueOf(packed[0]), (V) Long.valueOf(packed[1]));
+        }
+
+        return Range.range((V) element.getProperty(VEProps.VALID_MIN_VERSION_PROP_KEY),
+                (V) element.getProperty(VEProps.VALID_MAX_VERSION_PROP_KEY));
+    }
+
+    /**
+     * Read the start or end version of the specified raw historic element, the
+     * version is read from the packed {@link VEProps#VALID_RANGE_PROP_KEY}
+     * property if it exists, otherwise from the min or max property.
+     * 
+     * @param startOrEnd Whether to read the start or the end of the version
+     *        range.
+     * @param element The raw historic element to read the version of.
+     * @return The version or null if it is not set.
+     */
+    @SuppressWarnings("unchecked")
+    private V readVersion(StartOrEnd startOrEnd, Element element) {
+        long[] packed = element.getProperty(VEProps.VALID_RANGE_PROP_KEY);
+        if (packed != null) {
+            return (V) Long.valueOf(startOrEnd == StartOrEnd.START ? packed[0] : packed[1]);
+        }
+
+        return (V) element.getProperty(startOrEnd == StartOrEnd.START ? VEProps.VALID_MIN_VERSION_PROP_KEY
+                : VEProps.VALID_MAX_VERSION_PROP_KEY);
+    }
+
+    /**
+     * Return the raw element of the specified element if it is a
+     * {@link HistoricVersionedElement}.
+     * 
+     * @param element The element to unwrap.
+     * @return The raw element.
+     */
+    private Element getRawHistoric(Element element) {
+        if (element instanceof HistoricVersionedElement) {
+            return ((HistoricVersionedElement) element).getRaw();
+        }
+
+        return element;
     }
 
     /**
@@ -257,14 +431,85 @@ public class VersionedElementUtils<V extends Comparable<V>> {
      * @return true if the specified element is identified as internal.
      */
     public boolean isInternal(Element e) {
-        Boolean isInternalElement =
-                (!Sets.intersection(e.getPropertyKeys(), VEProps.internalPreservedElementKeys).isEmpty());
-        Boolean isInternalEdge = false;
-        if (e instanceof Edge) {
-            isInternalEdge = VEProps.internalPreservedEdgeLabels.contains(((Edge) e).getLabel());
+        // reading the keys is cheaper than getPropertyKeys() which copies the
+        // keys on most graphs.
+        for (String key : internalKeys) {
+            if (e.getProperty(key) != null) {
+                return true;
+            }
         }
 
-        return isInternalElement || isInternalEdge;
+        return e instanceof Edge && VEProps.internalPreservedEdgeLabels.contains(((Edge) e).getLabel());
+    }
+
+    /**
+     * <p>
+     * Classify the specified base graph element in a single pass, reading
+     * each of its marker properties once and without allocating.
+     * </p>
+     * 
+     * <p>
+     * Note: this is the hot path of the historic iterables, it is equivalent
+     * to {@link #isInternal(Element)}, {@link #ensureHistoricType(Element)}
+     * and {@link #getVersionRange(Element)} contains the version.
+     * </p>
+     * 
+     * @param e The raw element to classify.
+     * @param version The version the element should be valid for, if null
+     *        every historic element is in range.
+     * @return The class of the element.
+     * @throws IllegalArgumentException if the element is not internal nor
+     *         historic.
+     */
+    HistoricClass classifyHistoric(Element e, Range<V> version) {
+        if (isInternal(e)) {
+            return HistoricClass.INTERNAL;
+        }
+
+        if (getElementType(e) != VEProps.GRAPH_TYPE.HISTORIC) {
+            throw new IllegalArgumentException("The specified ID is not of a historic vertex.");
+        }
+
+        if (version == null || isInVersionRange(e, version)) {
+            return HistoricClass.IN_RANGE;
+        } else {
+            return HistoricClass.OUT_OF_RANGE;
+        }
+    }
+
+    /**
+     * Determine whether the version range of the specified raw historic
+     * element contains the specified version range, without allocating a
+     * {@link Range} for the element.
+     * 
+     * <p>
+     * The stored bounds are ordered before they are compared, the same way
+     * {@link Range#range(Comparable, Comparable)} orders them, thus the result
+     * always matches {@link #getVersionRange(Element)}.
+     * </p>
+     * 
+     * @param e The raw historic element.
+     * @param version The version range to check.
+     * @return true if the element is valid for the entire version range.
+     */
+    @SuppressWarnings("unchecked")
+    private boolean isInVersionRange(Element e, Range<V> version) {
+        long[] packed = e.getProperty(VEProps.VALID_RANGE_PROP_KEY);
+        if (packed != null) {
+            long from = (Long) version.min();
+            long to = (Long) version.max();
+            return from >= Math.min(packed[0], packed[1]) && to <= Math.max(packed[0], packed[1]);
+        }
+
+        V min = (V) e.getProperty(VEProps.VALID_MIN_VERSION_PROP_KEY);
+        V max = (V) e.getProperty(VEProps.VALID_MAX_VERSION_PROP_KEY);
+        if (min.compareTo(max) > 0) {
+            V tmp = min;
+            min = max;
+            max = tmp;
+        }
+
+        return version.min().compareTo(min) >= 0 && version.max().compareTo(max) <= 0;
     }
 
     /**
@@ -304,9 +549,11 @@ public class VersionedElementUtils<V extends Comparable<V>> {
         // instanceof HistoricVersionedElement),
         // "Unidentified element");
         Boolean historic = e.getProperty(VEProps.HISTORIC_ELEMENT_PROP_KEY);
-        Preconditions.checkNotNull(historic, "Element has no [" + VEProps.HISTORIC_ELEMENT_PROP_KEY + "] key.)");
+        if (historic == null) {
+            throw new NullPointerException("Element has no [" + VEProps.HISTORIC_ELEMENT_PROP_KEY + "] key.)");
+        }
 
-        if ((Boolean) e.getProperty(VEProps.HISTORIC_ELEMENT_PROP_KEY)) {
+        if (historic) {
             return VEProps.GRAPH_TYPE.HISTORIC;
         } else {
             return VEProps.GRAPH_TYPE.ACTIVE;
@@ -346,6 +593,334 @@ public class VersionedElementUtils<V extends Comparable<V>> {
         }
     }
 
+    /**
+     * Sync only the specified dirty keys of the specified active element with
+     * the corresponding latest historic element.
+     * 
+     * <p>
+     * The latest historic element must be in sync with the active element
+     * except of the dirty keys, dirty keys that do not exist in the active
+     * element are removed from the historic element.
+     * </p>
+     * 
+     * @see #syncActiveAndLatestHistoric(ActiveVersionedElement,
+     *      HistoricVersionedElement)
+     * @param a active element
+     * @param h historic, latest element.
+     * @param dirtyKeys the keys of the active element that were modified or
+     *        removed since it was last synced.
+     */
+    public void syncActiveAndLatestHistoric(ActiveVersionedElement<V, ?> a, HistoricVersionedElement<V, ?> h,
+            Set<String> dirtyKeys) {
+        for (String k : copiableReservedKeys) {
+            syncProperty(a.getRaw(), h.getRaw(), k);
+        }
+
+        for (String k : dirtyKeys) {
+            if (!VEProps.antiquityElementsKeys.contains(k)) {
+                syncProperty(a.getRaw(), h.getRaw(), k);
+            }
+        }
+    }
+
+    private void syncProperty(Element active, Element historic, String key) {
+        Object value = active.getProperty(key);
+        if (value != null) {
+            historic.setProperty(key, value);
+        } else if (historic.getProperty(key) != null) {
+            historic.removeProperty(key);
+        }
+    }
+
+    /**
+     * Sync the specified latest historic element with the specified properties
+     * snapshot of its active element.
+     * 
+     * @see #syncActiveAndLatestHistoric(ActiveVersionedElement,
+     *      HistoricVersionedElement)
+     * @param h historic, latest element.
+     * @param props the properties of the active element.
+     */
+    public void syncLatestHistoric(HistoricVersionedElement<V, ?> h, Map<String, Object> props) {
+        Set<String> removedKeys = new HashSet<String>(h.getPropertyKeys());
+        removedKeys.removeAll(VEProps.internalPreservedElementKeys);
+        removedKeys.removeAll(props.keySet());
+
+        for (Map.Entry<String, Object> p : props.entrySet()) {
+            if (!VEProps.nonCopiableKeys.contains(p.getKey())) {
+                h.getRaw().setProperty(p.getKey(), p.getValue());
+            }
+        }
+
+        for (String k : removedKeys) {
+            h.getRaw().removeProperty(k);
+        }
+    }
+
+    /**
+     * Set the properties of a delta revision, only the specified old values
+     * are stored, the rest of the properties are equal to the ones of the
+     * later revision.
+     * 
+     * @see Configuration#historicKeyframeInterval
+     * @param latest the latest historic vertex, before it is modified.
+     * @param delta the delta revision to set the properties for.
+     * @param oldValues the values of the modified keys before modification,
+     *        null values indicate keys that did not exist.
+     * @param excludedKeys the keys that should not be copied from the latest
+     *        historic vertex.
+     */
+    public void setDeltaProps(Vertex latest, Vertex delta, Map<String, Object> oldValues, Set<String> excludedKeys) {
+        for (String k : latest.getPropertyKeys()) {
+            if (VEProps.antiquityElementsKeys.contains(k) && !excludedKeys.contains(k)) {
+                delta.setProperty(k, latest.getProperty(k));
+            }
+        }
+
+        List<String> absentKeys = new ArrayList<String>();
+        for (Map.Entry<String, Object> old : oldValues.entrySet()) {
+            if (VEProps.antiquityElementsKeys.contains(old.getKey())) {
+                continue;
+            }
+
+            if (old.getValue() == null) {
+                absentKeys.add(old.getKey());
+            } else {
+                delta.setProperty(old.getKey(), old.getValue());
+            }
+        }
+
+        delta.setProperty(VEProps.DELTA_REVISION_PROP_KEY, true);
+        if (!absentKeys.isEmpty()) {
+            delta.setProperty(VEProps.DELTA_ABSENT_KEYS_PROP_KEY, absentKeys.toArray(new String[absentKeys.size()]));
+        }
+    }
+
+    /**
+     * Determine whether the specified historic element is a delta revision.
+     * 
+     * @param e the historic element
+     * @return true if the element stores only the properties that differ from
+     *         its later revision.
+     */
+    public boolean isDeltaRevision(Element e) {
+        return Boolean.TRUE.equals(e.getProperty(VEProps.DELTA_REVISION_PROP_KEY));
+    }
+
+    /**
+     * Reconstruct the properties of the specified delta revision.
+     * 
+     * <p>
+     * Later revisions are followed up to the nearest full revision, the
+     * amount of followed revisions is bounded by
+     * {@link Configuration#historicKeyframeInterval}.
+     * </p>
+     * 
+     * @param delta the delta revision.
+     * @return the properties of the revision, excluding antiquity's keys.
+     */
+    public Map<String, Object> reconstructDeltaProps(Vertex delta) {
+        LinkedList<Vertex> deltas = new LinkedList<Vertex>();
+        Vertex current = delta;
+        while (isDeltaRevision(current)) {
+            deltas.push(current);
+            Edge later = ElementUtils.getSingleElement(current.getEdges(Direction.IN, VEProps.PREV_VERSION_LABEL));
+            if (later == null) {
+                throw new IllegalStateException(String.format("Delta revision [%s] has no later revision.",
+                        current.getId()));
+            }
+
+            current = later.getVertex(Direction.OUT);
+        }
+
+        Map<String, Object> props = new HashMap<String, Object>();
+        copyUserProps(current, props);
+
+        while (!deltas.isEmpty()) {
+            Vertex d = deltas.pop();
+            copyUserProps(d, props);
+
+            String[] absentKeys = d.getProperty(VEProps.DELTA_ABSENT_KEYS_PROP_KEY);
+            if (absentKeys != null) {
+                for (String k : absentKeys) {
+                    props.remove(k);
+                }
+            }
+        }
+
+        return props;
+    }
+
+    private void copyUserProps(Vertex from, Map<String, Object> to) {
+        for (String k : from.getPropertyKeys()) {
+            if (!VEProps.antiquityElementsKeys.contains(k)) {
+                to.put(k, from.getProperty(k));
+            }
+        }
+    }
+
+    /**
+     * Get the height of the revision that the revision in the specified height
+     * skips to.
+     * 
+     * <p>
+     * Heights are spread so that any revision in the chain is reachable
+     * within a logarithmic amount of hops.
+     * </p>
+     * 
+     * <p>
+     * Adapted from {@code GetSkipHeight} of Bitcoin Core (MIT license, see
+     * NOTICE).
+     * </p>
+     * 
+     * @param height the height of the revision.
+     * @return the height of the revision to skip to.
+     */
+    public static int getSkipHeight(int height) {
+        if (height < 2) {
+            return 0;
+        }
+
+        // Odd heights skip to an even height one above a height whose two
+        // lowest set bits are cleared, even heights skip to the height with
+        // their lowest set bit cleared (see the attribution above).
+        return (height & 1) != 0 ? invertLowestOne(invertLowestOne(height - 1)) + 1 : invertLowestOne(height);
+    }
+
+    private static int invertLowestOne(int n) {
+        return n & (n - 1);
+    }
+
+    /**
+     * Get the height of the specified vertex revision.
+     * 
+     * @param revision the historic vertex revision.
+     * @return the height of the revision or null if it has no height.
+     */
+    public Integer getRevisionHeight(Vertex revision) {
+        return revision.getProperty(VEProps.REVISION_HEIGHT_PROP_KEY);
+    }
+
+    /**
+     * Get the revision which directly precedes the specified revision.
+     * 
+     * @param revision the historic vertex revision.
+     * @return the previous revision or null if the specified revision is the
+     *         oldest.
+     */
+    public Vertex getPreviousRevision(Vertex revision) {
+        Edge prev = ElementUtils.getSingleElement(revision.getEdges(Direction.OUT, VEProps.PREV_VERSION_LABEL));
+        return prev == null ? null : prev.getVertex(Direction.IN);
+    }
+
+    /**
+     * Get the older revision that the specified revision skips to.
+     * 
+     * @param revision the historic vertex revision.
+     * @return the skipped to revision or null if the revision has no skip.
+     */
+    public Vertex getSkipRevision(Vertex revision) {
+        Edge skip = ElementUtils.getSingleElement(revision.getEdges(Direction.OUT, VEProps.SKIP_VERSION_LABEL));
+        return skip == null ? null : skip.getVertex(Direction.IN);
+    }
+
+    /**
+     * Get the revision in the specified height, starting from the specified
+     * revision towards older revisions.
+     * 
+     * <p>
+     * Revisions written before revisions had heights have no skip edges, the
+     * chain of such a revision is traversed revision by revision instead.
+     * </p>
+     * 
+     * @param from the revision to start from.
+     * @param height the height of the revision to find.
+     * @return the revision in the specified height.
+     */
+    public Vertex getRevisionAtHeight(Vertex from, int height) {
+        Preconditions.checkArgument(height >= 0, "Height must not be negative.");
+
+        Integer fromHeight = getRevisionHeight(from);
+        if (fromHeight == null) {
+            return getUnindexedRevisionAtHeight(from, height);
+        }
+
+        Vertex current = from;
+        int currentHeight = fromHeight;
+        Preconditions.checkArgument(height <= currentHeight, "Height must not exceed the height of the revision.");
+
+        while (currentHeight > height) {
+            Vertex skip = getSkipRevision(current);
+            int skipHeight = getSkipHeight(currentHeight);
+
+            if (skip != null && skipHeight >= height) {
+                current = skip;
+                currentHeight = skipHeight;
+            } else {
+                current = getPreviousRevision(current);
+                currentHeight--;
+            }
+        }
+
+        return current;
+    }
+
+    /**
+     * Get the revision in the specified height of a chain without heights, the
+     * height of a revision is its distance from the oldest revision.
+     * 
+     * @param from the revision to start from.
+     * @param height the height of the revision to find.
+     * @return the revision in the specified height.
+     */
+    private Vertex getUnindexedRevisionAtHeight(Vertex from, int height) {
+        List<Vertex> chain = new ArrayList<Vertex>();
+        for (Vertex current = from; current != null; current = getPreviousRevision(current)) {
+            chain.add(current);
+        }
+
+        Preconditions.checkArgument(height < chain.size(), "Height must not exceed the height of the revision.");
+        return chain.get(chain.size() - 1 - height);
+    }
+
+    /**
+     * Find the revision that contains the specified version, starting from the
+     * specified revision towards older revisions.
+     * 
+     * <p>
+     * Skip edges are followed whenever they do not pass the matched revision,
+     * thus the lookup is logarithmic in the length of the chain.
+     * </p>
+     * 
+     * @param from the revision to start from.
+     * @param version the version to find the revision for.
+     * @return the matched revision or null if no revision contains the
+     *         version.
+     */
+    public Vertex findRevision(Vertex from, V version) {
+        Vertex current = from;
+        while (current != null) {
+            Range<V> range = getVersionRange(current);
+            if (range.contains(version)) {
+                return current;
+            }
+
+            if (version.compareTo(range.max()) > 0) {
+                // older revisions contain older versions only
+                return null;
+            }
+
+            Vertex skip = getSkipRevision(current);
+            if (skip != null && version.compareTo(getEndVersion(skip)) <= 0) {
+                current = skip;
+            } else {
+                current = getPreviousRevision(current);
+            }
+        }
+
+        return null;
+    }
+
     public Comparator<HistoricVersionedVertex<V>> getHistoricVersionedVertexComparator() {
         return new Comparator<HistoricVersionedVertex<V>>() {
             @Override
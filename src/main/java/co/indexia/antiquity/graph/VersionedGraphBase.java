@@ -25,6 +25,7 @@ import com.tinkerpop.blueprints.Element;
 import com.tinkerpop.blueprints.Features;
 import com.tinkerpop.blueprints.IndexableGraph;
 import com.tinkerpop.blueprints.KeyIndexableGraph;
+import com.tinkerpop.blueprints.TransactionalGraph;
 import com.tinkerpop.blueprints.Vertex;
 import com.tinkerpop.blueprints.util.wrappers.WrapperGraph;
 import co.indexia.antiquity.graph.identifierBehavior.GraphIdentifierBehavior;
@@ -54,7 +55,18 @@ public abstract class VersionedGraphBase<T extends KeyIndexableGraph, V extends
      * The identifier behavior associated with this graph
      */
     protected GraphIdentifierBehavior<V> identifierBehavior;
-    protected final VersionedElementUtils<V> utils = new VersionedElementUtils();
+    protected final VersionedElementUtils<V> utils;
+
+    /**
+     * The hard id of the active root vertex, cached once the vertex is found.
+     */
+    private volatile Object activeRootVertexId;
+
+    /**
+     * The hard id of the historic root vertex, cached once the vertex is
+     * found.
+     */
+    private volatile Object historicRootVertexId;
 
     public VersionedGraphBase(T baseGraph, GraphIdentifierBehavior<V> identifierBehavior, Configuration conf) {
         Preconditions.checkNotNull(baseGraph, "Base graph must be set.");
@@ -70,6 +82,10 @@ public abstract class VersionedGraphBase<T extends KeyIndexableGraph, V extends
             this.conf = conf;
         }
 
+        this.utils =
+                new VersionedElementUtils<V>(this.conf.getCompactVersionRangeEnabled(),
+                        this.conf.getTemporalIntervalIndexEnabled());
+
         this.features = baseGraph.getFeatures().copyFeatures();
         features.isWrapper = true;
 
@@ -122,7 +138,9 @@ public abstract class VersionedGraphBase<T extends KeyIndexableGraph, V extends
      * Get the root graph {@link Vertex}.
      * 
      * <p>
-     * TODO: Root vertex is queried very often and recommended to be cached.
+     * The root vertex is queried once by its {@link VEProps#ROOT_GRAPH_VERTEX_ID}
+     * key, afterwards its hard id is cached and the vertex is loaded directly
+     * by id.
      * </p>
      * 
      * @param type The type of the graph to get the configuration for
@@ -130,19 +148,38 @@ public abstract class VersionedGraphBase<T extends KeyIndexableGraph, V extends
      * @throws IllegalStateException if root vertex could not be located.
      */
     public Vertex getRootVertex(VEProps.GRAPH_TYPE type) {
-        Vertex rv;
+        final String rootValue;
+        final Object rootId;
         if (type == VEProps.GRAPH_TYPE.ACTIVE) {
-            rv =
-                    ElementUtils.getSingleElement(getBaseGraph(), VEProps.ROOT_GRAPH_VERTEX_ID,
-                            VEProps.ACTIVE_ROOT_GRAPH_VERTEX_VALUE, Vertex.class);
+            rootValue = VEProps.ACTIVE_ROOT_GRAPH_VERTEX_VALUE;
+            rootId = activeRootVertexId;
         } else {
-            rv =
-                    ElementUtils.getSingleElement(getBaseGraph(), VEProps.ROOT_GRAPH_VERTEX_ID,
-                            VEProps.HISTORIC_ROOT_GRAPH_VERTEX_VALUE, Vertex.class);
+            rootValue = VEProps.HISTORIC_ROOT_GRAPH_VERTEX_VALUE;
+            rootId = historicRootVertexId;
+        }
+
+        Vertex rv = null;
+        if (rootId != null) {
+            rv = getBaseGraph().getVertex(rootId);
+
+            // the id may be stale (e.g the root creation was rolled back)
+            if (rv != null && !rootValue.equals(rv.getProperty(VEProps.ROOT_GRAPH_VERTEX_ID))) {
+                rv = null;
+            }
         }
 
         if (rv == null) {
-            throw new IllegalStateException(String.format("Could not find %s graph root vertex", type.name()));
+            rv = ElementUtils.getSingleElement(getBaseGraph(), VEProps.ROOT_GRAPH_VERTEX_ID, rootValue, Vertex.class);
+
+            if (rv == null) {
+                throw new IllegalStateException(String.format("Could not find %s graph root vertex", type.name()));
+            }
+
+            if (type == VEProps.GRAPH_TYPE.ACTIVE) {
+                activeRootVertexId = rv.getId();
+            } else {
+                historicRootVertexId = rv.getId();
+            }
         }
 
         return utils.getNonEventableVertex(rv);
@@ -155,6 +192,22 @@ public abstract class VersionedGraphBase<T extends KeyIndexableGraph, V extends
      */
     protected abstract Vertex getRootVertex();
 
+    /**
+     * Ensure that a transactional base graph joined its transaction.
+     * 
+     * <p>
+     * Some base graphs (e.g Neo4j2) do not start their transaction for every
+     * operation: edges looked up by a key index and removed properties fail
+     * if they are the first operation of the transaction. Loading the root
+     * vertex (by its cached id) starts the transaction.
+     * </p>
+     */
+    void joinTransaction() {
+        if (getBaseGraph() instanceof TransactionalGraph) {
+            getRootVertex();
+        }
+    }
+
     // Graph identifier methods
     // --------------------------------------------------------------
 
@@ -187,7 +240,6 @@ public abstract class VersionedGraphBase<T extends KeyIndexableGraph, V extends
         return identifierBehavior.getMaxPossibleGraphVersion();
     }
 
-
     // Elements keys methods
     // --------------------------------------------------------------
 
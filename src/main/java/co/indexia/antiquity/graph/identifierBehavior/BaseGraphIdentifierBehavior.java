@@ -18,6 +18,7 @@
  */
 package co.indexia.antiquity.graph.identifierBehavior;
 
+import co.indexia.antiquity.graph.VEProps;
 import co.indexia.antiquity.graph.VersionedGraphBase;
 
 /**
@@ -39,6 +40,25 @@ public abstract class BaseGraphIdentifierBehavior<V extends Comparable<V>> imple
         return this.graph;
     }
 
+    /**
+     * Store the specified version in the historic root vertex.
+     * 
+     * @see co.indexia.antiquity.graph.VersionedGraphBase#getRootVertex(VEProps.GRAPH_TYPE)
+     */
+    @Override
+    public void allocateGraphVersion(V version) {
+        getGraph().getRootVertex(VEProps.GRAPH_TYPE.HISTORIC).setProperty(VEProps.LATEST_GRAPH_VERSION_PROP_KEY,
+                version);
+    }
+
+    @Override
+    public void commitGraphVersion() {
+    }
+
+    @Override
+    public void rollbackGraphVersion() {
+    }
+
     @Override
     public void setGraph(VersionedGraphBase<?, V> graph) {
         this.graph = graph;
@@ -0,0 +1,124 @@
+/**
+ * Copyright (c) 2012-2014 "Indexia Technologies, ltd."
+ * 
+ * This file is part of Antiquity.
+ * 
+ * Antiquity is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.indexia.antiquity.graph.identifierBehavior;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.tinkerpop.blueprints.TransactionalGraph;
+import co.indexia.antiquity.graph.VersionedGraphBase;
+
+/**
+ * A {@link LongGraphIdentifierBehavior} that keeps the latest graph version in
+ * memory.
+ * 
+ * <p>
+ * The persisted version is read from the historic root vertex once (on first
+ * access), afterwards the latest version is served from memory and the root
+ * vertex is only written when a version is allocated.
+ * </p>
+ * 
+ * <p>
+ * With a transactional base graph, a version allocated by a thread is only visible
+ * to that thread until its base transaction is committed, the cached version
+ * is updated once the commit succeeded and the allocated version is dropped
+ * on rollback.
+ * </p>
+ * 
+ * <p>
+ * Note: The cached version is not shared with other graph instances, this
+ * behavior must only be used when a single graph instance writes to the
+ * underline store.
+ * </p>
+ */
+public class CachedLongGraphIdentifierBehavior extends LongGraphIdentifierBehavior {
+    /**
+     * Marks that the latest version was not loaded from the graph yet.
+     */
+    private static final long NOT_LOADED = -1L;
+
+    /**
+     * The latest committed graph version.
+     */
+    private final AtomicLong latestVersion = new AtomicLong(NOT_LOADED);
+
+    /**
+     * The version allocated by the current thread whose base transaction was
+     * not committed yet.
+     */
+    private final ThreadLocal<Long> pendingVersion = new ThreadLocal<Long>();
+
+    @Override
+    public Long getLatestGraphVersion() {
+        Long pending = pendingVersion.get();
+        if (pending != null) {
+            return pending;
+        }
+
+        long latest = latestVersion.get();
+        if (latest == NOT_LOADED) {
+            latestVersion.compareAndSet(NOT_LOADED, super.getLatestGraphVersion());
+            latest = latestVersion.get();
+        }
+
+        return latest;
+    }
+
+    @Override
+    public void allocateGraphVersion(Long version) {
+        super.allocateGraphVersion(version);
+        if (getGraph().getBaseGraph() instanceof TransactionalGraph) {
+            pendingVersion.set(version);
+        } else {
+            publish(version);
+        }
+    }
+
+    @Override
+    public void commitGraphVersion() {
+        Long pending = pendingVersion.get();
+        if (pending != null) {
+            pendingVersion.remove();
+            publish(pending);
+        }
+    }
+
+    @Override
+    public void rollbackGraphVersion() {
+        pendingVersion.remove();
+    }
+
+    @Override
+    public void setGraph(VersionedGraphBase<?, Long> graph) {
+        super.setGraph(graph);
+        latestVersion.set(NOT_LOADED);
+    }
+
+    /**
+     * Set the specified committed version as the cached latest version unless
+     * a later version was cached meanwhile.
+     * 
+     * @param version The committed version.
+     */
+    private void publish(long version) {
+        long latest = latestVersion.get();
+        while (latest < version && !latestVersion.compareAndSet(latest, version)) {
+            latest = latestVersion.get();
+        }
+    }
+}
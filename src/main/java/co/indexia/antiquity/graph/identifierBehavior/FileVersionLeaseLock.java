@@ -0,0 +1,119 @@
+/**
+ * Copyright (c) 2012-2014 "Indexia Technologies, ltd."
+ * 
+ * This file is part of Antiquity.
+ * 
+ * Antiquity is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.indexia.antiquity.graph.identifierBehavior;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A {@link VersionLeaseLock} backed by an exclusive lock of a file, used to
+ * coordinate processes sharing the same graph store.
+ * 
+ * <p>
+ * File locks are held on behalf of the whole JVM, thus locks of the same file
+ * within a single JVM are serialized by an in-process lock first.
+ * </p>
+ */
+public class FileVersionLeaseLock implements VersionLeaseLock {
+    /**
+     * In-process locks per canonical file path.
+     */
+    private static final ConcurrentMap<String, ReentrantLock> processLocks =
+            new ConcurrentHashMap<String, ReentrantLock>();
+
+    /**
+     * The lock file.
+     */
+    private final File file;
+
+    /**
+     * The in-process lock of the lock file.
+     */
+    private final ReentrantLock processLock;
+
+    private RandomAccessFile lockFile;
+    private FileLock fileLock;
+
+    /**
+     * Create an instance of this class.
+     * 
+     * @param file The file to lock, created if it does not exist.
+     */
+    public FileVersionLeaseLock(File file) {
+        Preconditions.checkNotNull(file, "Lock file must be set.");
+        this.file = file;
+
+        String path;
+        try {
+            path = file.getCanonicalPath();
+        } catch (IOException e) {
+            throw new IllegalStateException(String.format("Could not resolve lock file [%s]", file), e);
+        }
+
+        ReentrantLock lock = new ReentrantLock();
+        ReentrantLock existing = processLocks.putIfAbsent(path, lock);
+        this.processLock = existing == null ? lock : existing;
+    }
+
+    @Override
+    public void lock() {
+        processLock.lock();
+        try {
+            lockFile = new RandomAccessFile(file, "rw");
+            fileLock = lockFile.getChannel().lock();
+        } catch (IOException e) {
+            closeQuietly();
+            processLock.unlock();
+            throw new IllegalStateException(String.format("Could not lock file [%s]", file), e);
+        }
+    }
+
+    @Override
+    public void unlock() {
+        try {
+            if (fileLock != null) {
+                fileLock.release();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(String.format("Could not unlock file [%s]", file), e);
+        } finally {
+            closeQuietly();
+            processLock.unlock();
+        }
+    }
+
+    private void closeQuietly() {
+        fileLock = null;
+        if (lockFile != null) {
+            try {
+                lockFile.close();
+            } catch (IOException e) {
+                // nothing to do, the lock is released when the file is closed
+            }
+            lockFile = null;
+        }
+    }
+}
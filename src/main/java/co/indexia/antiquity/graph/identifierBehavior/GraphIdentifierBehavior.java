@@ -54,6 +54,32 @@ public interface GraphIdentifierBehavior<V extends Comparable<V>> {
      */
     public V getNextGraphVersion(V currentVersion);
 
+    /**
+     * Allocate (persist) the specified version as the latest graph version.
+     * 
+     * <p>
+     * Invoked by the graph once a version was consumed, implementations are
+     * responsible for storing the version so subsequent calls to
+     * {@link #getLatestGraphVersion()} will return it.
+     * </p>
+     * 
+     * @param version The version to allocate.
+     */
+    public void allocateGraphVersion(V version);
+
+    /**
+     * Invoked by the graph once the base transaction in which versions may
+     * have been allocated by the current thread was committed.
+     */
+    public void commitGraphVersion();
+
+    /**
+     * Invoked by the graph once the base transaction in which versions may
+     * have been allocated by the current thread was rolled back, the allocated
+     * versions were not persisted.
+     */
+    public void rollbackGraphVersion();
+
     /**
      * Get the minimum possible graph version.
      * 
@@ -0,0 +1,474 @@
+/**
+ * Copyright (c) 2012-2014 "Indexia Technologies, ltd."
+ * 
+ * This file is part of Antiquity.
+ * 
+ * Antiquity is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.indexia.antiquity.graph.identifierBehavior;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.tinkerpop.blueprints.TransactionalGraph;
+import com.tinkerpop.blueprints.Vertex;
+import co.indexia.antiquity.graph.VEProps;
+import co.indexia.antiquity.graph.VersionedGraphBase;
+
+/**
+ * A {@link LongGraphIdentifierBehavior} that leases blocks of versions from the
+ * graph and hands them out of the leased block.
+ * 
+ * <p>
+ * The historic root vertex stores the end of the last leased block, every
+ * lease reserves the next {@code blockSize} versions by advancing it, thus the
+ * reservation of versions is written once per block. Leases are serialized
+ * within the process and, if a {@link VersionLeaseLock} is set, across
+ * processes sharing the same store.
+ * </p>
+ * 
+ * <p>
+ * The root vertex stores the latest committed version as well, which is
+ * written by every commit within the commit's own transaction so the latest
+ * version survives a restart, versions of a block that were not committed
+ * before a restart are skipped.
+ * </p>
+ * 
+ * <p>
+ * With a transactional base graph, blocks are leased by a dedicated lease
+ * thread in its own transaction so a lease is committed independently of the
+ * caller's transaction, the caller waits for the lease up to the lease
+ * timeout.
+ * </p>
+ * 
+ * <p>
+ * Ordering guarantees:
+ * <ul>
+ * <li>Each call to {@link #getNextGraphVersion(Long)} consumes a version,
+ * versions are unique across all the writers that share the store and a
+ * version that was consumed by a failed transaction is never reused.</li>
+ * <li>With a transactional base graph the commit order is the version order.
+ * The thread that consumed a version holds the commit order until its
+ * transaction is committed or rolled back (see {@link #commitGraphVersion()}
+ * and {@link #rollbackGraphVersion()}), thus the versions of the committed
+ * transactions are totally ordered by their commit time.</li>
+ * <li>If a {@link VersionLeaseLock} is set the commit order is held across
+ * processes by the lease lock as well and versions of the current block that
+ * are not later than the latest committed version are skipped.
+ * {@link #getLatestGraphVersion()} returns the latest version committed by any
+ * of the writers.</li>
+ * </ul>
+ * Versions of a non transactional base graph are handed out in increasing
+ * order but are not held until written, such graphs are expected to be
+ * written by a single thread.
+ * </p>
+ * 
+ * <p>
+ * Holding the commit order serializes the writers: with a transactional base
+ * graph a single transaction at a time runs from the consumption of its
+ * version through its base commit, including the versioning of its changes,
+ * and with a {@link VersionLeaseLock} the lock (e.g. a file lock) is acquired
+ * and released per commit. A version can't be published before its base
+ * commit, thus the section can't be narrowed without giving up the version
+ * order of the commits. Leasing spares the reservation of each version, not
+ * the serialization of the commits.
+ * </p>
+ */
+public class LeasedLongGraphIdentifierBehavior extends LongGraphIdentifierBehavior {
+    /**
+     * Marks that the latest version was not loaded from the graph yet.
+     */
+    private static final long NOT_LOADED = -1L;
+
+    /**
+     * The default max time to wait for a lease, in milliseconds.
+     */
+    public static final long DEFAULT_LEASE_TIMEOUT_MILLIS = 30000L;
+
+    /**
+     * The amount of versions reserved per lease.
+     */
+    private final long blockSize;
+
+    /**
+     * Coordinates leases between processes, may be null.
+     */
+    private final VersionLeaseLock leaseLock;
+
+    /**
+     * The max time to wait for a lease, in milliseconds.
+     */
+    private final long leaseTimeoutMillis;
+
+    /**
+     * Leases blocks in their own transaction, its thread is stopped once idle.
+     */
+    private final ThreadPoolExecutor leaseExecutor;
+
+    /**
+     * The currently leased block of versions.
+     */
+    private final AtomicReference<Block> block = new AtomicReference<Block>(Block.EXHAUSTED);
+
+    /**
+     * The latest version allocated by this writer.
+     */
+    private final AtomicLong latestVersion = new AtomicLong(NOT_LOADED);
+
+    /**
+     * Held by the thread that consumed a version until its transaction ends.
+     */
+    private final ReentrantLock commitLock = new ReentrantLock();
+
+    /**
+     * Create an instance of this class for a single process.
+     * 
+     * @param blockSize The amount of versions to reserve per lease.
+     */
+    public LeasedLongGraphIdentifierBehavior(long blockSize) {
+        this(blockSize, null);
+    }
+
+    /**
+     * Create an instance of this class.
+     * 
+     * @param blockSize The amount of versions to reserve per lease.
+     * @param leaseLock The lock that coordinates leases across processes, may
+     *        be null if the store is not shared.
+     */
+    public LeasedLongGraphIdentifierBehavior(long blockSize, VersionLeaseLock leaseLock) {
+        this(blockSize, leaseLock, DEFAULT_LEASE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Create an instance of this class.
+     * 
+     * @param blockSize The amount of versions to reserve per lease.
+     * @param leaseLock The lock that coordinates leases across processes, may
+     *        be null if the store is not shared.
+     * @param leaseTimeoutMillis The max time to wait for a lease of a
+     *        transactional graph, in milliseconds.
+     */
+    public LeasedLongGraphIdentifierBehavior(long blockSize, VersionLeaseLock leaseLock, long leaseTimeoutMillis) {
+        Preconditions.checkArgument(blockSize > 0, "Block size must be positive.");
+        Preconditions.checkArgument(leaseTimeoutMillis > 0, "Lease timeout must be positive.");
+
+        this.blockSize = blockSize;
+        this.leaseLock = leaseLock;
+        this.leaseTimeoutMillis = leaseTimeoutMillis;
+        this.leaseExecutor =
+                new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                        new ThreadFactoryBuilder().setNameFormat("antiquity-version-lease-%d").setDaemon(true)
+                                .build());
+        this.leaseExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Get the latest committed version, the version is read from the historic
+     * root vertex if the store is shared with other processes, otherwise it is
+     * read once and kept by this writer.
+     */
+    @Override
+    public Long getLatestGraphVersion() {
+        if (leaseLock != null) {
+            Long committed = getCommittedVersion();
+            if (committed != null) {
+                return committed;
+            }
+        }
+
+        long latest = latestVersion.get();
+        if (latest == NOT_LOADED) {
+            synchronized (this) {
+                // a store that was never leased keeps its committed version
+                // as the latest version.
+                Long committed = getCommittedVersion();
+                latestVersion.compareAndSet(NOT_LOADED, committed != null ? committed : super.getLatestGraphVersion());
+            }
+            latest = latestVersion.get();
+        }
+
+        return latest;
+    }
+
+    /**
+     * Get (and consume) the next version of the current leased block, a new
+     * block is leased if the current one is exhausted.
+     * 
+     * <p>
+     * With a transactional base graph the calling thread holds the commit
+     * order from this point until {@link #commitGraphVersion()} or
+     * {@link #rollbackGraphVersion()} is invoked.
+     * </p>
+     * 
+     * @param currentVersion ignored, versions are served from the leased block.
+     */
+    @Override
+    public Long getNextGraphVersion(Long currentVersion) {
+        boolean ordered = getGraph().getBaseGraph() instanceof TransactionalGraph;
+        if (ordered) {
+            acquireCommitOrder();
+        }
+
+        try {
+            Long committed = leaseLock == null ? null : getCommittedVersion();
+            while (true) {
+                Block current = block.get();
+                long next = current.next.getAndIncrement();
+                // next may overflow once a block ending at Long.MAX_VALUE is exhausted
+                if (next > 0 && next <= current.end) {
+                    if (committed == null || next > committed) {
+                        return next;
+                    }
+
+                    // already passed by a version committed by another process
+                    continue;
+                }
+
+                leaseBlock(current, ordered && leaseLock != null);
+            }
+        } catch (RuntimeException e) {
+            releaseCommitOrder();
+            throw e;
+        }
+    }
+
+    /**
+     * Versions are reserved per leased block, thus allocation updates the
+     * latest committed version of the store and the latest version of this
+     * writer.
+     */
+    @Override
+    public void allocateGraphVersion(Long version) {
+        Long committed = getCommittedVersion();
+        if (committed == null || committed < version) {
+            getGraph().getRootVertex(VEProps.GRAPH_TYPE.HISTORIC).setProperty(
+                    VEProps.LATEST_COMMITTED_GRAPH_VERSION_PROP_KEY, version);
+        }
+
+        getLatestGraphVersion();
+
+        long latest;
+        do {
+            latest = latestVersion.get();
+            if (version <= latest) {
+                return;
+            }
+        } while (!latestVersion.compareAndSet(latest, version));
+    }
+
+    @Override
+    public void commitGraphVersion() {
+        releaseCommitOrder();
+    }
+
+    @Override
+    public void rollbackGraphVersion() {
+        releaseCommitOrder();
+    }
+
+    @Override
+    public void setGraph(VersionedGraphBase<?, Long> graph) {
+        super.setGraph(graph);
+        block.set(Block.EXHAUSTED);
+        latestVersion.set(NOT_LOADED);
+    }
+
+    /**
+     * Hold the commit order for the current thread, the order is already held
+     * if the thread consumed a version in its current transaction.
+     */
+    private void acquireCommitOrder() {
+        if (commitLock.isHeldByCurrentThread()) {
+            return;
+        }
+
+        commitLock.lock();
+        if (leaseLock != null) {
+            try {
+                leaseLock.lock();
+            } catch (RuntimeException e) {
+                commitLock.unlock();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Release the commit order if it is held by the current thread.
+     */
+    private void releaseCommitOrder() {
+        if (!commitLock.isHeldByCurrentThread()) {
+            return;
+        }
+
+        try {
+            if (leaseLock != null) {
+                leaseLock.unlock();
+            }
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    /**
+     * Get the latest version committed by any of the writers sharing the store.
+     * 
+     * @return The latest committed version, null if none was stored yet.
+     */
+    private Long getCommittedVersion() {
+        return getGraph().getRootVertex(VEProps.GRAPH_TYPE.HISTORIC).getProperty(
+                VEProps.LATEST_COMMITTED_GRAPH_VERSION_PROP_KEY);
+    }
+
+    /**
+     * Lease a new block if the specified block is still the current one.
+     * 
+     * @param exhausted The block that was found exhausted.
+     * @param locked Whether the calling thread already holds the lease lock.
+     */
+    private synchronized void leaseBlock(Block exhausted, boolean locked) {
+        if (block.get() != exhausted) {
+            // already leased by another thread
+            return;
+        }
+
+        block.set(getGraph().getBaseGraph() instanceof TransactionalGraph ? leaseInOwnTransaction(locked)
+                : lease(locked));
+    }
+
+    /**
+     * Lease a block in the lease thread so the lease is committed in its own
+     * transaction, independently of the caller's transaction.
+     * 
+     * @param locked Whether the calling thread already holds the lease lock.
+     * @return The leased block.
+     * @throws IllegalStateException if the lease failed or timed out.
+     */
+    private Block leaseInOwnTransaction(final boolean locked) {
+        Future<Block> leased = leaseExecutor.submit(new Callable<Block>() {
+            @Override
+            public Block call() {
+                return lease(locked);
+            }
+        });
+
+        try {
+            return leased.get(leaseTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while leasing a block of versions.", e);
+        } catch (TimeoutException e) {
+            // a lease that completes later only wastes its block
+            leased.cancel(false);
+            throw new IllegalStateException(String.format(
+                    "Could not lease a block of versions within %d ms, the root vertex may be locked by the "
+                            + "caller's transaction.", leaseTimeoutMillis), e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Failed to lease a block of versions.", e.getCause());
+        }
+    }
+
+    /**
+     * Reserve the next block of versions in the historic root vertex.
+     * 
+     * @param locked Whether the lease lock is already held on behalf of the
+     *        lease, e.g. by the thread that holds the commit order.
+     * @return The leased block.
+     */
+    private Block lease(boolean locked) {
+        if (leaseLock != null && !locked) {
+            leaseLock.lock();
+        }
+
+        try {
+            Vertex root = getGraph().getRootVertex(VEProps.GRAPH_TYPE.HISTORIC);
+            Long persisted = root.getProperty(VEProps.LATEST_GRAPH_VERSION_PROP_KEY);
+            long last = persisted == null ? 0L : persisted;
+
+            if (last == getMaxPossibleGraphVersion()) {
+                throw new IllegalStateException("Cannot lease versions, long range has ended");
+            }
+
+            long end = last > getMaxPossibleGraphVersion() - blockSize ? getMaxPossibleGraphVersion() : last + blockSize;
+            root.setProperty(VEProps.LATEST_GRAPH_VERSION_PROP_KEY, end);
+
+            // the first lease of a store marks its latest version as
+            // committed, the block end is not committed.
+            Long committed = root.getProperty(VEProps.LATEST_COMMITTED_GRAPH_VERSION_PROP_KEY);
+            if (committed == null) {
+                committed = last;
+                root.setProperty(VEProps.LATEST_COMMITTED_GRAPH_VERSION_PROP_KEY, committed);
+            }
+            commit();
+
+            latestVersion.compareAndSet(NOT_LOADED, committed);
+            return new Block(last + 1, end);
+        } catch (RuntimeException e) {
+            rollback();
+            throw e;
+        } finally {
+            if (leaseLock != null && !locked) {
+                leaseLock.unlock();
+            }
+        }
+    }
+
+    private void commit() {
+        if (getGraph().getBaseGraph() instanceof TransactionalGraph) {
+            ((TransactionalGraph) getGraph().getBaseGraph()).commit();
+        }
+    }
+
+    private void rollback() {
+        if (getGraph().getBaseGraph() instanceof TransactionalGraph) {
+            ((TransactionalGraph) getGraph().getBaseGraph()).rollback();
+        }
+    }
+
+    /**
+     * A leased block of versions.
+     */
+    private static class Block {
+        static final Block EXHAUSTED = new Block(1, 0);
+
+        /**
+         * The next version to hand out.
+         */
+        final AtomicLong next;
+
+        /**
+         * The last version of the block (inclusive).
+         */
+        final long end;
+
+        Block(long start, long end) {
+            this.next = new AtomicLong(start);
+            this.end = end;
+        }
+    }
+}
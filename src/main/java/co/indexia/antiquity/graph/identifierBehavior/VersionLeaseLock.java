@@ -0,0 +1,39 @@
+/**
+ * Copyright (c) 2012-2014 "Indexia Technologies, ltd."
+ * 
+ * This file is part of Antiquity.
+ * 
+ * Antiquity is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.indexia.antiquity.graph.identifierBehavior;
+
+/**
+ * A lock that coordinates version block leases between writers that share the
+ * same graph store.
+ * 
+ * @see LeasedLongGraphIdentifierBehavior
+ */
+public interface VersionLeaseLock {
+    /**
+     * Acquire the lock, blocks until the lock is available.
+     * 
+     * @throws IllegalStateException if the lock could not be acquired.
+     */
+    public void lock();
+
+    /**
+     * Release the lock.
+     */
+    public void unlock();
+}
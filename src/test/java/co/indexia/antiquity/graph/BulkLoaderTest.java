@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) 2012-2014 "Indexia Technologies, ltd."
+ * 
+ * This file is part of Antiquity.
+ * 
+ * Antiquity is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.indexia.antiquity.graph;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.TransactionalGraph;
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.impls.neo4j2.Neo4j2Graph;
+import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
+import co.indexia.antiquity.graph.identifierBehavior.LongGraphIdentifierBehavior;
+import org.neo4j.test.ImpermanentGraphDatabase;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test {@link BulkLoader}.
+ */
+public class BulkLoaderTest {
+    private ActiveVersionedGraph<TinkerGraph, Long> graph;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        graph =
+                new ActiveVersionedGraph.ActiveVersionedNonTransactionalGraphBuilder<TinkerGraph, Long>(
+                        new TinkerGraph(), new LongGraphIdentifierBehavior()).init(true).build();
+    }
+
+    @Test
+    public void testLoadedElementsShareSingleVersion() {
+        BulkLoader<TinkerGraph, Long> loader = new BulkLoader<TinkerGraph, Long>(graph, 3);
+        Object prev = null;
+        for (int i = 0; i < 10; i++) {
+            Object id = loader.addVertex(null, props("key", i));
+            if (prev != null) {
+                loader.addEdge(null, prev, id, "next", props("weight", i));
+            }
+            prev = id;
+        }
+
+        Long ver = loader.commitVersion();
+        assertThat(ver, is(graph.getLatestGraphVersion()));
+        assertThat(loader.commitVersion(), nullValue());
+
+        ActiveVersionedVertex<Long> active = (ActiveVersionedVertex<Long>) graph.getVertex(prev);
+        assertThat((Integer) active.getProperty("key"), is(9));
+        assertThat(active.getPrivateHash(), notNullValue());
+
+        HistoricVersionedVertex<Long> hv = graph.getHistoricGraph().getVertexForVersion(prev, ver);
+        assertThat(hv, notNullValue());
+        assertThat((Integer) hv.getProperty("key"), is(9));
+        assertThat(graph.utils.getStartVersion(hv), is(ver));
+
+        Edge edge = active.getEdges(Direction.IN, "next").iterator().next();
+        assertThat((Integer) edge.getProperty("weight"), is(9));
+    }
+
+    @Test
+    public void testEdgesToExistingVerticesAreLoadedInNextVersion() {
+        graph.addVertex("existing");
+        Long existingVer = graph.getLatestGraphVersion();
+
+        BulkLoader<TinkerGraph, Long> loader = new BulkLoader<TinkerGraph, Long>(graph, 100);
+        Object id = loader.addVertex(null, props("key", "foo"));
+        loader.addEdge(null, "existing", id, "link", props("key", "bar"));
+        Long ver = loader.commitVersion();
+
+        assertThat(ver, is(existingVer + 1));
+        assertThat(graph.getVertex("existing").getEdges(Direction.OUT, "link").iterator().hasNext(), is(true));
+    }
+
+    @Test
+    public void testVersionIsAllocatedBeforeLoading() {
+        BulkLoader<TinkerGraph, Long> loader = new BulkLoader<TinkerGraph, Long>(graph, 100);
+        loader.addVertex(null, props("key", "foo"));
+        Long loadedVer = graph.getLatestGraphVersion();
+
+        graph.addVertex("other");
+        assertThat(graph.getLatestGraphVersion(), is(loadedVer + 1));
+        assertThat(loader.commitVersion(), is(loadedVer));
+        assertThat(graph.getLatestGraphVersion(), is(loadedVer + 1));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testLoadedNaturalIdsSurviveRollback() {
+        ActiveVersionedGraph<Neo4j2Graph, Long> txGraph =
+                new ActiveVersionedGraph.ActiveVersionedTransactionalGraphBuilder<Neo4j2Graph, Long>(new Neo4j2Graph(
+                        new ImpermanentGraphDatabase()), new LongGraphIdentifierBehavior()).init(true)
+                        .conf(new Configuration.ConfBuilder().naturalIdCacheSize(100L).build()).build();
+        assertThat(txGraph.isNaturalIds(), is(Boolean.TRUE));
+
+        BulkLoader<Neo4j2Graph, Long> loader = new BulkLoader<Neo4j2Graph, Long>(txGraph, 100);
+        loader.addVertex("v1", props("key", "foo"));
+        loader.commitVersion();
+
+        ((TransactionalGraph) txGraph).rollback();
+        assertThat(txGraph.getNaturalIdCache().get(Vertex.class, "v1"), notNullValue());
+        txGraph.shutdown();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testReservedKeysAreRejected() {
+        new BulkLoader<TinkerGraph, Long>(graph, 10).addVertex(null, props(VEProps.REMOVED_PROP_KEY, 1L));
+    }
+
+    private static Map<String, Object> props(String key, Object value) {
+        Map<String, Object> props = new HashMap<String, Object>();
+        props.put(key, value);
+        return props;
+    }
+}
@@ -0,0 +1,50 @@
+/**
+ * Copyright (c) 2012-2014 "Indexia Technologies, ltd."
+ * 
+ * This file is part of Antiquity.
+ * 
+ * Antiquity is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.indexia.antiquity.graph;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
+import co.indexia.antiquity.graph.identifierBehavior.CachedLongGraphIdentifierBehavior;
+
+import org.junit.Test;
+
+/**
+ * Runs the non transactional suite with a cached version identifier.
+ */
+public class CachedNonTransactionalLongTypeVersionedGraphTest extends NonTransactionalLongTypeVersionedGraphTest {
+    @Override
+    protected ActiveVersionedGraph<?, Long> generateGraph(String graphDirectoryName, Configuration conf) {
+        return new ActiveVersionedGraph.ActiveVersionedNonTransactionalGraphBuilder<TinkerGraph, Long>(
+                new TinkerGraph(), new CachedLongGraphIdentifierBehavior()).init(true).conf(conf).build();
+    }
+
+    /**
+     * Cached version must always match the persisted version.
+     */
+    @Test
+    public void testCachedVersionMatchesPersistedVersion() {
+        graph.addVertex(null).setProperty("key", "foo");
+        Long persisted =
+                (Long) graph.getRootVertex(VEProps.GRAPH_TYPE.HISTORIC).getProperty(
+                        VEProps.LATEST_GRAPH_VERSION_PROP_KEY);
+        assertThat(graph.getLatestGraphVersion(), is(persisted));
+    }
+}
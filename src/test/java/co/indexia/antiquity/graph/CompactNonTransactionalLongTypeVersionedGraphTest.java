@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) 2012-2014 "Indexia Technologies, ltd."
+ * 
+ * This file is part of Antiquity.
+ * 
+ * Antiquity is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.indexia.antiquity.graph;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import com.google.common.collect.Iterables;
+import com.tinkerpop.blueprints.Compare;
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
+import co.indexia.antiquity.graph.identifierBehavior.LongGraphIdentifierBehavior;
+import co.indexia.antiquity.range.Range;
+
+import org.junit.Test;
+
+/**
+ * Runs the non transactional suite with packed version ranges.
+ */
+public class CompactNonTransactionalLongTypeVersionedGraphTest extends NonTransactionalLongTypeVersionedGraphTest {
+    @Override
+    protected ActiveVersionedGraph<?, Long> generateGraph(String graphDirectoryName, Configuration conf) {
+        if (conf == null) {
+            conf = new Configuration.ConfBuilder().compactVersionRangeEnabled(true).build();
+        }
+
+        return new ActiveVersionedGraph.ActiveVersionedNonTransactionalGraphBuilder<TinkerGraph, Long>(
+                new TinkerGraph(), new LongGraphIdentifierBehavior()).init(true).conf(conf).build();
+    }
+
+    /**
+     * Version ranges are stored in a single packed property.
+     */
+    @Test
+    public void testVersionRangeIsPacked() {
+        Vertex v = graph.addVertex(null);
+        Long ver1 = graph.getLatestGraphVersion();
+        v.setProperty("key", "foo");
+        Long ver2 = graph.getLatestGraphVersion();
+
+        Vertex first = graph.getHistoricGraph().getVertexForVersion(v.getId(), ver1);
+        Vertex raw = ((HistoricVersionedVertex<Long>) first).getRaw();
+        assertThat(raw.getProperty(VEProps.VALID_RANGE_PROP_KEY), notNullValue());
+        assertThat(raw.getProperty(VEProps.VALID_MIN_VERSION_PROP_KEY), nullValue());
+        assertThat(raw.getProperty(VEProps.VALID_MAX_VERSION_PROP_KEY), nullValue());
+        assertThat(graph.utils.getVersionRange(raw), is(Range.range(ver1, ver2 - 1)));
+
+        Vertex latest = graph.getHistoricGraph().getLatestHistoricRevision((ActiveVersionedVertex<Long>) v);
+        assertThat(graph.utils.getStartVersion(latest), is(ver2));
+        assertThat(graph.utils.getEndVersion(latest), is(graph.getMaxPossibleGraphVersion()));
+    }
+
+    /**
+     * Packed version ranges are not pushed down to the base query.
+     */
+    @Override
+    @Test
+    public void testVersionIsPushedDownOnce() {
+        graph.addVertex(null);
+        Long ver = graph.getLatestGraphVersion();
+
+        RecordingGraphQuery base = new RecordingGraphQuery(graph.getBaseGraph());
+        HistoricGraphQuery<Long> query = new HistoricGraphQuery<Long>(graph.getHistoricGraph(), base);
+        assertThat(Iterables.size(query.forVersion(ver).vertices()), is(1));
+        assertThat(base.predicates.contains(VEProps.VALID_MIN_VERSION_PROP_KEY + " " + Compare.LESS_THAN_EQUAL
+                + " " + ver), is(false));
+    }
+
+    /**
+     * Packed version ranges are still read once the graph is reopened without
+     * them.
+     */
+    @Test
+    public void testPackedRangesAreReadWhenDisabled() {
+        Vertex v = graph.addVertex(null);
+        Long ver1 = graph.getLatestGraphVersion();
+        v.setProperty("key", "foo");
+
+        TinkerGraph base = (TinkerGraph) graph.getBaseGraph();
+        graph =
+                new ActiveVersionedGraph.ActiveVersionedNonTransactionalGraphBuilder<TinkerGraph, Long>(base,
+                        new LongGraphIdentifierBehavior()).init(true).build();
+        assertThat(graph.getHistoricGraph().isVersionRangePushDownSupported(), is(false));
+
+        HistoricGraphQuery<Long> query = (HistoricGraphQuery<Long>) graph.getHistoricGraph().query();
+        Vertex first = Iterables.getOnlyElement(query.forVersion(ver1).vertices());
+        assertThat(first.getId(), is(v.getId()));
+        assertThat(first.getProperty("key"), nullValue());
+    }
+}
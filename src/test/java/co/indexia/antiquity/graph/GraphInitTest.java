@@ -19,10 +19,13 @@
 package co.indexia.antiquity.graph;
 
 import com.google.common.collect.Lists;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Vertex;
 import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
 import co.indexia.antiquity.graph.identifierBehavior.LongGraphIdentifierBehavior;
 import org.junit.Test;
 
+import static org.hamcrest.CoreMatchers.hasItem;
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertThat;
 
@@ -52,4 +55,36 @@ public class GraphInitTest {
         assertThat(Lists.newArrayList(graph.getVertices()).size(), is(2));
         assertThat(Lists.newArrayList(graph.getEdges()).size(), is(0));
     }
+
+    @Test
+    public void shouldCreateReservedKeyIndices() {
+        TinkerGraph graph = new TinkerGraph();
+        ActiveVersionedGraph<TinkerGraph, Long> vg =
+                new ActiveVersionedGraph.ActiveVersionedNonTransactionalGraphBuilder<TinkerGraph, Long>(graph,
+                        new LongGraphIdentifierBehavior()).init(true).build();
+
+        for (String key : VEProps.vertexIndexedKeys) {
+            assertThat(graph.getIndexedKeys(Vertex.class), hasItem(key));
+        }
+        for (String key : VEProps.edgeIndexedKeys) {
+            assertThat(graph.getIndexedKeys(Edge.class), hasItem(key));
+        }
+
+        assertThat(vg.getIndexManager().getScanFallbackKeys(Vertex.class).isEmpty(), is(true));
+        assertThat(vg.getIndexManager().isIndexed(VEProps.REF_TO_ACTIVE_ID_KEY, Vertex.class), is(true));
+
+        // keys are only indexed for the elements they look up
+        assertThat(graph.getIndexedKeys(Vertex.class).contains(VEProps.NATURAL_EDGE_ID_PROP_KEY), is(false));
+        assertThat(graph.getIndexedKeys(Edge.class).contains(VEProps.NATURAL_VERTEX_ID_PROP_KEY), is(false));
+        assertThat(graph.getIndexedKeys(Vertex.class).contains(VEProps.HISTORIC_ELEMENT_PROP_KEY), is(false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotDropReservedKeyIndex() {
+        ActiveVersionedGraph<TinkerGraph, Long> vg =
+                new ActiveVersionedGraph.ActiveVersionedNonTransactionalGraphBuilder<TinkerGraph, Long>(
+                        new TinkerGraph(), new LongGraphIdentifierBehavior()).init(true).build();
+
+        vg.dropKeyIndex(VEProps.HISTORIC_ELEMENT_PROP_KEY, Vertex.class);
+    }
 }
@@ -0,0 +1,326 @@
+/**
+ * Copyright (c) 2012-2014 "Indexia Technologies, ltd."
+ * 
+ * This file is part of Antiquity.
+ * 
+ * Antiquity is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.indexia.antiquity.graph;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.impls.neo4j2.Neo4j2Graph;
+import co.indexia.antiquity.graph.identifierBehavior.LongGraphIdentifierBehavior;
+import org.neo4j.test.ImpermanentGraphDatabase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test asynchronous (write-behind) history.
+ */
+public class Neo4j2AsyncHistoryTest {
+    private TransactionalVersionedGraph<Neo4j2Graph, Long> graph;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        Configuration conf = new Configuration.ConfBuilder().asyncHistoryQueueSize(16).build();
+        ActiveVersionedGraph<Neo4j2Graph, Long> g =
+                new ActiveVersionedGraph.ActiveVersionedTransactionalGraphBuilder<Neo4j2Graph, Long>(new Neo4j2Graph(
+                        new ImpermanentGraphDatabase()), new LongGraphIdentifierBehavior()).init(true).conf(conf)
+                        .build();
+        graph = (TransactionalVersionedGraph<Neo4j2Graph, Long>) g;
+    }
+
+    @After
+    public void tearDown() {
+        graph.shutdown();
+    }
+
+    @Test
+    public void testHistoryIsAvailableAfterAwaitingVersion() throws InterruptedException {
+        Vertex v = graph.addVertex(null);
+        v.setProperty("key", "foo");
+        graph.commit();
+        Long ver1 = graph.getLatestGraphVersion();
+
+        v.setProperty("key", "bar");
+        graph.commit();
+        Long ver2 = graph.getLatestGraphVersion();
+
+        v.setProperty("key", "baz");
+        graph.commit();
+        Long ver3 = graph.getLatestGraphVersion();
+
+        HistoricVersionedGraph<Neo4j2Graph, Long> historic = graph.getHistoricGraph();
+        assertTrue(historic.awaitVersion(ver3, 10, TimeUnit.SECONDS));
+        assertThat((String) historic.getVertexForVersion(v.getId(), ver1).getProperty("key"), is("foo"));
+        assertThat((String) historic.getVertexForVersion(v.getId(), ver2).getProperty("key"), is("bar"));
+        assertThat((String) historic.getVertexForVersion(v.getId(), ver3).getProperty("key"), is("baz"));
+    }
+
+    @Test
+    public void testHistoryIsWrittenInVersionOrder() throws InterruptedException {
+        List<Object> ids = new ArrayList<Object>();
+        for (int i = 0; i < 20; i++) {
+            Vertex v = graph.addVertex(null);
+            v.setProperty("key", i);
+            graph.commit();
+            ids.add(v.getId());
+        }
+
+        assertTrue(graph.getHistoricGraph().awaitVersion(graph.getLatestGraphVersion(), 10, TimeUnit.SECONDS));
+        for (int i = 0; i < ids.size(); i++) {
+            Vertex hv = graph.getHistoricGraph().getVertex(ids.get(i));
+            assertThat(graph.utils.getStartVersion(hv), is(i + 1L));
+        }
+    }
+
+    @Test
+    public void testFailedHistoryIsNotAcknowledged() throws InterruptedException {
+        graph.shutdown();
+        Configuration conf = new Configuration.ConfBuilder().asyncHistoryQueueSize(16).build();
+        // version 2 fails only once version 3 was committed
+        final CountDownLatch committed = new CountDownLatch(1);
+        graph =
+                new TransactionalVersionedGraph<Neo4j2Graph, Long>(new Neo4j2Graph(new ImpermanentGraphDatabase()),
+                        new LongGraphIdentifierBehavior(), conf, null, null) {
+                    @Override
+                    void writeHistory(AsyncHistoryWriter.HistoryTask<Long> task) {
+                        if (task.getVersion() == 2L) {
+                            try {
+                                committed.await(10, TimeUnit.SECONDS);
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                            throw new IllegalStateException("History failure of version 2");
+                        }
+                        super.writeHistory(task);
+                    }
+                };
+        graph.init();
+
+        Vertex v = graph.addVertex(null);
+        v.setProperty("key", "foo");
+        graph.commit();
+        Long ver1 = graph.getLatestGraphVersion();
+
+        v.setProperty("key", "bar");
+        graph.commit();
+        Long ver2 = graph.getLatestGraphVersion();
+        assertThat(ver2, is(2L));
+
+        v.setProperty("key", "baz");
+        graph.commit();
+        Long ver3 = graph.getLatestGraphVersion();
+        committed.countDown();
+
+        HistoricVersionedGraph<Neo4j2Graph, Long> historic = graph.getHistoricGraph();
+        assertTrue(historic.awaitVersion(ver1, 10, TimeUnit.SECONDS));
+        for (Long ver : new Long[] { ver2, ver3 }) {
+            try {
+                historic.awaitVersion(ver, 10, TimeUnit.SECONDS);
+                fail(String.format("History of version [%s] must not be acknowledged", ver));
+            } catch (IllegalStateException e) {
+                // expected
+            }
+        }
+
+        v.setProperty("key", "qux");
+        try {
+            graph.commit();
+            fail("Commit must be rejected once history could not be written");
+        } catch (IllegalStateException e) {
+            graph.rollback();
+        }
+        assertThat(graph.getLatestGraphVersion(), is(ver3));
+    }
+
+    @Test
+    public void testHistoryOfRemovedElementsIsWrittenFromSnapshots() throws InterruptedException {
+        graph.shutdown();
+        Configuration conf = new Configuration.ConfBuilder().asyncHistoryQueueSize(16).build();
+        // no history is written until all the versions were committed
+        final CountDownLatch committed = new CountDownLatch(1);
+        graph =
+                new TransactionalVersionedGraph<Neo4j2Graph, Long>(new Neo4j2Graph(new ImpermanentGraphDatabase()),
+                        new LongGraphIdentifierBehavior(), conf, null, null) {
+                    @Override
+                    void writeHistory(AsyncHistoryWriter.HistoryTask<Long> task) {
+                        try {
+                            committed.await(10, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        super.writeHistory(task);
+                    }
+                };
+        graph.init();
+
+        Vertex v = graph.addVertex(null);
+        v.setProperty("key", "foo");
+        Vertex other = graph.addVertex(null);
+        Edge e = graph.addEdge(null, v, other, "label");
+        e.setProperty("key", "foo");
+        graph.commit();
+        Long ver1 = graph.getLatestGraphVersion();
+        Object vId = v.getId();
+        Object eId = e.getId();
+
+        v.setProperty("key", "bar");
+        graph.commit();
+        Long ver2 = graph.getLatestGraphVersion();
+
+        graph.removeVertex(v);
+        graph.commit();
+        Long ver3 = graph.getLatestGraphVersion();
+        committed.countDown();
+
+        HistoricVersionedGraph<Neo4j2Graph, Long> historic = graph.getHistoricGraph();
+        assertTrue(historic.awaitVersion(ver3, 10, TimeUnit.SECONDS));
+        assertThat((String) historic.getVertexForVersion(vId, ver1).getProperty("key"), is("foo"));
+        assertThat((String) historic.getVertexForVersion(vId, ver2).getProperty("key"), is("bar"));
+        assertThat(historic.getVertexForVersion(vId, ver3), nullValue());
+        assertThat(graph.utils.getEndVersion(historic.getVertex(vId)), is(ver2));
+
+        Edge he = historic.getEdgeForVersion(eId, ver1);
+        assertThat((String) he.getProperty("key"), is("foo"));
+        assertThat(he.getVertex(Direction.IN).getId(), is(other.getId()));
+        assertThat(graph.utils.getEndVersion(historic.getEdge(eId)), is(ver2));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testPendingHistoryIsRecovered() throws InterruptedException {
+        graph.shutdown();
+        Configuration conf = new Configuration.ConfBuilder().asyncHistoryQueueSize(16).build();
+        Neo4j2Graph base = new Neo4j2Graph(new ImpermanentGraphDatabase());
+        TransactionalVersionedGraph<Neo4j2Graph, Long> failing =
+                new TransactionalVersionedGraph<Neo4j2Graph, Long>(base, new LongGraphIdentifierBehavior(), conf,
+                        null, null) {
+                    @Override
+                    void writeHistory(AsyncHistoryWriter.HistoryTask<Long> task) {
+                        if (task.getVersion() >= 3L) {
+                            throw new IllegalStateException("History failure of version " + task.getVersion());
+                        }
+                        super.writeHistory(task);
+                    }
+                };
+        failing.init();
+
+        Vertex v = failing.addVertex(null);
+        v.setProperty("key", "foo");
+        failing.commit();
+        Long ver1 = failing.getLatestGraphVersion();
+
+        Vertex removed = failing.addVertex(null);
+        failing.commit();
+        Long ver2 = failing.getLatestGraphVersion();
+        Object removedId = removed.getId();
+        assertTrue(failing.getHistoricGraph().awaitVersion(ver2, 10, TimeUnit.SECONDS));
+
+        v.setProperty("key", "bar");
+        failing.removeVertex(removed);
+        failing.commit();
+        Long ver3 = failing.getLatestGraphVersion();
+
+        try {
+            failing.getHistoricGraph().awaitVersion(ver3, 10, TimeUnit.SECONDS);
+            fail("History of a failed version must not be acknowledged");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        graph =
+                (TransactionalVersionedGraph<Neo4j2Graph, Long>) new ActiveVersionedGraph.ActiveVersionedTransactionalGraphBuilder<Neo4j2Graph, Long>(
+                        base, new LongGraphIdentifierBehavior()).init(false).conf(conf).build();
+
+        HistoricVersionedGraph<Neo4j2Graph, Long> historic = graph.getHistoricGraph();
+        assertTrue(historic.awaitVersion(ver3, 10, TimeUnit.SECONDS));
+        assertThat((String) historic.getVertexForVersion(v.getId(), ver1).getProperty("key"), is("foo"));
+        assertThat((String) historic.getVertexForVersion(v.getId(), ver3).getProperty("key"), is("bar"));
+        assertThat(graph.utils.getEndVersion(historic.getVertex(removedId)), is(ver2));
+        assertThat(base.getVertices(VEProps.PENDING_HISTORY_PROP_KEY, true).iterator().hasNext(), is(false));
+    }
+
+    @Test
+    public void testFailedHistoryIsRecovered() throws InterruptedException {
+        graph.shutdown();
+        Configuration conf = new Configuration.ConfBuilder().asyncHistoryQueueSize(16).build();
+        final AtomicBoolean broken = new AtomicBoolean(false);
+        graph =
+                new TransactionalVersionedGraph<Neo4j2Graph, Long>(new Neo4j2Graph(new ImpermanentGraphDatabase()),
+                        new LongGraphIdentifierBehavior(), conf, null, null) {
+                    @Override
+                    void writeHistory(AsyncHistoryWriter.HistoryTask<Long> task) {
+                        if (broken.get()) {
+                            throw new IllegalStateException("History failure of version " + task.getVersion());
+                        }
+                        super.writeHistory(task);
+                    }
+                };
+        graph.init();
+
+        Vertex v = graph.addVertex(null);
+        v.setProperty("key", "foo");
+        graph.commit();
+        Long ver1 = graph.getLatestGraphVersion();
+        HistoricVersionedGraph<Neo4j2Graph, Long> historic = graph.getHistoricGraph();
+        assertTrue(historic.awaitVersion(ver1, 10, TimeUnit.SECONDS));
+
+        broken.set(true);
+        v.setProperty("key", "bar");
+        graph.commit();
+        Long ver2 = graph.getLatestGraphVersion();
+        try {
+            historic.awaitVersion(ver2, 10, TimeUnit.SECONDS);
+            fail("History of a failed version must not be acknowledged");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        v.setProperty("key", "baz");
+        try {
+            graph.commit();
+            fail("Commit must be rejected once history could not be written");
+        } catch (IllegalStateException e) {
+            // the transaction is left open
+        }
+
+        broken.set(false);
+        graph.recoverHistory();
+        graph.commit();
+        Long ver3 = graph.getLatestGraphVersion();
+
+        assertTrue(historic.awaitVersion(ver3, 10, TimeUnit.SECONDS));
+        assertThat((String) historic.getVertexForVersion(v.getId(), ver1).getProperty("key"), is("foo"));
+        assertThat((String) historic.getVertexForVersion(v.getId(), ver2).getProperty("key"), is("bar"));
+        assertThat((String) historic.getVertexForVersion(v.getId(), ver3).getProperty("key"), is("baz"));
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ * Copyright (c) 2012-2014 "Indexia Technologies, ltd."
+ * 
+ * This file is part of Antiquity.
+ * 
+ * Antiquity is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.indexia.antiquity.graph;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import com.tinkerpop.blueprints.TransactionalGraph;
+import com.tinkerpop.blueprints.impls.neo4j2.Neo4j2Graph;
+import co.indexia.antiquity.graph.identifierBehavior.CachedLongGraphIdentifierBehavior;
+import org.neo4j.test.ImpermanentGraphDatabase;
+
+import org.junit.Test;
+
+/**
+ * Runs the Neo4j2 transactional suite with a cached version identifier.
+ */
+public class Neo4j2CachedTxLongVersionedGraphTest extends TransactionalLongVersionedGraphTest {
+    @Override
+    protected ActiveVersionedGraph<?, Long> generateGraph() {
+        return new ActiveVersionedGraph.ActiveVersionedTransactionalGraphBuilder<Neo4j2Graph, Long>(new Neo4j2Graph(
+                new ImpermanentGraphDatabase()), new CachedLongGraphIdentifierBehavior()).init(true).conf(null)
+                .build();
+    }
+
+    /**
+     * A version allocated within a rolled back transaction must not be cached.
+     */
+    @Test
+    public void testRolledBackVersionIsNotCached() {
+        graph.addVertex("v1");
+        commit();
+        Long latest = graph.getLatestGraphVersion();
+
+        graph.allocateNextGraphVersion(latest + 1);
+        assertThat(graph.getLatestGraphVersion(), is(latest + 1));
+        ((TransactionalGraph) graph).rollback();
+
+        assertThat(graph.getLatestGraphVersion(), is(latest));
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright (c) 2012-2014 "Indexia Technologies, ltd."
+ * 
+ * This file is part of Antiquity.
+ * 
+ * Antiquity is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.indexia.antiquity.graph;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.impls.neo4j2.Neo4j2Graph;
+import co.indexia.antiquity.graph.identifierBehavior.LongGraphIdentifierBehavior;
+import org.neo4j.test.ImpermanentGraphDatabase;
+
+import org.junit.Test;
+
+/**
+ * Neo4j2 tests with latest historic revisions resolved via the off-heap map.
+ */
+public class Neo4j2LatestRevisionMapTest extends TransactionalLongVersionedGraphTest {
+    @Override
+    protected ActiveVersionedGraph<?, Long> generateGraph() {
+        Configuration conf = new Configuration.ConfBuilder().latestRevisionMapEnabled(true).build();
+        return new ActiveVersionedGraph.ActiveVersionedTransactionalGraphBuilder<Neo4j2Graph, Long>(new Neo4j2Graph(
+                new ImpermanentGraphDatabase()), new LongGraphIdentifierBehavior()).init(true).conf(conf).build();
+    }
+
+    /**
+     * The map is populated when the graph is built, latest revisions are then
+     * resolved without their hard id.
+     */
+    @Test
+    public void testMapIsPopulatedOnStartup() {
+        Neo4j2Graph base = new Neo4j2Graph(new ImpermanentGraphDatabase());
+        Configuration conf = new Configuration.ConfBuilder().latestRevisionMapEnabled(true).build();
+        TransactionalVersionedGraph<Neo4j2Graph, Long> g = build(base, conf, true);
+        Vertex v = g.addVertex(null);
+        v.setProperty("key", "foo");
+        g.commit();
+        Object id = v.getId();
+        ActiveVersionedVertex<Long> active = (ActiveVersionedVertex<Long>) v;
+        Object latestId = g.getHistoricGraph().getLatestHistoricRevision(active).getRaw().getId();
+
+        // the hard id of the latest revision is not used once the map is
+        // populated
+        base.getVertex(active.getRaw().getId()).setProperty(VEProps.REF_TO_LATEST_HISTORIC_ID_KEY, "missing");
+        base.commit();
+        g.getHistoricGraph().releaseLatestRevisions();
+
+        conf =
+                new Configuration.ConfBuilder().latestRevisionMapEnabled(true).latestRevisionMapSegments(2)
+                        .latestRevisionMapInitialCapacity(8).build();
+        TransactionalVersionedGraph<Neo4j2Graph, Long> restarted = build(base, conf, false);
+        try {
+            HistoricVersionedVertex<Long> latest =
+                    restarted.getHistoricGraph().getLatestHistoricRevision(
+                            (ActiveVersionedVertex<Long>) restarted.getVertex(id));
+            assertThat(latest.getRaw().getId(), is(latestId));
+        } finally {
+            restarted.shutdown();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private TransactionalVersionedGraph<Neo4j2Graph, Long> build(Neo4j2Graph base, Configuration conf, boolean init) {
+        return (TransactionalVersionedGraph<Neo4j2Graph, Long>) new ActiveVersionedGraph.ActiveVersionedTransactionalGraphBuilder<Neo4j2Graph, Long>(
+                base, new LongGraphIdentifierBehavior()).init(init).conf(conf).build();
+    }
+}
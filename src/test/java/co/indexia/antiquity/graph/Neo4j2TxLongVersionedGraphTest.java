@@ -18,10 +18,21 @@
  */
 package co.indexia.antiquity.graph;
 
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import com.tinkerpop.blueprints.TransactionalGraph;
+import com.tinkerpop.blueprints.Vertex;
 import com.tinkerpop.blueprints.impls.neo4j2.Neo4j2Graph;
+import com.tinkerpop.blueprints.impls.neo4j2.Neo4j2Vertex;
 import co.indexia.antiquity.graph.identifierBehavior.LongGraphIdentifierBehavior;
 import org.neo4j.test.ImpermanentGraphDatabase;
 
+import org.junit.Test;
+
 /**
  * Neo4j2 tests
  */
@@ -31,4 +42,39 @@ public class Neo4j2TxLongVersionedGraphTest extends TransactionalLongVersionedGr
         return new ActiveVersionedGraph.ActiveVersionedTransactionalGraphBuilder<Neo4j2Graph, Long>(new Neo4j2Graph(
                 new ImpermanentGraphDatabase()), new LongGraphIdentifierBehavior()).init(true).conf(null).build();
     }
+
+    /**
+     * Natural ids of created elements are cached only if their transaction
+     * was committed by the base graph.
+     */
+    @Test
+    public void testNaturalIdsOfFailedCommitAreNotCached() {
+        graph.shutdown();
+        graph =
+                new ActiveVersionedGraph.ActiveVersionedTransactionalGraphBuilder<Neo4j2Graph, Long>(new Neo4j2Graph(
+                        new ImpermanentGraphDatabase()), new LongGraphIdentifierBehavior()).init(true)
+                        .conf(new Configuration.ConfBuilder().naturalIdCacheSize(100L).build()).build();
+        assertThat(graph.isNaturalIds(), is(true));
+
+        Vertex a = graph.addVertex("a");
+        graph.addEdge("e", a, graph.addVertex("b"), "link");
+        commit();
+        Object rawId = graph.getNaturalIdCache().get(Vertex.class, "a");
+        assertThat(rawId, notNullValue());
+
+        graph.addVertex("v1");
+        assertThat(graph.getNaturalIdCache().get(Vertex.class, "v1"), notNullValue());
+
+        // deleting a node which has relationships fails the base commit
+        ((Neo4j2Vertex) ((Neo4j2Graph) graph.getBaseGraph()).getVertex(rawId)).getRawVertex().delete();
+        try {
+            commit();
+            fail("Base commit must fail");
+        } catch (RuntimeException e) {
+            ((TransactionalGraph) graph).rollback();
+        }
+
+        assertThat(graph.getNaturalIdCache().get(Vertex.class, "v1"), nullValue());
+        assertThat(graph.getVertex("v1"), nullValue());
+    }
 }
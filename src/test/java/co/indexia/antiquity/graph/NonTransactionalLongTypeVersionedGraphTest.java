@@ -19,10 +19,29 @@
 package co.indexia.antiquity.graph;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.google.common.collect.Iterables;
+import com.tinkerpop.blueprints.Compare;
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Element;
+import com.tinkerpop.blueprints.Graph;
+import com.tinkerpop.blueprints.GraphQuery;
+import com.tinkerpop.blueprints.Predicate;
+import com.tinkerpop.blueprints.Vertex;
 import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
+import com.tinkerpop.blueprints.util.DefaultGraphQuery;
 import co.indexia.antiquity.graph.identifierBehavior.LongGraphIdentifierBehavior;
+import co.indexia.antiquity.range.Range;
 
 import org.junit.Test;
 
@@ -54,4 +73,505 @@ public class NonTransactionalLongTypeVersionedGraphTest extends VersionedGraphTe
     public void testEnsureThatNativeIdsEnabled() {
         assertThat(graph.isNaturalIds(), is(Boolean.FALSE));
     }
+
+    /**
+     * All modifications within a batch share a single version and a single
+     * historic revision per element.
+     */
+    @Test
+    public void testBatchCreatesSingleRevisionPerElement() {
+        NonTransactionalVersionedGraph<?, Long> g = (NonTransactionalVersionedGraph<?, Long>) graph;
+        Vertex v = graph.addVertex(null);
+        Long before = graph.getLatestGraphVersion();
+
+        g.beginBatch();
+        for (int i = 0; i < 20; i++) {
+            v.setProperty("key" + i, i);
+        }
+        Vertex added = graph.addVertex(null);
+        added.setProperty("key", "foo");
+        Long ver = g.commitBatch();
+
+        assertThat(ver, is(before + 1));
+        assertThat(graph.getLatestGraphVersion(), is(ver));
+        assertThat(graph.getHistoricGraph().buildVertexChain(v.getId()).size(), is(2));
+        assertThat(graph.getHistoricGraph().buildVertexChain(added.getId()).size(), is(1));
+        assertThat((Integer) graph.getHistoricGraph().getVertexForVersion(v.getId(), ver).getProperty("key19"),
+                is(19));
+    }
+
+    @Test
+    public void testEmptyBatchIsNotVersioned() {
+        NonTransactionalVersionedGraph<?, Long> g = (NonTransactionalVersionedGraph<?, Long>) graph;
+        Long before = graph.getLatestGraphVersion();
+
+        g.beginBatch();
+        assertThat(g.commitBatch(), is((Long) null));
+        assertThat(graph.getLatestGraphVersion(), is(before));
+    }
+
+    /**
+     * Changes that cancel each other within a batch leave nothing to version.
+     */
+    @Test
+    public void testBatchIsCoalesced() {
+        NonTransactionalVersionedGraph<?, Long> g = (NonTransactionalVersionedGraph<?, Long>) graph;
+        Vertex v = graph.addVertex(null);
+        v.setProperty("key", "foo");
+        Long before = graph.getLatestGraphVersion();
+        int revisions = graph.getHistoricGraph().buildVertexChain(v.getId()).size();
+
+        g.beginBatch();
+        v.setProperty("key", "bar");
+        v.setProperty("key", "foo");
+        Vertex temp = graph.addVertex(null);
+        temp.setProperty("key", "baz");
+        graph.addEdge(null, temp, v, "link");
+        graph.removeVertex(temp);
+        assertThat(g.commitBatch(), is((Long) null));
+
+        assertThat(graph.getLatestGraphVersion(), is(before));
+        assertThat(graph.getHistoricGraph().buildVertexChain(v.getId()).size(), is(revisions));
+        assertThat(Iterables.size(v.getEdges(Direction.BOTH)), is(0));
+    }
+
+    /**
+     * With a keyframe interval, older revisions store deltas but their
+     * properties are reconstructed transparently.
+     */
+    @Test
+    public void testDeltaRevisionsAreReconstructed() {
+        graph.shutdown();
+        graph = generateGraph("graph", new Configuration.ConfBuilder().historicKeyframeInterval(3).build());
+
+        Vertex v = graph.addVertex(null);
+        v.setProperty("fixed", "foo");
+        List<Long> versions = new ArrayList<Long>();
+        for (int i = 0; i < 10; i++) {
+            v.setProperty("key", i);
+            versions.add(graph.getLatestGraphVersion());
+        }
+        v.removeProperty("fixed");
+        Long removedVer = graph.getLatestGraphVersion();
+
+        int deltas = 0;
+        for (int i = 0; i < versions.size(); i++) {
+            HistoricVersionedVertex<Long> hv = graph.getHistoricGraph().getVertexForVersion(v.getId(), versions.get(i));
+            assertThat((Integer) hv.getProperty("key"), is(i));
+            assertThat((String) hv.getProperty("fixed"), is("foo"));
+            deltas += hv.isDeltaRevision() ? 1 : 0;
+        }
+
+        HistoricVersionedVertex<Long> latest = graph.getHistoricGraph().getVertexForVersion(v.getId(), removedVer);
+        assertThat(latest.getProperty("fixed"), nullValue());
+        assertThat(latest.getPropertyKeys().contains("key"), is(true));
+        assertThat(deltas > 0 && deltas < versions.size(), is(true));
+    }
+
+    /**
+     * Every revision of a deep chain is found, revisions skip over the chain.
+     */
+    @Test
+    public void testDeepRevisionChainLookup() {
+        Vertex v = graph.addVertex(null);
+        List<Long> versions = new ArrayList<Long>();
+        for (int i = 0; i < 300; i++) {
+            v.setProperty("key", i);
+            versions.add(graph.getLatestGraphVersion());
+        }
+
+        for (int i = 0; i < versions.size(); i++) {
+            HistoricVersionedVertex<Long> hv = graph.getHistoricGraph().getVertexForVersion(v.getId(), versions.get(i));
+            assertThat((Integer) hv.getProperty("key"), is(i));
+        }
+
+        int skips = 0;
+        for (HistoricVersionedVertex<Long> hv : graph.getHistoricGraph().buildVertexChain(v.getId())) {
+            skips += hv.getRaw().getEdges(Direction.OUT, VEProps.SKIP_VERSION_LABEL).iterator().hasNext() ? 1 : 0;
+        }
+        assertThat(skips > 0, is(true));
+    }
+
+    /**
+     * Revisions of chains written before revisions had heights are found by
+     * their distance from the oldest revision.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRevisionAtHeightWithoutHeights() {
+        Vertex v = graph.addVertex(null);
+        for (int i = 0; i < 10; i++) {
+            v.setProperty("key", i);
+        }
+
+        List<Vertex> chain = new ArrayList<Vertex>();
+        Vertex latest = graph.getHistoricGraph().getLatestHistoricRevision((ActiveVersionedVertex<Long>) v).getRaw();
+        for (Vertex revision = latest; revision != null; revision = graph.utils.getPreviousRevision(revision)) {
+            revision.removeProperty(VEProps.REVISION_HEIGHT_PROP_KEY);
+            chain.add(0, revision);
+        }
+
+        for (int height = 0; height < chain.size(); height++) {
+            assertThat(graph.utils.getRevisionAtHeight(latest, height), is(chain.get(height)));
+        }
+    }
+
+    /**
+     * The version range predicates reach the base query once, even if both
+     * vertices and edges are queried.
+     */
+    @Test
+    public void testVersionIsPushedDownOnce() {
+        Vertex v = graph.addVertex(null);
+        graph.addEdge(null, v, graph.addVertex(null), "link");
+        Long ver = graph.getLatestGraphVersion();
+
+        RecordingGraphQuery base = new RecordingGraphQuery(graph.getBaseGraph());
+        HistoricGraphQuery<Long> query = new HistoricGraphQuery<Long>(graph.getHistoricGraph(), base);
+        query.forVersion(ver);
+        assertThat(Iterables.size(query.vertices()), is(2));
+        assertThat(Iterables.size(query.edges()), is(1));
+
+        assertThat(Collections.frequency(base.predicates, VEProps.VALID_MIN_VERSION_PROP_KEY + " "
+                + Compare.LESS_THAN_EQUAL + " " + ver), is(1));
+        assertThat(Collections.frequency(base.predicates, VEProps.VALID_MAX_VERSION_PROP_KEY + " "
+                + Compare.GREATER_THAN_EQUAL + " " + ver), is(1));
+    }
+
+    /**
+     * Interval index nodes are written only if the index is enabled, open
+     * ranges are registered at the now node.
+     */
+    @Test
+    public void testIntervalNodes() {
+        Vertex v = graph.addVertex(null);
+        v.setProperty("key", "foo");
+        for (Vertex hv : graph.getBaseGraph().getVertices(VEProps.REF_TO_ACTIVE_ID_KEY, v.getId())) {
+            assertThat(hv.getProperty(VEProps.VALID_INTERVAL_NODE_PROP_KEY), nullValue());
+        }
+
+        graph.shutdown();
+        graph = generateGraph("graph", new Configuration.ConfBuilder().temporalIntervalIndexEnabled(true).build());
+        v = graph.addVertex(null);
+        v.setProperty("key", "foo");
+        v.setProperty("key", "bar");
+
+        ActiveVersionedVertex<Long> active = (ActiveVersionedVertex<Long>) graph.getVertex(v.getId());
+        Vertex latest = graph.getHistoricGraph().getLatestHistoricRevision(active).getRaw();
+        assertThat((Long) latest.getProperty(VEProps.VALID_INTERVAL_NODE_PROP_KEY),
+                is(TemporalIntervalIndex.NOW_NODE));
+
+        Vertex previous = graph.utils.getPreviousRevision(latest);
+        Range<Long> range = graph.utils.getVersionRange(previous);
+        assertThat((Long) previous.getProperty(VEProps.VALID_INTERVAL_NODE_PROP_KEY),
+                is(TemporalIntervalIndex.getNode(range.min(), range.max())));
+    }
+
+    /**
+     * Snapshots read via the temporal interval index match the scanned
+     * snapshots.
+     */
+    @Test
+    public void testIntervalIndexSnapshots() {
+        graph.shutdown();
+        graph = generateGraph("graph", new Configuration.ConfBuilder().temporalIntervalIndexEnabled(true).build());
+
+        List<Long> versions = new ArrayList<Long>();
+        List<Vertex> vertices = new ArrayList<Vertex>();
+        for (int i = 0; i < 20; i++) {
+            Vertex v = graph.addVertex(null);
+            vertices.add(v);
+            if (i > 0) {
+                graph.addEdge(null, vertices.get(i - 1), v, "next");
+            }
+            if (i % 3 == 0) {
+                vertices.get(i / 2).setProperty("key", i);
+            }
+            if (i % 7 == 6) {
+                graph.removeVertex(vertices.get(i / 3));
+            }
+            versions.add(graph.getLatestGraphVersion());
+        }
+
+        for (Long ver : versions) {
+            HistoricGraphQuery<Long> scan = (HistoricGraphQuery<Long>) graph.getHistoricGraph().query();
+            assertThat(hardIds(graph.getHistoricGraph().getVertices(ver)), is(hardIds(scan.forVersion(ver).vertices())));
+
+            scan = (HistoricGraphQuery<Long>) graph.getHistoricGraph().query();
+            assertThat(hardIds(graph.getHistoricGraph().getEdges(ver)), is(hardIds(scan.forVersion(ver).edges())));
+        }
+    }
+
+    /**
+     * The temporal interval index is used only if all the revisions were
+     * registered at it, snapshots of a graph whose history was written without
+     * the index are scanned.
+     */
+    @Test
+    public void testIntervalIndexIsNotUsedForUnindexedHistory() {
+        graph.shutdown();
+        TinkerGraph base = new TinkerGraph();
+        Configuration indexed = new Configuration.ConfBuilder().temporalIntervalIndexEnabled(true).build();
+        graph =
+                new ActiveVersionedGraph.ActiveVersionedNonTransactionalGraphBuilder<TinkerGraph, Long>(base,
+                        new LongGraphIdentifierBehavior()).init(true).build();
+        Vertex v = graph.addVertex(null);
+        v.setProperty("key", "foo");
+        Long ver = graph.getLatestGraphVersion();
+
+        graph =
+                new ActiveVersionedGraph.ActiveVersionedNonTransactionalGraphBuilder<TinkerGraph, Long>(base,
+                        new LongGraphIdentifierBehavior()).init(true).conf(indexed).build();
+        assertThat(graph.getHistoricGraph().isIntervalIndexed(ver), is(false));
+        assertThat(hardIds(graph.getHistoricGraph().getVertices(ver)).size(), is(1));
+
+        // a graph created with the index loses it once built without it
+        base = new TinkerGraph();
+        graph =
+                new ActiveVersionedGraph.ActiveVersionedNonTransactionalGraphBuilder<TinkerGraph, Long>(base,
+                        new LongGraphIdentifierBehavior()).init(true).conf(indexed).build();
+        assertThat(graph.getHistoricGraph().isIntervalIndexed(ver), is(true));
+        graph =
+                new ActiveVersionedGraph.ActiveVersionedNonTransactionalGraphBuilder<TinkerGraph, Long>(base,
+                        new LongGraphIdentifierBehavior()).init(true).build();
+        graph =
+                new ActiveVersionedGraph.ActiveVersionedNonTransactionalGraphBuilder<TinkerGraph, Long>(base,
+                        new LongGraphIdentifierBehavior()).init(true).conf(indexed).build();
+        assertThat(graph.getHistoricGraph().isIntervalIndexed(ver), is(false));
+    }
+
+    /**
+     * Resolved revisions are served by the cache, latest revisions are
+     * invalidated once their element is versioned again.
+     */
+    @Test
+    public void testRevisionCache() {
+        graph.shutdown();
+        graph = generateGraph("graph", new Configuration.ConfBuilder().historicRevisionCacheMaxWeight(1000L).build());
+        HistoricRevisionCache<Long> cache = graph.getHistoricGraph().getRevisionCache();
+
+        Vertex v = graph.addVertex(null);
+        v.setProperty("key", "foo");
+        Long fooVer = graph.getLatestGraphVersion();
+        Long future = fooVer + 100;
+
+        assertThat((String) graph.getHistoricGraph().getVertexForVersion(v.getId(), future).getProperty("key"),
+                is("foo"));
+        assertThat((String) graph.getHistoricGraph().getVertexForVersion(v.getId(), future).getProperty("key"),
+                is("foo"));
+        assertThat(cache.getHitCount(), is(1L));
+
+        v.setProperty("key", "bar");
+        assertThat((String) graph.getHistoricGraph().getVertexForVersion(v.getId(), future).getProperty("key"),
+                is("bar"));
+        assertThat((String) graph.getHistoricGraph().getVertexForVersion(v.getId(), fooVer).getProperty("key"),
+                is("foo"));
+        assertThat((String) graph.getHistoricGraph().getVertexForVersion(v.getId(), fooVer).getProperty("key"),
+                is("foo"));
+        assertThat(cache.getHitCount(), is(2L));
+        assertThat(cache.getMissCount(), is(3L));
+        assertThat(cache.getTrackedLatestCount(), is(1));
+
+        cache.invalidateAll();
+        assertThat(cache.getTrackedLatestCount(), is(0));
+    }
+
+    /**
+     * Latest revisions are no longer tracked once they are evicted.
+     */
+    @Test
+    public void testEvictedLatestRevisionsAreNotTracked() {
+        graph.shutdown();
+        graph = generateGraph("graph", new Configuration.ConfBuilder().historicRevisionCacheMaxWeight(20L).build());
+        HistoricRevisionCache<Long> cache = graph.getHistoricGraph().getRevisionCache();
+
+        List<Object> ids = new ArrayList<Object>();
+        for (int i = 0; i < 100; i++) {
+            Vertex v = graph.addVertex(null);
+            v.setProperty("key", i);
+            ids.add(v.getId());
+        }
+
+        Long ver = graph.getLatestGraphVersion();
+        for (Object id : ids) {
+            graph.getHistoricGraph().getVertexForVersion(id, ver);
+        }
+
+        assertThat(cache.getTrackedLatestCount(), is((int) cache.size()));
+    }
+
+    /**
+     * Natural ids are resolved via the cache and removed elements are not
+     * served by it.
+     */
+    @Test
+    public void testNaturalIdCache() {
+        graph.shutdown();
+        graph =
+                generateGraph("graph", new Configuration.ConfBuilder().useNaturalIds(true).naturalIdCacheSize(100L)
+                        .build());
+        assertThat(graph.isNaturalIds(), is(Boolean.TRUE));
+
+        Vertex v1 = graph.addVertex("v1");
+        Vertex v2 = graph.addVertex("v2");
+        graph.addEdge("e1", v1, v2, "link");
+        assertThat(graph.getNaturalIdCache().get(Vertex.class, "v1"), notNullValue());
+
+        assertThat(graph.getVertex("v1").getId(), is((Object) "v1"));
+        assertThat(graph.getEdge("e1").getId(), is((Object) "e1"));
+
+        graph.removeVertex(graph.getVertex("v1"));
+        assertThat(graph.getNaturalIdCache().get(Vertex.class, "v1"), nullValue());
+        assertThat(graph.getVertex("v1"), nullValue());
+        assertThat(graph.getEdge("e1"), nullValue());
+
+        graph.addVertex("v1").setProperty("key", "foo");
+        assertThat((String) graph.getVertex("v1").getProperty("key"), is("foo"));
+    }
+
+    /**
+     * Natural ids which existed when the graph was built and natural ids
+     * created via the graph are rejected when new ids are checked against the
+     * natural ids filter, while ids of removed elements may be reused.
+     */
+    @Test
+    public void testNaturalIdFilter() {
+        graph.shutdown();
+        TinkerGraph base = new TinkerGraph();
+        Configuration conf = new Configuration.ConfBuilder().useNaturalIds(true).build();
+        ActiveVersionedGraph<TinkerGraph, Long> g =
+                new ActiveVersionedGraph.ActiveVersionedNonTransactionalGraphBuilder<TinkerGraph, Long>(base,
+                        new LongGraphIdentifierBehavior()).init(true).conf(conf).build();
+        Vertex existing = g.addVertex("existing");
+        g.addEdge("existingEdge", existing, g.addVertex("other"), "link");
+        g.removeVertex(g.addVertex("removed"));
+
+        conf = new Configuration.ConfBuilder().useNaturalIds(true).naturalIdFilterExpectedInsertions(1000).build();
+        graph =
+                new ActiveVersionedGraph.ActiveVersionedNonTransactionalGraphBuilder<TinkerGraph, Long>(base,
+                        new LongGraphIdentifierBehavior()).init(false).conf(conf).build();
+        for (int i = 0; i < 100; i++) {
+            graph.addVertex("v" + i);
+        }
+
+        for (String id : new String[] { "existing", "v0", "v99" }) {
+            try {
+                graph.addVertex(id);
+                fail("Expected duplicated id to be rejected: " + id);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+
+        graph.removeVertex(graph.getVertex("v0"));
+        graph.addVertex("v0");
+        Vertex v = graph.addVertex("removed");
+        try {
+            graph.addEdge("existingEdge", v, graph.getVertex("existing"), "link");
+            fail("Expected duplicated id to be rejected: existingEdge");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Only the modified keys are synced to the latest historic revision, which
+     * must still match its active vertex.
+     */
+    @Test
+    public void testLatestHistoricSyncsDirtyKeys() {
+        Vertex v = graph.addVertex(null);
+        for (int i = 0; i < 20; i++) {
+            v.setProperty("key" + i, i);
+        }
+
+        v.setProperty("key3", "changed");
+        v.removeProperty("key7");
+
+        HistoricVersionedVertex<Long> latest =
+                graph.getHistoricGraph().getLatestHistoricRevision((ActiveVersionedVertex<Long>) v);
+        assertThat(ElementUtils.getPropertiesAsMap(latest), is(ElementUtils.getPropertiesAsMap(v,
+                VEProps.antiquityElementsKeys)));
+    }
+
+    /**
+     * Elements wrapped by a traversal without validation are still versioned
+     * once they are modified.
+     */
+    @Test
+    public void testTraversedElementsAreVersioned() {
+        Vertex v1 = graph.addVertex(null);
+        Vertex v2 = graph.addVertex(null);
+        graph.addEdge(null, v1, v2, "link");
+        Long ver = graph.getLatestGraphVersion();
+
+        Vertex traversed = v1.getVertices(Direction.OUT, "link").iterator().next();
+        traversed.setProperty("key", "foo");
+        v1.getEdges(Direction.OUT, "link").iterator().next().setProperty("key", "bar");
+
+        assertThat(graph.getHistoricGraph().getVertexForVersion(v2.getId(), ver).getProperty("key"), nullValue());
+        assertThat((String) graph.getHistoricGraph().getVertexForVersion(v2.getId(), graph.getLatestGraphVersion())
+                .getProperty("key"), is("foo"));
+        assertThat((String) graph.getEdges().iterator().next().getProperty("key"), is("bar"));
+    }
+
+    /**
+     * The single pass classifier matches the separate internal, type and range
+     * checks for every base graph element.
+     */
+    @Test
+    public void testHistoricClassifier() {
+        Vertex v1 = graph.addVertex(null);
+        Vertex v2 = graph.addVertex(null);
+        graph.addEdge(null, v1, v2, "link");
+        v1.setProperty("key", "foo");
+        Long ver = graph.getLatestGraphVersion();
+        v1.setProperty("key", "bar");
+        graph.removeVertex(v2);
+        Range<Long> range = Range.range(ver, ver);
+
+        List<Element> elements = new ArrayList<Element>();
+        Iterables.addAll(elements, graph.getBaseGraph().getVertices());
+        Iterables.addAll(elements, graph.getBaseGraph().getEdges());
+        for (Element e : elements) {
+            VersionedElementUtils.HistoricClass expected;
+            if (graph.utils.isInternal(e)) {
+                expected = VersionedElementUtils.HistoricClass.INTERNAL;
+            } else if (graph.utils.getElementType(e) == VEProps.GRAPH_TYPE.ACTIVE) {
+                continue;
+            } else if (graph.utils.getVersionRange(e).contains(range)) {
+                expected = VersionedElementUtils.HistoricClass.IN_RANGE;
+            } else {
+                expected = VersionedElementUtils.HistoricClass.OUT_OF_RANGE;
+            }
+
+            assertThat(graph.utils.classifyHistoric(e, range), is(expected));
+        }
+    }
+
+    /**
+     * A base query which records the compare predicates added to it.
+     */
+    static class RecordingGraphQuery extends DefaultGraphQuery {
+        final List<String> predicates = new ArrayList<String>();
+
+        RecordingGraphQuery(Graph graph) {
+            super(graph);
+        }
+
+        @Override
+        public GraphQuery has(String key, Predicate predicate, Object value) {
+            predicates.add(key + " " + predicate + " " + value);
+            return super.has(key, predicate, value);
+        }
+    }
+
+    private Set<Object> hardIds(Iterable<? extends Element> elements) {
+        Set<Object> ids = new HashSet<Object>();
+        for (Element e : elements) {
+            ids.add(((HistoricVersionedElement) e).getHardId());
+        }
+
+        return ids;
+    }
 }
@@ -0,0 +1,74 @@
+/**
+ * Copyright (c) 2012-2014 "Indexia Technologies, ltd."
+ * 
+ * This file is part of Antiquity.
+ * 
+ * Antiquity is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.indexia.antiquity.graph;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Test {@link OffHeapLongLongMap}.
+ */
+public class OffHeapLongLongMapTest {
+    @Test
+    public void testMatchesHashMap() {
+        OffHeapLongLongMap map = new OffHeapLongLongMap(2, 4);
+        Map<Long, Long> expected = new HashMap<Long, Long>();
+        Random random = new Random(1);
+
+        for (int i = 0; i < 200000; i++) {
+            long key = random.nextInt(5000) - 100;
+            switch (random.nextInt(3)) {
+            case 0:
+                long value = random.nextLong();
+                map.put(key, value);
+                expected.put(key, value);
+                break;
+            case 1:
+                assertThat(map.remove(key), is(expected.remove(key) != null));
+                break;
+            default:
+                Long e = expected.get(key);
+                assertThat(map.get(key, -1L), is(e == null ? -1L : e));
+            }
+        }
+
+        assertThat(map.size(), is((long) expected.size()));
+        map.clear();
+        assertThat(map.size(), is(0L));
+        assertThat(map.get(0L, -1L), is(-1L));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testReleasedMapCannotBeUsed() {
+        OffHeapLongLongMap map = new OffHeapLongLongMap(0, 2);
+        for (long i = 1; i <= 100; i++) {
+            map.put(i, i);
+        }
+
+        map.release();
+        assertThat(map.size(), is(0L));
+        map.get(1L, -1L);
+    }
+}
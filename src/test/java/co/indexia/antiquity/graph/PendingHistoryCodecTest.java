@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) 2012-2014 "Indexia Technologies, ltd."
+ * 
+ * This file is part of Antiquity.
+ * 
+ * Antiquity is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.indexia.antiquity.graph;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import co.indexia.antiquity.graph.AsyncHistoryWriter.AddedEdge;
+import co.indexia.antiquity.graph.AsyncHistoryWriter.HistoryTask;
+import co.indexia.antiquity.graph.AsyncHistoryWriter.RemovedElement;
+
+import org.junit.Test;
+
+/**
+ * Test {@link PendingHistoryCodec}.
+ */
+public class PendingHistoryCodecTest {
+    @Test
+    public void testChangesAreDecodedAsEncoded() {
+        HistoryTask<Long> task = new HistoryTask<Long>();
+        Map<String, Object> props = new HashMap<String, Object>();
+        props.put("string", "foo");
+        props.put("long", 1L);
+        props.put("double", 0.5d);
+        props.put("list", Arrays.<Object> asList(1, "a", null));
+        props.put("ints", new int[] { 1, 2 });
+        props.put("strings", new String[] { "a", "b" });
+        task.addedVertices.add(1L);
+        task.committedVertexProps.put(1L, props);
+
+        Map<String, Object> old = new HashMap<String, Object>();
+        old.put("key", null);
+        task.modifiedPropsPerEdge.put("e", old);
+        task.committedEdgeProps.put("e", new HashMap<String, Object>(old));
+        task.removedVertices.add(new RemovedElement(2L, new HashMap<String, Object>(props)));
+        task.addedEdges.add(new AddedEdge("f", 1L, 2L, "label"));
+        task.committedEdgeProps.put("f", new HashMap<String, Object>());
+
+        HistoryTask<Long> decoded = PendingHistoryCodec.decode(PendingHistoryCodec.encode(task), 1L, 2L);
+
+        assertThat(decoded.getLatestVersion(), is(1L));
+        assertThat(decoded.getVersion(), is(2L));
+        assertThat(decoded.addedVertices, is(task.addedVertices));
+        assertThat(decoded.addedEdges.size(), is(1));
+        assertThat(decoded.addedEdges.get(0).outId, is((Object) 1L));
+        assertThat(decoded.addedEdges.get(0).inId, is((Object) 2L));
+        assertThat(decoded.addedEdges.get(0).label, is("label"));
+        Map<String, Object> added = decoded.committedVertexProps.get(1L);
+        assertThat((String) added.get("string"), is("foo"));
+        assertThat((Long) added.get("long"), is(1L));
+        assertThat((Double) added.get("double"), is(0.5d));
+        assertThat(added.get("list"), is((Object) Arrays.<Object> asList(1, "a", null)));
+        assertArrayEquals(new int[] { 1, 2 }, (int[]) added.get("ints"));
+        assertArrayEquals(new String[] { "a", "b" }, (String[]) added.get("strings"));
+
+        assertThat(decoded.modifiedPropsPerEdge.get("e").containsKey("key"), is(true));
+        assertThat(decoded.modifiedPropsPerEdge.get("e").get("key"), nullValue());
+        assertThat(decoded.removedVertices.size(), is(1));
+        assertThat(decoded.removedVertices.get(0).activeId, is((Object) 2L));
+        assertThat((String) decoded.removedVertices.get(0).props.get("string"), is("foo"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedValueIsRejected() {
+        HistoryTask<Long> task = new HistoryTask<Long>();
+        task.addedVertices.add(1L);
+        task.committedVertexProps.put(1L, new HashMap<String, Object>());
+        task.committedVertexProps.get(1L).put("key", new Object());
+
+        PendingHistoryCodec.encode(task);
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright (c) 2012-2014 "Indexia Technologies, ltd."
+ * 
+ * This file is part of Antiquity.
+ * 
+ * Antiquity is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.indexia.antiquity.graph;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.common.collect.Sets;
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
+import com.tinkerpop.blueprints.util.wrappers.id.IdGraph;
+import co.indexia.antiquity.graph.identifierBehavior.LongGraphIdentifierBehavior;
+
+import org.junit.Test;
+
+/**
+ * Test {@link UlidIdFactory} and {@link SnowflakeIdFactory}.
+ */
+public class TimeOrderedIdFactoryTest {
+    @Test
+    public void testUlidIdsAreIncreasing() {
+        UlidIdFactory factory = new UlidIdFactory();
+        String prev = (String) factory.createId();
+        assertThat(prev.length(), is(26));
+
+        for (int i = 0; i < 100000; i++) {
+            String id = (String) factory.createId();
+            assertTrue(id.compareTo(prev) > 0);
+            prev = id;
+        }
+    }
+
+    @Test
+    public void testSnowflakeIdsAreIncreasing() {
+        SnowflakeIdFactory factory = new SnowflakeIdFactory(7);
+        long prev = (Long) factory.createId();
+
+        for (int i = 0; i < 100000; i++) {
+            long id = (Long) factory.createId();
+            assertTrue(id > prev);
+            prev = id;
+        }
+    }
+
+    @Test
+    public void testConcurrentIdsAreUnique() throws InterruptedException {
+        for (final IdGraph.IdFactory factory : new IdGraph.IdFactory[] { new UlidIdFactory(),
+                new SnowflakeIdFactory(0) }) {
+            final Set<Object> ids = Sets.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+            List<Thread> threads = new ArrayList<Thread>();
+            for (int t = 0; t < 8; t++) {
+                Thread thread = new Thread() {
+                    @Override
+                    public void run() {
+                        for (int i = 0; i < 10000; i++) {
+                            ids.add(factory.createId());
+                        }
+                    }
+                };
+                threads.add(thread);
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            assertThat(ids.size(), is(80000));
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testGraphUsesSuppliedFactory() {
+        ActiveVersionedGraph<TinkerGraph, Long> graph =
+                new ActiveVersionedGraph.ActiveVersionedNonTransactionalGraphBuilder<TinkerGraph, Long>(
+                        new TinkerGraph(), new LongGraphIdentifierBehavior()).init(true)
+                        .conf(new Configuration.ConfBuilder().useNaturalIds(true).build())
+                        .vertexIdFactory(new SnowflakeIdFactory(1)).build();
+
+        Vertex v = graph.addVertex(null);
+        assertTrue(v.getId() instanceof Long);
+
+        v.setProperty("key", "foo");
+        graph.removeVertex(v);
+        assertThat(graph.getVertex(v.getId()), nullValue());
+    }
+}
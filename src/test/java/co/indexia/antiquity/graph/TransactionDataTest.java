@@ -0,0 +1,167 @@
+/**
+ * Copyright (c) 2012-2014 "Indexia Technologies, ltd."
+ * 
+ * This file is part of Antiquity.
+ * 
+ * Antiquity is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.indexia.antiquity.graph;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
+import com.tinkerpop.blueprints.util.wrappers.event.EventGraph;
+
+import org.junit.Test;
+
+/**
+ * Test {@link TransactionData}.
+ */
+public class TransactionDataTest {
+    @Test
+    public void testFirstOldValueIsKept() {
+        Vertex v = new TinkerGraph().addVertex(null);
+        TransactionData data = new TransactionData();
+
+        data.recordVertexModification(v, "key", "foo");
+        data.recordVertexModification(v, "key", "bar");
+        data.recordVertexModification(v, "other", null);
+
+        Map<String, Object> props = data.getModifiedPropsPerVertex().get(v);
+        assertThat(props.size(), is(2));
+        assertThat((String) props.get("key"), is("foo"));
+        assertThat(props.containsKey("other"), is(true));
+
+        Iterator<Map.Entry<String, Object>> it = props.entrySet().iterator();
+        it.next();
+        it.remove();
+        assertThat(it.hasNext(), is(true));
+        it.next();
+        assertThat(it.hasNext(), is(false));
+        assertThat(props.size(), is(1));
+    }
+
+    @Test
+    public void testModifiedPropsAreReused() {
+        TinkerGraph g = new TinkerGraph();
+        Vertex v1 = g.addVertex(null);
+        Vertex v2 = g.addVertex(null);
+        TransactionData data = new TransactionData();
+
+        data.recordVertexModification(v1, "key", "foo");
+        Map<String, Object> props = data.getModifiedPropsPerVertex().get(v1);
+        Map<Vertex, Map<String, Object>> modified = data.getModifiedPropsPerVertex();
+        data.clear();
+
+        assertThat(data.isEmpty(), is(true));
+        assertThat(props.isEmpty(), is(true));
+        data.recordVertexModification(v2, "key", "bar");
+        assertThat(data.getModifiedPropsPerVertex(), sameInstance(modified));
+        assertThat(data.getModifiedPropsPerVertex().get(v2), sameInstance(props));
+        assertThat(data.getModifiedPropsPerVertex().get(v1), nullValue());
+    }
+
+    @Test
+    public void testOversizedCollectionsAreReleased() {
+        TinkerGraph g = new TinkerGraph();
+        TransactionData data = new TransactionData(2);
+        for (int i = 0; i < 3; i++) {
+            data.getAddedVertices().add(g.addVertex(null));
+        }
+
+        Object added = data.getAddedVertices();
+        data.clear();
+
+        assertThat(data.getAddedVertices().isEmpty(), is(true));
+        assertThat(data.getAddedVertices(), not(sameInstance(added)));
+    }
+
+    @Test
+    public void testShrunkCollectionsAreReleased() {
+        TinkerGraph g = new TinkerGraph();
+        TransactionData data = new TransactionData(2);
+        List<Vertex> vertices = new ArrayList<Vertex>();
+        for (int i = 0; i < 3; i++) {
+            vertices.add(g.addVertex(null));
+        }
+        data.getAddedVertices().addAll(vertices);
+        data.getAddedVertices().removeAll(vertices);
+
+        Object added = data.getAddedVertices();
+        data.clear();
+
+        assertThat(data.getAddedVertices(), not(sameInstance(added)));
+    }
+
+    @Test
+    public void testElementsAreKeyedByRawId() {
+        TinkerGraph g = new TinkerGraph();
+        Vertex v = g.addVertex(null);
+        Vertex wrapped = new EventGraph<TinkerGraph>(g).getVertex(v.getId());
+        TransactionData data = new TransactionData();
+
+        data.getAddedVertices().add(wrapped);
+        data.recordVertexModification(wrapped, "key", "foo");
+        assertThat(data.getAddedVertices().contains(v), is(true));
+        assertThat(data.getAddedVertices().add(v), is(false));
+        assertThat((String) data.getModifiedPropsPerVertex().get(v).get("key"), is("foo"));
+
+        data.getModifiedPropsPerVertex().keySet().removeAll(Collections.singleton(v));
+        assertThat(data.getModifiedPropsPerVertex().isEmpty(), is(true));
+    }
+
+    @Test
+    public void testRemovedElementsAreNotFound() {
+        TinkerGraph g = new TinkerGraph();
+        EventGraph<TinkerGraph> eg = new EventGraph<TinkerGraph>(g);
+        List<Vertex> vertices = new ArrayList<Vertex>();
+        TransactionData data = new TransactionData();
+        for (int i = 0; i < 100; i++) {
+            Vertex v = g.addVertex(null);
+            vertices.add(v);
+            data.getRemovedVertices().put(v, Collections.<String, Object> singletonMap("i", i));
+        }
+
+        Iterator<Vertex> it = data.getRemovedVertices().keySet().iterator();
+        while (it.hasNext()) {
+            if ((Integer) data.getRemovedVertices().get(it.next()).get("i") % 2 == 0) {
+                it.remove();
+            }
+        }
+
+        assertThat(data.getRemovedVertices().size(), is(50));
+        for (int i = 0; i < 100; i++) {
+            Vertex wrapped = eg.getVertex(vertices.get(i).getId());
+            assertThat(data.getRemovedVertices().containsKey(wrapped), is(i % 2 == 1));
+        }
+
+        List<Vertex> retained = new ArrayList<Vertex>();
+        retained.add(eg.getVertex(vertices.get(1).getId()));
+        retained.add(eg.getVertex(vertices.get(2).getId()));
+        data.getRemovedVertices().keySet().retainAll(retained);
+        assertThat(data.getRemovedVertices().size(), is(1));
+        assertThat((Integer) data.getRemovedVertices().get(vertices.get(1)).get("i"), is(1));
+    }
+}
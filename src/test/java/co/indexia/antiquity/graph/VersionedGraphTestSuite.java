@@ -407,6 +407,21 @@ public abstract class VersionedGraphTestSuite<V extends Comparable<V>> {
         assertThat(v2With3KeysHash, is(v1With3KeysHash));
     }
 
+    @Test
+    public void testIncrementalPrivateHashMatchesCalculatedHash() {
+        ActiveVersionedVertex<V> v = (ActiveVersionedVertex) graph.addVertex("v1");
+        v.setProperty("keyFoo", "foo");
+        v.setProperty("keyBar", 2L);
+        CIT();
+        v.setProperty("keyFoo", "fooChanged");
+        v.setProperty("keyBaz", "baz");
+        v.removeProperty("keyBar");
+        CIT();
+
+        assertThat(v.getPrivateHash(),
+                is(ElementUtils.calculateElementPrivateHash(v.getRaw(), VEProps.antiquityElementsKeys)));
+    }
+
 
     // Edges tests
     // --------------------------------------------------------------
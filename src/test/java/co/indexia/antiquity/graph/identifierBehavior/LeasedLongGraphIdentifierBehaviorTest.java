@@ -0,0 +1,309 @@
+/**
+ * Copyright (c) 2012-2014 "Indexia Technologies, ltd."
+ * 
+ * This file is part of Antiquity.
+ * 
+ * Antiquity is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package co.indexia.antiquity.graph.identifierBehavior;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.tinkerpop.blueprints.TransactionalGraph;
+import com.tinkerpop.blueprints.impls.neo4j2.Neo4j2Graph;
+import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
+import co.indexia.antiquity.graph.ActiveVersionedGraph;
+import co.indexia.antiquity.graph.VEProps;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.test.ImpermanentGraphDatabase;
+
+import org.junit.Test;
+
+/**
+ * Test {@link LeasedLongGraphIdentifierBehavior}.
+ */
+public class LeasedLongGraphIdentifierBehaviorTest {
+    private ActiveVersionedGraph<TinkerGraph, Long> createGraph(TinkerGraph base,
+            LeasedLongGraphIdentifierBehavior behavior) {
+        return new ActiveVersionedGraph.ActiveVersionedNonTransactionalGraphBuilder<TinkerGraph, Long>(base,
+                behavior).init(true).build();
+    }
+
+    @Test
+    public void testBlockIsReservedOncePerBlock() {
+        ActiveVersionedGraph<TinkerGraph, Long> graph =
+                createGraph(new TinkerGraph(), new LeasedLongGraphIdentifierBehavior(10));
+
+        graph.addVertex(null);
+        graph.addVertex(null);
+        graph.addVertex(null);
+
+        assertThat(graph.getLatestGraphVersion(), is(3L));
+        assertThat((Long) graph.getRootVertex(VEProps.GRAPH_TYPE.HISTORIC).getProperty(
+                VEProps.LATEST_GRAPH_VERSION_PROP_KEY), is(10L));
+        assertThat((Long) graph.getRootVertex(VEProps.GRAPH_TYPE.HISTORIC).getProperty(
+                VEProps.LATEST_COMMITTED_GRAPH_VERSION_PROP_KEY), is(3L));
+    }
+
+    @Test
+    public void testLatestCommittedVersionSurvivesRestart() {
+        TinkerGraph base = new TinkerGraph();
+        ActiveVersionedGraph<TinkerGraph, Long> graph = createGraph(base, new LeasedLongGraphIdentifierBehavior(10));
+        graph.addVertex(null);
+        graph.addVertex(null);
+
+        ActiveVersionedGraph<TinkerGraph, Long> restarted =
+                new ActiveVersionedGraph.ActiveVersionedNonTransactionalGraphBuilder<TinkerGraph, Long>(base,
+                        new LeasedLongGraphIdentifierBehavior(10)).init(false).build();
+        assertThat(restarted.getLatestGraphVersion(), is(2L));
+
+        // the rest of the block leased before the restart is skipped
+        restarted.addVertex(null);
+        assertThat(restarted.getLatestGraphVersion(), is(11L));
+    }
+
+    @Test
+    public void testConcurrentVersionsAreUnique() throws InterruptedException {
+        final LeasedLongGraphIdentifierBehavior behavior = new LeasedLongGraphIdentifierBehavior(7);
+        createGraph(new TinkerGraph(), behavior);
+
+        final int threadsAmount = 8;
+        final int versionsPerThread = 500;
+        final Set<Long> versions = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+        final List<Throwable> failures = new ArrayList<Throwable>();
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < threadsAmount; i++) {
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    long previous = 0;
+                    for (int j = 0; j < versionsPerThread; j++) {
+                        long v = behavior.getNextGraphVersion(null);
+                        if (v <= previous || !versions.add(v)) {
+                            synchronized (failures) {
+                                failures.add(new AssertionError("Version " + v + " is not unique or ordered"));
+                            }
+                            return;
+                        }
+                        previous = v;
+                    }
+                }
+            }));
+        }
+
+        for (Thread t : threads) {
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        assertTrue(failures.toString(), failures.isEmpty());
+        assertThat(versions.size(), is(threadsAmount * versionsPerThread));
+    }
+
+    @Test
+    public void testWritersSharingStoreLeaseDisjointBlocks() throws IOException {
+        File lockFile = File.createTempFile("antiquity", ".lock");
+        lockFile.deleteOnExit();
+
+        TinkerGraph base = new TinkerGraph();
+        LeasedLongGraphIdentifierBehavior first =
+                new LeasedLongGraphIdentifierBehavior(5, new FileVersionLeaseLock(lockFile));
+        LeasedLongGraphIdentifierBehavior second =
+                new LeasedLongGraphIdentifierBehavior(5, new FileVersionLeaseLock(lockFile));
+        createGraph(base, first);
+        createGraph(base, second);
+
+        Set<Long> versions = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+        for (int i = 0; i < 12; i++) {
+            assertTrue(versions.add(first.getNextGraphVersion(null)));
+            assertTrue(versions.add(second.getNextGraphVersion(null)));
+        }
+
+        assertThat(versions.size(), is(24));
+    }
+
+    @Test
+    public void testTransactionalLeaseIsCommittedIndependently() {
+        LeasedLongGraphIdentifierBehavior behavior = new LeasedLongGraphIdentifierBehavior(3);
+        ActiveVersionedGraph<Neo4j2Graph, Long> graph =
+                new ActiveVersionedGraph.ActiveVersionedTransactionalGraphBuilder<Neo4j2Graph, Long>(new Neo4j2Graph(
+                        new ImpermanentGraphDatabase()), behavior).init(true).build();
+
+        graph.addVertex(null);
+        assertThat(behavior.getNextGraphVersion(null), is(1L));
+        ((TransactionalGraph) graph).rollback();
+
+        // the lease survives the rollback of the transaction it was taken in
+        assertThat((Long) graph.getRootVertex(VEProps.GRAPH_TYPE.HISTORIC).getProperty(
+                VEProps.LATEST_GRAPH_VERSION_PROP_KEY), is(3L));
+        graph.shutdown();
+    }
+
+    @Test
+    public void testCommitOrderIsVersionOrder() throws InterruptedException, ExecutionException {
+        LeasedLongGraphIdentifierBehavior behavior = new LeasedLongGraphIdentifierBehavior(10);
+        final ActiveVersionedGraph<Neo4j2Graph, Long> graph =
+                new ActiveVersionedGraph.ActiveVersionedTransactionalGraphBuilder<Neo4j2Graph, Long>(new Neo4j2Graph(
+                        new ImpermanentGraphDatabase()), behavior).init(true).build();
+
+        // the version is held until the transaction it was taken in ends
+        graph.addVertex(null);
+        long held = behavior.getNextGraphVersion(null);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Long> later = executor.submit(new Callable<Long>() {
+                @Override
+                public Long call() {
+                    graph.addVertex(null);
+                    ((TransactionalGraph) graph).commit();
+                    return graph.getLatestGraphVersion();
+                }
+            });
+
+            try {
+                later.get(200, TimeUnit.MILLISECONDS);
+                fail("Expected the commit to wait for the lower version.");
+            } catch (TimeoutException e) {
+                // expected
+            }
+
+            ((TransactionalGraph) graph).rollback();
+            assertTrue(later.get() > held);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        graph.shutdown();
+    }
+
+    @Test
+    public void testWritersSharingStoreCommitInOrder() throws Exception {
+        File lockFile = File.createTempFile("antiquity", ".lock");
+        lockFile.deleteOnExit();
+
+        GraphDatabaseService store = new ImpermanentGraphDatabase();
+        Writer first = new Writer(store, lockFile);
+        Writer second = new Writer(store, lockFile);
+        try {
+            assertThat(first.commitVertex(), is(1L));
+            assertThat(second.commitVertex(), is(6L));
+            assertThat(first.getLatestGraphVersion(), is(6L));
+
+            // the rest of the first block is behind the version committed by
+            // the second writer
+            assertThat(first.commitVertex(), is(11L));
+            assertThat(second.getLatestGraphVersion(), is(11L));
+        } finally {
+            first.close();
+            second.close();
+            store.shutdown();
+        }
+    }
+
+    @Test
+    public void testLeaseTimesOutIfRootVertexIsLocked() {
+        LeasedLongGraphIdentifierBehavior behavior = new LeasedLongGraphIdentifierBehavior(3, null, 200);
+        ActiveVersionedGraph<Neo4j2Graph, Long> graph =
+                new ActiveVersionedGraph.ActiveVersionedTransactionalGraphBuilder<Neo4j2Graph, Long>(new Neo4j2Graph(
+                        new ImpermanentGraphDatabase()), behavior).init(true).build();
+
+        // the caller's transaction holds the root vertex's write lock
+        graph.getRootVertex(VEProps.GRAPH_TYPE.HISTORIC).setProperty("locked", true);
+        try {
+            behavior.getNextGraphVersion(null);
+            fail("Expected the lease to time out.");
+        } catch (IllegalStateException e) {
+            // expected
+        } finally {
+            ((TransactionalGraph) graph).rollback();
+        }
+
+        graph.shutdown();
+    }
+
+    /**
+     * A writer of a store shared with other writers, Neo4j transactions are
+     * bound to their thread thus each writer runs in its own thread.
+     */
+    private static class Writer {
+        private final ExecutorService executor = Executors.newSingleThreadExecutor();
+        private final ActiveVersionedGraph<Neo4j2Graph, Long> graph;
+
+        Writer(final GraphDatabaseService store, final File lockFile) throws Exception {
+            this.graph = executor.submit(new Callable<ActiveVersionedGraph<Neo4j2Graph, Long>>() {
+                @Override
+                public ActiveVersionedGraph<Neo4j2Graph, Long> call() {
+                    ActiveVersionedGraph<Neo4j2Graph, Long> graph =
+                            new ActiveVersionedGraph.ActiveVersionedTransactionalGraphBuilder<Neo4j2Graph, Long>(
+                                    new Neo4j2Graph(store), new LeasedLongGraphIdentifierBehavior(5,
+                                            new FileVersionLeaseLock(lockFile))).init(true).build();
+                    ((TransactionalGraph) graph).commit();
+                    return graph;
+                }
+            }).get();
+        }
+
+        long commitVertex() throws Exception {
+            return executor.submit(new Callable<Long>() {
+                @Override
+                public Long call() {
+                    graph.addVertex(null);
+                    ((TransactionalGraph) graph).commit();
+                    return latest();
+                }
+            }).get();
+        }
+
+        long getLatestGraphVersion() throws Exception {
+            return executor.submit(new Callable<Long>() {
+                @Override
+                public Long call() {
+                    return latest();
+                }
+            }).get();
+        }
+
+        void close() {
+            executor.shutdownNow();
+        }
+
+        private long latest() {
+            long latest = graph.getLatestGraphVersion();
+            ((TransactionalGraph) graph).commit();
+            return latest;
+        }
+    }
+}